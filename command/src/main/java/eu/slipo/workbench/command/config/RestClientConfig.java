@@ -7,6 +7,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.http.client.ClientHttpRequestFactory;
@@ -17,7 +18,14 @@ public class RestClientConfig
 {
     private static final int TIMEOUT_MILLIS = 3000;
     
+    /**
+     * The read timeout for streams (e.g. of server-sent events) that are expected to be idle 
+     * for long periods. This should be much longer than the heartbeat interval of the server.
+     */
+    private static final int STREAM_READ_TIMEOUT_MILLIS = 60 * 1000;
+    
     @Bean
+    @Primary
     RestTemplate restTemplate(@Autowired RestTemplateBuilder builder)
     {
         builder = builder
@@ -29,4 +37,13 @@ public class RestClientConfig
         
         return builder.build();
     }
-}
\ No newline at end of file
+    
+    @Bean
+    RestTemplate streamingRestTemplate(@Autowired RestTemplateBuilder builder)
+    {
+        return builder
+            .setReadTimeout(STREAM_READ_TIMEOUT_MILLIS)
+            .setConnectTimeout(TIMEOUT_MILLIS)
+            .build();
+    }
+}
@@ -1,12 +1,19 @@
 package eu.slipo.workbench.command.subcommand;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -14,6 +21,7 @@ import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 
 import javax.annotation.PostConstruct;
 
@@ -21,23 +29,31 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.RequestEntity;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import com.fasterxml.jackson.core.JsonGenerationException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import eu.slipo.workbench.common.model.ApplicationException;
 import eu.slipo.workbench.common.model.jobs.JobExecutionInfo;
 import eu.slipo.workbench.common.model.jobs.JobInstanceInfo;
+import eu.slipo.workbench.common.model.jobs.JobStatusEvent;
+import eu.slipo.workbench.common.model.jobs.JobSubmissionInfo;
 import eu.slipo.workbench.common.model.ErrorCode;
 import eu.slipo.workbench.common.model.ApplicationException;
 import eu.slipo.workbench.common.model.BasicErrorCode;
@@ -62,6 +78,18 @@ public class JobCommand implements SubCommand
     @Autowired
     private RestTemplate rest;
     
+    @Autowired
+    @Qualifier("streamingRestTemplate")
+    private RestTemplate streamingRest;
+    
+    /**
+     * The batch statuses that are final for a job execution (when watching a job instance,
+     * we stop as soon as one of them is reported). A parked execution is reported as 
+     * <tt>STOPPED</tt>, but is not final: its job instance is resumed by a new execution.
+     */
+    private static final List<String> FINAL_STATUSES = 
+        Arrays.asList("COMPLETED", "FAILED", "STOPPED", "ABANDONED");
+    
     @PostConstruct
     private void normalizeUrls()
     {
@@ -79,6 +107,10 @@ public class JobCommand implements SubCommand
         void printExecutionInfo(String jobName, JobExecutionInfo info, PrintStream out);
         
         void printExecutionInfo(String jobName, List<JobExecutionInfo> info, PrintStream out);
+        
+        void printSubmissionInfo(String jobName, List<JobSubmissionInfo> info, PrintStream out);
+        
+        void printStatusEvent(JobStatusEvent event, PrintStream out);
     }
     
     /**
@@ -163,6 +195,39 @@ public class JobCommand implements SubCommand
                     exitDescription);
             }
         }
+
+        @Override
+        public void printSubmissionInfo(String jobName, List<JobSubmissionInfo> submissionsInfo, PrintStream out)
+        {
+            out.printf("%-12.12s %-7.7s %-7.7s %-12.12s %s%n", 
+                "job-name", "index", "id", "execution-id", "error");
+            
+            for (JobSubmissionInfo r: submissionsInfo) {
+                JobExecutionInfo executionInfo = r.getExecution();
+                Error error = r.getError();
+                out.printf("%-12.12s %-7.7s %-7.7s %-12.12s %s%n",
+                    jobName,
+                    r.getIndex(),
+                    executionInfo == null? "" : executionInfo.getId(),
+                    executionInfo == null? "" : executionInfo.getExecutionId(),
+                    error == null? "" : error.getDescription());
+            }
+        }
+
+        @Override
+        public void printStatusEvent(JobStatusEvent event, PrintStream out)
+        {
+            String timestamp = (event.getTimestamp() != null)?
+                dateFormat.format(event.getTimestamp()) : "";
+            out.printf("%-24.24s %-12.12s %-7.7s %-12.12s %-32.32s %-12.12s %s%n",
+                timestamp,
+                event.getJobName(),
+                event.getId(),
+                event.getExecutionId(),
+                event.isJobEvent()? "-" : event.getStep(),
+                event.getStatus(),
+                event.getExitStatus());
+        }
     }
     
     /**
@@ -211,6 +276,20 @@ public class JobCommand implements SubCommand
         {
             print(info, out);
         }
+
+        @Override
+        public void printSubmissionInfo(String jobName, List<JobSubmissionInfo> info, PrintStream out)
+        {
+            print(info, out);
+        }
+
+        @Override
+        public void printStatusEvent(JobStatusEvent event, PrintStream out)
+        {
+            // Print as newline-delimited JSON
+            print(event, out);
+            out.println();
+        }
     }
     
     private static DefaultPrinter defaultPrinter = new DefaultPrinter();
@@ -272,6 +351,7 @@ public class JobCommand implements SubCommand
         
         LIST,    // List registered job names
         START,   // Start a job by name, passing a map of parameters
+        START_MANY, // Start many jobs by name, reading maps of parameters from a file
         STOP,    // Stop a running job identified by an  instance-id
         STATUS,  // Poll status of a job (by instance-id)
         CLEAR;   // Clear interrupted job executions (marking them as abandoned).
@@ -283,10 +363,13 @@ public class JobCommand implements SubCommand
         return 
             "job list [--json]\n" +
                 "\tList registered job names\n" +
-            "job start <job-name> [--json] [[--parameter=NAME=VALUE]*]\n" +
+            "job start <job-name> [--json] [--priority=N] [--submitter=NAME] [[--parameter=NAME=VALUE]*]\n" +
                 "\tStart a job by name passing a map of parameters\n" +
-            "job status <job-name> [<instance-id>] [--json]\n" +
-                "\tPoll status of a job (by instance-id)\n" +
+            "job start-many <job-name> --file=PATH [--json] [--priority=N] [--submitter=NAME]\n" +
+                "\tStart many jobs by name reading maps of parameters from a file (a JSON array,\n" +
+                "\tor newline-delimited JSON objects if named as *.ndjson or *.jsonl)\n" +
+            "job status <job-name> [<instance-id>] [--json] [--watch]\n" +
+                "\tPoll status of a job (by instance-id), or watch status transitions as they happen\n" +
             "job stop <job-name> <instance-id> [--json]\n" +
                 "\tStop a running job (by instance-id)\n" +
             "job clear <job-name> <instance-id> [--json]\n" +
@@ -323,7 +406,7 @@ public class JobCommand implements SubCommand
     {      
         Operation op;
         try {
-            op = Operation.valueOf(operationName.toUpperCase());
+            op = Operation.valueOf(operationName.toUpperCase().replace('-', '_'));
         } catch (IllegalArgumentException e) {
             op = Operation.UNKNOWN;
         }
@@ -354,12 +437,40 @@ public class JobCommand implements SubCommand
                     parametersMap.put(key,
                         (value == null || value.isEmpty())? Boolean.TRUE : value);
                 }
+                // Determine submitter and priority (if not given, the current user is the submitter)
+                String submitter = options.getOrDefault("submitter", 
+                    Collections.singletonList(System.getProperty("user.name"))).get(0);
+                int priority = Integer.parseInt(options.getOrDefault("priority", 
+                    Collections.singletonList("0")).get(0));
                 logger.info("About to submit job {} with parameters: {}", jobName, parametersMap);
                 // Start job
-                JobExecutionInfo info = startJob(jobName, parametersMap);
+                JobExecutionInfo info = startJob(jobName, parametersMap, submitter, priority);
                 printer.printExecutionInfo(jobName, info, System.out);
             }
             break;
+        case START_MANY:
+            // Start many jobs
+            {
+                String file = options.getOrDefault("file", Collections.singletonList("")).get(0);
+                if (file.isEmpty()) {
+                    throw new IllegalArgumentException("The file of parameters must be specified");
+                }
+                List<Map<String, Object>> parametersList = readParameters(Paths.get(file));
+                String submitter = options.getOrDefault("submitter", 
+                    Collections.singletonList(System.getProperty("user.name"))).get(0);
+                int priority = Integer.parseInt(options.getOrDefault("priority", 
+                    Collections.singletonList("0")).get(0));
+                logger.info("About to submit {} jobs {} from {}", parametersList.size(), jobName, file);
+                // Start jobs
+                RestResponse<List<JobSubmissionInfo>> response = 
+                    startJobs(jobName, parametersList, submitter, priority);
+                if (response.getResult() != null) {
+                    // Print per-item results (even if the batch was rejected as a whole)
+                    printer.printSubmissionInfo(jobName, response.getResult(), System.out);
+                }
+                checkErrors(response);
+            }
+            break;
         case STOP:
             // Stop the running execution of a job instance
             {
@@ -373,7 +484,15 @@ public class JobCommand implements SubCommand
             break;
         case STATUS:
             {
-                if (jobId == null) {
+                if (options.containsKey("watch")) {
+                    // Watch status transitions (until the execution of the instance is finished,
+                    // not just parked while its container is running)
+                    watchJob(jobName, jobId == null? null : Long.valueOf(jobId), event -> {
+                        printer.printStatusEvent(event, System.out);
+                        return jobId != null && event.isJobEvent() && 
+                            FINAL_STATUSES.contains(event.getStatus()) && !event.isParked();
+                    });
+                } else if (jobId == null) {
                     // List instances for given job
                     List<JobInstanceInfo> r = getJobInstances(jobName);
                     printer.printInstanceInfo(jobName, r, System.out);
@@ -489,9 +608,13 @@ public class JobCommand implements SubCommand
         return response.getResult(); 
     }
     
-    private JobExecutionInfo startJob(String jobName, Map<String, Object> parametersMap)
+    private JobExecutionInfo startJob(
+        String jobName, Map<String, Object> parametersMap, String submitter, int priority)
     {
-        final String path = String.format("/api/jobs/%s/submit", jobName);
+        final String path = UriComponentsBuilder.fromPath(String.format("/api/jobs/%s/submit", jobName))
+            .queryParam("priority", priority)
+            .queryParam("submitter", submitter)
+            .build().encode().toUriString();
         
         ParameterizedTypeReference<RestResponse<JobExecutionInfo>> responseType = 
             new ParameterizedTypeReference<RestResponse<JobExecutionInfo>>() {};
@@ -506,6 +629,104 @@ public class JobCommand implements SubCommand
         return response.getResult();
     }
     
+    private RestResponse<List<JobSubmissionInfo>> startJobs(
+        String jobName, List<Map<String, Object>> parametersList, String submitter, int priority)
+    {
+        final String path = UriComponentsBuilder.fromPath(String.format("/api/jobs/%s/submit-batch", jobName))
+            .queryParam("priority", priority)
+            .queryParam("submitter", submitter)
+            .build().encode().toUriString();
+        
+        ParameterizedTypeReference<RestResponse<List<JobSubmissionInfo>>> responseType = 
+            new ParameterizedTypeReference<RestResponse<List<JobSubmissionInfo>>>() {};
+        RequestEntity<List<Map<String,Object>>> requestEntity = 
+            buildPostEntity(path, parametersList);
+        ResponseEntity<RestResponse<List<JobSubmissionInfo>>> responseEntity = 
+            fetch(requestEntity, responseType);
+        
+        return responseEntity.getBody();
+    }
+    
+    /**
+     * Read a list of maps of parameters from a file. The file is expected to contain a JSON 
+     * array of objects, or (if named as <tt>*.ndjson</tt> or <tt>*.jsonl</tt>) a JSON object 
+     * per line.
+     * 
+     * @param path
+     */
+    private List<Map<String, Object>> readParameters(Path path)
+    {
+        final ObjectMapper jsonMapper = new ObjectMapper();
+        final TypeReference<Map<String, Object>> mapType = 
+            new TypeReference<Map<String, Object>>() {};
+        final TypeReference<List<Map<String, Object>>> listType = 
+            new TypeReference<List<Map<String, Object>>>() {};
+        
+        final String fileName = path.getFileName().toString();
+        final boolean delimited = fileName.endsWith(".ndjson") || fileName.endsWith(".jsonl"); 
+        
+        try {
+            if (!delimited) {
+                return jsonMapper.readValue(path.toFile(), listType);
+            }
+            List<Map<String, Object>> parametersList = new ArrayList<>();
+            for (String line: Files.readAllLines(path)) {
+                if (!line.trim().isEmpty())
+                    parametersList.add(jsonMapper.readValue(line, mapType));
+            }
+            return parametersList;
+        } catch (IOException e) {
+            throw ApplicationException.fromMessage(e, "Failed to read parameters from " + path);
+        }
+    }
+    
+    /**
+     * Watch status transitions of a job (or of a job instance) streamed as server-sent events.
+     * 
+     * @param jobName
+     * @param jobId An instance id, or <tt>null</tt> to watch all instances
+     * @param consumer A consumer for events; returns <tt>true</tt> to stop watching
+     */
+    private void watchJob(String jobName, Long jobId, Predicate<JobStatusEvent> consumer)
+    {
+        final String path = jobId == null?
+            String.format("/api/jobs/%s/events", jobName) : 
+            String.format("/api/jobs/%s/events/%d", jobName, jobId);
+        final URI uri = URI.create(rootUrl + path);
+        final ObjectMapper jsonMapper = new ObjectMapper();
+        
+        RequestCallback requestCallback = request -> 
+            request.getHeaders().setAccept(Collections.singletonList(MediaType.TEXT_EVENT_STREAM));
+        
+        ResponseExtractor<Void> responseExtractor = response -> {
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+            StringBuilder data = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("data:")) {
+                    data.append(line.substring(5)); 
+                } else if (line.isEmpty() && data.length() > 0) {
+                    // An event is dispatched at a blank line
+                    JobStatusEvent event = jsonMapper.readValue(data.toString(), JobStatusEvent.class);
+                    data.setLength(0);
+                    if (consumer.test(event))
+                        break;
+                }
+                // else: a comment (e.g. a heartbeat) or a field we are not interested in
+            }
+            return null;
+        };
+        
+        try {
+            streamingRest.execute(uri, HttpMethod.GET, requestCallback, responseExtractor);
+        } catch (RestClientException e) {
+            logger.error("Cannot watch events via REST: {}", e.getMessage());
+            throw ApplicationException.fromPattern(
+                e, BasicErrorCode.REST_CLIENT_EXCEPTION, Collections.singletonList(uri));
+        }
+    }
+    
     private JobExecutionInfo stopJob(String jobName, long jobId)
     {
         final String path = String.format("/api/jobs/%s/stop/%d", jobName, jobId);
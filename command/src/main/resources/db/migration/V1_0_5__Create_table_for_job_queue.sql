@@ -0,0 +1,18 @@
+CREATE SEQUENCE rpc.job_queue_id_seq
+  INCREMENT 1 MINVALUE 1 MAXVALUE 9223372036854775807 START 1 CACHE 1;
+ 
+CREATE TABLE rpc.job_queue
+(
+  "id" bigint NOT NULL DEFAULT nextval('rpc.job_queue_id_seq'::regclass),
+  "job_name" character varying(128) NOT NULL,
+  "job_execution_id" bigint NOT NULL,
+  "submitter" character varying(64),
+  "priority" integer NOT NULL DEFAULT 0,
+  "submitted_at" timestamp without time zone NOT NULL,
+  
+  CONSTRAINT job_queue_pkey PRIMARY KEY (id),
+  CONSTRAINT unique_job_queue_execution UNIQUE (job_execution_id),
+  CONSTRAINT fk_job_queue_execution FOREIGN KEY (job_execution_id) 
+      REFERENCES rpc.batch_job_execution (job_execution_id) MATCH SIMPLE
+      ON UPDATE NO ACTION ON DELETE CASCADE
+);
@@ -0,0 +1,14 @@
+--
+-- Add indexes to support listings of job instances and executions (projected directly from
+-- the tables of Spring-Batch repository, with keyset pagination)
+--
+
+CREATE INDEX batch_job_instance_name_idx 
+  ON rpc.batch_job_instance (job_name, job_instance_id);
+
+CREATE INDEX batch_job_execution_instance_idx 
+  ON rpc.batch_job_execution (job_instance_id, job_execution_id);
+
+-- A (partial) index on unfinished executions 
+CREATE INDEX batch_job_execution_running_idx 
+  ON rpc.batch_job_execution (job_execution_id) WHERE end_time IS NULL;
@@ -0,0 +1,29 @@
+--
+-- Add tables to support several rpc-server nodes sharing the same job repository (and the
+-- same job queue): a node keeps a heartbeat, and owns the executions it has claimed
+--
+
+CREATE TABLE rpc.node
+(
+  "name" character varying(128) NOT NULL,
+  "host" character varying(255),
+  "started_at" timestamp without time zone NOT NULL,
+  "heartbeat_at" timestamp without time zone NOT NULL,
+
+  CONSTRAINT node_pkey PRIMARY KEY (name)
+);
+
+CREATE TABLE rpc.job_execution_owner
+(
+  "job_execution_id" bigint NOT NULL,
+  "node_name" character varying(128) NOT NULL,
+  "claimed_at" timestamp without time zone NOT NULL,
+
+  CONSTRAINT job_execution_owner_pkey PRIMARY KEY (job_execution_id),
+  CONSTRAINT fk_job_execution_owner_execution FOREIGN KEY (job_execution_id)
+      REFERENCES rpc.batch_job_execution (job_execution_id) MATCH SIMPLE
+      ON UPDATE NO ACTION ON DELETE CASCADE
+);
+
+CREATE INDEX job_execution_owner_node_idx
+  ON rpc.job_execution_owner (node_name);
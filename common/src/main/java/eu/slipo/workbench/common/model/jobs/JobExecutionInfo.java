@@ -37,6 +37,11 @@ public class JobExecutionInfo
     private Date started;
     
     private Date finished;
+    
+    /**
+     * The time this execution was last updated (in the batch repository)
+     */
+    private Date updated;
 
     public JobExecutionInfo() {}
     
@@ -135,4 +140,16 @@ public class JobExecutionInfo
     {
         this.finished = finished;
     }
+    
+    @JsonProperty("updated")
+    public Date getUpdated()
+    {
+        return updated;
+    }
+    
+    @JsonProperty("updated")
+    public void setUpdated(Date updated)
+    {
+        this.updated = updated;
+    }
 }
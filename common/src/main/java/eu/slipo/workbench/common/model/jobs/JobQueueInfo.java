@@ -0,0 +1,158 @@
+package eu.slipo.workbench.common.model.jobs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A DTO bean containing information on the queue of jobs waiting to be admitted, and
+ * on the resources reserved by admitted jobs.
+ */
+public class JobQueueInfo
+{
+    /**
+     * The number of queued job executions
+     */
+    private int queued;
+    
+    /**
+     * The time (milliseconds) the oldest queued execution has been waiting
+     */
+    private long oldestWait;
+    
+    /**
+     * The number of job executions admitted so far
+     */
+    private long admitted;
+    
+    /**
+     * The average time (milliseconds) admitted executions have waited
+     */
+    private long averageWait;
+    
+    /**
+     * The maximum time (milliseconds) an admitted execution has waited
+     */
+    private long maxWait;
+    
+    /**
+     * The number of job instances holding a reservation
+     */
+    private int reservations;
+    
+    private double cpus;
+    
+    private double reservedCpus;
+    
+    private long memory;
+    
+    private long reservedMemory;
+
+    @JsonProperty("queued")
+    public int getQueued()
+    {
+        return queued;
+    }
+
+    public void setQueued(int queued)
+    {
+        this.queued = queued;
+    }
+
+    @JsonProperty("oldestWait")
+    public long getOldestWait()
+    {
+        return oldestWait;
+    }
+
+    public void setOldestWait(long oldestWait)
+    {
+        this.oldestWait = oldestWait;
+    }
+
+    @JsonProperty("admitted")
+    public long getAdmitted()
+    {
+        return admitted;
+    }
+
+    public void setAdmitted(long admitted)
+    {
+        this.admitted = admitted;
+    }
+
+    @JsonProperty("averageWait")
+    public long getAverageWait()
+    {
+        return averageWait;
+    }
+
+    public void setAverageWait(long averageWait)
+    {
+        this.averageWait = averageWait;
+    }
+
+    @JsonProperty("maxWait")
+    public long getMaxWait()
+    {
+        return maxWait;
+    }
+
+    public void setMaxWait(long maxWait)
+    {
+        this.maxWait = maxWait;
+    }
+
+    @JsonProperty("reservations")
+    public int getReservations()
+    {
+        return reservations;
+    }
+
+    public void setReservations(int reservations)
+    {
+        this.reservations = reservations;
+    }
+
+    @JsonProperty("cpus")
+    public double getCpus()
+    {
+        return cpus;
+    }
+
+    public void setCpus(double cpus)
+    {
+        this.cpus = cpus;
+    }
+
+    @JsonProperty("reservedCpus")
+    public double getReservedCpus()
+    {
+        return reservedCpus;
+    }
+
+    public void setReservedCpus(double reservedCpus)
+    {
+        this.reservedCpus = reservedCpus;
+    }
+
+    @JsonProperty("memory")
+    public long getMemory()
+    {
+        return memory;
+    }
+
+    public void setMemory(long memory)
+    {
+        this.memory = memory;
+    }
+
+    @JsonProperty("reservedMemory")
+    public long getReservedMemory()
+    {
+        return reservedMemory;
+    }
+
+    public void setReservedMemory(long reservedMemory)
+    {
+        this.reservedMemory = reservedMemory;
+    }
+}
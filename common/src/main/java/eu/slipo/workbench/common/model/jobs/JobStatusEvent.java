@@ -0,0 +1,195 @@
+package eu.slipo.workbench.common.model.jobs;
+
+import java.util.Date;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A DTO bean describing a status transition of a job execution, or of one of its steps.
+ */
+public class JobStatusEvent
+{
+    /**
+     * The name of the job
+     */
+    private String jobName;
+
+    /**
+     * The job instance id.
+     */
+    private Long id;
+
+    /**
+     * The job execution id.
+     */
+    private Long executionId;
+
+    /**
+     * The name of the step, or <tt>null</tt> if this event concerns the job execution itself
+     */
+    private String step;
+
+    /**
+     * A textual representation of the status (i.e batch-status)
+     */
+    private String status;
+
+    /**
+     * A textual representation of the exit-status
+     */
+    private String exitStatus;
+
+    /**
+     * A detailed description that may accompany the exit-status
+     */
+    private String exitDescription;
+
+    private Date timestamp;
+
+    /**
+     * Indicate that the execution (or the step) is stopped only to wait for a running container,
+     * i.e. it is parked: it will be resumed (by a new execution of the same job instance)
+     */
+    private boolean parked = false;
+
+    public JobStatusEvent() {}
+
+    public JobStatusEvent(String jobName, long id, long executionId, String step)
+    {
+        this.jobName = jobName;
+        this.id = id;
+        this.executionId = executionId;
+        this.step = step;
+    }
+
+    @JsonProperty("jobName")
+    public String getJobName()
+    {
+        return jobName;
+    }
+
+    @JsonProperty("jobName")
+    public void setJobName(String jobName)
+    {
+        this.jobName = jobName;
+    }
+
+    @JsonProperty("id")
+    public Long getId()
+    {
+        return id;
+    }
+
+    @JsonProperty("id")
+    public void setId(Long id)
+    {
+        this.id = id;
+    }
+
+    @JsonProperty("executionId")
+    public Long getExecutionId()
+    {
+        return executionId;
+    }
+
+    @JsonProperty("executionId")
+    public void setExecutionId(Long executionId)
+    {
+        this.executionId = executionId;
+    }
+
+    @JsonProperty("step")
+    @JsonInclude(Include.NON_NULL)
+    public String getStep()
+    {
+        return step;
+    }
+
+    @JsonProperty("step")
+    public void setStep(String step)
+    {
+        this.step = step;
+    }
+
+    @JsonProperty("status")
+    public String getStatus()
+    {
+        return status;
+    }
+
+    @JsonProperty("status")
+    public void setStatus(String status)
+    {
+        this.status = status;
+    }
+
+    @JsonProperty("exitStatus")
+    public String getExitStatus()
+    {
+        return exitStatus;
+    }
+
+    @JsonProperty("exitStatus")
+    public void setExitStatus(String exitStatus)
+    {
+        this.exitStatus = exitStatus;
+    }
+
+    @JsonProperty("exitDescription")
+    @JsonInclude(Include.NON_EMPTY)
+    public String getExitDescription()
+    {
+        return exitDescription;
+    }
+
+    @JsonProperty("exitDescription")
+    public void setExitDescription(String exitDescription)
+    {
+        this.exitDescription = exitDescription;
+    }
+
+    @JsonProperty("timestamp")
+    public Date getTimestamp()
+    {
+        return timestamp;
+    }
+
+    @JsonProperty("timestamp")
+    public void setTimestamp(Date timestamp)
+    {
+        this.timestamp = timestamp;
+    }
+
+    @JsonProperty("parked")
+    @JsonInclude(Include.NON_DEFAULT)
+    public boolean isParked()
+    {
+        return parked;
+    }
+
+    @JsonProperty("parked")
+    public void setParked(boolean parked)
+    {
+        this.parked = parked;
+    }
+
+    /**
+     * Test if this event concerns the job execution itself (not a step of it)
+     */
+    @JsonIgnore
+    public boolean isJobEvent()
+    {
+        return step == null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            "JobStatusEvent [jobName=%s, id=%s, executionId=%s, step=%s, status=%s, exitStatus=%s]",
+            jobName, id, executionId, step, status, exitStatus);
+    }
+}
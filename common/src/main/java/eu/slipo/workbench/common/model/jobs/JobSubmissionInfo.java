@@ -0,0 +1,75 @@
+package eu.slipo.workbench.common.model.jobs;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import eu.slipo.workbench.common.model.Error;
+
+/**
+ * A DTO bean containing the outcome of a single submission out of a batch of submissions:
+ * either the created job execution, or an error.
+ */
+public class JobSubmissionInfo
+{
+    /**
+     * The (0-based) index of this submission inside its batch
+     */
+    private int index;
+
+    private JobExecutionInfo execution;
+
+    private Error error;
+
+    public JobSubmissionInfo() {}
+
+    public JobSubmissionInfo(int index, JobExecutionInfo execution)
+    {
+        this.index = index;
+        this.execution = execution;
+    }
+
+    public JobSubmissionInfo(int index, Error error)
+    {
+        this.index = index;
+        this.error = error;
+    }
+
+    @JsonProperty("index")
+    public int getIndex()
+    {
+        return index;
+    }
+
+    @JsonProperty("index")
+    public void setIndex(int index)
+    {
+        this.index = index;
+    }
+
+    @JsonProperty("execution")
+    @JsonInclude(Include.NON_NULL)
+    public JobExecutionInfo getExecution()
+    {
+        return execution;
+    }
+
+    @JsonProperty("execution")
+    public void setExecution(JobExecutionInfo execution)
+    {
+        this.execution = execution;
+    }
+
+    @JsonProperty("error")
+    @JsonInclude(Include.NON_NULL)
+    public Error getError()
+    {
+        return error;
+    }
+
+    @JsonProperty("error")
+    public void setError(Error error)
+    {
+        this.error = error;
+    }
+}
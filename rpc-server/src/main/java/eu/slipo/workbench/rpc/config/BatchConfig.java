@@ -1,20 +1,40 @@
 package eu.slipo.workbench.rpc.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersInvalidException;
 import org.springframework.batch.core.configuration.JobRegistry;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
 import org.springframework.batch.core.explore.JobExplorer;
 import org.springframework.batch.core.launch.JobLauncher;
 import org.springframework.batch.core.launch.JobOperator;
-import org.springframework.batch.core.launch.support.SimpleJobLauncher;
 import org.springframework.batch.core.launch.support.SimpleJobOperator;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
 import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.TaskScheduler;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Info;
+
+import eu.slipo.workbench.rpc.jobs.launch.AdmissionJobLauncher;
+import eu.slipo.workbench.rpc.jobs.launch.ResourceLedger;
+import eu.slipo.workbench.rpc.jobs.listener.StatusEventPublishingListener;
+import eu.slipo.workbench.rpc.jobs.listener.StoppableTaskletRegistry;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerConfigurer;
+import eu.slipo.workbench.rpc.repository.JobQueueRepository;
+import eu.slipo.workbench.rpc.repository.NodeRepository;
+import eu.slipo.workbench.rpc.service.JobStatusEventBus;
+import eu.slipo.workbench.rpc.service.NodeService;
 
 @Configuration
 @PropertySource("classpath:config/batch.properties")
@@ -22,6 +42,8 @@ import org.springframework.core.task.TaskExecutor;
 @DependsOn("dataSource")
 public class BatchConfig 
 {
+    private static final Logger logger = LoggerFactory.getLogger(BatchConfig.class);
+    
     @Autowired
     TaskExecutor taskExecutor;
     
@@ -34,17 +56,163 @@ public class BatchConfig
     @Autowired
     JobRegistry registry;
     
+    @Autowired
+    Environment env;
+    
+    @Autowired
+    JobQueueRepository queueRepository;
+    
+    @Autowired
+    NodeRepository nodeRepository;
+    
+    @Autowired
+    NodeService nodeService;
+    
+    @Autowired
+    TaskScheduler scheduler;
+    
+    /**
+     * The number of CPUs available to jobs. If not positive, the number of CPUs of the 
+     * docker host is used.
+     */
+    @Value("${slipo.rpc-server.admission.cpus:0}")
+    double cpus;
+    
+    /**
+     * The amount of memory available to jobs (e.g. 16g). If empty, the total memory of 
+     * the docker host is used.
+     */
+    @Value("${slipo.rpc-server.admission.memory:}")
+    String memory;
+    
+    /**
+     * The maximum number of running jobs per submitter (if not positive, no limit applies)
+     */
+    @Value("${slipo.rpc-server.job-queue.max-running-per-submitter:0}")
+    int maxRunningPerSubmitter;
+    
+    /**
+     * The interval (milliseconds) to pick up jobs submitted (to the shared queue) by other
+     * nodes. This only applies if several nodes share the job repository.
+     */
+    @Value("${slipo.rpc-server.cluster.queue-poll-interval:2000}")
+    long queuePollInterval;
+    
     @Bean
-    JobLauncher jobLauncher()
+    ResourceLedger resourceLedger(DockerClient docker)
+    {
+        double cpus = this.cpus;
+        long memory = this.memory.isEmpty()? 0L : ContainerConfigurer.parseSize(this.memory);
+        
+        if (cpus <= 0 || memory <= 0) {
+            // Ask docker daemon for the capacity of the host
+            Info info = null;
+            try {
+                info = docker.info();
+            } catch (DockerException | InterruptedException ex) {
+                logger.warn("Cannot query docker host for its capacity: {}", ex.getMessage());
+            }
+            if (cpus <= 0)
+                cpus = (info != null && info.cpus() != null)? 
+                    info.cpus() : Runtime.getRuntime().availableProcessors();
+            if (memory <= 0)
+                memory = (info != null && info.memTotal() != null)? 
+                    info.memTotal() : Long.MAX_VALUE;
+        }
+        
+        logger.info("Admitting jobs up to {} CPUs and {} bytes of memory", cpus, memory);
+        return new ResourceLedger(cpus, memory);
+    }
+    
+    /**
+     * Determine the resources needed by a job. These are the resource limits configured 
+     * for a tool (under <tt>slipo.rpc-server.tools.{jobName}.docker.resources</tt>), 
+     * possibly overridden by job parameters (<tt>resources.cpus</tt>, <tt>resources.memory</tt>).
+     * If no limits are given, a job demands nothing (and is never queued for resources).
+     * <p>
+     * Limits are parsed as when configuring a container (see {@link ContainerConfigurer}).
+     * 
+     * @throws JobParametersInvalidException if a limit (or the number of partitions) is malformed
+     */
+    private ResourceLedger.Demand resolveDemand(String jobName, JobParameters parameters)
+        throws JobParametersInvalidException
+    {
+        final String prefix = "slipo.rpc-server.tools." + jobName + ".docker.resources.";
+        
+        String cpus = parameters.getString("resources.cpus");
+        if (cpus == null || cpus.isEmpty())
+            cpus = env.getProperty(prefix + "cpus", "");
+        
+        String memory = parameters.getString("resources.memory");
+        if (memory == null || memory.isEmpty())
+            memory = env.getProperty(prefix + "memory", "");
+        
+        String partitions = parameters.getString("partitions");
+        
+        try {
+            // A partitioned job runs (at most) one container per partition
+            int n = 1;
+            if (partitions != null && !partitions.isEmpty()) {
+                int maxPartitions = env.getProperty(
+                    "slipo.rpc-server.tools." + jobName + ".partitioning.max-partitions", Integer.class, 8);
+                n = Math.max(1, Math.min(Integer.parseInt(partitions), maxPartitions));
+            }
+            return ResourceLedger.Demand.of(
+                n * (cpus.isEmpty()? 0.0 : ContainerConfigurer.parseCpus(cpus)),
+                n * (memory.isEmpty()? 0L : ContainerConfigurer.parseMemory(memory)));
+        } catch (IllegalArgumentException ex) {
+            throw new JobParametersInvalidException(String.format(
+                "Cannot determine the resources needed by job %s (cpus=%s, memory=%s, partitions=%s): %s", 
+                jobName, cpus, memory, partitions, ex.getMessage()));
+        }
+    }
+    
+    @Bean
+    AdmissionJobLauncher jobLauncher(ResourceLedger ledger)
     {
         // Setup with our task executor (default is SyncTaskExecutor)
-        SimpleJobLauncher launcher = new SimpleJobLauncher();
+        AdmissionJobLauncher launcher = new AdmissionJobLauncher();
         launcher.setJobRepository(repository);
         launcher.setTaskExecutor(taskExecutor);
+        launcher.setLedger(ledger);
+        launcher.setDemandResolver(this::resolveDemand);
+        launcher.setQueueRepository(queueRepository);
+        launcher.setJobExplorer(explorer);
+        launcher.setJobRegistry(registry);
+        launcher.setMaxRunningPerSubmitter(maxRunningPerSubmitter);
+        launcher.setWeightResolver(submitter -> submitter == null? 1.0 : 
+            env.getProperty("slipo.rpc-server.job-queue.weights." + submitter, Double.class, 1.0));
+        
+        if (nodeService.isEnabled()) {
+            // Share the queue with other nodes: claim the executions admitted here
+            launcher.setNodeRepository(nodeRepository, nodeService.getName());
+            launcher.setTaskScheduler(scheduler);
+            launcher.setQueuePollInterval(queuePollInterval);
+        }
         
         return launcher;
     }
     
+    /**
+     * A listener (for jobs and steps) that publishes status transitions, so that clients
+     * can be notified instead of polling the batch repository.
+     */
+    @Bean
+    StatusEventPublishingListener statusEventListener(JobStatusEventBus eventBus)
+    {
+        return new StatusEventPublishingListener(eventBus);
+    }
+    
+    /**
+     * A registry of the stoppable tasklets of running steps, so that a running execution
+     * can be stopped promptly (including steps nested into flows).
+     */
+    @Bean
+    StoppableTaskletRegistry stoppableTaskletRegistry()
+    {
+        return new StoppableTaskletRegistry();
+    }
+    
     @Bean 
     JobOperator jobOperator(JobLauncher launcher)
     {
@@ -0,0 +1,42 @@
+package eu.slipo.workbench.rpc.config;
+
+import java.util.Date;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.TaskScheduler;
+
+import eu.slipo.workbench.rpc.service.JobParameterDescriptorService;
+
+@Configuration
+@EnableCaching
+public class CacheConfig
+{
+    @Autowired
+    private TaskScheduler scheduler;
+
+    @Autowired
+    private JobParameterDescriptorService parameterDescriptorService;
+
+    /**
+     * The interval (milliseconds) to invalidate cached descriptors of job parameters (so that
+     * changes made directly on the database are picked up). A non-positive value means never.
+     */
+    @Value("${slipo.rpc-server.job-service.parameter-descriptors.expire-after:60000}")
+    private long parameterDescriptorsExpireAfter;
+
+    @PostConstruct
+    public void initialize()
+    {
+        if (parameterDescriptorsExpireAfter > 0) {
+            scheduler.scheduleWithFixedDelay(
+                () -> parameterDescriptorService.invalidate(),
+                new Date(System.currentTimeMillis() + parameterDescriptorsExpireAfter),
+                parameterDescriptorsExpireAfter);
+        }
+    }
+}
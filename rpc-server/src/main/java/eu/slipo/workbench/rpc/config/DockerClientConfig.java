@@ -9,6 +9,9 @@ import com.spotify.docker.client.DefaultDockerClient;
 import com.spotify.docker.client.DockerClient;
 import com.spotify.docker.client.exceptions.DockerCertificateException;
 
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerEventMonitor;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerLogCollector;
+
 @Configuration
 public class DockerClientConfig
 {
@@ -18,6 +21,24 @@ public class DockerClientConfig
     @Value("${slipo.rpc-server.docker.connection-url:unix:///var/run/docker.sock}")
     private String url;
     
+    /**
+     * The maximum size (in bytes) of a collected log file before being rotated
+     */
+    @Value("${slipo.rpc-server.docker.logs.max-file-size:16777216}")
+    private long logsMaxFileSize;
+    
+    /**
+     * The maximum number of rotated (compressed) log files to keep
+     */
+    @Value("${slipo.rpc-server.docker.logs.max-files:4}")
+    private int logsMaxFiles;
+    
+    /**
+     * The maximum number of containers whose output is collected at the same time
+     */
+    @Value("${slipo.rpc-server.docker.logs.max-threads:" + ContainerLogCollector.DEFAULT_MAX_THREADS + "}")
+    private int logsMaxThreads;
+    
     @Bean
     public DockerClient dockerClient() throws DockerCertificateException
     {
@@ -27,4 +48,26 @@ public class DockerClientConfig
             .build();
     }
     
+    /**
+     * A monitor (shared among all container-based steps) that listens to docker events
+     * and notifies for the exit of containers.
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public ContainerEventMonitor containerEventMonitor(DockerClient docker)
+    {
+        return new ContainerEventMonitor(docker);
+    }
+    
+    /**
+     * A collector (shared among all container-based steps) that streams container output
+     * to log files.
+     */
+    @Bean(destroyMethod = "close")
+    public ContainerLogCollector containerLogCollector(DockerClient docker)
+    {
+        ContainerLogCollector collector = new ContainerLogCollector(docker, logsMaxThreads);
+        collector.setMaxFileSize(logsMaxFileSize);
+        collector.setMaxFiles(logsMaxFiles);
+        return collector;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package eu.slipo.workbench.rpc.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.StreamExtractor;
+import eu.slipo.workbench.rpc.jobs.tasklet.ZipExtractor;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerConfigurer;
+
+/**
+ * Configure the extractors for inputs given as archives (or as compressed files). Both
+ * share the same limits against ZIP bombs.
+ */
+@Configuration
+public class ExtractorConfig
+{
+    /**
+     * The maximum total size of the files extracted from an input (e.g. <tt>64g</tt>)
+     */
+    @Value("${slipo.rpc-server.extract.max-size:64g}")
+    private String maxSize;
+
+    /**
+     * The maximum number of file entries of an input
+     */
+    @Value("${slipo.rpc-server.extract.max-entries:" + ZipExtractor.DEFAULT_MAX_ENTRIES + "}")
+    private int maxEntries;
+
+    /**
+     * The maximum compression ratio of an entry (checked for entries larger than 1MB)
+     */
+    @Value("${slipo.rpc-server.extract.max-ratio:" + ZipExtractor.DEFAULT_MAX_RATIO + "}")
+    private int maxRatio;
+
+    /**
+     * The number of threads to extract an input (0 means the default)
+     */
+    @Value("${slipo.rpc-server.extract.threads:0}")
+    private int threads;
+
+    @Bean
+    public ZipExtractor zipExtractor()
+    {
+        ZipExtractor extractor = new ZipExtractor();
+        extractor.setMaxSize(ContainerConfigurer.parseSize(maxSize));
+        extractor.setMaxEntries(maxEntries);
+        extractor.setMaxRatio(maxRatio);
+        if (threads > 0)
+            extractor.setThreads(threads);
+        return extractor;
+    }
+
+    @Bean
+    public StreamExtractor streamExtractor()
+    {
+        StreamExtractor extractor = new StreamExtractor();
+        extractor.setMaxSize(ContainerConfigurer.parseSize(maxSize));
+        extractor.setMaxEntries(maxEntries);
+        extractor.setMaxRatio(maxRatio);
+        if (threads > 0)
+            extractor.setThreads(threads);
+        return extractor;
+    }
+}
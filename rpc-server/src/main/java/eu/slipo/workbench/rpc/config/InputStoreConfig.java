@@ -0,0 +1,74 @@
+package eu.slipo.workbench.rpc.config;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Date;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.StringUtils;
+
+import eu.slipo.workbench.rpc.jobs.cache.InputStore;
+import eu.slipo.workbench.rpc.service.NodeService;
+
+/**
+ * Configure a content-addressed store for the input files of jobs (see {@link InputStore}).
+ * <p>
+ * The store is not shared among nodes: if running alongside other nodes (see {@link NodeService}),
+ * each node keeps its own store (under a subdirectory named after it), even if the data
+ * directory is shared.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "slipo.rpc-server.input-store", name = "enabled")
+public class InputStoreConfig
+{
+    private static Logger logger = LoggerFactory.getLogger(InputStoreConfig.class);
+
+    @Autowired
+    private TaskScheduler scheduler;
+
+    @Autowired
+    private NodeService nodeService;
+
+    @Value("${slipo.rpc-server.docker.volumes.data-dir}")
+    private String dataDir;
+
+    /**
+     * The interval (milliseconds) between collections of unreferenced objects
+     */
+    @Value("${slipo.rpc-server.input-store.gc-interval:3600000}")
+    private long gcInterval;
+
+    /**
+     * The root of the store must reside in the same filesystem as the working directories
+     * of jobs (so that objects can be hard-linked).
+     */
+    @Bean
+    public InputStore inputStore(
+        @Value("${slipo.rpc-server.input-store.root:}") String root,
+        @Value("${slipo.rpc-server.input-store.min-age:86400000}") long minAge)
+        throws IOException
+    {
+        Path rootDir = StringUtils.isEmpty(root)? Paths.get(dataDir, "store") : Paths.get(root);
+        if (nodeService.isEnabled())
+            rootDir = rootDir.resolve(nodeService.getName());
+        InputStore store = new InputStore(rootDir, minAge);
+
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                store.collectGarbage();
+            } catch (IOException e) {
+                logger.warn("Failed to collect unreferenced objects: {}", e.getMessage());
+            }
+        }, new Date(System.currentTimeMillis() + gcInterval), gcInterval);
+
+        return store;
+    }
+}
@@ -0,0 +1,143 @@
+package eu.slipo.workbench.rpc.config;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.configuration.annotation.BatchConfigurer;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.explore.support.JobExplorerFactoryBean;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.ExecutionContextSerializer;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.dao.XStreamExecutionContextStringSerializer;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.StringUtils;
+
+import eu.slipo.workbench.common.model.tool.TriplegeoConfiguration;
+import eu.slipo.workbench.rpc.jobs.support.SmileExecutionContextSerializer;
+
+/**
+ * Configure the batch infrastructure (repository, explorer, transaction manager) in the same
+ * way Spring Boot does for a JPA-enabled application, except that execution contexts are
+ * serialized by a {@link SmileExecutionContextSerializer}.
+ */
+@Configuration
+public class JobRepositoryConfig
+{
+    private static final Logger logger = LoggerFactory.getLogger(JobRepositoryConfig.class);
+
+    @Value("${spring.batch.table-prefix:}")
+    private String tablePrefix;
+
+    /**
+     * Indicate whether execution contexts should be written in a compact binary format. If
+     * not, contexts are written by the default (XStream-based) serializer of Spring Batch.
+     * This only affects writing: contexts are always read by a {@link SmileExecutionContextSerializer},
+     * so that contexts written in either format can be read.
+     */
+    @Value("${slipo.rpc-server.job-repository.compact-context:true}")
+    private boolean compactContext;
+
+    private static class Configurer implements BatchConfigurer
+    {
+        private final PlatformTransactionManager transactionManager;
+
+        private final JobRepository jobRepository;
+
+        private final JobExplorer jobExplorer;
+
+        private final JobLauncher jobLauncher;
+
+        private Configurer(
+            DataSource dataSource, PlatformTransactionManager transactionManager,
+            ExecutionContextSerializer serializer, String tablePrefix)
+            throws Exception
+        {
+            this.transactionManager = transactionManager;
+
+            JobRepositoryFactoryBean repositoryFactory = new JobRepositoryFactoryBean();
+            repositoryFactory.setDataSource(dataSource);
+            repositoryFactory.setTransactionManager(transactionManager);
+            // A JPA transaction manager does not support custom isolation levels
+            repositoryFactory.setIsolationLevelForCreate("ISOLATION_DEFAULT");
+            repositoryFactory.setSerializer(serializer);
+            if (StringUtils.hasText(tablePrefix))
+                repositoryFactory.setTablePrefix(tablePrefix);
+            repositoryFactory.afterPropertiesSet();
+            this.jobRepository = repositoryFactory.getObject();
+
+            JobExplorerFactoryBean explorerFactory = new JobExplorerFactoryBean();
+            explorerFactory.setDataSource(dataSource);
+            explorerFactory.setSerializer(serializer);
+            if (StringUtils.hasText(tablePrefix))
+                explorerFactory.setTablePrefix(tablePrefix);
+            explorerFactory.afterPropertiesSet();
+            this.jobExplorer = explorerFactory.getObject();
+
+            SimpleJobLauncher launcher = new SimpleJobLauncher();
+            launcher.setJobRepository(jobRepository);
+            launcher.afterPropertiesSet();
+            this.jobLauncher = launcher;
+        }
+
+        @Override
+        public JobRepository getJobRepository()
+        {
+            return jobRepository;
+        }
+
+        @Override
+        public PlatformTransactionManager getTransactionManager()
+        {
+            return transactionManager;
+        }
+
+        @Override
+        public JobLauncher getJobLauncher()
+        {
+            return jobLauncher;
+        }
+
+        @Override
+        public JobExplorer getJobExplorer()
+        {
+            return jobExplorer;
+        }
+    }
+
+    @Bean
+    ExecutionContextSerializer executionContextSerializer() throws Exception
+    {
+        XStreamExecutionContextStringSerializer defaultSerializer =
+            new XStreamExecutionContextStringSerializer();
+        defaultSerializer.afterPropertiesSet();
+
+        if (compactContext)
+            logger.info("Serializing execution contexts as (Base64-encoded) Smile documents");
+
+        return SmileExecutionContextSerializer.builder()
+            .registerType("triplegeo.config", TriplegeoConfiguration.class)
+            .fallback(defaultSerializer)
+            .compact(compactContext)
+            .build();
+    }
+
+    @Bean
+    BatchConfigurer batchConfigurer(
+        DataSource dataSource, EntityManagerFactory entityManagerFactory,
+        ExecutionContextSerializer serializer)
+        throws Exception
+    {
+        PlatformTransactionManager transactionManager =
+            new JpaTransactionManager(entityManagerFactory);
+        return new Configurer(dataSource, transactionManager, serializer, tablePrefix);
+    }
+}
@@ -0,0 +1,36 @@
+package eu.slipo.workbench.rpc.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import eu.slipo.workbench.rpc.controller.JobStatusWebSocketHandler;
+import eu.slipo.workbench.rpc.service.JobStatusEventBus;
+
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer
+{
+    @Autowired
+    JobStatusEventBus statusEventBus;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Bean
+    JobStatusWebSocketHandler jobStatusWebSocketHandler()
+    {
+        return new JobStatusWebSocketHandler(statusEventBus, objectMapper);
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry)
+    {
+        registry.addHandler(jobStatusWebSocketHandler(), "/ws/job-events");
+    }
+}
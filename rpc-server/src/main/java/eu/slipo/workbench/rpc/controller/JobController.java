@@ -1,16 +1,20 @@
 package eu.slipo.workbench.rpc.controller;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
 import java.util.stream.Collectors;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,7 +25,12 @@ import org.springframework.batch.core.JobExecutionException;
 import org.springframework.batch.core.JobInstance;
 import org.springframework.batch.core.JobParameter;
 import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.launch.NoSuchJobException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -29,17 +38,37 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
+import eu.slipo.workbench.common.model.Error;
 import eu.slipo.workbench.common.model.RestResponse;
 import eu.slipo.workbench.common.model.jobs.JobExecutionInfo;
 import eu.slipo.workbench.common.model.jobs.JobInstanceInfo;
+import eu.slipo.workbench.common.model.jobs.JobQueueInfo;
+import eu.slipo.workbench.common.model.jobs.JobStatusEvent;
+import eu.slipo.workbench.common.model.jobs.JobSubmissionInfo;
 import eu.slipo.workbench.common.model.BasicErrorCode;
 import eu.slipo.workbench.common.model.ErrorCode;
+import eu.slipo.workbench.rpc.jobs.cache.InputStore;
+import eu.slipo.workbench.rpc.jobs.cache.ResultCache;
+import eu.slipo.workbench.rpc.jobs.launch.AdmissionJobLauncher;
+import eu.slipo.workbench.rpc.jobs.launch.ResourceLedger;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerPool;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
 import eu.slipo.workbench.rpc.model.JobErrorCode;
+import eu.slipo.workbench.rpc.model.JobSubmissionResult;
 import eu.slipo.workbench.rpc.model.MissingJobParameterException;
+import eu.slipo.workbench.rpc.repository.JobExecutionInfoRepository;
+import eu.slipo.workbench.rpc.service.JobLogService;
 import eu.slipo.workbench.rpc.service.JobService;
+import eu.slipo.workbench.rpc.service.JobStatusEventBus;
+import eu.slipo.workbench.rpc.service.WorkspaceReaper;
 
 @RestController
 @RequestMapping(produces = "application/json")
@@ -50,6 +79,69 @@ public class JobController
     @Autowired
     JobService jobService;
     
+    @Autowired
+    JobLogService jobLogService;
+    
+    @Autowired
+    AdmissionJobLauncher jobLauncher;
+    
+    @Autowired
+    ResourceLedger resourceLedger;
+    
+    @Autowired(required = false)
+    List<ContainerPool> containerPools = Collections.emptyList();
+    
+    @Autowired(required = false)
+    Map<String, ResultCache> resultCaches = Collections.emptyMap();
+    
+    @Autowired(required = false)
+    InputStore inputStore;
+    
+    @Autowired
+    WorkspaceReaper workspaceReaper;
+    
+    @Autowired
+    ObjectMapper objectMapper;
+    
+    @Autowired
+    JobStatusEventBus statusEventBus;
+    
+    @Autowired
+    JobExecutionInfoRepository executionInfoRepository;
+    
+    @Autowired
+    TaskScheduler taskScheduler;
+    
+    /**
+     * The timeout (milliseconds) for a stream of job events. A non-positive value means no
+     * timeout (the stream is kept open until the client disconnects). 
+     */
+    @Value("${slipo.rpc-server.job-events.timeout:0}")
+    long eventStreamTimeout;
+    
+    /**
+     * The interval (milliseconds) to send a heartbeat on an (otherwise idle) stream of job events
+     */
+    @Value("${slipo.rpc-server.job-events.heartbeat-interval:15000}")
+    long eventStreamHeartbeatInterval;
+    
+    /**
+     * The maximum number of submissions in a batch
+     */
+    @Value("${slipo.rpc-server.job-service.max-batch-size:10000}")
+    int maxBatchSize;
+    
+    /**
+     * A response carrying both a (partial) result and errors
+     */
+    private static class BatchRestResponse extends RestResponse<List<JobSubmissionInfo>>
+    {
+        private BatchRestResponse(List<JobSubmissionInfo> result, List<Error> errors)
+        {
+            super(result, errors);
+        }
+    }
+    
     /**
      * Create a DTO object ({@link JobExecutionInfo}) from a job execution ({@link JobExecution}).
      */
@@ -72,6 +164,25 @@ public class JobController
         
         r.setStarted(execution.getStartTime());
         r.setFinished(execution.getEndTime());
+        r.setUpdated(execution.getLastUpdated());
+        
+        return r;
+    }
+    
+    /**
+     * Create a DTO object ({@link JobStatusEvent}) reporting the current status of a job 
+     * execution (described by a {@link JobExecutionInfo}). The event is stamped with the 
+     * time the execution was last updated (i.e. when it entered this status), not with 
+     * the time it is reported.
+     */
+    private static JobStatusEvent createStatusEvent(String jobName, JobExecutionInfo info)
+    {
+        JobStatusEvent r = new JobStatusEvent(jobName, info.getId(), info.getExecutionId(), null);
+        
+        r.setStatus(info.getStatus());
+        r.setExitStatus(info.getExitStatus());
+        r.setExitDescription(info.getExitDescription());
+        r.setTimestamp(info.getUpdated() != null? info.getUpdated() : info.getStarted());
         
         return r;
     }
@@ -99,12 +210,16 @@ public class JobController
      * 
      * @param jobName The job name (as registered)
      * @param parametersMap A map of parameters 
+     * @param submitter The name of the submitter (used to share resources fairly among submitters)
+     * @param priority The priority of this submission (higher is served first)
      */
     @PostMapping(
         value = { "/api/jobs/{jobName}/submit", "/api/jobs/{jobName}/start"},
         consumes = "application/json")
     public RestResponse<JobExecutionInfo> submit(
-        @PathVariable String jobName, @RequestBody Map<String, Object> parametersMap)
+        @PathVariable String jobName, @RequestBody Map<String, Object> parametersMap,
+        @RequestParam(required = false) String submitter, 
+        @RequestParam(defaultValue = "0") Integer priority)
     {        
         String errorMessage = null;
         ErrorCode errorCode = null;
@@ -132,7 +247,7 @@ public class JobController
         if (parameters != null) {
             logger.info("Starting job {} with parameters {}", jobName, parameters);
             try {
-                execution = jobService.start(jobName, parameters);
+                execution = jobService.start(jobName, parameters, submitter, priority);
                 logger.info("Started job as: {}", execution);
             } catch (JobExecutionException ex) {
                 execution = null;
@@ -148,7 +263,118 @@ public class JobController
     }
     
     /**
-     * Stop the running execution of a job instance.
+     * Submit many jobs (of the same name), one for each given map of parameters.
+     * <p>
+     * All maps of parameters are validated up front: if any of them is invalid, no job is
+     * submitted, and an error is reported for each invalid item. Otherwise, every job is
+     * submitted, and the outcome (an execution or an error) is reported for each item.
+     * 
+     * @param jobName The job name (as registered)
+     * @param parametersList A list of maps of parameters
+     * @param submitter The name of the submitter 
+     * @param priority The priority of these submissions
+     */
+    @PostMapping(value = "/api/jobs/{jobName}/submit-batch", consumes = "application/json")
+    public RestResponse<List<JobSubmissionInfo>> submitBatch(
+        @PathVariable String jobName, @RequestBody List<Map<String, Object>> parametersList,
+        @RequestParam(required = false) String submitter, 
+        @RequestParam(defaultValue = "0") Integer priority)
+    {
+        if (parametersList.size() > maxBatchSize) {
+            return RestResponse.error(BasicErrorCode.INPUT_INVALID, String.format(
+                "The batch is too large (%d > %d)", parametersList.size(), maxBatchSize));
+        }
+        
+        // Prepare (and validate) all job parameters
+        
+        List<JobParameters> preparedList = new ArrayList<>(parametersList.size());
+        List<JobSubmissionInfo> invalid = new ArrayList<>();
+        int index = 0;
+        for (Map<String, Object> parametersMap: parametersList) {
+            try {
+                preparedList.add(jobService.prepareParameters(jobName, parametersMap));
+            } catch (NumberFormatException | DateTimeParseException ex) {
+                invalid.add(new JobSubmissionInfo(index, new Error(JobErrorCode.JOB_INVALID_PARAMETERS, 
+                    ex.getClass().getSimpleName() + ": " + ex.getMessage())));
+            } catch (MissingJobParameterException ex) {
+                invalid.add(new JobSubmissionInfo(index, new Error(JobErrorCode.JOB_MISSING_PARAMETER, 
+                    "Missing parameter: " + ex.getMessage())));
+            }
+            index++;
+        }
+        
+        if (!invalid.isEmpty()) {
+            logger.error("Rejected a batch of {} submissions of job {}: {} are invalid", 
+                parametersList.size(), jobName, invalid.size());
+            return new BatchRestResponse(invalid, Collections.singletonList(new Error(
+                JobErrorCode.JOB_INVALID_PARAMETERS, 
+                String.format("%d of %d submissions are invalid", invalid.size(), parametersList.size()))));
+        }
+        
+        // Submit all
+        
+        List<JobSubmissionResult> outcomes = null;
+        try {
+            outcomes = jobService.startAll(jobName, preparedList, submitter, priority);
+        } catch (NoSuchJobException ex) {
+            return RestResponse.error(JobErrorCode.JOB_NOT_FOUND, ex.getMessage());
+        }
+        
+        List<JobSubmissionInfo> r = new ArrayList<>(outcomes.size());
+        index = 0;
+        for (JobSubmissionResult outcome: outcomes) {
+            JobExecutionException ex = outcome.getException();
+            r.add(ex == null?
+                new JobSubmissionInfo(index, createExecutionInfo(outcome.getExecution())) :
+                new JobSubmissionInfo(index, new Error(JobErrorCode.fromException(ex), ex.getMessage())));
+            index++;
+        }
+        
+        return RestResponse.result(r);
+    }
+    
+    /**
+     * Submit many jobs, reading maps of parameters as a stream of newline-delimited JSON 
+     * objects (NDJSON).
+     * 
+     * @see JobController#submitBatch(String, List, String, Integer)
+     */
+    @PostMapping(value = "/api/jobs/{jobName}/submit-batch", consumes = "application/x-ndjson")
+    public RestResponse<List<JobSubmissionInfo>> submitBatchFromStream(
+        @PathVariable String jobName, HttpServletRequest request,
+        @RequestParam(required = false) String submitter, 
+        @RequestParam(defaultValue = "0") Integer priority) 
+        throws IOException
+    {
+        final TypeReference<Map<String, Object>> mapType = new TypeReference<Map<String, Object>>() {};
+        
+        List<Map<String, Object>> parametersList = new ArrayList<>();
+        try (BufferedReader reader = request.getReader()) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty())
+                    continue;
+                if (parametersList.size() == maxBatchSize) {
+                    return RestResponse.error(BasicErrorCode.INPUT_INVALID, 
+                        String.format("The batch is too large (> %d)", maxBatchSize));
+                }
+                try {
+                    parametersList.add(objectMapper.readValue(line, mapType));
+                } catch (JsonProcessingException ex) {
+                    return RestResponse.error(BasicErrorCode.INPUT_INVALID, 
+                        String.format("Cannot parse line %d: %s", lineNumber, ex.getOriginalMessage()));
+                }
+            }
+        }
+        
+        return submitBatch(jobName, parametersList, submitter, priority);
+    }
+    
+    /**
+     * Stop the running execution of a job instance. A parked execution (i.e. stopped while
+     * its container is running) is also stopped, along with its container.
      * 
      * @param jobName
      * @param jobId The instance id
@@ -158,6 +384,12 @@ public class JobController
     public RestResponse<JobExecutionInfo> stop(@PathVariable String jobName, @PathVariable Long jobId)
     {
         JobExecution execution = jobService.findRunningExecution(jobName, jobId);
+        if (execution == null) {
+            // Examine the last execution (newest first), as it may be parked
+            List<JobExecution> executions = jobService.findExecutions(jobName, jobId);
+            if (!executions.isEmpty() && executions.get(0).getStatus() == BatchStatus.STOPPED)
+                execution = executions.get(0);
+        }
         if (execution != null) {
             // Stop using execution id
             jobService.stop(execution.getId());
@@ -180,14 +412,133 @@ public class JobController
     @GetMapping(value = {"/api/jobs/{jobName}/status/{jobId}", "/api/jobs/{jobName}/executions/{jobId}"})
     public RestResponse<List<JobExecutionInfo>> getExecutions(@PathVariable String jobName, @PathVariable Long jobId)
     {
-        List<JobExecutionInfo> r = 
-            jobService.findExecutions(jobName, jobId).stream()
-                .map(x -> createExecutionInfo(x))
-                .collect(Collectors.toList());
+        return RestResponse.result(executionInfoRepository.findByInstance(jobName, jobId));
+    }
+    
+    /**
+     * List executions of a given job (newest first).
+     * 
+     * @param jobName
+     * @param before Only list executions with an id less than this one (i.e. the last 
+     *   execution id of a previous page)
+     * @param count The page size for this set of results
+     */
+    @GetMapping(value = "/api/jobs/{jobName}/executions")
+    public RestResponse<List<JobExecutionInfo>> getExecutions(
+        @PathVariable String jobName,
+        @RequestParam(required = false) Long before, @RequestParam(defaultValue = "25") Integer count)
+    {
+        final int MAX_PAGE_SIZE = 100;
         
-        return RestResponse.result(r);
+        if (count > MAX_PAGE_SIZE || count <= 0)
+            count = MAX_PAGE_SIZE;
+        
+        return RestResponse.result(executionInfoRepository.findByJobName(jobName, before, count));
+    }
+    
+    /**
+     * Stream status transitions of jobs (and of their steps) as server-sent events, so that 
+     * clients do not have to poll for the status of a job.
+     * <p>
+     * Each event (named <tt>status</tt>) carries a {@link JobStatusEvent} as JSON data. When
+     * watching a job instance, the stream starts with an event for its latest execution (as
+     * found in the batch repository). A comment is periodically sent to keep the connection 
+     * alive.
+     * 
+     * @param jobName A job name (if missing, events for all jobs are streamed)
+     * @param jobId An instance id (if missing, events for all instances are streamed)
+     */
+    @GetMapping(
+        value = { "/api/job-events", "/api/jobs/{jobName}/events", "/api/jobs/{jobName}/events/{jobId}" }, 
+        produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamEvents(
+        @PathVariable(required = false) String jobName, @PathVariable(required = false) Long jobId)
+    {
+        final SseEmitter emitter = new SseEmitter(Math.max(eventStreamTimeout, 0L));
+        
+        final JobStatusEventBus.Subscription subscription = 
+            statusEventBus.subscribe(jobName, jobId, event -> {
+                try {
+                    emitter.send(SseEmitter.event().name("status").data(event));
+                } catch (IOException ex) {
+                    // The client is probably gone
+                    emitter.completeWithError(ex);
+                    throw new IllegalStateException("Cannot send event", ex);
+                }
+            });
+        
+        final ScheduledFuture<?> heartbeat = taskScheduler.scheduleAtFixedRate(() -> {
+            try {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            } catch (IOException ex) {
+                emitter.completeWithError(ex);
+            }
+        }, eventStreamHeartbeatInterval);
+        
+        Runnable cleanup = () -> {
+            subscription.cancel();
+            heartbeat.cancel(false);
+        };
+        emitter.onCompletion(cleanup);
+        emitter.onTimeout(cleanup);
+        
+        // Begin with the current status of the job instance (if watching a single instance)
+        
+        if (jobName != null && jobId != null) {
+            List<JobExecutionInfo> executions = executionInfoRepository.findByInstance(jobName, jobId);
+            if (!executions.isEmpty()) {
+                // The first is the latest execution
+                JobExecutionInfo info = executions.get(0);
+                JobStatusEvent event = createStatusEvent(jobName, info);
+                if (BatchStatus.STOPPED.name().equals(info.getStatus())) {
+                    // A stopped execution may be parked (i.e. it will be resumed)
+                    JobExecution execution = jobService.findExecution(info.getExecutionId());
+                    event.setParked(execution != null && 
+                        execution.getStepExecutions().stream().anyMatch(RunContainerTasklet::isParked));
+                }
+                try {
+                    emitter.send(SseEmitter.event().name("status").data(event));
+                } catch (IOException ex) {
+                    emitter.completeWithError(ex);
+                }
+            }
+        }
+        
+        return emitter;
     }
 
+    /**
+     * Stream the output (stdout/stderr) of the most recent container started by a 
+     * job instance. 
+     * <p>
+     * The output is sent as plain text (chunked). If the container is removed, the output
+     * is read from the log file it was collected into.
+     * 
+     * @param jobName
+     * @param jobId The instance id
+     * @param since Only return output after this point in time (seconds since Epoch)
+     * @param tail Only return this number of lines from the end of output
+     * @param follow Keep streaming output as it is produced (until the container exits)
+     * @return
+     */
+    @GetMapping(value = "/api/jobs/{jobName}/logs/{jobId}", produces = "text/plain")
+    public ResponseEntity<StreamingResponseBody> getLogs(
+        @PathVariable String jobName, @PathVariable Long jobId, 
+        @RequestParam(required = false) Integer since, 
+        @RequestParam(required = false) Integer tail, 
+        @RequestParam(defaultValue = "false") Boolean follow)
+    {
+        JobLogService.LogSource source = jobLogService.findLogSource(jobName, jobId);
+        if (source == null)
+            return ResponseEntity.notFound().build();
+        
+        StreamingResponseBody body = 
+            out -> jobLogService.copyLogs(source, out, since, tail, follow);
+        return ResponseEntity.ok()
+            .contentType(MediaType.TEXT_PLAIN)
+            .body(body);
+    }
+    
     /**
      * List all running executions for a given job.
      * 
@@ -197,12 +548,7 @@ public class JobController
     @GetMapping(value = "/api/jobs/{jobName}/running-executions")
     public RestResponse<List<JobExecutionInfo>> getRunningExecutions(@PathVariable String jobName)
     {
-        List<JobExecutionInfo> r = 
-            jobService.findRunningExecutions(jobName).stream()
-                .map(x -> createExecutionInfo(x))
-                .collect(Collectors.toList());
-        
-        return RestResponse.result(r);
+        return RestResponse.result(executionInfoRepository.findRunning(jobName));
     }
     
     /**
@@ -210,19 +556,27 @@ public class JobController
      * 
      * @param jobName
      * @param start The starting index for this set of results
+     * @param before Only list instances with an id less than this one (i.e. the last instance 
+     *   id of a previous page). If given, this is preferred to <tt>start</tt> (as it does not 
+     *   need to skip over previous results).
      * @param count The page size for this set of results
      * @return
      */
     @GetMapping(value = "/api/jobs/{jobName}/instances")
     public RestResponse<List<JobInstanceInfo>> getInstances(
         @PathVariable String jobName, 
-        @RequestParam(defaultValue = "0") Integer start, @RequestParam(defaultValue = "25") Integer count)
+        @RequestParam(defaultValue = "0") Integer start, @RequestParam(required = false) Long before, 
+        @RequestParam(defaultValue = "25") Integer count)
     {
         final int MAX_PAGE_SIZE = 100;
         
         if (count > MAX_PAGE_SIZE || count <= 0)
             count = MAX_PAGE_SIZE;
         
+        if (before != null || start == 0) {
+            return RestResponse.result(executionInfoRepository.findInstances(jobName, before, count));
+        }
+        
         logger.info(
             "Fetching instances for job {} (starting at index {} with a page size of {})", 
             jobName, start, count);
@@ -234,6 +588,81 @@ public class JobController
         return RestResponse.result(r);
     }
     
+    /**
+     * Report on the queue of job executions waiting to be admitted (i.e. waiting for
+     * host resources), and on the resources reserved so far.
+     * 
+     * @return
+     */
+    @GetMapping(value = "/api/job-queue")
+    public RestResponse<JobQueueInfo> getQueueInfo()
+    {
+        AdmissionJobLauncher.QueueStats stats = jobLauncher.getQueueStats();
+        
+        JobQueueInfo r = new JobQueueInfo();
+        r.setQueued(stats.getQueued());
+        r.setOldestWait(stats.getOldestWait());
+        r.setAdmitted(stats.getAdmitted());
+        r.setAverageWait(stats.getAverageWait());
+        r.setMaxWait(stats.getMaxWait());
+        r.setReservations(resourceLedger.getReservationCount());
+        r.setCpus(resourceLedger.getCpus());
+        r.setReservedCpus(resourceLedger.getReservedCpus());
+        r.setMemory(resourceLedger.getMemory());
+        r.setReservedMemory(resourceLedger.getReservedMemory());
+        
+        return RestResponse.result(r);
+    }
+    
+    /**
+     * Report on the pools of (warm) containers, keyed by pool name.
+     * 
+     * @return
+     */
+    @GetMapping(value = "/api/container-pools")
+    public RestResponse<Map<String, ContainerPool.Stats>> getContainerPoolStats()
+    {
+        Map<String, ContainerPool.Stats> r = containerPools.stream()
+            .collect(Collectors.toMap(ContainerPool::getName, ContainerPool::getStats));
+        return RestResponse.result(r);
+    }
+    
+    /**
+     * Report on the caches of job results, keyed by (bean) name.
+     * 
+     * @return
+     */
+    @GetMapping(value = "/api/result-caches")
+    public RestResponse<Map<String, ResultCache.Stats>> getResultCacheStats()
+    {
+        Map<String, ResultCache.Stats> r = resultCaches.entrySet().stream()
+            .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().getStats()));
+        return RestResponse.result(r);
+    }
+    
+    /**
+     * Get metrics of the (content-addressed) input store, if enabled
+     */
+    @GetMapping(value = "/api/input-store")
+    public RestResponse<InputStore.Stats> getInputStoreStats() throws IOException
+    {
+        if (inputStore == null)
+            return RestResponse.error(BasicErrorCode.NOT_SUPPORTED, "The input store is not enabled");
+        return RestResponse.result(inputStore.getStats());
+    }
+    
+    /**
+     * Get the report of the last pass of the workspace reaper
+     */
+    @GetMapping(value = "/api/workspace-reaper")
+    public RestResponse<WorkspaceReaper.Report> getWorkspaceReaperReport()
+    {
+        WorkspaceReaper.Report report = workspaceReaper.getLastReport();
+        if (report == null)
+            return RestResponse.error(BasicErrorCode.NO_RESULT, "The workspace reaper has not completed a pass yet");
+        return RestResponse.result(report);
+    }
+    
     /**
      * Clear running execution for a given job instance. 
      * 
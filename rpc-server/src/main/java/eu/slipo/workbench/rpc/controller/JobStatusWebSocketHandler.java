@@ -0,0 +1,95 @@
+package eu.slipo.workbench.rpc.controller;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import eu.slipo.workbench.common.model.jobs.JobStatusEvent;
+import eu.slipo.workbench.rpc.service.JobStatusEventBus;
+
+/**
+ * A handler that pushes status transitions of jobs (as JSON text messages) to websocket
+ * clients. The events can be filtered by the query parameters <tt>jobName</tt> and
+ * <tt>jobId</tt> (an instance id) of the handshake request.
+ *
+ * @see JobController#streamEvents(String, Long) for the same stream as server-sent events
+ */
+public class JobStatusWebSocketHandler extends TextWebSocketHandler
+{
+    private static final Logger logger = LoggerFactory.getLogger(JobStatusWebSocketHandler.class);
+
+    /**
+     * The time limit (milliseconds) to send a message to a client, and the limit (bytes)
+     * on messages buffered for a slow client: when exceeded, the session is closed.
+     */
+    private static final int SEND_TIME_LIMIT = 10 * 1000;
+
+    private static final int BUFFER_SIZE_LIMIT = 512 * 1024;
+
+    private final JobStatusEventBus eventBus;
+
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, JobStatusEventBus.Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    public JobStatusWebSocketHandler(JobStatusEventBus eventBus, ObjectMapper objectMapper)
+    {
+        this.eventBus = eventBus;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception
+    {
+        MultiValueMap<String, String> queryParams =
+            UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams();
+
+        String jobName = queryParams.getFirst("jobName");
+        String jobIdText = queryParams.getFirst("jobId");
+        Long jobId = null;
+        try {
+            jobId = jobIdText == null? null : Long.valueOf(jobIdText);
+        } catch (NumberFormatException ex) {
+            session.close(CloseStatus.BAD_DATA.withReason("Invalid job id: " + jobIdText));
+            return;
+        }
+
+        // Note: Sending to a websocket session is not thread-safe
+        final WebSocketSession concurrentSession =
+            new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT, BUFFER_SIZE_LIMIT);
+
+        JobStatusEventBus.Subscription subscription =
+            eventBus.subscribe(jobName, jobId, event -> send(concurrentSession, event));
+        subscriptions.put(session.getId(), subscription);
+    }
+
+    private void send(WebSocketSession session, JobStatusEvent event)
+    {
+        try {
+            session.sendMessage(new TextMessage(objectMapper.writeValueAsString(event)));
+        } catch (IOException | RuntimeException ex) {
+            logger.info("Failed to send event to session {}: {}", session.getId(), ex.getMessage());
+            throw new IllegalStateException("Cannot send event", ex);
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception
+    {
+        JobStatusEventBus.Subscription subscription = subscriptions.remove(session.getId());
+        if (subscription != null)
+            subscription.cancel();
+    }
+}
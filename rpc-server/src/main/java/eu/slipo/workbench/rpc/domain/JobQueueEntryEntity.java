@@ -0,0 +1,89 @@
+package eu.slipo.workbench.rpc.domain;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+
+import org.hibernate.validator.constraints.NotEmpty;
+
+/**
+ * Represent a job execution waiting (in a persistent queue) to be admitted.
+ */
+@Entity(name = "JobQueueEntry")
+@Table(name = "job_queue", schema = "rpc")
+public class JobQueueEntryEntity
+{
+    @Id
+    @GeneratedValue(
+        strategy = GenerationType.SEQUENCE, generator = "job_queue_id_seq")
+    @SequenceGenerator(
+        sequenceName = "rpc.job_queue_id_seq", name = "job_queue_id_seq", allocationSize = 1)
+    @Column(name = "id")
+    private Long id;
+    
+    @Column(name = "job_name", nullable = false)
+    @NotEmpty
+    private String jobName;
+    
+    @Column(name = "job_execution_id", nullable = false, unique = true)
+    private long executionId;
+    
+    @Column(name = "submitter")
+    private String submitter;
+    
+    @Column(name = "priority", nullable = false)
+    private int priority = 0;
+    
+    @Column(name = "submitted_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date submittedAt;
+    
+    public JobQueueEntryEntity() {}
+    
+    public JobQueueEntryEntity(String jobName, long executionId, String submitter, int priority)
+    {
+        this.jobName = jobName;
+        this.executionId = executionId;
+        this.submitter = submitter;
+        this.priority = priority;
+        this.submittedAt = new Date();
+    }
+
+    public Long getId()
+    {
+        return id;
+    }
+
+    public String getJobName()
+    {
+        return jobName;
+    }
+
+    public long getExecutionId()
+    {
+        return executionId;
+    }
+
+    public String getSubmitter()
+    {
+        return submitter;
+    }
+
+    public int getPriority()
+    {
+        return priority;
+    }
+
+    public Date getSubmittedAt()
+    {
+        return submittedAt;
+    }
+}
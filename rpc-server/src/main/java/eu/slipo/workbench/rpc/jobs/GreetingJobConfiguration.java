@@ -42,6 +42,7 @@ import org.springframework.stereotype.Component;
 import com.spotify.docker.client.DockerClient;
 
 import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
+import eu.slipo.workbench.rpc.jobs.listener.StatusEventPublishingListener;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateContainerTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
 
@@ -56,6 +57,9 @@ public class GreetingJobConfiguration
     @Autowired
     private StepBuilderFactory stepBuilderFactory;
     
+    @Autowired
+    private StatusEventPublishingListener statusEventListener;
+    
     private static class Step1Tasklet implements Tasklet
     {
         private static Logger logger = LoggerFactory.getLogger(Step1Tasklet.class);
@@ -160,6 +164,7 @@ public class GreetingJobConfiguration
             .tasklet(tasklet)
             .listener(tasklet)
             .listener(stepContextListener)
+            .listener(statusEventListener)
             .build();   
     }
     
@@ -171,6 +176,7 @@ public class GreetingJobConfiguration
         return stepBuilderFactory.get("runEchoContainer")
             .tasklet(tasklet)
             .listener(tasklet)
+            .listener(statusEventListener)
             .build();
     }
 
@@ -181,6 +187,7 @@ public class GreetingJobConfiguration
             .tasklet(new Step1Tasklet())
             .listener(
                 ExecutionContextPromotionListeners.fromKeys("step1.key1").build())
+            .listener(statusEventListener)
             .build();
     }
 
@@ -191,6 +198,7 @@ public class GreetingJobConfiguration
             .tasklet(new Step2Tasklet())
             .listener(
                 ExecutionContextPromotionListeners.fromKeys("step2.key1").build())
+            .listener(statusEventListener)
             .build();
     }
     
@@ -224,6 +232,7 @@ public class GreetingJobConfiguration
             .incrementer(new RunIdIncrementer())
             .validator(parametersValidator)
             .listener(listener)
+            .listener(statusEventListener)
             .start(step1)
             .next(step2)
             .next(createEchoContainerStep)
@@ -2,6 +2,9 @@ package eu.slipo.workbench.rpc.jobs;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -11,10 +14,15 @@ import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
@@ -38,9 +46,13 @@ import org.springframework.batch.core.configuration.JobFactory;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.FlowBuilder;
 import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.FlowExecutionStatus;
+import org.springframework.batch.core.job.flow.JobExecutionDecider;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.scope.context.StepContext;
 import org.springframework.batch.core.step.tasklet.Tasklet;
@@ -49,9 +61,12 @@ import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
 import org.springframework.util.StringUtils;
 
 import com.spotify.docker.client.DockerClient;
@@ -66,9 +81,33 @@ import eu.slipo.workbench.common.service.tool.ConfigurationGeneratorService;
 import eu.slipo.workbench.common.service.util.PropertiesConverterService;
 import eu.slipo.workbench.rpc.jobs.listener.ExecutionContextPromotionListeners;
 import eu.slipo.workbench.rpc.jobs.listener.LoggingJobExecutionListener;
+import eu.slipo.workbench.rpc.jobs.listener.ReleaseResourcesStepListener;
+import eu.slipo.workbench.rpc.jobs.listener.StatusEventPublishingListener;
+import eu.slipo.workbench.rpc.jobs.listener.StoppableTaskletRegistry;
+import eu.slipo.workbench.rpc.jobs.cache.InputStore;
+import eu.slipo.workbench.rpc.jobs.cache.ResultCache;
+import eu.slipo.workbench.rpc.jobs.launch.ResourceLedger;
+import eu.slipo.workbench.rpc.jobs.tasklet.LookupResultCacheTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.MergeOutputTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.PostProcessOutputTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.PrepareWorkingDirectoryTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.SplitInputTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.StoreResultCacheTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.StreamExtractor;
+import eu.slipo.workbench.rpc.jobs.tasklet.ZipExtractor;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerBatcher;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateAndRunContainerTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerConfigurer;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerEventMonitor;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerLogCollector;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerPool;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerSupervisor;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.CreateContainerTasklet;
 import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunInContainerBatchTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunInContainerPoolTasklet;
+import eu.slipo.workbench.rpc.service.NodeService;
+import eu.slipo.workbench.rpc.service.SimpleContainerSupervisor;
 
 @Component
 public class TriplegeoJobConfiguration
@@ -91,6 +130,18 @@ public class TriplegeoJobConfiguration
      */
     public static final String CONFIG_FILENAME = "options.conf";
     
+    /**
+     * The serialization formats (of output) that can be merged by concatenation
+     */
+    private static final List<EnumDataFormat> CONCATENABLE_OUTPUT_FORMATS = 
+        Arrays.asList(EnumDataFormat.N_TRIPLES, EnumDataFormat.TURTLE, EnumDataFormat.N3);
+    
+    /**
+     * The names of configuration properties that are specific to a job instance
+     */
+    private static final List<String> INSTANCE_SPECIFIC_PROPERTY_NAMES = 
+        Arrays.asList("inputFiles", "outputDir", "tmpDir");
+    
     /**
      * The default timeout (milliseconds) for a container run
      */
@@ -122,10 +173,103 @@ public class TriplegeoJobConfiguration
     
     @Autowired
     private DockerClient docker;
+    
+    @Autowired
+    private ContainerEventMonitor containerEventMonitor;
+    
+    @Autowired
+    private ContainerSupervisor containerSupervisor;
+    
+    @Autowired
+    private ContainerLogCollector containerLogCollector;
+    
+    @Autowired
+    private ResourceLedger resourceLedger;
+    
+    @Autowired(required = false)
+    private InputStore inputStore;
+    
+    @Autowired
+    private ZipExtractor zipExtractor;
+    
+    @Autowired
+    private StreamExtractor streamExtractor;
+    
+    @Autowired
+    private StatusEventPublishingListener statusEventListener;
+    
+    @Autowired
+    private StoppableTaskletRegistry stoppableTasklets;
+    
+    @Autowired
+    private NodeService nodeService;
+    
+    /**
+     * Indicate whether a job should be parked (i.e. not keep a thread) while its container 
+     * is running. Parked jobs survive a restart only if containers are recovered (see 
+     * {@link SimpleContainerSupervisor}).
+     */
+    @Value("${slipo.rpc-server.tools.triplegeo.docker.park-while-running:false}")
+    private boolean parkWhileRunning;
+    
+    /**
+     * The interval (milliseconds) between commits of a step while its container is running
+     * (i.e. a heartbeat). A step is always committed when its container exits. A stop request
+     * from another node is noticed on the next heartbeat.
+     */
+    @Value("${slipo.rpc-server.tools.triplegeo.docker.heartbeat-interval:" + 
+        RunContainerTasklet.DEFAULT_HEARTBEAT_INTERVAL + "}")
+    private long heartbeatInterval;
+    
+    /**
+     * Indicate whether results of jobs should be cached (see {@link ResultCache})
+     */
+    @Value("${slipo.rpc-server.tools.triplegeo.cache.enabled:false}")
+    private boolean cacheEnabled;
+    
+    /**
+     * Indicate whether the output of jobs should be post-processed (compressed, indexed, and
+     * summarized by statistics); see {@link PostProcessOutputTasklet}
+     */
+    @Value("${slipo.rpc-server.tools.triplegeo.post-process.enabled:false}")
+    private boolean postProcessEnabled;
+    
+    /**
+     * The maximum number of partitions (i.e. containers) for a partitioned job
+     */
+    @Value("${slipo.rpc-server.tools.triplegeo.partitioning.max-partitions:8}")
+    private int maxPartitions;
    
+    /**
+     * The default resource limits for a container, keyed by the name of the job parameter
+     * that may override it.
+     */
+    private final Map<String,String> resources = new HashMap<>();
+    
     @Autowired
     private PropertiesConverterService propertiesConverterService;
     
+    @Autowired
+    private void setResources(
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.resources.memory:}") String memory,
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.resources.memory-swap:}") String memorySwap,
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.resources.cpus:}") String cpus,
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.resources.cpu-shares:}") String cpuShares,
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.resources.cpuset-cpus:}") String cpusetCpus,
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.resources.pids-limit:}") String pidsLimit,
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.resources.shm-size:}") String shmSize,
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.resources.ulimits:}") String ulimits)
+    {
+        resources.put("resources.memory", memory);
+        resources.put("resources.memorySwap", memorySwap);
+        resources.put("resources.cpus", cpus);
+        resources.put("resources.cpuShares", cpuShares);
+        resources.put("resources.cpusetCpus", cpusetCpus);
+        resources.put("resources.pidsLimit", pidsLimit);
+        resources.put("resources.shmSize", shmSize);
+        resources.put("resources.ulimits", ulimits);
+    }
+    
     @Autowired
     private void setDataDirectory(
         @Value("${slipo.rpc-server.docker.volumes.data-dir}") String dir)
@@ -205,6 +349,7 @@ public class TriplegeoJobConfiguration
         return stepBuilderFactory.get("triplegeo.setupExecutionContext")
             .tasklet(tasklet)
             .listener(stepContextListener)
+            .listener(statusEventListener)
             .build();
     }
     
@@ -236,6 +381,7 @@ public class TriplegeoJobConfiguration
     {
         return stepBuilderFactory.get("triplegeo.validateConfiguration")
             .tasklet(tasklet)
+            .listener(statusEventListener)
             .build();
     }
     
@@ -257,6 +403,9 @@ public class TriplegeoJobConfiguration
             .inputFormat(config.getInputFormat())
             .configurationGeneratorService(configurationGeneratorService)
             .config(CONFIG_KEY, CONFIG_FILENAME, config, EnumConfigurationFormat.PROPERTIES)
+            .inputStore(inputStore)
+            .zipExtractor(zipExtractor)
+            .streamExtractor(streamExtractor)
             .build();
     }
     
@@ -267,7 +416,7 @@ public class TriplegeoJobConfiguration
     {
         StepExecutionListener stepContextListener = ExecutionContextPromotionListeners
             .fromKeys(
-                "workDir", "inputDir", "inputFiles", "inputFormat", "outputDir", "configByName")
+                "workDir", "inputDir", "inputFiles", "inputFormat", "inputSize", "outputDir", "configByName")
             .prefix("triplegeo.workspace")
             .strict(true)
             .build();
@@ -275,6 +424,7 @@ public class TriplegeoJobConfiguration
         return stepBuilderFactory.get("triplegeo.prepareWorkingDirectory")
             .tasklet(tasklet)
             .listener(stepContextListener)
+            .listener(statusEventListener)
             .build();   
     }    
     
@@ -288,7 +438,8 @@ public class TriplegeoJobConfiguration
         @Value("#{jobExecutionContext['triplegeo.workspace.inputFormat']}") String inputFormatName,
         @Value("#{jobExecutionContext['triplegeo.workspace.inputFiles']}") List<String> inputFiles,
         @Value("#{jobExecutionContext['triplegeo.workspace.outputDir']}") String outputDir,
-        @Value("#{jobExecutionContext['triplegeo.workspace.configByName']}") Map<String, String> configByName)
+        @Value("#{jobExecutionContext['triplegeo.workspace.configByName']}") Map<String, String> configByName,
+        @Value("#{jobParameters}") Map<String, Object> parameters)
     {
         String containerName = String.format("triplegeo-%04x", jobId);
         
@@ -296,30 +447,77 @@ public class TriplegeoJobConfiguration
         Path containerOutputDir = containerDataDir.resolve("output");
         Path containerConfigDir = containerDataDir;
         
-        EnumDataFormat inputFormat = EnumDataFormat.valueOf(inputFormatName);
-        String inputNameExtension = inputFormat.getFilenameExtension();
-       
-        String input = inputFiles.stream()
-            .filter(name -> StringUtils.getFilenameExtension(name).equals(inputNameExtension))
-            .map(name -> containerInputDir.resolve(name).toString())
-            .collect(Collectors.joining(File.pathSeparator));
+        String input = formatInput(containerInputDir, inputFormatName, inputFiles);
         
         Path configPath = Paths.get(workDir).resolve(configByName.get(CONFIG_KEY));
         
         return CreateContainerTasklet.builder()
             .client(docker)
             .name(containerName)
+            .replaceExisting(true)
             .container(configurer -> configurer
                 .image(imageName)
+                .job(JOB_NAME, jobId)
                 .volume(Paths.get(inputDir), containerInputDir)
                 .volume(Paths.get(outputDir), containerOutputDir)
                 .volume(configPath, containerConfigDir.resolve(CONFIG_FILENAME), true)
                 .env("INPUT_FILE", input)
                 .env("CONFIG_FILE", containerConfigDir.resolve(CONFIG_FILENAME).toString())
                 .env("OUTPUT_DIR", containerOutputDir.toString()))
+            .container(configurer -> configureResources(configurer, parameters))
             .build();
     }
     
+    /**
+     * Format the input (as expected by Triplegeo) from the names of input files.
+     * 
+     * @param containerInputDir The input directory (as seen from inside a container)
+     * @param inputFormatName
+     * @param inputFiles The names of input files
+     */
+    private static String formatInput(Path containerInputDir, String inputFormatName, List<String> inputFiles)
+    {
+        EnumDataFormat inputFormat = EnumDataFormat.valueOf(inputFormatName);
+        String inputNameExtension = inputFormat.getFilenameExtension();
+        
+        return inputFiles.stream()
+            .filter(name -> StringUtils.getFilenameExtension(name).equals(inputNameExtension))
+            .map(name -> containerInputDir.resolve(name).toString())
+            .collect(Collectors.joining(File.pathSeparator));
+    }
+    
+    /**
+     * Apply resource limits to a container. A limit given as a job parameter (under 
+     * <tt>resources.*</tt>) overrides the default limit configured for the tool.
+     */
+    private void configureResources(ContainerConfigurer configurer, Map<String, Object> parameters)
+    {
+        Map<String,String> r = new HashMap<>(resources);
+        for (String key: resources.keySet()) {
+            Object value = parameters.get(key);
+            if (value != null)
+                r.put(key, Objects.toString(value));
+        }
+        
+        String s;
+        if (!StringUtils.isEmpty(s = r.get("resources.memory")))
+            configurer.memory(ContainerConfigurer.parseMemory(s));
+        if (!StringUtils.isEmpty(s = r.get("resources.memorySwap")))
+            configurer.memorySwap(s);
+        if (!StringUtils.isEmpty(s = r.get("resources.cpus")))
+            configurer.cpus(ContainerConfigurer.parseCpus(s));
+        if (!StringUtils.isEmpty(s = r.get("resources.cpuShares")))
+            configurer.cpuShares(ContainerConfigurer.parseCpuShares(s));
+        if (!StringUtils.isEmpty(s = r.get("resources.cpusetCpus")))
+            configurer.cpusetCpus(s);
+        if (!StringUtils.isEmpty(s = r.get("resources.pidsLimit")))
+            configurer.pidsLimit(ContainerConfigurer.parsePidsLimit(s));
+        if (!StringUtils.isEmpty(s = r.get("resources.shmSize")))
+            configurer.shmSize(s);
+        if (!StringUtils.isEmpty(s = r.get("resources.ulimits")))
+            configurer.ulimits(s);
+    }
+    
     @Bean("triplegeo.createContainerStep")
     public Step createContainerStep(
         @Qualifier("triplegeo.createContainerTasklet") CreateContainerTasklet tasklet) 
@@ -333,21 +531,32 @@ public class TriplegeoJobConfiguration
         return stepBuilderFactory.get("triplegeo.createContainer")
             .tasklet(tasklet)
             .listener(stepContextListener)
+            .listener(statusEventListener)
             .build();   
     }
     
     @Bean("triplegeo.runContainerTasklet")
     @JobScope
     public RunContainerTasklet runContainerTasklet(
-        @Value("#{jobExecutionContext['triplegeo.containerName']}") String containerName)
+        @Value("#{jobExecutionContext['triplegeo.containerName']}") String containerName,
+        @Value("#{jobExecutionContext['triplegeo.workspace.workDir']}") String workDir)
     {
-        return RunContainerTasklet.builder()
+        Path logFile = Paths.get(workDir).resolve("logs").resolve(containerName + ".log");
+        
+        RunContainerTasklet.Builder builder = RunContainerTasklet.builder()
             .client(docker)
+            .monitor(containerEventMonitor)
+            .logCollector(containerLogCollector, logFile)
             .checkInterval(DEFAULT_CHECK_INTERVAL)
+            .heartbeatInterval(heartbeatInterval)
             .timeout(DEFAULT_RUN_TIMEOUT)
             .container(containerName)
-            .removeOnFinished(false)
-            .build();
+            .removeOnFinished(false);
+        
+        if (parkWhileRunning)
+            builder.supervisor(containerSupervisor);
+        
+        return builder.build();
     }
     
     @Bean("triplegeo.runContainerStep")
@@ -358,6 +567,558 @@ public class TriplegeoJobConfiguration
         return stepBuilderFactory.get("triplegeo.runContainer")
             .tasklet(tasklet)
             .listener(tasklet)
+            .listener(stoppableTasklets.listener(tasklet))
+            .listener(new ReleaseResourcesStepListener(resourceLedger))
+            .listener(statusEventListener)
+            .build();
+    }
+    
+    /**
+     * Resolve a directory for state that is kept by this node only (e.g. a cache, or the 
+     * directories of pooled containers). If running alongside other nodes (which may share
+     * our data directory), this is a subdirectory named after this node.
+     */
+    private Path nodeLocal(Path dir)
+    {
+        return nodeService.isEnabled()? dir.resolve(nodeService.getName()) : dir;
+    }
+    
+    /**
+     * A pool of idle Triplegeo containers. A pooled container mounts the data directory
+     * (of all job instances) as read-only, and Triplegeo is executed inside it for a job. 
+     * The output of a job is written into a private writable directory of the container, 
+     * and is moved into the output directory of the job when Triplegeo exits. 
+     * <p>
+     * The pool is disabled if its size is 0 (and then, a new container is created for
+     * each job). Note that the resource limits of a pooled container are those configured 
+     * for the tool (they cannot be overridden by job parameters).
+     */
+    @Bean(name = "triplegeo.containerPool", initMethod = "start", destroyMethod = "close")
+    public ContainerPool containerPool(
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.image}") String imageName,
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.pool.size:0}") int size,
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.pool.max-uses:100}") int maxUses)
+    {
+        return ContainerPool.builder()
+            .client(docker)
+            .name("triplegeo-pool")
+            .size(size)
+            .maxUses(maxUses)
+            .container(configurer -> configurer
+                .image(imageName)
+                .volume(dataDir, containerDataDir.resolve("jobs"), true))
+            .scratch(nodeLocal(dataDir.resolve("pool")), containerDataDir.resolve("output"))
+            .container(configurer -> configureResources(configurer, Collections.emptyMap()))
+            .build();
+    }
+    
+    @Bean("triplegeo.runInContainerPoolTasklet")
+    @JobScope
+    public RunInContainerPoolTasklet runInContainerPoolTasklet(
+        @Qualifier("triplegeo.containerPool") ContainerPool containerPool,
+        @Value("#{jobExecution.jobInstance.id}") Long jobId,
+        @Value("#{jobExecutionContext['triplegeo.workspace.workDir']}") String workDir, 
+        @Value("#{jobExecutionContext['triplegeo.workspace.inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['triplegeo.workspace.inputFormat']}") String inputFormatName,
+        @Value("#{jobExecutionContext['triplegeo.workspace.inputFiles']}") List<String> inputFiles,
+        @Value("#{jobExecutionContext['triplegeo.workspace.outputDir']}") String outputDir,
+        @Value("#{jobExecutionContext['triplegeo.workspace.configByName']}") Map<String, String> configByName)
+    {
+        // Map host-local paths (under our data directory) to paths inside a pooled container
+        final Path containerJobsDir = containerDataDir.resolve("jobs");
+        final Function<String, Path> toContainerPath = 
+            p -> containerJobsDir.resolve(dataDir.relativize(Paths.get(p)));
+        
+        Path containerInputDir = toContainerPath.apply(inputDir);
+        Path containerConfigPath = toContainerPath.apply(
+            Paths.get(workDir).resolve(configByName.get(CONFIG_KEY)).toString());
+        
+        String input = formatInput(containerInputDir, inputFormatName, inputFiles);
+        
+        Path logFile = Paths.get(workDir).resolve("logs").resolve(
+            String.format("triplegeo-%04x.log", jobId));
+        
+        return RunInContainerPoolTasklet.builder()
+            .client(docker)
+            .pool(containerPool)
+            .env("INPUT_FILE", input)
+            .env("CONFIG_FILE", containerConfigPath.toString())
+            .env("OUTPUT_DIR", containerPool.getContainerScratchDir().toString())
+            .logFile(logFile)
+            .outputDir(Paths.get(outputDir))
+            .timeout(DEFAULT_RUN_TIMEOUT)
+            .heartbeatInterval(heartbeatInterval)
+            .build();
+    }
+    
+    @Bean("triplegeo.runInContainerPoolStep")
+    public Step runInContainerPoolStep(
+        @Qualifier("triplegeo.runInContainerPoolTasklet") RunInContainerPoolTasklet tasklet) 
+        throws Exception
+    {       
+        return stepBuilderFactory.get("triplegeo.runInContainerPool")
+            .tasklet(tasklet)
+            .listener(tasklet)
+            .listener(stoppableTasklets.listener(tasklet))
+            .listener(new ReleaseResourcesStepListener(resourceLedger))
+            .listener(statusEventListener)
+            .build();
+    }
+    
+    /**
+     * A batcher that coalesces Triplegeo jobs with an equivalent configuration into a 
+     * single container run. A job opts-in for batching by setting the <tt>batch</tt> 
+     * parameter to <tt>true</tt>. 
+     * <p>
+     * The batcher is disabled if its window is 0.
+     */
+    @Bean(name = "triplegeo.containerBatcher", destroyMethod = "close")
+    public ContainerBatcher containerBatcher(
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.image}") String imageName,
+        @Value("${slipo.rpc-server.tools.triplegeo.batching.window:0}") long window,
+        @Value("${slipo.rpc-server.tools.triplegeo.batching.max-size:16}") int maxSize)
+    {
+        final Path containerInputDir = containerDataDir.resolve("input");
+        final Path containerOutputDir = containerDataDir.resolve("output");
+        final Path containerConfigPath = containerDataDir.resolve(CONFIG_FILENAME);
+        
+        return ContainerBatcher.builder()
+            .client(docker)
+            .monitor(containerEventMonitor)
+            .logCollector(containerLogCollector)
+            .name("triplegeo-batch")
+            .workDir(nodeLocal(dataDir.resolve("batches")))
+            .window(window)
+            .maxSize(maxSize)
+            .timeout(DEFAULT_RUN_TIMEOUT)
+            .container((configurer, batch) -> {
+                String input = batch.getInputFiles().stream()
+                    .map(name -> containerInputDir.resolve(name).toString())
+                    .collect(Collectors.joining(File.pathSeparator));
+                configurer
+                    .image(imageName)
+                    .volume(batch.getInputDir(), containerInputDir)
+                    .volume(batch.getOutputDir(), containerOutputDir)
+                    .volume(batch.getConfigFile(), containerConfigPath, true)
+                    .env("INPUT_FILE", input)
+                    .env("CONFIG_FILE", containerConfigPath.toString())
+                    .env("OUTPUT_DIR", containerOutputDir.toString());
+                configureResources(configurer, Collections.emptyMap());
+            })
+            .build();
+    }
+    
+    /**
+     * Compute a digest for a generated configuration file, ignoring properties that are
+     * specific to a job instance (i.e. input and output locations).
+     */
+    private static String digestConfiguration(Path configPath) throws IOException
+    {
+        Properties p = new Properties();
+        try (InputStream in = Files.newInputStream(configPath)) {
+            p.load(in);
+        }
+        
+        for (String name: INSTANCE_SPECIFIC_PROPERTY_NAMES)
+            p.remove(name);
+        
+        String s = p.stringPropertyNames().stream()
+            .sorted()
+            .map(name -> name + "=" + p.getProperty(name))
+            .collect(Collectors.joining("\n"));
+        
+        return DigestUtils.md5DigestAsHex(s.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    @Bean("triplegeo.runInContainerBatchTasklet")
+    @JobScope
+    public RunInContainerBatchTasklet runInContainerBatchTasklet(
+        @Qualifier("triplegeo.containerBatcher") ContainerBatcher containerBatcher,
+        @Value("#{jobExecution.jobInstance.id}") Long jobId,
+        @Value("#{jobExecutionContext['triplegeo.workspace.workDir']}") String workDir, 
+        @Value("#{jobExecutionContext['triplegeo.workspace.inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['triplegeo.workspace.inputFormat']}") String inputFormatName,
+        @Value("#{jobExecutionContext['triplegeo.workspace.inputFiles']}") List<String> inputFiles,
+        @Value("#{jobExecutionContext['triplegeo.workspace.outputDir']}") String outputDir,
+        @Value("#{jobExecutionContext['triplegeo.workspace.configByName']}") Map<String, String> configByName)
+        throws IOException
+    {
+        String inputNameExtension = EnumDataFormat.valueOf(inputFormatName).getFilenameExtension();
+        Path configPath = Paths.get(workDir).resolve(configByName.get(CONFIG_KEY));
+        
+        return RunInContainerBatchTasklet.builder()
+            .batcher(containerBatcher)
+            .id(String.format("%04x", jobId))
+            .key(inputFormatName + "-" + digestConfiguration(configPath))
+            .input(inputFiles.stream()
+                .filter(name -> StringUtils.getFilenameExtension(name).equals(inputNameExtension))
+                .map(name -> Paths.get(inputDir, name))
+                .collect(Collectors.toList()))
+            .outputDir(Paths.get(outputDir))
+            .config(configPath)
+            .build();
+    }
+    
+    @Bean("triplegeo.runInContainerBatchStep")
+    public Step runInContainerBatchStep(
+        @Qualifier("triplegeo.runInContainerBatchTasklet") RunInContainerBatchTasklet tasklet) 
+        throws Exception
+    {       
+        return stepBuilderFactory.get("triplegeo.runInContainerBatch")
+            .tasklet(tasklet)
+            .listener(tasklet)
+            .listener(stoppableTasklets.listener(tasklet))
+            .listener(new ReleaseResourcesStepListener(resourceLedger))
+            .listener(statusEventListener)
+            .build();
+    }
+    
+    /**
+     * Decide whether a job will be run as part of a batch (see {@link ContainerBatcher}) 
+     */
+    @Bean("triplegeo.batchingDecider")
+    public JobExecutionDecider batchingDecider(
+        @Qualifier("triplegeo.containerBatcher") ContainerBatcher containerBatcher)
+    {
+        return (jobExecution, stepExecution) -> {
+            boolean batch = containerBatcher.isEnabled() && 
+                Boolean.parseBoolean(jobExecution.getJobParameters().getString("batch"));
+            return new FlowExecutionStatus(batch? "BATCH" : "SINGLE");
+        };
+    }
+    
+    /**
+     * Decide whether a job will be run as a partitioned step (i.e. its input is split into
+     * shards, and a container is run for each shard). A job opts-in for partitioning by 
+     * setting the <tt>partitions</tt> parameter to a number greater than 1. 
+     * <p>
+     * Partitioning only applies to line-oriented (CSV) input of a certain size, and only when
+     * the serialization format of the output allows for concatenation (note that this 
+     * assumes that no blank nodes are generated).
+     */
+    @Bean("triplegeo.partitioningDecider")
+    public JobExecutionDecider partitioningDecider(
+        @Value("${slipo.rpc-server.tools.triplegeo.partitioning.min-input-size:64m}") String minInputSize)
+    {
+        final long minSize = ContainerConfigurer.parseSize(minInputSize);
+        
+        return (jobExecution, stepExecution) -> {
+            ExecutionContext executionContext = jobExecution.getExecutionContext();
+            String partitions = jobExecution.getJobParameters().getString("partitions");
+            TriplegeoConfiguration config = 
+                (TriplegeoConfiguration) executionContext.get("triplegeo.config");
+            
+            boolean partitioned = !StringUtils.isEmpty(partitions) && Integer.parseInt(partitions) > 1 && 
+                config.getInputFormat() == EnumDataFormat.CSV && 
+                CONCATENABLE_OUTPUT_FORMATS.contains(config.getOutputFormat()); 
+            if (partitioned) {
+                Path inputDir = Paths.get(executionContext.getString("triplegeo.workspace.inputDir"));
+                long inputSize = 0;
+                try (DirectoryStream<Path> paths = Files.newDirectoryStream(inputDir, "*.csv")) {
+                    for (Path path: paths)
+                        inputSize += Files.size(path);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot determine the size of input", e);
+                }
+                partitioned = inputSize >= minSize;
+            }
+            
+            return new FlowExecutionStatus(partitioned? "PARTITIONED" : "SINGLE");
+        };
+    }
+    
+    @Bean("triplegeo.splitInputTasklet")
+    @JobScope
+    public SplitInputTasklet splitInputTasklet(
+        @Value("#{jobParameters['partitions']}") String partitions,
+        @Value("#{jobExecutionContext['triplegeo.workspace.workDir']}") String workDir, 
+        @Value("#{jobExecutionContext['triplegeo.workspace.inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['triplegeo.workspace.inputFiles']}") List<String> inputFiles)
+    {
+        return SplitInputTasklet.builder()
+            .input(Paths.get(inputDir), inputFiles)
+            .extension(EnumDataFormat.CSV.getFilenameExtension())
+            .header(true)
+            .quote('"')
+            .shardsDirectory(Paths.get(workDir, "shards"))
+            .shards(Math.min(Integer.parseInt(partitions), maxPartitions))
+            .build();
+    }
+    
+    @Bean("triplegeo.splitInputStep")
+    public Step splitInputStep(
+        @Qualifier("triplegeo.splitInputTasklet") SplitInputTasklet tasklet)
+    {
+        StepExecutionListener stepContextListener = ExecutionContextPromotionListeners
+            .fromKeys("shardsDir", "shards")
+            .prefix("triplegeo.partitioning")
+            .strict(true)
+            .build();
+        
+        return stepBuilderFactory.get("triplegeo.splitInput")
+            .tasklet(tasklet)
+            .listener(stepContextListener)
+            .listener(statusEventListener)
+            .build();
+    }
+    
+    /**
+     * A partitioner that assigns a shard (of input) to each partition
+     */
+    @Bean("triplegeo.shardPartitioner")
+    @JobScope
+    public Partitioner shardPartitioner(
+        @Value("#{jobExecutionContext['triplegeo.partitioning.shards']}") Integer shards)
+    {
+        return gridSize -> {
+            Map<String, ExecutionContext> partitions = new LinkedHashMap<>();
+            for (int i = 0; i < shards; i++) {
+                ExecutionContext executionContext = new ExecutionContext();
+                executionContext.putInt("shard", i);
+                partitions.put("shard-" + i, executionContext);
+            }
+            return partitions;
+        };
+    }
+    
+    @Bean("triplegeo.runShardTasklet")
+    @StepScope
+    public CreateAndRunContainerTasklet runShardTasklet(
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.image}") String imageName,
+        @Value("#{jobExecution.jobInstance.id}") Long jobId,
+        @Value("#{stepExecutionContext['shard']}") Integer shard,
+        @Value("#{jobExecutionContext['triplegeo.partitioning.shardsDir']}") String shardsDir,
+        @Value("#{jobExecutionContext['triplegeo.workspace.workDir']}") String workDir, 
+        @Value("#{jobExecutionContext['triplegeo.workspace.inputFormat']}") String inputFormatName,
+        @Value("#{jobExecutionContext['triplegeo.workspace.inputFiles']}") List<String> inputFiles,
+        @Value("#{jobExecutionContext['triplegeo.workspace.configByName']}") Map<String, String> configByName,
+        @Value("#{jobParameters}") Map<String, Object> parameters)
+    {
+        String containerName = String.format("triplegeo-%04x-%d", jobId, shard);
+        
+        Path containerInputDir = containerDataDir.resolve("input");
+        Path containerOutputDir = containerDataDir.resolve("output");
+        Path containerConfigDir = containerDataDir;
+        
+        String input = formatInput(containerInputDir, inputFormatName, inputFiles);
+        
+        Path configPath = Paths.get(workDir).resolve(configByName.get(CONFIG_KEY));
+        
+        Path logFile = Paths.get(workDir).resolve("logs").resolve(containerName + ".log");
+        
+        CreateContainerTasklet createTasklet = CreateContainerTasklet.builder()
+            .client(docker)
+            .name(containerName)
+            .replaceExisting(true)
+            .container(configurer -> configurer
+                .image(imageName)
+                .job(JOB_NAME, jobId)
+                .volume(SplitInputTasklet.shardInputDir(Paths.get(shardsDir), shard), containerInputDir)
+                .volume(SplitInputTasklet.shardOutputDir(Paths.get(shardsDir), shard), containerOutputDir)
+                .volume(configPath, containerConfigDir.resolve(CONFIG_FILENAME), true)
+                .env("INPUT_FILE", input)
+                .env("CONFIG_FILE", containerConfigDir.resolve(CONFIG_FILENAME).toString())
+                .env("OUTPUT_DIR", containerOutputDir.toString()))
+            .container(configurer -> configureResources(configurer, parameters))
+            .build();
+        
+        RunContainerTasklet runTasklet = RunContainerTasklet.builder()
+            .client(docker)
+            .monitor(containerEventMonitor)
+            .logCollector(containerLogCollector, logFile)
+            .checkInterval(DEFAULT_CHECK_INTERVAL)
+            .heartbeatInterval(heartbeatInterval)
+            .timeout(DEFAULT_RUN_TIMEOUT)
+            .container(containerName)
+            .removeOnFinished(true)
+            .build();
+        
+        return new CreateAndRunContainerTasklet(createTasklet, runTasklet);
+    }
+    
+    @Bean("triplegeo.runShardStep")
+    public Step runShardStep(
+        @Qualifier("triplegeo.runShardTasklet") CreateAndRunContainerTasklet tasklet)
+    {
+        return stepBuilderFactory.get("triplegeo.runShard")
+            .tasklet(tasklet)
+            .listener(tasklet)
+            .listener(stoppableTasklets.listener(tasklet))
+            .build();
+    }
+    
+    @Bean("triplegeo.runPartitionedStep")
+    public Step runPartitionedStep(
+        @Qualifier("triplegeo.shardPartitioner") Partitioner partitioner,
+        @Qualifier("triplegeo.runShardStep") Step runShardStep)
+    {
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("triplegeo-shard-");
+        
+        return stepBuilderFactory.get("triplegeo.runPartitioned")
+            .partitioner("triplegeo.runShard", partitioner)
+            .step(runShardStep)
+            .gridSize(maxPartitions)
+            .taskExecutor(taskExecutor)
+            .listener(new ReleaseResourcesStepListener(resourceLedger))
+            .listener(statusEventListener)
+            .build();
+    }
+    
+    @Bean("triplegeo.mergeOutputTasklet")
+    @JobScope
+    public MergeOutputTasklet mergeOutputTasklet(
+        @Value("#{jobExecutionContext['triplegeo.partitioning.shardsDir']}") String shardsDir,
+        @Value("#{jobExecutionContext['triplegeo.partitioning.shards']}") Integer shards,
+        @Value("#{jobExecutionContext['triplegeo.workspace.outputDir']}") String outputDir)
+    {
+        return MergeOutputTasklet.builder()
+            .shards(Paths.get(shardsDir), shards)
+            .outputDirectory(Paths.get(outputDir))
+            .concatenate(CONCATENABLE_OUTPUT_FORMATS.stream()
+                .map(EnumDataFormat::getFilenameExtension)
+                .collect(Collectors.toList()))
+            .build();
+    }
+    
+    @Bean("triplegeo.mergeOutputStep")
+    public Step mergeOutputStep(
+        @Qualifier("triplegeo.mergeOutputTasklet") MergeOutputTasklet tasklet)
+    {
+        return stepBuilderFactory.get("triplegeo.mergeOutput")
+            .tasklet(tasklet)
+            .listener(statusEventListener)
+            .build();
+    }
+    
+    /**
+     * A cache for the results of Triplegeo jobs, keyed by a digest of the input, the 
+     * configuration and the image of the tool. 
+     * <p>
+     * The cache root must reside in the same filesystem as our data directory (so that 
+     * results can be hard-linked). The cache is not shared among nodes: if running alongside
+     * other nodes, each node keeps its own cache (under a subdirectory named after it).
+     * <p>
+     * The cache is only created if enabled (otherwise, the steps that use it are not part 
+     * of the job, and its job-scoped tasklets are never instantiated).
+     */
+    @Bean("triplegeo.resultCache")
+    @ConditionalOnProperty(prefix = "slipo.rpc-server.tools.triplegeo.cache", name = "enabled")
+    public ResultCache resultCache(
+        @Value("${slipo.rpc-server.tools.triplegeo.cache.root:}") String root,
+        @Value("${slipo.rpc-server.tools.triplegeo.cache.max-size:10g}") String maxSize) 
+        throws IOException
+    {
+        Path rootDir = StringUtils.isEmpty(root)? dataDir.resolve("cache") : Paths.get(root);
+        return new ResultCache(nodeLocal(rootDir), ContainerConfigurer.parseSize(maxSize));
+    }
+    
+    @Bean("triplegeo.lookupResultCacheTasklet")
+    @JobScope
+    public LookupResultCacheTasklet lookupResultCacheTasklet(
+        @Qualifier("triplegeo.resultCache") ResultCache resultCache,
+        @Value("${slipo.rpc-server.tools.triplegeo.docker.image}") String imageName,
+        @Value("#{jobExecutionContext['triplegeo.workspace.workDir']}") String workDir, 
+        @Value("#{jobExecutionContext['triplegeo.workspace.inputDir']}") String inputDir,
+        @Value("#{jobExecutionContext['triplegeo.workspace.inputFiles']}") List<String> inputFiles,
+        @Value("#{jobExecutionContext['triplegeo.workspace.outputDir']}") String outputDir,
+        @Value("#{jobExecutionContext['triplegeo.workspace.configByName']}") Map<String, String> configByName)
+        throws Exception
+    {
+        Path configPath = Paths.get(workDir).resolve(configByName.get(CONFIG_KEY));
+        
+        LookupResultCacheTasklet.Builder builder = LookupResultCacheTasklet.builder()
+            .cache(resultCache)
+            .outputDirectory(Paths.get(outputDir))
+            .key("image", docker.inspectImage(imageName).id())
+            .key("config", digestConfiguration(configPath));
+        
+        inputFiles.stream()
+            .sorted()
+            .forEach(name -> builder.key("input:" + name, Paths.get(inputDir, name)));
+        
+        return builder.build();
+    }
+    
+    @Bean("triplegeo.lookupResultCacheStep")
+    public Step lookupResultCacheStep(
+        @Qualifier("triplegeo.lookupResultCacheTasklet") LookupResultCacheTasklet tasklet)
+    {
+        StepExecutionListener stepContextListener = ExecutionContextPromotionListeners
+            .fromKeys("key", "hit")
+            .prefix("triplegeo.cache")
+            .strict(true)
+            .build();
+        
+        return stepBuilderFactory.get("triplegeo.lookupResultCache")
+            .tasklet(tasklet)
+            .listener(stepContextListener)
+            .listener(statusEventListener)
+            .build();
+    }
+    
+    @Bean("triplegeo.storeResultCacheTasklet")
+    @JobScope
+    public StoreResultCacheTasklet storeResultCacheTasklet(
+        @Qualifier("triplegeo.resultCache") ResultCache resultCache,
+        @Value("#{jobExecutionContext['triplegeo.cache.key']}") String key,
+        @Value("#{jobExecutionContext['triplegeo.workspace.outputDir']}") String outputDir)
+    {
+        return new StoreResultCacheTasklet(resultCache, key, Paths.get(outputDir));
+    }
+    
+    @Bean("triplegeo.storeResultCacheStep")
+    public Step storeResultCacheStep(
+        @Qualifier("triplegeo.storeResultCacheTasklet") StoreResultCacheTasklet tasklet)
+    {
+        return stepBuilderFactory.get("triplegeo.storeResultCache")
+            .tasklet(tasklet)
+            .listener(statusEventListener)
+            .build();
+    }
+    
+    /**
+     * Decide whether a job can skip running a container (because its result was found in
+     * the cache, and is already materialized in its output directory)
+     */
+    @Bean("triplegeo.resultCacheDecider")
+    public JobExecutionDecider resultCacheDecider()
+    {
+        return (jobExecution, stepExecution) -> {
+            Object hit = jobExecution.getExecutionContext().get("triplegeo.cache.hit");
+            return new FlowExecutionStatus(Boolean.TRUE.equals(hit)? "HIT" : "MISS");
+        };
+    }
+    
+    @Bean("triplegeo.postProcessOutputTasklet")
+    @JobScope
+    public PostProcessOutputTasklet postProcessOutputTasklet(
+        @Value("#{jobExecutionContext['triplegeo.workspace.outputDir']}") String outputDir)
+    {
+        return PostProcessOutputTasklet.builder()
+            .outputDirectory(Paths.get(outputDir))
+            .compress(CONCATENABLE_OUTPUT_FORMATS.stream()
+                .map(EnumDataFormat::getFilenameExtension)
+                .collect(Collectors.toList()))
+            .index(EnumDataFormat.N_TRIPLES.getFilenameExtension())
+            .build();
+    }
+    
+    @Bean("triplegeo.postProcessOutputStep")
+    public Step postProcessOutputStep(
+        @Qualifier("triplegeo.postProcessOutputTasklet") PostProcessOutputTasklet tasklet)
+        throws Exception
+    {
+        StepExecutionListener stepContextListener = ExecutionContextPromotionListeners
+            .fromKeys(
+                "triples", "subjects", "bbox", "bytes", "compressedBytes", "compressedFiles")
+            .prefix("triplegeo.output")
+            .strict(true)
+            .build();
+        
+        return stepBuilderFactory.get("triplegeo.postProcessOutput")
+            .tasklet(tasklet)
+            .listener(stepContextListener)
+            .listener(statusEventListener)
             .build();
     }
     
@@ -366,19 +1127,138 @@ public class TriplegeoJobConfiguration
         @Qualifier("triplegeo.validateConfigurationStep") Step validateConfigurationStep,
         @Qualifier("triplegeo.prepareWorkingDirectoryStep") Step prepareWorkingDirectoryStep,
         @Qualifier("triplegeo.createContainerStep") Step createContainerStep, 
-        @Qualifier("triplegeo.runContainerStep") Step runContainerStep)
+        @Qualifier("triplegeo.runContainerStep") Step runContainerStep,
+        @Qualifier("triplegeo.runInContainerPoolStep") Step runInContainerPoolStep,
+        @Qualifier("triplegeo.runInContainerBatchStep") Step runInContainerBatchStep,
+        @Qualifier("triplegeo.batchingDecider") JobExecutionDecider batchingDecider,
+        @Qualifier("triplegeo.containerPool") ContainerPool containerPool,
+        @Qualifier("triplegeo.partitioningDecider") JobExecutionDecider partitioningDecider,
+        @Qualifier("triplegeo.splitInputStep") Step splitInputStep,
+        @Qualifier("triplegeo.runPartitionedStep") Step runPartitionedStep,
+        @Qualifier("triplegeo.mergeOutputStep") Step mergeOutputStep,
+        @Qualifier("triplegeo.lookupResultCacheStep") Step lookupResultCacheStep,
+        @Qualifier("triplegeo.storeResultCacheStep") Step storeResultCacheStep,
+        @Qualifier("triplegeo.resultCacheDecider") JobExecutionDecider resultCacheDecider,
+        @Qualifier("triplegeo.postProcessOutputStep") Step postProcessOutputStep)
     {
+        // Either run inside a pooled container, or create (and run) a new container
+        Flow runFlow = containerPool.isEnabled()?
+            new FlowBuilder<Flow>("triplegeo.runInContainerPoolFlow")
+                .start(runInContainerPoolStep)
+                .build() :
+            new FlowBuilder<Flow>("triplegeo.runContainerFlow")
+                .start(createContainerStep)
+                .next(runContainerStep)
+                .build();
+        
+        // Split input into shards, run a container per shard, and merge outputs
+        Flow partitionedFlow = new FlowBuilder<Flow>("triplegeo.runPartitionedFlow")
+            .start(splitInputStep)
+            .next(runPartitionedStep)
+            .next(mergeOutputStep)
+            .build();
+        
+        // Choose how to convert (in a batch, in shards, or in a single container)
+        Flow convertFlow = new FlowBuilder<Flow>("triplegeo.convertFlow")
+            .start(batchingDecider)
+                .on("BATCH").to(runInContainerBatchStep)
+            .from(batchingDecider)
+                .on("*").to(partitioningDecider)
+            .from(partitioningDecider)
+                .on("PARTITIONED").to(partitionedFlow)
+            .from(partitioningDecider)
+                .on("*").to(runFlow)
+            .build();
+        
+        // Post-process the output (if enabled) after it is either converted or materialized
+        Flow outputFlow = postProcessEnabled?
+            new FlowBuilder<Flow>("triplegeo.postProcessFlow")
+                .start(postProcessOutputStep)
+                .build() :
+            null;
+        
+        if (!cacheEnabled) {
+            FlowBuilder<Flow> builder = new FlowBuilder<Flow>("triplegeo.flow")
+                .start(validateConfigurationStep)
+                .next(prepareWorkingDirectoryStep)
+                .next(convertFlow);
+            return (outputFlow == null? builder : builder.next(outputFlow)).end();
+        }
+        
+        // Convert only if the result is not found in the cache
+        if (outputFlow == null) {
+            return new FlowBuilder<Flow>("triplegeo.flow")
+                .start(validateConfigurationStep)
+                .next(prepareWorkingDirectoryStep)
+                .next(lookupResultCacheStep)
+                .next(resultCacheDecider)
+                    .on("HIT").end()
+                .from(resultCacheDecider)
+                    .on("*").to(convertFlow)
+                    .next(storeResultCacheStep)
+                .end();
+        }
+        
         return new FlowBuilder<Flow>("triplegeo.flow")
             .start(validateConfigurationStep)
             .next(prepareWorkingDirectoryStep)
-            .next(createContainerStep)
-            .next(runContainerStep)
+            .next(lookupResultCacheStep)
+            .next(resultCacheDecider)
+                .on("HIT").to(outputFlow)
+            .from(resultCacheDecider)
+                .on("*").to(convertFlow)
+                .next(storeResultCacheStep)
+                .next(outputFlow)
             .end();
     }
     
+    /**
+     * Validate the parameters of a job, so that an invalid job is rejected when submitted 
+     * (and not when its parameters are used, e.g. to determine its demand for resources).
+     */
+    @Bean("triplegeo.jobParametersValidator")
+    public JobParametersValidator jobParametersValidator()
+    {
+        return parameters -> {
+            String partitions = parameters.getString("partitions");
+            if (!StringUtils.isEmpty(partitions)) {
+                int n;
+                try {
+                    n = Integer.parseInt(partitions);
+                } catch (NumberFormatException ex) {
+                    n = -1;
+                }
+                if (n < 1)
+                    throw new JobParametersInvalidException(
+                        "Expected partitions to be a positive integer (found: " + partitions + ")");
+            }
+            // Reject malformed resource limits (before a container is ever configured)
+            validateResource(parameters, "resources.memory", ContainerConfigurer::parseMemory);
+            validateResource(parameters, "resources.cpus", ContainerConfigurer::parseCpus);
+            validateResource(parameters, "resources.cpuShares", ContainerConfigurer::parseCpuShares);
+            validateResource(parameters, "resources.pidsLimit", ContainerConfigurer::parsePidsLimit);
+        };
+    }
+    
+    private static void validateResource(
+            JobParameters parameters, String key, Function<String, ?> parser) 
+        throws JobParametersInvalidException
+    {
+        String value = parameters.getString(key);
+        if (StringUtils.isEmpty(value))
+            return;
+        try {
+            parser.apply(value);
+        } catch (IllegalArgumentException ex) {
+            throw new JobParametersInvalidException(
+                String.format("The parameter %s is invalid (found: %s): %s", key, value, ex.getMessage()));
+        }
+    }
+    
     @Bean("triplegeo.job")
     public Job job(
         @Qualifier("triplegeo.setupExecutionContextStep") Step setupExecutionContextStep,
+        @Qualifier("triplegeo.jobParametersValidator") JobParametersValidator parametersValidator,
         @Qualifier("triplegeo.flow") Flow flow)
     {
         // The standalone "triplegeo" job is built on top of the basic flow.
@@ -390,7 +1270,9 @@ public class TriplegeoJobConfiguration
         
         return jobBuilderFactory.get(JOB_NAME)
             .incrementer(new RunIdIncrementer())
+            .validator(parametersValidator)
             .listener(new LoggingJobExecutionListener())
+            .listener(statusEventListener)
             .start(setupExecutionContextStep)
             .next(flowStep)
             .build();
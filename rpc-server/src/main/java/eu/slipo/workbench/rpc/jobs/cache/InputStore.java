@@ -0,0 +1,484 @@
+package eu.slipo.workbench.rpc.jobs.cache;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A content-addressed store for the input files of jobs.
+ * <p>
+ * A file is stored (once) as a read-only object keyed by the SHA-256 digest of its contents.
+ * An archive (or a compressed file) is also extracted once: the store keeps a manifest that
+ * maps the digest of the archive to the objects of its extracted entries. The workspace of
+ * a job is assembled by hard-linking objects into its input directory.
+ * <p>
+ * The link count of an object is used as its reference count: an object with a single
+ * link is no longer referenced by any workspace, and is removed (if not recently unlinked)
+ * by {@link InputStore#collectGarbage()}. Looking up objects and linking to them happen
+ * under the same lock as collecting, so an object is never collected between the two.
+ * <p>
+ * The store must reside in the same filesystem as the workspaces. If a hard link cannot be
+ * created, the object is copied.
+ */
+public class InputStore
+{
+    private static Logger logger = LoggerFactory.getLogger(InputStore.class);
+
+    private static final Set<PosixFilePermission> FILE_PERMISSIONS =
+        PosixFilePermissions.fromString("r--r--r--");
+
+    private static final String MANIFEST_SUFFIX = ".manifest";
+
+    /**
+     * The maximum number of remembered digests of (external) files
+     */
+    private static final int DIGEST_MEMO_SIZE = 10 * 1000;
+
+    /**
+     * A snapshot of the store's metrics
+     */
+    public static class Stats
+    {
+        private final long objects;
+
+        private final long archives;
+
+        private final long hits;
+
+        private final long misses;
+
+        private final long collected;
+
+        private Stats(long objects, long archives, long hits, long misses, long collected)
+        {
+            this.objects = objects;
+            this.archives = archives;
+            this.hits = hits;
+            this.misses = misses;
+            this.collected = collected;
+        }
+
+        public long getObjects()
+        {
+            return objects;
+        }
+
+        public long getArchives()
+        {
+            return archives;
+        }
+
+        public long getHits()
+        {
+            return hits;
+        }
+
+        public long getMisses()
+        {
+            return misses;
+        }
+
+        public long getCollected()
+        {
+            return collected;
+        }
+    }
+
+    private final Path root;
+
+    private final Path objectsDir;
+
+    private final Path archivesDir;
+
+    private final Path tempDir;
+
+    /**
+     * The minimum age (milliseconds) of an unreferenced object before it is collected
+     */
+    private final long minAge;
+
+    /**
+     * A lock to serialize linking (or adding) objects with collecting them
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The digests of external files, keyed by their (real) path, size and modification time.
+     * This spares us from reading a popular (and unchanged) input on every job.
+     */
+    private final Map<String, String> digests =
+        Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+            {
+                return size() > DIGEST_MEMO_SIZE;
+            }
+        });
+
+    private final AtomicLong hits = new AtomicLong(0);
+
+    private final AtomicLong misses = new AtomicLong(0);
+
+    private final AtomicLong collected = new AtomicLong(0);
+
+    /**
+     * Create a store under a root directory.
+     *
+     * @param root The root directory
+     * @param minAge The minimum age (milliseconds) of an unreferenced object before it is
+     *   garbage-collected
+     * @throws IOException
+     */
+    public InputStore(Path root, long minAge) throws IOException
+    {
+        Assert.isTrue(root != null && root.isAbsolute(), "Expected an absolute path for the root");
+        Assert.isTrue(minAge >= 0, "Expected a non-negative age");
+
+        this.root = root;
+        this.minAge = minAge;
+        this.objectsDir = root.resolve("objects");
+        this.archivesDir = root.resolve("archives");
+        this.tempDir = root.resolve("tmp");
+
+        Files.createDirectories(objectsDir);
+        Files.createDirectories(archivesDir);
+        Files.createDirectories(tempDir);
+
+        // Discard incomplete objects (or extractions) left by a previous run
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(tempDir)) {
+            for (Path path: ds)
+                deleteRecursively(path);
+        }
+    }
+
+    public Path getRoot()
+    {
+        return root;
+    }
+
+    public Stats getStats() throws IOException
+    {
+        long objectCount, archiveCount;
+        try (Stream<Path> s = Files.walk(objectsDir)) {
+            objectCount = s.filter(Files::isRegularFile).count();
+        }
+        try (Stream<Path> s = Files.list(archivesDir)) {
+            archiveCount = s.count();
+        }
+        return new Stats(objectCount, archiveCount, hits.get(), misses.get(), collected.get());
+    }
+
+    /**
+     * Compute the digest of a file (or recall it, if the file is known and unchanged).
+     *
+     * @param path The path of a (regular) file
+     * @return a hex-encoded SHA-256 digest
+     * @throws IOException
+     */
+    public String digest(Path path) throws IOException
+    {
+        Path realPath = path.toRealPath();
+        String memoKey = String.format("%s@%d@%d",
+            realPath, Files.size(realPath), Files.getLastModifiedTime(realPath).toMillis());
+
+        String digest = digests.get(memoKey);
+        if (digest == null) {
+            digest = computeDigest(realPath);
+            digests.put(memoKey, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * Add a file to the store (if not already present), and link the object to a target path.
+     *
+     * @param path The path of a (regular) file
+     * @param target The target path
+     * @return the size of the object
+     * @throws IOException
+     */
+    public long putAndLink(Path path, Path target) throws IOException
+    {
+        final String digest = digest(path);
+        final Path objectPath = objectPath(digest);
+
+        synchronized (lock) {
+            if (Files.exists(objectPath)) {
+                hits.incrementAndGet();
+                return linkObject(objectPath, target);
+            }
+        }
+
+        // Copy (never link, the source is not ours to make read-only) into a temporary file
+
+        misses.incrementAndGet();
+        Path tempPath = Files.createTempFile(tempDir, "object-", null);
+        try {
+            Files.copy(path, tempPath, StandardCopyOption.REPLACE_EXISTING);
+            Files.setPosixFilePermissions(tempPath, FILE_PERMISSIONS);
+            Files.createDirectories(objectPath.getParent());
+            synchronized (lock) {
+                if (!Files.exists(objectPath))
+                    Files.move(tempPath, objectPath, StandardCopyOption.ATOMIC_MOVE);
+                return linkObject(objectPath, target);
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Link the files extracted from an archive (already known to the store) into a target
+     * directory.
+     *
+     * @param archiveDigest The digest of the archive
+     * @param targetDir The target directory
+     * @return a map of sizes keyed by the name of linked files (in the order of extraction),
+     *   or <tt>null</tt> if the archive is not known (or is stale): then, nothing is linked
+     * @throws IOException
+     */
+    public Map<String, Long> linkExtracted(String archiveDigest, Path targetDir) throws IOException
+    {
+        Path manifestPath = archivesDir.resolve(archiveDigest + MANIFEST_SUFFIX);
+
+        Map<String, String> manifest = new LinkedHashMap<>();
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        synchronized (lock) {
+            try (BufferedReader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int i = line.indexOf(' ');
+                    manifest.put(line.substring(i + 1), line.substring(0, i));
+                }
+            } catch (NoSuchFileException e) {
+                misses.incrementAndGet();
+                return null;
+            }
+
+            for (String digest: manifest.values()) {
+                if (!Files.exists(objectPath(digest))) {
+                    misses.incrementAndGet();
+                    return null; // an object is collected
+                }
+            }
+
+            for (Map.Entry<String, String> e: manifest.entrySet()) {
+                String name = e.getKey();
+                sizes.put(name, linkObject(objectPath(e.getValue()), targetDir.resolve(name)));
+            }
+        }
+
+        hits.incrementAndGet();
+        return sizes;
+    }
+
+    /**
+     * Create a (temporary) directory inside the store, into which an archive may be extracted
+     * before being added by {@link InputStore#putExtracted(String, Path)}. Extracting inside
+     * the store allows the extracted files to be moved (not copied) into objects.
+     *
+     * @throws IOException
+     */
+    public Path createStagingDirectory() throws IOException
+    {
+        return Files.createTempDirectory(tempDir, "extract-");
+    }
+
+    /**
+     * Remove a staging directory (if not already removed), e.g. after a failed extraction.
+     *
+     * @param stagingDir
+     * @throws IOException
+     */
+    public void discardStagingDirectory(Path stagingDir) throws IOException
+    {
+        Assert.isTrue(stagingDir != null && stagingDir.startsWith(tempDir),
+            "Expected a staging directory inside the store");
+
+        if (Files.exists(stagingDir))
+            deleteRecursively(stagingDir);
+    }
+
+    /**
+     * Add the files extracted from an archive into the store, and record a manifest for
+     * the archive. The staging directory is removed.
+     *
+     * @param archiveDigest The digest of the archive
+     * @param stagingDir The directory with the extracted files (see
+     *   {@link InputStore#createStagingDirectory()})
+     * @param names The names of the extracted files (in the order of extraction)
+     * @return a map of object digests keyed by the name of extracted files
+     * @throws IOException
+     */
+    public Map<String, String> putExtracted(String archiveDigest, Path stagingDir, List<String> names)
+        throws IOException
+    {
+        Assert.isTrue(stagingDir != null && stagingDir.startsWith(tempDir),
+            "Expected a staging directory inside the store");
+
+        Map<String, String> manifest = new LinkedHashMap<>();
+        try {
+            for (String name: names) {
+                Path path = stagingDir.resolve(name);
+                String digest = computeDigest(path);
+                addObject(path, objectPath(digest));
+                manifest.put(name, digest);
+            }
+
+            Path tempPath = Files.createTempFile(tempDir, "manifest-", null);
+            try {
+                try (BufferedWriter writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+                    for (Map.Entry<String, String> e: manifest.entrySet()) {
+                        writer.write(e.getValue() + " " + e.getKey());
+                        writer.newLine();
+                    }
+                }
+                Files.move(tempPath, archivesDir.resolve(archiveDigest + MANIFEST_SUFFIX),
+                    StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+        } finally {
+            deleteRecursively(stagingDir);
+        }
+
+        logger.debug("Stored {} extracted files for archive {}", manifest.size(), archiveDigest);
+        return manifest;
+    }
+
+
+    /**
+     * Remove objects that are not referenced by any workspace (i.e. have a single link),
+     * provided they were not linked (or unlinked) recently.
+     *
+     * @return the number of removed objects
+     * @throws IOException
+     */
+    public int collectGarbage() throws IOException
+    {
+        final long now = System.currentTimeMillis();
+
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> s = Files.walk(objectsDir)) {
+            s.filter(Files::isRegularFile).forEach(paths::add);
+        }
+
+        int n = 0;
+        for (Path path: paths) {
+            synchronized (lock) {
+                // The change time of an inode is updated whenever a link is added or removed
+                Integer nlink = (Integer) Files.getAttribute(path, "unix:nlink");
+                FileTime ctime = (FileTime) Files.getAttribute(path, "unix:ctime");
+                if (nlink > 1 || now - ctime.toMillis() < minAge)
+                    continue;
+                Files.delete(path);
+            }
+            n++;
+        }
+
+        collected.addAndGet(n);
+        if (n > 0)
+            logger.info("Collected {} unreferenced objects from {}", n, objectsDir);
+        return n;
+    }
+
+    private Path objectPath(String digest)
+    {
+        return objectsDir.resolve(digest.substring(0, 2)).resolve(digest);
+    }
+
+    /**
+     * Link an object to a target path (copy it, if a hard link cannot be created). The
+     * caller is expected to hold the lock (so that the object is not collected meanwhile).
+     *
+     * @return the size of the object
+     */
+    private long linkObject(Path objectPath, Path target) throws IOException
+    {
+        try {
+            Files.createLink(target, objectPath);
+        } catch (FileSystemException | UnsupportedOperationException e) {
+            if (e instanceof NoSuchFileException)
+                throw e;
+            Files.copy(objectPath, target);
+        }
+        return Files.size(target);
+    }
+
+    /**
+     * Move a (temporary) file into place as an object. If the object already exists, the
+     * file is discarded.
+     */
+    private void addObject(Path path, Path objectPath) throws IOException
+    {
+        Files.setPosixFilePermissions(path, FILE_PERMISSIONS);
+        Files.createDirectories(objectPath.getParent());
+
+        synchronized (lock) {
+            if (Files.exists(objectPath))
+                Files.delete(path);
+            else
+                Files.move(path, objectPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private static String computeDigest(Path path) throws IOException
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(path)) {
+            int n;
+            while ((n = in.read(buffer)) > 0)
+                digest.update(buffer, 0, n);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b: digest.digest())
+            sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException
+    {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.forEach(paths::add);
+        }
+        Collections.reverse(paths);
+        for (Path p: paths)
+            Files.deleteIfExists(p);
+    }
+}
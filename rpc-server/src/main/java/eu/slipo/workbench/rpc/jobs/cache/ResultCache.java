@@ -0,0 +1,378 @@
+package eu.slipo.workbench.rpc.jobs.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A content-addressed cache for the results (i.e. output files) of jobs.
+ * <p>
+ * An entry is keyed by a digest of everything that determines a result (e.g. the input
+ * bytes, the configuration, the image of the tool) and is stored as a directory of files
+ * under a cache root. A result is materialized by hard-linking the cached files into an
+ * output directory (so, both the cached files and the materialized outputs are read-only).
+ * <p>
+ * The cache is bounded in size: the least recently used entries are evicted when the
+ * total size exceeds a maximum.
+ */
+public class ResultCache
+{
+    private static Logger logger = LoggerFactory.getLogger(ResultCache.class);
+
+    private static final Set<PosixFilePermission> FILE_PERMISSIONS =
+        PosixFilePermissions.fromString("r--r--r--");
+
+    private static final String TEMP_PREFIX = ".tmp-";
+
+    /**
+     * A snapshot of the cache's metrics
+     */
+    public static class Stats
+    {
+        private final int entries;
+
+        private final long size;
+
+        private final long maxSize;
+
+        private final long hits;
+
+        private final long misses;
+
+        private final long evictions;
+
+        private Stats(int entries, long size, long maxSize, long hits, long misses, long evictions)
+        {
+            this.entries = entries;
+            this.size = size;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public int getEntries()
+        {
+            return entries;
+        }
+
+        public long getSize()
+        {
+            return size;
+        }
+
+        public long getMaxSize()
+        {
+            return maxSize;
+        }
+
+        public long getHits()
+        {
+            return hits;
+        }
+
+        public long getMisses()
+        {
+            return misses;
+        }
+
+        public long getEvictions()
+        {
+            return evictions;
+        }
+    }
+
+    /**
+     * A builder for keys (digests) of cache entries
+     */
+    public static class KeyBuilder
+    {
+        private final MessageDigest digest;
+
+        private KeyBuilder()
+        {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Add a (tagged) string to the key
+         */
+        public KeyBuilder add(String name, String value)
+        {
+            update(name + "=" + (value == null? "" : value));
+            return this;
+        }
+
+        /**
+         * Add the contents of a file to the key
+         */
+        public KeyBuilder add(String name, Path path) throws IOException
+        {
+            update(name + "@" + Files.size(path));
+            byte[] buffer = new byte[64 * 1024];
+            try (InputStream in = Files.newInputStream(path)) {
+                int n;
+                while ((n = in.read(buffer)) > 0)
+                    digest.update(buffer, 0, n);
+            }
+            return this;
+        }
+
+        private void update(String s)
+        {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            digest.update(ByteBuffer.allocate(4).putInt(b.length).array());
+            digest.update(b);
+        }
+
+        public String build()
+        {
+            StringBuilder sb = new StringBuilder();
+            for (byte b: digest.digest())
+                sb.append(String.format("%02x", b));
+            return sb.toString();
+        }
+    }
+
+    public static KeyBuilder keyBuilder()
+    {
+        return new KeyBuilder();
+    }
+
+    private final Path root;
+
+    private final long maxSize;
+
+    /**
+     * The size of entries, in access order (the least recently used comes first)
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long size = 0L;
+
+    private final AtomicLong hits = new AtomicLong(0);
+
+    private final AtomicLong misses = new AtomicLong(0);
+
+    private final AtomicLong evictions = new AtomicLong(0);
+
+    /**
+     * Create a cache under a root directory. Existing entries are loaded (in the order of
+     * their last access).
+     *
+     * @param root The root directory
+     * @param maxSize The maximum total size (bytes) of entries
+     * @throws IOException
+     */
+    public ResultCache(Path root, long maxSize) throws IOException
+    {
+        Assert.isTrue(root != null && root.isAbsolute(), "Expected an absolute path for the root");
+        Assert.isTrue(maxSize > 0, "Expected a positive size");
+
+        this.root = root;
+        this.maxSize = maxSize;
+
+        Files.createDirectories(root);
+
+        List<Path> dirs = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(root)) {
+            for (Path dir: ds) {
+                if (dir.getFileName().toString().startsWith(TEMP_PREFIX))
+                    deleteRecursively(dir); // an incomplete entry
+                else if (Files.isDirectory(dir))
+                    dirs.add(dir);
+            }
+        }
+
+        dirs.sort(Comparator.comparing(ResultCache::lastModifiedTime));
+        for (Path dir: dirs) {
+            long n = sizeOf(dir);
+            entries.put(dir.getFileName().toString(), n);
+            size += n;
+        }
+
+        logger.info("Loaded {} cached results ({} bytes) from {}", entries.size(), size, root);
+
+        evict();
+    }
+
+    public Path getRoot()
+    {
+        return root;
+    }
+
+    public synchronized Stats getStats()
+    {
+        return new Stats(
+            entries.size(), size, maxSize, hits.get(), misses.get(), evictions.get());
+    }
+
+    /**
+     * Materialize a cached result (if any) into an output directory.
+     *
+     * @param key The key of the entry
+     * @param outputDir The (existing) output directory
+     * @return <tt>true</tt> on a cache hit, <tt>false</tt> otherwise
+     * @throws IOException
+     */
+    public boolean materialize(String key, Path outputDir) throws IOException
+    {
+        Assert.notNull(key, "A key is required");
+        Assert.isTrue(outputDir != null && Files.isDirectory(outputDir),
+            "Expected an existing output directory");
+
+        final Path dir = root.resolve(key);
+
+        // Link while holding the lock that eviction also holds, so that the entry is not
+        // evicted (i.e. its files deleted) while being linked. Linking is cheap (no data 
+        // is copied), so the lock is not held for long.
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                misses.incrementAndGet();
+                return false;
+            }
+            Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis()));
+
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                for (Path path: ds) {
+                    Path target = outputDir.resolve(path.getFileName());
+                    Files.deleteIfExists(target); // a leftover of a failed attempt
+                    Files.createLink(target, path);
+                }
+            }
+        }
+
+        hits.incrementAndGet();
+        logger.debug("Materialized cached result {} into {}", key, outputDir);
+        return true;
+    }
+
+    /**
+     * Store the files of an output directory as a cache entry (replacing nothing, if
+     * an entry for this key already exists).
+     *
+     * @param key The key of the entry
+     * @param outputDir The output directory
+     * @throws IOException
+     */
+    public void store(String key, Path outputDir) throws IOException
+    {
+        Assert.notNull(key, "A key is required");
+        Assert.isTrue(outputDir != null && Files.isDirectory(outputDir),
+            "Expected an existing output directory");
+
+        synchronized (this) {
+            if (entries.containsKey(key))
+                return;
+        }
+
+        // Link (or copy) into a temporary directory, then move it into place
+
+        Path tempDir = Files.createTempDirectory(root, TEMP_PREFIX);
+        long n = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(outputDir)) {
+            for (Path path: ds) {
+                if (!Files.isRegularFile(path))
+                    continue;
+                Path target = tempDir.resolve(path.getFileName());
+                try {
+                    Files.createLink(target, path);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(path, target);
+                }
+                Files.setPosixFilePermissions(target, FILE_PERMISSIONS);
+                n += Files.size(target);
+            }
+        }
+
+        synchronized (this) {
+            try {
+                Files.move(tempDir, root.resolve(key), StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                deleteRecursively(tempDir); // stored concurrently
+                return;
+            }
+            entries.put(key, n);
+            size += n;
+            evict();
+        }
+
+        logger.debug("Stored result {} ({} bytes) from {}", key, n, outputDir);
+    }
+
+    /**
+     * Evict least recently used entries until we fit into our maximum size. Note that
+     * evicting an entry does not affect outputs that are already materialized from it.
+     */
+    private synchronized void evict() throws IOException
+    {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            deleteRecursively(root.resolve(e.getKey()));
+            size -= e.getValue();
+            it.remove();
+            evictions.incrementAndGet();
+            logger.debug("Evicted cached result {} ({} bytes)", e.getKey(), e.getValue());
+        }
+    }
+
+    private static FileTime lastModifiedTime(Path path)
+    {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0L);
+        }
+    }
+
+    private static long sizeOf(Path dir) throws IOException
+    {
+        long n = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+            for (Path path: ds)
+                n += Files.size(path);
+        }
+        return n;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException
+    {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.forEach(paths::add);
+        }
+        Collections.reverse(paths);
+        for (Path p: paths)
+            Files.delete(p);
+    }
+}
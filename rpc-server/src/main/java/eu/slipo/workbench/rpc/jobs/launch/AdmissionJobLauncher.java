@@ -0,0 +1,925 @@
+package eu.slipo.workbench.rpc.jobs.launch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionException;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.JobRegistry;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.launch.NoSuchJobException;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteException;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.JobRestartException;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.rpc.domain.JobQueueEntryEntity;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+import eu.slipo.workbench.rpc.repository.JobQueueRepository;
+import eu.slipo.workbench.rpc.repository.NodeRepository;
+
+/**
+ * A job launcher that admits job executions only when the host has enough resources
+ * (as accounted by a {@link ResourceLedger}) to run them.
+ * <p>
+ * A job execution is always created (as {@link BatchStatus#STARTING}) when submitted, 
+ * but it is handed to the task executor only when its demand fits into the remaining 
+ * capacity. Until then, it waits in a queue. A queued execution that is requested
+ * to stop is never launched (and is marked as {@link BatchStatus#STOPPED}).
+ * <p>
+ * The queue is ordered by priority (higher first). Among submissions of the same 
+ * priority, the one whose submitter has the least share of running executions (relative
+ * to the submitter's weight) is preferred, and then the oldest one. The number of running
+ * executions per submitter may also be bounded. If a queue repository is provided, 
+ * queued executions are persisted and recovered on restart.
+ * <p>
+ * If a node repository is also provided, the persistent queue is shared among several nodes 
+ * (i.e. launchers). Each node periodically picks up entries submitted elsewhere, and admits 
+ * them according to its own capacity; an admitted execution is claimed (i.e. removed from 
+ * the queue) before being launched, so that it runs on exactly one node.
+ * <p>
+ * The checks performed before creating an execution are the same as those of a 
+ * {@link SimpleJobLauncher}. 
+ */
+public class AdmissionJobLauncher 
+    implements JobLauncher, InitializingBean, ApplicationListener<ContextRefreshedEvent>
+{
+    private static Logger logger = LoggerFactory.getLogger(AdmissionJobLauncher.class);
+    
+    /**
+     * Determine the resources needed by a job
+     */
+    @FunctionalInterface
+    public interface DemandResolver
+    {
+        /**
+         * @throws JobParametersInvalidException if the demand cannot be determined from 
+         *   the given parameters (e.g. a malformed resource limit)
+         */
+        ResourceLedger.Demand resolve(String jobName, JobParameters parameters)
+            throws JobParametersInvalidException;
+    }
+    
+    /**
+     * A snapshot of the state of the admission queue
+     */
+    public static class QueueStats
+    {
+        private final int queued;
+        
+        private final long oldestWait;
+        
+        private final long admitted;
+        
+        private final long averageWait;
+        
+        private final long maxWait;
+        
+        private QueueStats(int queued, long oldestWait, long admitted, long averageWait, long maxWait)
+        {
+            this.queued = queued;
+            this.oldestWait = oldestWait;
+            this.admitted = admitted;
+            this.averageWait = averageWait;
+            this.maxWait = maxWait;
+        }
+        
+        /**
+         * The number of queued executions
+         */
+        public int getQueued()
+        {
+            return queued;
+        }
+        
+        /**
+         * The time (milliseconds) the oldest queued execution has been waiting
+         */
+        public long getOldestWait()
+        {
+            return oldestWait;
+        }
+        
+        /**
+         * The number of executions admitted so far
+         */
+        public long getAdmitted()
+        {
+            return admitted;
+        }
+        
+        /**
+         * The average time (milliseconds) that admitted executions have waited
+         */
+        public long getAverageWait()
+        {
+            return averageWait;
+        }
+        
+        /**
+         * The maximum time (milliseconds) that an admitted execution has waited
+         */
+        public long getMaxWait()
+        {
+            return maxWait;
+        }
+    }
+    
+    /**
+     * The outcome of a single submission out of many (see {@link AdmissionJobLauncher#runAll})
+     */
+    public static class Outcome
+    {
+        private final JobExecution execution;
+        
+        private final JobExecutionException exception;
+        
+        private Outcome(JobExecution execution, JobExecutionException exception)
+        {
+            this.execution = execution;
+            this.exception = exception;
+        }
+        
+        /**
+         * The created execution, or <tt>null</tt> if the submission has failed
+         */
+        public JobExecution getExecution()
+        {
+            return execution;
+        }
+        
+        /**
+         * The reason the submission has failed, or <tt>null</tt> if it succeeded
+         */
+        public JobExecutionException getException()
+        {
+            return exception;
+        }
+    }
+    
+    private static class Submission
+    {
+        private final Job job;
+        
+        private final JobParameters parameters;
+        
+        private final ResourceLedger.Demand demand;
+        
+        private final String submitter;
+        
+        private final int priority;
+        
+        private final long submitted;
+        
+        private JobExecution execution;
+        
+        /**
+         * Indicate that this submission already holds a reservation (i.e. it resumes a job
+         * instance that consumes resources), so it is not queued
+         */
+        private boolean resumed = false;
+        
+        private Submission(
+            Job job, JobParameters parameters, JobExecution execution, ResourceLedger.Demand demand,
+            String submitter, int priority, long submitted)
+        {
+            this.job = job;
+            this.parameters = parameters;
+            this.execution = execution;
+            this.demand = demand;
+            this.submitter = submitter;
+            this.priority = priority;
+            this.submitted = submitted;
+        }
+        
+        private long instanceId()
+        {
+            return execution.getJobInstance().getInstanceId();
+        }
+    }
+    
+    private JobRepository jobRepository;
+    
+    private TaskExecutor taskExecutor;
+    
+    private ResourceLedger ledger;
+    
+    private DemandResolver demandResolver = (jobName, parameters) -> ResourceLedger.Demand.NONE;
+    
+    private JobQueueRepository queueRepository;
+    
+    private JobExplorer jobExplorer;
+    
+    private JobRegistry jobRegistry;
+    
+    private ToDoubleFunction<String> weightResolver = submitter -> 1.0;
+    
+    private int maxRunningPerSubmitter = 0;
+    
+    private NodeRepository nodeRepository;
+    
+    private String nodeName;
+    
+    private TaskScheduler taskScheduler;
+    
+    private long queuePollInterval = 2000L;
+    
+    private boolean recovered = false;
+    
+    private final List<Submission> queue = new ArrayList<>();
+    
+    /**
+     * The submitter of each admitted (and not yet released) job instance
+     */
+    private final Map<Long, String> admittedBy = new HashMap<>();
+    
+    /**
+     * The number of admitted (and not yet released) job instances per submitter
+     */
+    private final Map<String, Integer> runningBySubmitter = new HashMap<>();
+    
+    /**
+     * The executions launched (and still running) in this JVM
+     */
+    private final Map<Long, JobExecution> launched = new ConcurrentHashMap<>();
+    
+    private long admittedCount = 0L;
+    
+    private long totalWait = 0L;
+    
+    private long maxWait = 0L;
+    
+    public void setJobRepository(JobRepository jobRepository)
+    {
+        this.jobRepository = jobRepository;
+    }
+    
+    public void setTaskExecutor(TaskExecutor taskExecutor)
+    {
+        this.taskExecutor = taskExecutor;
+    }
+    
+    public void setLedger(ResourceLedger ledger)
+    {
+        this.ledger = ledger;
+    }
+    
+    public void setDemandResolver(DemandResolver demandResolver)
+    {
+        this.demandResolver = demandResolver;
+    }
+    
+    /**
+     * Set a repository to persist queued executions into. If set, a job explorer and
+     * a job registry are also required (to recover the queue on startup).
+     */
+    public void setQueueRepository(JobQueueRepository queueRepository)
+    {
+        this.queueRepository = queueRepository;
+    }
+    
+    public void setJobExplorer(JobExplorer jobExplorer)
+    {
+        this.jobExplorer = jobExplorer;
+    }
+    
+    public void setJobRegistry(JobRegistry jobRegistry)
+    {
+        this.jobRegistry = jobRegistry;
+    }
+    
+    /**
+     * Set a function that determines the (positive) weight of a submitter. A submitter 
+     * of weight 2 is entitled to twice as many running executions as a submitter of 
+     * weight 1. 
+     */
+    public void setWeightResolver(ToDoubleFunction<String> weightResolver)
+    {
+        this.weightResolver = weightResolver;
+    }
+    
+    /**
+     * Bound the number of running executions per submitter. A non-positive number
+     * means no bound.
+     */
+    public void setMaxRunningPerSubmitter(int maxRunningPerSubmitter)
+    {
+        this.maxRunningPerSubmitter = maxRunningPerSubmitter;
+    }
+    
+    /**
+     * Share the persistent queue with other nodes, claiming (on behalf of a named node)
+     * the executions admitted here. A queue repository and a task scheduler are also
+     * required.
+     */
+    public void setNodeRepository(NodeRepository nodeRepository, String nodeName)
+    {
+        this.nodeRepository = nodeRepository;
+        this.nodeName = nodeName;
+    }
+    
+    public void setTaskScheduler(TaskScheduler taskScheduler)
+    {
+        this.taskScheduler = taskScheduler;
+    }
+    
+    /**
+     * Set the interval (milliseconds) to pick up entries submitted (to a shared queue) by 
+     * other nodes.
+     */
+    public void setQueuePollInterval(long queuePollInterval)
+    {
+        this.queuePollInterval = queuePollInterval;
+    }
+    
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        Assert.state(jobRepository != null, "A job repository is required");
+        Assert.state(taskExecutor != null, "A task executor is required");
+        Assert.state(ledger != null, "A resource ledger is required");
+        Assert.state(demandResolver != null, "A demand resolver is required");
+        Assert.state(weightResolver != null, "A weight resolver is required");
+        Assert.state(queueRepository == null || (jobExplorer != null && jobRegistry != null), 
+            "A job explorer and a job registry are required to recover a persistent queue");
+        Assert.state(nodeRepository == null || nodeName != null, "A node name is required");
+        Assert.state(nodeRepository == null || (queueRepository != null && taskScheduler != null), 
+            "A queue repository and a task scheduler are required to share a queue");
+        Assert.state(nodeRepository == null || queuePollInterval > 0, 
+            "The interval to poll a shared queue must be positive");
+        
+        ledger.addReleaseListener(this::released);
+    }
+    
+    /**
+     * Recover persisted queue entries (once the application context is ready, so that
+     * all jobs are registered).
+     */
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event)
+    {
+        if (queueRepository == null)
+            return;
+        
+        synchronized (this) {
+            if (recovered)
+                return;
+            recovered = true;
+        }
+        
+        int n = loadQueue();
+        if (n > 0)
+            logger.info("Recovered {} queued job executions", n);
+        
+        drain();
+        
+        if (nodeRepository != null) {
+            taskScheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    synchronizeQueue();
+                } catch (Exception e) {
+                    logger.warn("Failed to poll the shared job queue: {}", e.getMessage());
+                }
+            }, new Date(System.currentTimeMillis() + queuePollInterval), queuePollInterval);
+        }
+    }
+    
+    /**
+     * Pick up entries submitted (to a shared queue) by other nodes, and admit as many as 
+     * possible. Entries that are claimed by other nodes are dropped when selected (see 
+     * {@link #drain()}).
+     */
+    public void synchronizeQueue()
+    {
+        Assert.state(queueRepository != null, "The queue is not persistent");
+        
+        int n = loadQueue();
+        if (n > 0)
+            logger.debug("Picked up {} queued job executions", n);
+        
+        drain();
+    }
+    
+    /**
+     * Load persisted queue entries (that are not already queued here) 
+     * 
+     * @return the number of loaded entries
+     */
+    private int loadQueue()
+    {
+        Set<Long> queuedIds = new HashSet<>();
+        synchronized (this) {
+            for (Submission s: queue)
+                queuedIds.add(s.execution.getId());
+        }
+        
+        int n = 0;
+        for (JobQueueEntryEntity entry: queueRepository.findAllInOrder()) {
+            if (queuedIds.contains(entry.getExecutionId()))
+                continue;
+            
+            JobExecution execution = jobExplorer.getJobExecution(entry.getExecutionId());
+            if (execution == null || execution.getStatus() != BatchStatus.STARTING) {
+                queueRepository.deleteByExecutionId(entry.getExecutionId());
+                continue;
+            }
+            
+            Job job = null;
+            try {
+                job = jobRegistry.getJob(entry.getJobName());
+            } catch (NoSuchJobException ex) {
+                if (nodeRepository == null) {
+                    logger.warn("Cannot recover queued execution #{}: no such job {}", 
+                        execution.getId(), entry.getJobName());
+                    queueRepository.deleteByExecutionId(entry.getExecutionId());
+                }
+                // else: leave a shared entry for another node (that may know of this job)
+                continue;
+            }
+            
+            JobParameters parameters = execution.getJobParameters();
+            ResourceLedger.Demand demand = null;
+            try {
+                demand = demandResolver.resolve(job.getName(), parameters);
+            } catch (JobParametersInvalidException ex) {
+                logger.warn("Cannot recover queued execution #{}: {}", execution.getId(), ex.getMessage());
+                abandon(execution, ex);
+                queueRepository.deleteByExecutionId(entry.getExecutionId());
+                continue;
+            }
+            synchronized (this) {
+                queue.add(new Submission(job, parameters, execution, demand, 
+                    entry.getSubmitter(), entry.getPriority(), entry.getSubmittedAt().getTime()));
+            }
+            n++;
+        }
+        
+        return n;
+    }
+    
+    @Override
+    public JobExecution run(Job job, JobParameters parameters) 
+        throws JobExecutionAlreadyRunningException, JobRestartException, 
+            JobInstanceAlreadyCompleteException, JobParametersInvalidException
+    {
+        return run(job, parameters, null, 0);
+    }
+    
+    /**
+     * Run a job on behalf of a submitter.
+     * 
+     * @param job
+     * @param parameters
+     * @param submitter The name of the submitter (may be <tt>null</tt>)
+     * @param priority The priority of this submission (higher is served first)
+     * 
+     * @see JobLauncher#run(Job, JobParameters)
+     */
+    public JobExecution run(Job job, JobParameters parameters, String submitter, int priority) 
+        throws JobExecutionAlreadyRunningException, JobRestartException, 
+            JobInstanceAlreadyCompleteException, JobParametersInvalidException
+    {
+        Assert.notNull(job, "The job must not be null");
+        Assert.notNull(parameters, "The job parameters must not be null");
+        
+        Submission submission = prepare(job, parameters, submitter, priority);
+        
+        // Persist unless it is a resumed execution (which is admitted at once)
+        if (queueRepository != null && !submission.resumed) {
+            try {
+                queueRepository.save(new JobQueueEntryEntity(
+                    job.getName(), submission.execution.getId(), submitter, priority));
+            } catch (RuntimeException ex) {
+                abandon(submission.execution, ex);
+                throw ex;
+            }
+        }
+        
+        enqueue(Collections.singletonList(submission));
+        return submission.execution;
+    }
+    
+    /**
+     * Resume a job instance that already consumes resources on the host (e.g. its container
+     * kept running while we were restarted). Resources are reserved regardless of the 
+     * remaining capacity, and the execution is admitted at once (it is not queued).
+     * 
+     * @param job
+     * @param parameters
+     * 
+     * @see JobLauncher#run(Job, JobParameters)
+     */
+    public JobExecution resume(Job job, JobParameters parameters) 
+        throws JobExecutionAlreadyRunningException, JobRestartException, 
+            JobInstanceAlreadyCompleteException, JobParametersInvalidException
+    {
+        Assert.notNull(job, "The job must not be null");
+        Assert.notNull(parameters, "The job parameters must not be null");
+        
+        Submission submission = prepare(job, parameters, null, 0);
+        ledger.reserve(submission.instanceId(), submission.demand);
+        submission.resumed = true;
+        
+        enqueue(Collections.singletonList(submission));
+        return submission.execution;
+    }
+    
+    /**
+     * Run a job for each one of many sets of parameters on behalf of a submitter. 
+     * <p>
+     * This is equivalent to calling {@link AdmissionJobLauncher#run(Job, JobParameters, String, int)}
+     * for each set of parameters, except that queue entries are persisted in a single (batched) 
+     * write, and the queue is drained once. A submission that fails does not affect the others.
+     * 
+     * @param job
+     * @param parametersList
+     * @param submitter The name of the submitter (may be <tt>null</tt>)
+     * @param priority The priority of these submissions
+     * @return a list of outcomes (in the order of given parameters)
+     */
+    public List<Outcome> runAll(Job job, List<JobParameters> parametersList, String submitter, int priority)
+    {
+        Assert.notNull(job, "The job must not be null");
+        Assert.notNull(parametersList, "The list of job parameters must not be null");
+        
+        List<Outcome> outcomes = new ArrayList<>(parametersList.size());
+        List<Submission> submissions = new ArrayList<>(parametersList.size());
+        List<JobQueueEntryEntity> entries = new ArrayList<>(parametersList.size());
+        Map<Submission, Integer> queuedIndex = new IdentityHashMap<>();
+        
+        for (JobParameters parameters: parametersList) {
+            Submission submission = null;
+            try {
+                submission = prepare(job, parameters, submitter, priority);
+            } catch (JobExecutionException ex) {
+                outcomes.add(new Outcome(null, ex));
+                continue;
+            }
+            if (queueRepository != null && !submission.resumed) {
+                entries.add(new JobQueueEntryEntity(
+                    job.getName(), submission.execution.getId(), submitter, priority));
+                queuedIndex.put(submission, outcomes.size());
+            }
+            outcomes.add(new Outcome(submission.execution, null));
+            submissions.add(submission);
+        }
+        
+        if (queueRepository != null && !entries.isEmpty()) {
+            try {
+                queueRepository.save(entries);
+            } catch (RuntimeException ex) {
+                // Nothing is queued: abandon the created executions (so that they do not 
+                // appear as starting forever), and report them as failed
+                logger.error("Failed to queue {} executions of job {}: {}", 
+                    entries.size(), job.getName(), ex.getMessage());
+                JobExecutionException failure = 
+                    new JobExecutionException("Failed to queue the execution: " + ex.getMessage(), ex);
+                for (Map.Entry<Submission, Integer> e: queuedIndex.entrySet()) {
+                    abandon(e.getKey().execution, ex);
+                    outcomes.set(e.getValue(), new Outcome(null, failure));
+                }
+                submissions.removeIf(queuedIndex::containsKey);
+            }
+        }
+        
+        enqueue(submissions);
+        
+        logger.info("Submitted {} of {} executions of job {} for {}", 
+            submissions.size(), parametersList.size(), job.getName(), submitter);
+        return outcomes;
+    }
+    
+    /**
+     * Check that a job can be run (as {@link SimpleJobLauncher} does), and create an execution.
+     */
+    private Submission prepare(Job job, JobParameters parameters, String submitter, int priority)
+        throws JobExecutionAlreadyRunningException, JobRestartException, 
+            JobInstanceAlreadyCompleteException, JobParametersInvalidException
+    {
+        JobExecution lastExecution = jobRepository.getLastJobExecution(job.getName(), parameters);
+        if (lastExecution != null) {
+            if (!job.isRestartable())
+                throw new JobRestartException("The job instance already exists and is not restartable");
+            for (StepExecution stepExecution: lastExecution.getStepExecutions()) {
+                BatchStatus status = stepExecution.getStatus();
+                if (status.isRunning() || status == BatchStatus.STOPPING)
+                    throw new JobExecutionAlreadyRunningException(
+                        "A job execution for this job is already running: " + lastExecution);
+                if (status == BatchStatus.UNKNOWN)
+                    throw new JobRestartException(
+                        "Cannot restart step [" + stepExecution.getStepName() + "] from UNKNOWN status");
+            }
+        }
+        
+        // Validate (and determine the demand) before an execution is created
+        job.getJobParametersValidator().validate(parameters);
+        ResourceLedger.Demand demand = demandResolver.resolve(job.getName(), parameters);
+        
+        JobExecution execution = jobRepository.createJobExecution(job.getName(), parameters);
+        
+        Submission submission = new Submission(
+            job, parameters, execution, demand, submitter, priority, System.currentTimeMillis());
+        submission.resumed = ledger.isReserved(submission.instanceId());
+        return submission;
+    }
+    
+    /**
+     * Add submissions to the queue, and admit as many as possible
+     */
+    private void enqueue(List<Submission> submissions)
+    {
+        if (submissions.isEmpty())
+            return;
+        
+        synchronized (this) {
+            queue.addAll(submissions);
+        }
+        drain();
+        
+        synchronized (this) {
+            if (submissions.size() == 1) {
+                Submission s = submissions.get(0);
+                if (queue.contains(s))
+                    logger.info("Queued job {}#{} (execution #{}) for {} with priority {}: {} executions are waiting", 
+                        s.job.getName(), s.instanceId(), s.execution.getId(), s.submitter, s.priority, queue.size());
+            } else {
+                Set<Submission> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+                queued.addAll(queue);
+                long n = submissions.stream().filter(queued::contains).count();
+                logger.info("Queued {} of {} submitted executions: {} executions are waiting", 
+                    n, submissions.size(), queue.size());
+            }
+        }
+    }
+    
+    /**
+     * Get the executions launched by this launcher that are still running (in this JVM). 
+     * These are the actual instances updated by running jobs.
+     */
+    public Collection<JobExecution> getLaunchedExecutions()
+    {
+        return Collections.unmodifiableCollection(launched.values());
+    }
+    
+    public synchronized QueueStats getQueueStats()
+    {
+        long now = System.currentTimeMillis();
+        long oldestSubmitted = queue.stream().mapToLong(s -> s.submitted).min().orElse(now);
+        return new QueueStats(
+            queue.size(), 
+            now - oldestSubmitted, 
+            admittedCount, 
+            admittedCount > 0? (totalWait / admittedCount) : 0L, 
+            maxWait);
+    }
+    
+    private int runningCount(String submitter)
+    {
+        return runningBySubmitter.getOrDefault(submitter, 0);
+    }
+    
+    private double share(String submitter)
+    {
+        double weight = weightResolver.applyAsDouble(submitter);
+        return runningCount(submitter) / (weight > 0? weight : 1.0);
+    }
+    
+    /**
+     * Select the next submission to be admitted (or <tt>null</tt> if none is eligible)
+     */
+    private Submission selectNext()
+    {
+        Submission next = null;
+        for (Submission s: queue) {
+            // A resumed execution holds its reservation: admit at once
+            if (s.resumed)
+                return s;
+            if (maxRunningPerSubmitter > 0 && runningCount(s.submitter) >= maxRunningPerSubmitter)
+                continue;
+            if (next == null) {
+                next = s;
+            } else if (s.priority != next.priority) {
+                if (s.priority > next.priority)
+                    next = s;
+            } else {
+                int c = Double.compare(share(s.submitter), share(next.submitter));
+                if (c < 0 || (c == 0 && s.submitted < next.submitted))
+                    next = s;
+            }
+        }
+        return next;
+    }
+    
+    /**
+     * Admit (and launch) queued executions while their demand fits into the remaining
+     * capacity. If the selected submission does not fit, nothing else is admitted (so a
+     * large demand is not overtaken indefinitely).
+     * <p>
+     * The monitor is only held while examining the queue and the ledger: the repository 
+     * (and the shared queue) is accessed outside of it, so that a slow database does not 
+     * block submitters and the release of resources.
+     */
+    private void drain()
+    {
+        while (true) {
+            Submission s;
+            synchronized (this) {
+                s = selectNext();
+            }
+            if (s == null)
+                break;
+            
+            // Refresh the execution (it may have been requested to stop while queued)
+            JobExecution execution = jobRepository.getLastJobExecution(s.job.getName(), s.parameters);
+            
+            final boolean reserved;
+            synchronized (this) {
+                if (selectNext() != s)
+                    continue; // admitted by a concurrent drain, or overtaken meanwhile
+                if (execution != null && execution.getId().equals(s.execution.getId()))
+                    s.execution = execution;
+                if (s.execution.getStatus() == BatchStatus.STOPPING) {
+                    queue.remove(s);
+                    reserved = false;
+                } else if (s.execution.getStatus() != BatchStatus.STARTING) {
+                    // Launched (or stopped) by another node sharing the queue
+                    queue.remove(s);
+                    continue;
+                } else {
+                    reserved = ledger.isReserved(s.instanceId());
+                    if (!ledger.tryReserve(s.instanceId(), s.demand))
+                        break;
+                    queue.remove(s);
+                }
+            }
+            
+            if (s.execution.getStatus() == BatchStatus.STOPPING) {
+                if (claim(s))
+                    stopQueued(s);
+                continue;
+            }
+            
+            final long instanceId = s.instanceId();
+            boolean claimed = claim(s);
+            synchronized (this) {
+                if (!claimed) {
+                    // Claimed by another node: drop it, and undo the reservation made for it
+                    if (!reserved)
+                        ledger.unreserve(instanceId);
+                    continue;
+                }
+                if (!reserved && !admittedBy.containsKey(instanceId)) {
+                    admittedBy.put(instanceId, s.submitter);
+                    runningBySubmitter.merge(s.submitter, 1, Integer::sum);
+                }
+                long wait = System.currentTimeMillis() - s.submitted;
+                admittedCount++;
+                totalWait += wait;
+                maxWait = Math.max(maxWait, wait);
+            }
+            
+            launch(s);
+        }
+    }
+    
+    /**
+     * Remove a (selected) submission from the persistent queue, if any. If the queue is 
+     * shared, the execution is claimed for this node; a resumed execution (which is not 
+     * queued) is just recorded as owned by this node.
+     * 
+     * @return <tt>false</tt> if the execution is claimed by another node
+     */
+    private boolean claim(Submission s)
+    {
+        final long executionId = s.execution.getId();
+        
+        if (nodeRepository == null) {
+            if (queueRepository != null)
+                queueRepository.deleteByExecutionId(executionId);
+            return true;
+        }
+        
+        if (s.resumed) {
+            nodeRepository.own(executionId, nodeName);
+            return true;
+        }
+        
+        boolean claimed = nodeRepository.claim(executionId, nodeName);
+        if (!claimed)
+            logger.debug("The queued execution #{} is claimed by another node", executionId);
+        return claimed;
+    }
+    
+    /**
+     * Handle the release of resources for a job instance
+     */
+    private void released(long instanceId)
+    {
+        synchronized (this) {
+            if (admittedBy.containsKey(instanceId)) {
+                String submitter = admittedBy.remove(instanceId);
+                runningBySubmitter.computeIfPresent(submitter, (k, n) -> n > 1? (n - 1) : null);
+            }
+        }
+        drain();
+    }
+    
+    /**
+     * Abandon an execution that was created but could not be queued
+     */
+    private void abandon(JobExecution execution, Exception cause)
+    {
+        execution.upgradeStatus(BatchStatus.ABANDONED);
+        execution.setExitStatus(ExitStatus.FAILED.addExitDescription(cause));
+        execution.setEndTime(new Date());
+        try {
+            jobRepository.update(execution);
+        } catch (RuntimeException ex) {
+            logger.error("Failed to abandon execution #{}: {}", execution.getId(), ex.getMessage());
+        }
+    }
+    
+    private void stopQueued(Submission s)
+    {
+        JobExecution execution = s.execution;
+        logger.info("The queued job {}#{} (execution #{}) is stopped before being launched",
+            s.job.getName(), execution.getJobId(), execution.getId());
+        
+        execution.upgradeStatus(BatchStatus.STOPPED);
+        execution.setExitStatus(ExitStatus.STOPPED);
+        execution.setEndTime(new Date());
+        jobRepository.update(execution);
+    }
+    
+    private void launch(Submission s)
+    {
+        final Job job = s.job;
+        final JobExecution execution = s.execution;
+        final long instanceId = s.instanceId();
+        
+        launched.put(execution.getId(), execution);
+        try {
+            taskExecutor.execute(() -> {
+                try {
+                    logger.info("Job: [{}] launched with the following parameters: [{}]", 
+                        job, s.parameters);
+                    job.execute(execution);
+                    logger.info("Job: [{}] completed with the following parameters: [{}] and the following status: [{}]",
+                        job, s.parameters, execution.getStatus());
+                } finally {
+                    launched.remove(execution.getId());
+                    if (!isParked(execution))
+                        ledger.release(instanceId);
+                }
+            });
+        } catch (TaskRejectedException ex) {
+            launched.remove(execution.getId());
+            execution.upgradeStatus(BatchStatus.FAILED);
+            if (execution.getExitStatus().equals(ExitStatus.UNKNOWN))
+                execution.setExitStatus(ExitStatus.FAILED.addExitDescription(ex));
+            jobRepository.update(execution);
+            ledger.release(instanceId);
+        }
+    }
+    
+    /**
+     * Test if a (finished) execution is parked, i.e. it keeps a container running
+     */
+    private static boolean isParked(JobExecution execution)
+    {
+        if (execution.getStatus() != BatchStatus.STOPPED)
+            return false;
+        for (StepExecution stepExecution: execution.getStepExecutions())
+            if (RunContainerTasklet.isParked(stepExecution))
+                return true;
+        return false;
+    }
+}
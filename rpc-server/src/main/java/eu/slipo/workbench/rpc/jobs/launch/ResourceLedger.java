@@ -0,0 +1,225 @@
+package eu.slipo.workbench.rpc.jobs.launch;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A ledger of host resources (CPUs, memory) reserved by running jobs. 
+ * <p>
+ * A reservation is held on behalf of a job instance, from the time it is admitted to 
+ * run until its container finishes (a parked job keeps its reservation while its 
+ * container is running).
+ */
+public class ResourceLedger
+{
+    private static Logger logger = LoggerFactory.getLogger(ResourceLedger.class);
+    
+    /**
+     * Represent an amount of resources needed by a job
+     */
+    public static class Demand
+    {
+        public static final Demand NONE = new Demand(0.0, 0L);
+        
+        private final double cpus;
+        
+        private final long memory;
+        
+        private Demand(double cpus, long memory)
+        {
+            this.cpus = cpus;
+            this.memory = memory;
+        }
+        
+        public static Demand of(double cpus, long memory)
+        {
+            Assert.isTrue(cpus >= 0, "Expected a non-negative number of CPUs");
+            Assert.isTrue(memory >= 0, "Expected a non-negative amount of memory");
+            return new Demand(cpus, memory);
+        }
+        
+        public double getCpus()
+        {
+            return cpus;
+        }
+        
+        public long getMemory()
+        {
+            return memory;
+        }
+        
+        @Override
+        public String toString()
+        {
+            return String.format("Demand [cpus=%.2f, memory=%d]", cpus, memory);
+        }
+    }
+    
+    private final double cpus;
+    
+    private final long memory;
+    
+    private double reservedCpus = 0.0;
+    
+    private long reservedMemory = 0L;
+    
+    /**
+     * The reservations keyed by job instance id
+     */
+    private final Map<Long, Demand> reservations = new HashMap<>();
+    
+    /**
+     * Listeners notified (outside of any lock) when resources are released. A listener
+     * accepts the job instance id of a released reservation.
+     */
+    private final List<LongConsumer> releaseListeners = new CopyOnWriteArrayList<>();
+    
+    /**
+     * Create a ledger for a given capacity.
+     * 
+     * @param cpus The number of CPUs available to jobs
+     * @param memory The amount of memory (bytes) available to jobs
+     */
+    public ResourceLedger(double cpus, long memory)
+    {
+        Assert.isTrue(cpus > 0, "Expected a positive number of CPUs");
+        Assert.isTrue(memory > 0, "Expected a positive amount of memory");
+        this.cpus = cpus;
+        this.memory = memory;
+    }
+    
+    public void addReleaseListener(LongConsumer listener)
+    {
+        Assert.notNull(listener, "A listener is required");
+        releaseListeners.add(listener);
+    }
+    
+    /**
+     * Reserve resources for a job instance, if they fit into the remaining capacity. 
+     * <p>
+     * If the job instance already holds a reservation, it is considered as admitted (and 
+     * nothing new is reserved). A demand that exceeds the total capacity is admitted only
+     * when nothing else is reserved (otherwise it would never run).
+     * 
+     * @param instanceId The job instance id
+     * @param demand
+     * @return <tt>true</tt> if reserved, <tt>false</tt> if the demand does not fit
+     */
+    public synchronized boolean tryReserve(long instanceId, Demand demand)
+    {
+        Assert.notNull(demand, "A demand is required");
+        
+        if (reservations.containsKey(instanceId))
+            return true;
+        
+        boolean fits = reservations.isEmpty() || 
+            (reservedCpus + demand.cpus <= cpus && reservedMemory + demand.memory <= memory);
+        if (!fits)
+            return false;
+        
+        reservations.put(instanceId, demand);
+        reservedCpus += demand.cpus;
+        reservedMemory += demand.memory;
+        
+        logger.debug("Reserved {} for job instance #{}", demand, instanceId);
+        return true;
+    }
+    
+    /**
+     * Reserve resources for a job instance, regardless of the remaining capacity. This is
+     * meant for jobs that already consume resources on the host (e.g. their containers kept
+     * running while we were restarted).
+     * 
+     * @param instanceId The job instance id
+     * @param demand
+     */
+    public synchronized void reserve(long instanceId, Demand demand)
+    {
+        Assert.notNull(demand, "A demand is required");
+        
+        if (reservations.containsKey(instanceId))
+            return;
+        
+        reservations.put(instanceId, demand);
+        reservedCpus += demand.cpus;
+        reservedMemory += demand.memory;
+        
+        logger.debug("Reserved {} (unconditionally) for job instance #{}", demand, instanceId);
+    }
+    
+    /**
+     * Release the reservation of a job instance (if any).
+     * 
+     * @param instanceId The job instance id
+     */
+    public void release(long instanceId)
+    {
+        Demand demand = null;
+        synchronized (this) {
+            demand = reservations.remove(instanceId);
+            if (demand != null) {
+                reservedCpus -= demand.cpus;
+                reservedMemory -= demand.memory;
+            }
+        }
+        
+        if (demand != null) {
+            logger.debug("Released {} for job instance #{}", demand, instanceId);
+            for (LongConsumer listener: releaseListeners)
+                listener.accept(instanceId);
+        }
+    }
+    
+    /**
+     * Undo a reservation that was just made (e.g. for a job that turns out to be launched 
+     * elsewhere). Unlike {@link #release(long)}, listeners are not notified.
+     * 
+     * @param instanceId The job instance id
+     */
+    public synchronized void unreserve(long instanceId)
+    {
+        Demand demand = reservations.remove(instanceId);
+        if (demand != null) {
+            reservedCpus -= demand.cpus;
+            reservedMemory -= demand.memory;
+            logger.debug("Unreserved {} for job instance #{}", demand, instanceId);
+        }
+    }
+    
+    public synchronized boolean isReserved(long instanceId)
+    {
+        return reservations.containsKey(instanceId);
+    }
+    
+    public double getCpus()
+    {
+        return cpus;
+    }
+    
+    public long getMemory()
+    {
+        return memory;
+    }
+    
+    public synchronized double getReservedCpus()
+    {
+        return reservedCpus;
+    }
+    
+    public synchronized long getReservedMemory()
+    {
+        return reservedMemory;
+    }
+    
+    public synchronized int getReservationCount()
+    {
+        return reservations.size();
+    }
+}
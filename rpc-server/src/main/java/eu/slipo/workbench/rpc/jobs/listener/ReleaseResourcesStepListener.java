@@ -0,0 +1,34 @@
+package eu.slipo.workbench.rpc.jobs.listener;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.listener.StepExecutionListenerSupport;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.rpc.jobs.launch.ResourceLedger;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+
+/**
+ * A listener that releases the resources reserved for a job instance as soon as the
+ * (container-running) step finishes, so that queued jobs can be admitted without 
+ * waiting for the entire job to complete.
+ */
+public class ReleaseResourcesStepListener extends StepExecutionListenerSupport
+{
+    private final ResourceLedger ledger;
+    
+    public ReleaseResourcesStepListener(ResourceLedger ledger)
+    {
+        Assert.notNull(ledger, "A resource ledger is required");
+        this.ledger = ledger;
+    }
+    
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution)
+    {
+        // A parked step keeps its reservation (its container is still running)
+        if (!RunContainerTasklet.isParked(stepExecution))
+            ledger.release(stepExecution.getJobExecution().getJobInstance().getInstanceId());
+        return null;
+    }
+}
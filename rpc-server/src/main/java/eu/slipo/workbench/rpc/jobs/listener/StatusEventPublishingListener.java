@@ -0,0 +1,84 @@
+package eu.slipo.workbench.rpc.jobs.listener;
+
+import java.util.Date;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.common.model.jobs.JobStatusEvent;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+import eu.slipo.workbench.rpc.service.JobStatusEventBus;
+
+/**
+ * A listener (for both jobs and steps) that publishes status transitions to a
+ * {@link JobStatusEventBus}.
+ */
+public class StatusEventPublishingListener implements JobExecutionListener, StepExecutionListener
+{
+    private final JobStatusEventBus eventBus;
+
+    public StatusEventPublishingListener(JobStatusEventBus eventBus)
+    {
+        Assert.notNull(eventBus, "An event bus is required");
+        this.eventBus = eventBus;
+    }
+
+    @Override
+    public void beforeJob(JobExecution jobExecution)
+    {
+        eventBus.publish(createEvent(jobExecution, null, jobExecution.getStatus().name(),
+            jobExecution.getExitStatus()));
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution)
+    {
+        JobStatusEvent event = createEvent(jobExecution, null, jobExecution.getStatus().name(),
+            jobExecution.getExitStatus());
+        event.setParked(jobExecution.getStatus() == BatchStatus.STOPPED &&
+            jobExecution.getStepExecutions().stream().anyMatch(RunContainerTasklet::isParked));
+        eventBus.publish(event);
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution)
+    {
+        eventBus.publish(createEvent(stepExecution.getJobExecution(), stepExecution.getStepName(),
+            stepExecution.getStatus().name(), stepExecution.getExitStatus()));
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution)
+    {
+        // Note: The step status is already upgraded (e.g. to COMPLETED or STOPPED) here
+        JobStatusEvent event = createEvent(stepExecution.getJobExecution(), 
+            stepExecution.getStepName(), stepExecution.getStatus().name(), 
+            stepExecution.getExitStatus());
+        event.setParked(RunContainerTasklet.isParked(stepExecution));
+        eventBus.publish(event);
+        return null;
+    }
+
+    private static JobStatusEvent createEvent(
+        JobExecution jobExecution, String stepName, String status, ExitStatus exitStatus)
+    {
+        JobInstance instance = jobExecution.getJobInstance();
+
+        JobStatusEvent event = new JobStatusEvent(
+            instance.getJobName(), instance.getInstanceId(), jobExecution.getId(), stepName);
+        event.setStatus(status);
+        if (exitStatus != null) {
+            event.setExitStatus(exitStatus.getExitCode());
+            event.setExitDescription(exitStatus.getExitDescription());
+        }
+        event.setTimestamp(new Date());
+
+        return event;
+    }
+}
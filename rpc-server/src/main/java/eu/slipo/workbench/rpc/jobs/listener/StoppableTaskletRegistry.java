@@ -0,0 +1,117 @@
+package eu.slipo.workbench.rpc.jobs.listener;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aop.scope.ScopedObject;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.step.tasklet.StoppableTasklet;
+import org.springframework.util.Assert;
+
+/**
+ * A registry of the stoppable tasklets of running steps, keyed by step execution.
+ * <p>
+ * A step is registered by a listener (see {@link #listener(StoppableTasklet)}), because a
+ * running step cannot always be located from its job: a step nested into a flow (i.e.
+ * inside a <tt>FlowStep</tt>), or a worker step of a partitioned step, is not visible
+ * to a <tt>StepLocator</tt>.
+ */
+public class StoppableTaskletRegistry
+{
+    private static final Logger logger = LoggerFactory.getLogger(StoppableTaskletRegistry.class);
+
+    private static class Registration
+    {
+        final long jobExecutionId;
+
+        final String stepName;
+
+        final StoppableTasklet tasklet;
+
+        Registration(StepExecution stepExecution, StoppableTasklet tasklet)
+        {
+            this.jobExecutionId = stepExecution.getJobExecutionId();
+            this.stepName = stepExecution.getStepName();
+            this.tasklet = tasklet;
+        }
+    }
+
+    private final ConcurrentMap<Long, Registration> registrations = new ConcurrentHashMap<>();
+
+    /**
+     * Create a listener that registers a tasklet for as long as its step is running.
+     * <p>
+     * This listener should be added after the tasklet itself (if also a listener), so that
+     * the tasklet is stopped only after it has been prepared for the step.
+     *
+     * @param tasklet The tasklet (may be a step-scoped or job-scoped proxy)
+     */
+    public StepExecutionListener listener(StoppableTasklet tasklet)
+    {
+        Assert.notNull(tasklet, "A tasklet is required");
+
+        return new StepExecutionListener()
+        {
+            @Override
+            public void beforeStep(StepExecution stepExecution)
+            {
+                // Resolve a scoped proxy to the instance running for this step, because
+                // the scope is not active when stopped (from another thread)
+                StoppableTasklet target = tasklet;
+                if (tasklet instanceof ScopedObject)
+                    target = (StoppableTasklet) ((ScopedObject) tasklet).getTargetObject();
+                registrations.put(stepExecution.getId(), new Registration(stepExecution, target));
+            }
+
+            @Override
+            public ExitStatus afterStep(StepExecution stepExecution)
+            {
+                registrations.remove(stepExecution.getId());
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Invoke the {@link StoppableTasklet#stop()} callback on the registered tasklets of a
+     * job execution. A tasklet that fails to stop remains registered (and can be stopped
+     * again).
+     *
+     * @param jobExecutionId The id of the job execution
+     * @return <tt>true</tt> if every registered tasklet of this job execution is stopped
+     */
+    public boolean stop(long jobExecutionId)
+    {
+        boolean stopped = true;
+        for (Map.Entry<Long, Registration> e: registrations.entrySet()) {
+            final Registration r = e.getValue();
+            if (r.jobExecutionId != jobExecutionId)
+                continue;
+            try {
+                r.tasklet.stop();
+            } catch (RuntimeException ex) {
+                logger.warn("Failed to stop step {} (#{}) of job execution #{}: {}",
+                    r.stepName, e.getKey(), jobExecutionId, ex.getMessage());
+                stopped = false;
+                continue;
+            }
+            logger.info("Notified step {} (#{}) of job execution #{} to stop",
+                r.stepName, e.getKey(), jobExecutionId);
+        }
+        return stopped;
+    }
+
+    /**
+     * Test if any tasklet of a job execution is registered (i.e. is running)
+     */
+    public boolean isRegistered(long jobExecutionId)
+    {
+        return registrations.values().stream()
+            .anyMatch(r -> r.jobExecutionId == jobExecutionId);
+    }
+}
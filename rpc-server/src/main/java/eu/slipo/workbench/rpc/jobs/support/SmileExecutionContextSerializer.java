@@ -0,0 +1,308 @@
+package eu.slipo.workbench.rpc.jobs.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.repository.ExecutionContextSerializer;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * An {@link ExecutionContextSerializer} that writes an execution context as a (compact,
+ * binary) Smile document.
+ * <p>
+ * Every entry is written as a pair of a type alias and a value. Aliases are predefined for
+ * basic types (numbers, strings, dates, collections), and may be registered for bean types
+ * (e.g. tool configurations). A context holding a value of any other type (or a collection
+ * of such values) is delegated to a fallback serializer, so it is always safe to switch to
+ * this serializer.
+ * <p>
+ * Note that the JDBC DAOs of Spring Batch store a serialized context as text (decoded as
+ * ISO-8859-1), and PostgreSQL cannot store NUL characters in text columns. So, the Smile
+ * document is Base64-encoded, behind a prefix (<tt>smile:</tt>) that tells it apart from
+ * the output of the fallback serializer (i.e. a JSON object).
+ */
+public class SmileExecutionContextSerializer implements ExecutionContextSerializer
+{
+    private static final Logger logger = LoggerFactory.getLogger(SmileExecutionContextSerializer.class);
+
+    private static final byte[] PREFIX = "smile:".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The predefined aliases for basic types. The types for collections are the ones created
+     * on deserialization (e.g. any list is deserialized as an {@link ArrayList}).
+     */
+    private static final Map<String, Class<?>> basicTypes;
+    static {
+        Map<String, Class<?>> m = new LinkedHashMap<>();
+        m.put("string", String.class);
+        m.put("int", Integer.class);
+        m.put("long", Long.class);
+        m.put("double", Double.class);
+        m.put("bool", Boolean.class);
+        m.put("date", Date.class);
+        m.put("list", ArrayList.class);
+        m.put("set", LinkedHashSet.class);
+        m.put("map", LinkedHashMap.class);
+        basicTypes = Collections.unmodifiableMap(m);
+    }
+
+    private final ObjectMapper mapper;
+
+    private final Map<String, Class<?>> typeByAlias;
+
+    private final Map<Class<?>, String> aliasByType;
+
+    private final ExecutionContextSerializer fallback;
+
+    private final boolean compact;
+
+    public static class Builder
+    {
+        private final Map<String, Class<?>> types = new LinkedHashMap<>();
+
+        private ExecutionContextSerializer fallback;
+
+        private boolean compact = true;
+
+        private Builder() {}
+
+        /**
+         * Register a bean type (under a short alias). A value of this (exact) type will be
+         * serialized as a bean (by Jackson).
+         *
+         * @param alias
+         * @param type
+         */
+        public Builder registerType(String alias, Class<?> type)
+        {
+            Assert.isTrue(alias != null && !alias.isEmpty(), "Expected a non-empty alias");
+            Assert.notNull(type, "Expected a non-null type");
+            Assert.isTrue(!basicTypes.containsKey(alias), "The alias is reserved for a basic type");
+            Assert.isTrue(!types.containsKey(alias), "The alias is already registered");
+            this.types.put(alias, type);
+            return this;
+        }
+
+        /**
+         * Set the serializer for contexts that hold values of an unknown type. It is also
+         * used to deserialize contexts not written by us (i.e. existing ones).
+         *
+         * @param fallback
+         */
+        public Builder fallback(ExecutionContextSerializer fallback)
+        {
+            this.fallback = fallback;
+            return this;
+        }
+
+        /**
+         * Indicate whether contexts are written as Smile documents (the default). If not,
+         * all contexts are written by the fallback serializer, while Smile documents (i.e.
+         * written before) can still be read.
+         *
+         * @param flag
+         */
+        public Builder compact(boolean flag)
+        {
+            this.compact = flag;
+            return this;
+        }
+
+        public SmileExecutionContextSerializer build()
+        {
+            Assert.state(fallback != null, "A fallback serializer is required");
+            return new SmileExecutionContextSerializer(types, fallback, compact);
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private SmileExecutionContextSerializer(
+        Map<String, Class<?>> types, ExecutionContextSerializer fallback, boolean compact)
+    {
+        SmileFactory factory = new SmileFactory();
+        // Repeated property names and (short) string values are written as back-references
+        factory.enable(SmileGenerator.Feature.CHECK_SHARED_NAMES);
+        factory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+
+        this.mapper = new ObjectMapper(factory);
+        this.fallback = fallback;
+        this.compact = compact;
+
+        Map<String, Class<?>> typeByAlias = new HashMap<>(basicTypes);
+        typeByAlias.putAll(types);
+        this.typeByAlias = Collections.unmodifiableMap(typeByAlias);
+
+        Map<Class<?>, String> aliasByType = new HashMap<>();
+        for (Map.Entry<String, Class<?>> e: types.entrySet())
+            aliasByType.put(e.getValue(), e.getKey());
+        this.aliasByType = Collections.unmodifiableMap(aliasByType);
+    }
+
+    @Override
+    public void serialize(Map<String, Object> context, OutputStream out) throws IOException
+    {
+        Assert.notNull(context, "A context is required");
+        Assert.notNull(out, "An output stream is required");
+
+        if (!compact) {
+            fallback.serialize(context, out);
+            return;
+        }
+
+        // Determine aliases for all values (if any is not supported, use the fallback)
+
+        List<String> aliases = new ArrayList<>(context.size());
+        for (Object value: context.values()) {
+            String alias = aliasOf(value);
+            if (alias == null) {
+                logger.debug("Using fallback serializer for a value of {}", value == null? null : value.getClass());
+                fallback.serialize(context, out);
+                return;
+            }
+            aliases.add(alias);
+        }
+
+        // Write a Smile document, encoded as Base64
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(buffer)) {
+            generator.writeStartObject();
+            Iterator<String> aliasIterator = aliases.iterator();
+            for (Map.Entry<String, Object> e: context.entrySet()) {
+                generator.writeFieldName(e.getKey());
+                generator.writeStartArray();
+                generator.writeString(aliasIterator.next());
+                mapper.writeValue(generator, e.getValue());
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        }
+
+        out.write(PREFIX);
+        out.write(Base64.getEncoder().encode(buffer.toByteArray()));
+    }
+
+    @Override
+    public Map<String, Object> deserialize(InputStream in) throws IOException
+    {
+        Assert.notNull(in, "An input stream is required");
+
+        byte[] data = StreamUtils.copyToByteArray(in);
+        if (data.length < PREFIX.length ||
+                !Arrays.equals(PREFIX, Arrays.copyOf(data, PREFIX.length)))
+        {
+            // Not written by us
+            return fallback.deserialize(new ByteArrayInputStream(data));
+        }
+
+        byte[] document = Base64.getDecoder().decode(
+            Arrays.copyOfRange(data, PREFIX.length, data.length));
+
+        JsonNode root = mapper.readTree(document);
+        Map<String, Object> context = new HashMap<>(root.size() * 2);
+        Iterator<Map.Entry<String, JsonNode>> fields = root.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode pair = field.getValue();
+            String alias = pair.get(0).asText();
+            Class<?> type = typeByAlias.get(alias);
+            if (type == null)
+                throw new IOException("Encountered an unknown type alias: " + alias);
+            context.put(field.getKey(), mapper.treeToValue(pair.get(1), type));
+        }
+
+        return context;
+    }
+
+    /**
+     * Find the alias for the type of a value, or return <tt>null</tt> if the value is not
+     * supported (i.e. it would not be deserialized as an equal value).
+     */
+    private String aliasOf(Object value)
+    {
+        if (value == null)
+            return null;
+
+        String alias = aliasByType.get(value.getClass());
+        if (alias != null)
+            return alias;
+
+        if (value instanceof String)
+            return "string";
+        else if (value instanceof Integer)
+            return "int";
+        else if (value instanceof Long)
+            return "long";
+        else if (value instanceof Double)
+            return "double";
+        else if (value instanceof Boolean)
+            return "bool";
+        else if (value.getClass() == Date.class)
+            return "date";
+        else if (value instanceof List)
+            return isPlain(value)? "list" : null;
+        else if (value instanceof Set)
+            return isPlain(value)? "set" : null;
+        else if (value instanceof Map)
+            return isPlain(value)? "map" : null;
+
+        return null;
+    }
+
+    /**
+     * Test if a value is deserialized (as an element of a collection, where no type
+     * information is present) into an equal value.
+     */
+    private static boolean isPlain(Object value)
+    {
+        if (value == null || value instanceof String || value instanceof Integer ||
+                value instanceof Double || value instanceof Boolean)
+        {
+            return true;
+        } else if (value instanceof List || value instanceof Set) {
+            // A nested set is deserialized as a list, so only allow it at top-level
+            for (Object item: (Collection<?>) value)
+                if (item instanceof Set || !isPlain(item))
+                    return false;
+            return true;
+        } else if (value instanceof Map) {
+            for (Map.Entry<?, ?> e: ((Map<?, ?>) value).entrySet()) {
+                Object item = e.getValue();
+                if (!(e.getKey() instanceof String) || item instanceof Set || !isPlain(item))
+                    return false;
+            }
+            return true;
+        }
+        return false;
+    }
+}
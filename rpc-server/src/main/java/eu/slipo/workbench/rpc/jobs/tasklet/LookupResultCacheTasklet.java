@@ -0,0 +1,144 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.rpc.jobs.cache.ResultCache;
+
+/**
+ * A tasklet that computes the cache key for a job, and materializes a cached result (if
+ * any) into the output directory.
+ * <p>
+ * The key is a digest of a number of named parts, each one being either a string (e.g.
+ * a digest of a configuration) or the contents of a file (e.g. an input file).
+ */
+public class LookupResultCacheTasklet implements Tasklet
+{
+    private static final Logger logger = LoggerFactory.getLogger(LookupResultCacheTasklet.class);
+
+    /**
+     * The collection of keys used inside our execution context
+     */
+    public static class Keys
+    {
+        /** The key of the cache entry */
+        public static final String KEY = "key";
+
+        /** A flag indicating whether the result was found in the cache */
+        public static final String HIT = "hit";
+    }
+
+    /**
+     * A builder for the enclosing class
+     */
+    public static class Builder
+    {
+        private ResultCache cache;
+
+        private Path outputDir;
+
+        private Map<String, Object> parts = new LinkedHashMap<>();
+
+        private Builder() {}
+
+        public Builder cache(ResultCache cache)
+        {
+            Assert.notNull(cache, "Expected a non-null cache");
+            this.cache = cache;
+            return this;
+        }
+
+        public Builder outputDirectory(Path outputDir)
+        {
+            Assert.isTrue(outputDir != null && outputDir.isAbsolute(),
+                "Expected an absolute path for the output directory");
+            this.outputDir = outputDir;
+            return this;
+        }
+
+        /**
+         * Add a string as a part of the key
+         */
+        public Builder key(String name, String value)
+        {
+            Assert.isTrue(!parts.containsKey(name), "The part is already given");
+            parts.put(name, value);
+            return this;
+        }
+
+        /**
+         * Add the contents of a file as a part of the key
+         */
+        public Builder key(String name, Path path)
+        {
+            Assert.isTrue(!parts.containsKey(name), "The part is already given");
+            Assert.isTrue(path != null && path.isAbsolute(), "Expected an absolute path");
+            parts.put(name, path);
+            return this;
+        }
+
+        public LookupResultCacheTasklet build()
+        {
+            Assert.state(cache != null, "The cache is not specified");
+            Assert.state(outputDir != null, "The output directory is not specified");
+            Assert.state(!parts.isEmpty(), "The key is not specified");
+
+            return new LookupResultCacheTasklet(cache, outputDir, parts);
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private final ResultCache cache;
+
+    private final Path outputDir;
+
+    private final Map<String, Object> parts;
+
+    private LookupResultCacheTasklet(ResultCache cache, Path outputDir, Map<String, Object> parts)
+    {
+        this.cache = cache;
+        this.outputDir = outputDir;
+        this.parts = new LinkedHashMap<>(parts);
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext context)
+        throws Exception
+    {
+        StepExecution stepExecution = context.getStepContext().getStepExecution();
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+        ResultCache.KeyBuilder keyBuilder = ResultCache.keyBuilder();
+        for (Map.Entry<String, Object> part: parts.entrySet()) {
+            Object value = part.getValue();
+            if (value instanceof Path)
+                keyBuilder.add(part.getKey(), (Path) value);
+            else
+                keyBuilder.add(part.getKey(), (String) value);
+        }
+        String key = keyBuilder.build();
+
+        boolean hit = cache.materialize(key, outputDir);
+        logger.info("The result for key {} is {}", key, hit? "cached" : "not cached");
+
+        executionContext.putString(Keys.KEY, key);
+        executionContext.put(Keys.HIT, Boolean.valueOf(hit));
+
+        return RepeatStatus.FINISHED;
+    }
+}
@@ -0,0 +1,186 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * A tasklet that merges the outputs of shards (see {@link SplitInputTasklet}) into a single
+ * output directory.
+ * <p>
+ * Output files (of shards) with a concatenable extension (e.g. N-Triples) and the same name
+ * are concatenated (in shard order) into a file of that name. Any other output file is
+ * copied, and its name is suffixed with the index of its shard.
+ */
+public class MergeOutputTasklet implements Tasklet
+{
+    private static final Logger logger = LoggerFactory.getLogger(MergeOutputTasklet.class);
+
+    /**
+     * The collection of keys used inside our execution context
+     */
+    public static class Keys
+    {
+        /** The names of merged output files */
+        public static final String MERGED_FILES = "mergedFiles";
+    }
+
+    /**
+     * A builder for the enclosing class
+     */
+    public static class Builder
+    {
+        private Path shardsDir;
+
+        private int shards;
+
+        private Path outputDir;
+
+        private List<String> extensions = new ArrayList<>();
+
+        private Builder() {}
+
+        public Builder shards(Path shardsDir, int shards)
+        {
+            Assert.isTrue(shardsDir != null && shardsDir.isAbsolute(),
+                "Expected an absolute path for the shards directory");
+            Assert.isTrue(shards > 0, "Expected a positive number of shards");
+            this.shardsDir = shardsDir;
+            this.shards = shards;
+            return this;
+        }
+
+        public Builder outputDirectory(Path outputDir)
+        {
+            Assert.isTrue(outputDir != null && outputDir.isAbsolute(),
+                "Expected an absolute path for the output directory");
+            this.outputDir = outputDir;
+            return this;
+        }
+
+        /**
+         * Set the filename extensions of output files that can be concatenated
+         */
+        public Builder concatenate(Collection<String> extensions)
+        {
+            this.extensions.addAll(extensions);
+            return this;
+        }
+
+        public Builder concatenate(String ...extensions)
+        {
+            return concatenate(Arrays.asList(extensions));
+        }
+
+        public MergeOutputTasklet build()
+        {
+            Assert.state(shardsDir != null, "The shards are not specified");
+            Assert.state(outputDir != null, "The output directory is not specified");
+
+            return new MergeOutputTasklet(shardsDir, shards, outputDir, extensions);
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private final Path shardsDir;
+
+    private final int shards;
+
+    private final Path outputDir;
+
+    private final List<String> extensions;
+
+    private MergeOutputTasklet(Path shardsDir, int shards, Path outputDir, List<String> extensions)
+    {
+        this.shardsDir = shardsDir;
+        this.shards = shards;
+        this.outputDir = outputDir;
+        this.extensions = new ArrayList<>(extensions);
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext context)
+        throws Exception
+    {
+        StepExecution stepExecution = context.getStepContext().getStepExecution();
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+        Files.createDirectories(outputDir);
+
+        //
+        // Truncate any merged file (left by a failed attempt), then append each part
+        //
+
+        ArrayList<String> mergedFiles = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            Path shardOutputDir = SplitInputTasklet.shardOutputDir(shardsDir, i);
+            try (DirectoryStream<Path> outputs = Files.newDirectoryStream(shardOutputDir)) {
+                for (Path path: outputs) {
+                    if (!Files.isRegularFile(path))
+                        continue;
+                    String name = path.getFileName().toString();
+                    if (extensions.contains(StringUtils.getFilenameExtension(name))) {
+                        if (!mergedFiles.contains(name)) {
+                            mergedFiles.add(name);
+                            Files.deleteIfExists(outputDir.resolve(name));
+                        }
+                        append(path, outputDir.resolve(name));
+                    } else {
+                        Files.copy(path, outputDir.resolve(suffixed(name, i)),
+                            StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+        }
+
+        logger.info("Merged the outputs of {} shards into {}", shards, outputDir);
+
+        //
+        // Update execution context
+        //
+
+        executionContext.put(Keys.MERGED_FILES, mergedFiles);
+
+        return RepeatStatus.FINISHED;
+    }
+
+    private static void append(Path source, Path target) throws IOException
+    {
+        try (OutputStream out = Files.newOutputStream(
+                target, StandardOpenOption.CREATE, StandardOpenOption.APPEND))
+        {
+            Files.copy(source, out);
+        }
+    }
+
+    private static String suffixed(String name, int i)
+    {
+        String extension = StringUtils.getFilenameExtension(name);
+        return extension == null?
+            (name + "-" + i) :
+            (StringUtils.stripFilenameExtension(name) + "-" + i + "." + extension);
+    }
+}
@@ -0,0 +1,381 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * A tasklet that post-processes the RDF output of a job, streaming each output file once.
+ * <p>
+ * For every output file (with one of the given extensions) a gzip-compressed copy is written
+ * alongside (e.g. <tt>points.nt.gz</tt>). An N-Triples file is also parsed (line by line) to
+ * collect statistics (number of triples, number of subjects, bounding box of WKT
+ * geometries), and its compressed copy is written as a sequence of independent gzip members
+ * (each starting at a subject boundary). A sidecar index (e.g. <tt>points.nt.gz.idx</tt>) maps
+ * each subject (i.e. feature URI) to the offset of the gzip member that contains it, so that a
+ * feature can be read without decompressing the whole file. Since triples are expected to be
+ * grouped by subject, a subject is indexed on every change of subject (a reader should use
+ * the first entry for a subject). For the same reason, subjects are counted (in constant 
+ * memory) as changes of subject.
+ */
+public class PostProcessOutputTasklet implements Tasklet
+{
+    private static final Logger logger = LoggerFactory.getLogger(PostProcessOutputTasklet.class);
+
+    /**
+     * The (minimum) number of uncompressed bytes in a gzip member of an indexed file
+     */
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private static final String COMPRESSED_SUFFIX = ".gz";
+
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private static final Pattern WKT_LITERAL_PATTERN =
+        Pattern.compile("^\"(?:<[^>]*>\\s*)?([^\"]*)\"\\^\\^<http://www\\.opengis\\.net/ont/geosparql#wktLiteral>");
+
+    private static final Pattern NUMBER_PATTERN =
+        Pattern.compile("-?\\d+(?:\\.\\d+)?(?:[eE][-+]?\\d+)?");
+
+    /**
+     * The collection of keys used inside our execution context
+     */
+    public static class Keys
+    {
+        /** The total number of triples (of N-Triples output) */
+        public static final String TRIPLES = "triples";
+
+        /** The number of subjects (of N-Triples output), counted as changes of subject */
+        public static final String SUBJECTS = "subjects";
+
+        /** The bounding box (minx, miny, maxx, maxy) of WKT geometries (empty if none) */
+        public static final String BBOX = "bbox";
+
+        /** The total size (bytes) of output files */
+        public static final String BYTES = "bytes";
+
+        /** The total size (bytes) of compressed output files */
+        public static final String COMPRESSED_BYTES = "compressedBytes";
+
+        /** The names of compressed output files */
+        public static final String COMPRESSED_FILES = "compressedFiles";
+    }
+
+    /**
+     * A builder for the enclosing class
+     */
+    public static class Builder
+    {
+        private Path outputDir;
+
+        private List<String> extensions = new ArrayList<>();
+
+        private List<String> indexedExtensions = new ArrayList<>();
+
+        private Builder() {}
+
+        public Builder outputDirectory(Path outputDir)
+        {
+            Assert.isTrue(outputDir != null && outputDir.isAbsolute(),
+                "Expected an absolute path for the output directory");
+            this.outputDir = outputDir;
+            return this;
+        }
+
+        /**
+         * Set the extensions of output files to be compressed
+         */
+        public Builder compress(List<String> extensions)
+        {
+            Assert.notEmpty(extensions, "Expected a non-empty list of extensions");
+            this.extensions = new ArrayList<>(extensions);
+            return this;
+        }
+
+        public Builder compress(String ...extensions)
+        {
+            return compress(Arrays.asList(extensions));
+        }
+
+        /**
+         * Set the extensions of output files to be parsed as N-Triples (for statistics) and
+         * to be indexed by subject
+         */
+        public Builder index(List<String> extensions)
+        {
+            this.indexedExtensions = new ArrayList<>(extensions);
+            return this;
+        }
+
+        public Builder index(String ...extensions)
+        {
+            return index(Arrays.asList(extensions));
+        }
+
+        public PostProcessOutputTasklet build()
+        {
+            Assert.state(outputDir != null, "The output directory is not specified");
+            Assert.state(!extensions.isEmpty(), "No output files are specified (by extension)");
+
+            return new PostProcessOutputTasklet(outputDir, extensions, indexedExtensions);
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Statistics collected while processing output files
+     */
+    private static class Stats
+    {
+        private long triples = 0;
+
+        private long subjects = 0;
+
+        private double[] bbox = null;
+
+        private long bytes = 0;
+
+        private long compressedBytes = 0;
+
+        private void addSubject()
+        {
+            subjects++;
+        }
+
+        private void addPoint(double x, double y)
+        {
+            if (bbox == null) {
+                bbox = new double[] { x, y, x, y };
+            } else {
+                bbox[0] = Math.min(bbox[0], x);
+                bbox[1] = Math.min(bbox[1], y);
+                bbox[2] = Math.max(bbox[2], x);
+                bbox[3] = Math.max(bbox[3], y);
+            }
+        }
+    }
+
+    /**
+     * An output stream that counts the bytes written, and is not closed by its wrappers
+     */
+    private static class CountingOutputStream extends FilterOutputStream
+    {
+        private long count = 0;
+
+        private CountingOutputStream(OutputStream out)
+        {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            flush();
+        }
+
+        private void closeUnderlying() throws IOException
+        {
+            out.close();
+        }
+    }
+
+    private final Path outputDir;
+
+    private final List<String> extensions;
+
+    private final List<String> indexedExtensions;
+
+    private PostProcessOutputTasklet(Path outputDir, List<String> extensions, List<String> indexedExtensions)
+    {
+        this.outputDir = outputDir;
+        this.extensions = extensions;
+        this.indexedExtensions = indexedExtensions;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext context)
+        throws Exception
+    {
+        StepExecution stepExecution = context.getStepContext().getStepExecution();
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(outputDir, Files::isRegularFile)) {
+            for (Path path: ds) {
+                String extension = StringUtils.getFilenameExtension(path.getFileName().toString());
+                if (extension != null && extensions.contains(extension))
+                    paths.add(path);
+            }
+        }
+
+        Stats stats = new Stats();
+        List<String> compressedFiles = new ArrayList<>();
+        for (Path path: paths) {
+            String name = path.getFileName().toString();
+            Path target = outputDir.resolve(name + COMPRESSED_SUFFIX);
+            Files.deleteIfExists(target); // a leftover of a failed attempt
+            if (indexedExtensions.contains(StringUtils.getFilenameExtension(name))) {
+                Path indexPath = outputDir.resolve(name + COMPRESSED_SUFFIX + INDEX_SUFFIX);
+                Files.deleteIfExists(indexPath);
+                processTriples(path, target, indexPath, stats);
+            } else {
+                compress(path, target);
+            }
+            stats.bytes += Files.size(path);
+            stats.compressedBytes += Files.size(target);
+            compressedFiles.add(target.getFileName().toString());
+        }
+
+        logger.info("Post-processed {} output files in {}: {} triples, {} subjects, {} -> {} bytes",
+            paths.size(), outputDir, stats.triples, stats.subjects,
+            stats.bytes, stats.compressedBytes);
+
+        executionContext.putLong(Keys.TRIPLES, stats.triples);
+        executionContext.putLong(Keys.SUBJECTS, stats.subjects);
+        // Note: Always put a bbox (a null value would remove the key, and fail its promotion)
+        executionContext.put(Keys.BBOX, stats.bbox == null? Collections.emptyList() :
+            Arrays.asList(stats.bbox[0], stats.bbox[1], stats.bbox[2], stats.bbox[3]));
+        executionContext.putLong(Keys.BYTES, stats.bytes);
+        executionContext.putLong(Keys.COMPRESSED_BYTES, stats.compressedBytes);
+        executionContext.put(Keys.COMPRESSED_FILES, compressedFiles);
+
+        return RepeatStatus.FINISHED;
+    }
+
+    private void compress(Path source, Path target) throws IOException
+    {
+        try (InputStream in = Files.newInputStream(source);
+            OutputStream out = new GZIPOutputStream(
+                Files.newOutputStream(target, StandardOpenOption.CREATE_NEW), 64 * 1024))
+        {
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+                out.write(buffer, 0, n);
+        }
+    }
+
+    /**
+     * Stream an N-Triples file: collect statistics, write a compressed copy (as a sequence of
+     * gzip members), and write an index of subjects.
+     */
+    private void processTriples(Path source, Path target, Path indexPath, Stats stats)
+        throws IOException
+    {
+        CountingOutputStream out = new CountingOutputStream(
+            Files.newOutputStream(target, StandardOpenOption.CREATE_NEW));
+
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8);
+            BufferedWriter indexWriter = Files.newBufferedWriter(
+                indexPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW))
+        {
+            GZIPOutputStream member = null;
+            long memberOffset = 0, memberSize = 0;
+            String lastSubject = null;
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String subject = null;
+                String s = line.trim();
+                if (!s.isEmpty() && s.charAt(0) != '#') {
+                    stats.triples++;
+                    int i = s.indexOf(' ');
+                    int j = i < 0? -1 : s.indexOf(' ', i + 1);
+                    subject = i < 0? s : s.substring(0, i);
+                    if (j > 0)
+                        collectGeometry(s.substring(j + 1), stats);
+                }
+
+                boolean subjectChanged = subject != null && !subject.equals(lastSubject);
+
+                // Start a new member (at a subject boundary) if the current one is full
+                if (member == null || (subjectChanged && memberSize >= BLOCK_SIZE)) {
+                    if (member != null)
+                        member.finish();
+                    memberOffset = out.count;
+                    memberSize = 0;
+                    member = new GZIPOutputStream(out, 64 * 1024);
+                }
+
+                if (subjectChanged) {
+                    stats.addSubject();
+                    lastSubject = subject;
+                    indexWriter.write(subject + "\t" + memberOffset);
+                    indexWriter.newLine();
+                }
+
+                byte[] b = (line + "\n").getBytes(StandardCharsets.UTF_8);
+                member.write(b);
+                memberSize += b.length;
+            }
+
+            if (member != null)
+                member.finish();
+        } finally {
+            out.closeUnderlying();
+        }
+    }
+
+    /**
+     * Collect the coordinates of an object (if it is a WKT literal) into our bounding box
+     */
+    private void collectGeometry(String object, Stats stats)
+    {
+        Matcher m = WKT_LITERAL_PATTERN.matcher(object);
+        if (!m.find())
+            return;
+
+        Matcher numbers = NUMBER_PATTERN.matcher(m.group(1));
+        while (numbers.find()) {
+            double x = Double.parseDouble(numbers.group());
+            if (!numbers.find())
+                break;
+            double y = Double.parseDouble(numbers.group());
+            stats.addPoint(x, y);
+        }
+    }
+}
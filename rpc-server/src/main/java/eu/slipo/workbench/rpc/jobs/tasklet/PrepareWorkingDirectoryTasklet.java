@@ -1,6 +1,5 @@
 package eu.slipo.workbench.rpc.jobs.tasklet;
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -26,8 +25,6 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +45,7 @@ import eu.slipo.workbench.common.model.poi.EnumDataFormat;
 import eu.slipo.workbench.common.model.tool.EnumConfigurationFormat;
 import eu.slipo.workbench.common.model.tool.ToolConfiguration;
 import eu.slipo.workbench.common.service.tool.ConfigurationGeneratorService;
+import eu.slipo.workbench.rpc.jobs.cache.InputStore;
 
 /**
  * A tasklet that prepares a working directory.
@@ -73,6 +71,17 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
      */
     private static final List<String> ZIP_FILE_EXTENSIONS = Arrays.asList("zip", "z", "ZIP", "Z");
     
+    /**
+     * The magic bytes of a (non-empty) ZIP archive, i.e. the signature of a local file header
+     */
+    private static final byte[] ZIP_MAGIC = new byte[] { 'P', 'K', 0x03, 0x04 };
+    
+    /**
+     * The number of times to extract an archive into the input store, if its extracted
+     * files are collected (by another thread) before we link to them
+     */
+    private static final int MAX_EXTRACT_ATTEMPTS = 2;
+    
     /**
      * Check if a given path matches one expected for a ZIP archive
      */
@@ -82,6 +91,20 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
             StringUtils.getFilenameExtension(path.getFileName().toString()));
     }
     
+    /**
+     * Check if a given path is a ZIP archive (either by its name or by its magic bytes)
+     */
+    private static boolean isZipArchive(Path path) throws IOException
+    {
+        if (matchesNameOfZipArchive(path))
+            return true;
+        
+        byte[] header = new byte[ZIP_MAGIC.length];
+        try (InputStream in = Files.newInputStream(path)) {
+            return in.read(header) == header.length && Arrays.equals(header, ZIP_MAGIC);
+        }
+    }
+    
     /**
      * Describe a configuration entry.
      */
@@ -136,6 +159,12 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
         
         private Boolean unzip;
         
+        private ZipExtractor zipExtractor;
+        
+        private StreamExtractor streamExtractor;
+        
+        private InputStore inputStore;
+        
         /**
          * Set the configuration-generator service to be used 
          * @param service
@@ -200,6 +229,10 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
          * Set whether a single input given as a ZIP archive should be extracted into 
          * our input directory. If so, all ZIP entries will be extracted discarding their 
          * directory prefix (if any).
+         * 
+         * <p>The same flag controls whether inputs compressed as gzip, bzip2 or xz (detected
+         * by their magic bytes) are decompressed into our input directory (a compressed TAR
+         * archive is extracted in the same manner as a ZIP archive).
          * @param flag
          */
         public Builder unzipIfArchive(boolean flag)
@@ -253,6 +286,42 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
             return this;
         }
         
+        /**
+         * Set the extractor for an input given as a ZIP archive (if not given, an extractor
+         * with default limits is used).
+         * @param extractor
+         */
+        public Builder zipExtractor(ZipExtractor extractor)
+        {
+            Assert.notNull(extractor, "Expected a non-null extractor");
+            this.zipExtractor = extractor;
+            return this;
+        }
+        
+        /**
+         * Set the extractor for inputs given as compressed streams (if not given, an extractor
+         * with default limits is used).
+         * @param extractor
+         */
+        public Builder streamExtractor(StreamExtractor extractor)
+        {
+            Assert.notNull(extractor, "Expected a non-null extractor");
+            this.streamExtractor = extractor;
+            return this;
+        }
+        
+        /**
+         * Set a content-addressed store for input files. If given, inputs (and files extracted 
+         * from archives) are added to the store, and are hard-linked from there into our input
+         * directory (an archive already known to the store is not extracted again).
+         * @param store
+         */
+        public Builder inputStore(InputStore store)
+        {
+            this.inputStore = store;
+            return this;
+        }
+        
         public PrepareWorkingDirectoryTasklet build()
         {
             Assert.state(configurationGeneratorService != null, 
@@ -269,6 +338,15 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
             if (unzip != null)
                 tasklet.setUnzip(unzip);
             
+            if (zipExtractor != null)
+                tasklet.setZipExtractor(zipExtractor);
+            
+            if (streamExtractor != null)
+                tasklet.setStreamExtractor(streamExtractor);
+            
+            if (inputStore != null)
+                tasklet.setInputStore(inputStore);
+            
             return tasklet;
         }
     }
@@ -290,6 +368,9 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
         public static final String INPUT_FILES = "inputFiles";
         
         public static final String INPUT_FORMAT = "inputFormat";
+        
+        /** The total size (bytes) of input files (as extracted, if an archive is given) */
+        public static final String INPUT_SIZE = "inputSize";
        
         public static final String OUTPUT_DIR = "outputDir";
         
@@ -314,6 +395,12 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
     
     private boolean unzip = UNPACK_ZIP_ARCHIVE;
     
+    private ZipExtractor zipExtractor = new ZipExtractor();
+    
+    private StreamExtractor streamExtractor = new StreamExtractor();
+    
+    private InputStore inputStore;
+    
     private PrepareWorkingDirectoryTasklet(
         Path workDir, List<Path> input, Map<String, ConfigurationSpec> config,
         ConfigurationGeneratorService configurationGeneratorService)
@@ -336,6 +423,21 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
         this.unzip = flag;
     }
     
+    private void setZipExtractor(ZipExtractor extractor)
+    {
+        this.zipExtractor = extractor;
+    }
+    
+    private void setStreamExtractor(StreamExtractor extractor)
+    {
+        this.streamExtractor = extractor;
+    }
+    
+    private void setInputStore(InputStore store)
+    {
+        this.inputStore = store;
+    }
+    
     public Path workDir()
     {
         return inputDir;
@@ -376,26 +478,41 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
         //
         
         List<String> inputFiles = new ArrayList<>();
-        if (!input.isEmpty()) {
-            if (unzip && (input.size() == 1) && matchesNameOfZipArchive(input.get(0))) {
+        long inputSize = 0;
+        if (!input.isEmpty() && inputStore != null) {
+            // Assemble input directory from objects of the input store
+            for (Map.Entry<String, Long> e: linkFromInputStore().entrySet()) {
+                inputFiles.add(e.getKey());
+                inputSize += e.getValue();
+            }
+        } else if (!input.isEmpty()) {
+            if (unzip && (input.size() == 1) && isZipArchive(input.get(0))) {
                 // The input archive should be extracted to input directory
-                try (ZipFile zipfile = new ZipFile(input.get(0).toString())) {
-                    List<String> entryNames = zipfile.stream()
-                        .filter(e -> !e.isDirectory())
-                        .map(e -> e.getName())
-                        .collect(Collectors.toList());
-                    for (String entryName: entryNames) {
-                        String name = Paths.get(entryName).getFileName().toString();
-                        extractToInputDirectory(zipfile, entryName, name);
-                        inputFiles.add(name);
-                    }
+                Map<String, Long> sizes = zipExtractor.extract(input.get(0), inputDir);
+                for (Map.Entry<String, Long> e: sizes.entrySet()) {
+                    inputFiles.add(e.getKey());
+                    inputSize += e.getValue();
                 }
             } else {
-                // Link to each input from inside input directory
+                // Decompress each compressed input, link to any other from inside input directory
+                Map<Path, StreamExtractor.Format> compressedInput = new LinkedHashMap<>();
                 for (Path inputPath: input) {
-                    String name = inputPath.getFileName().toString();
-                    createLinkFromInputDirectory(inputPath, name);
-                    inputFiles.add(name);
+                    StreamExtractor.Format format = unzip? StreamExtractor.detect(inputPath) : null;
+                    if (format != null) {
+                        compressedInput.put(inputPath, format);
+                    } else {
+                        String name = inputPath.getFileName().toString();
+                        createLinkFromInputDirectory(inputPath, name);
+                        inputFiles.add(name);
+                        inputSize += Files.size(inputPath);
+                    }
+                }
+                if (!compressedInput.isEmpty()) {
+                    Map<String, Long> sizes = streamExtractor.extract(compressedInput, inputDir);
+                    for (Map.Entry<String, Long> e: sizes.entrySet()) {
+                        inputFiles.add(e.getKey());
+                        inputSize += e.getValue();
+                    }
                 }
             }
         }
@@ -421,6 +538,7 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
         executionContext.putString(Keys.INPUT_DIR, inputDir.toString());
         executionContext.putString(Keys.INPUT_FORMAT, inputFormat.name());
         executionContext.put(Keys.INPUT_FILES, inputFiles);
+        executionContext.putLong(Keys.INPUT_SIZE, inputSize);
         
         executionContext.putString(Keys.OUTPUT_DIR, outputDir.toString());
         
@@ -433,20 +551,47 @@ public class PrepareWorkingDirectoryTasklet implements Tasklet
     }
     
     /**
-     * Extract a named ZIP entry inside our input directory.
+     * Add each input to our input store, and link to the stored objects from inside our input
+     * directory. An archive (or a compressed file) is extracted (into the store) only if the 
+     * store does not already know of it.
      * 
-     * @param zipfile An opened ZipFile handle
-     * @param entryName The entry name
-     * @param name The name of the extracted file (relative to input directory)
-     * @throws IOException
+     * @return a map of sizes keyed by the name of linked files
+     * @throws IOException 
      */
-    private void extractToInputDirectory(ZipFile zipfile, String entryName, String name)
-        throws IOException
+    private Map<String, Long> linkFromInputStore() throws IOException
     {
-        ZipEntry e = zipfile.getEntry(entryName);
-        try (InputStream in = new BufferedInputStream(zipfile.getInputStream(e))) {
-            Files.copy(in, inputDir.resolve(name));
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        
+        for (Path inputPath: input) {
+            boolean isZip = unzip && (input.size() == 1) && isZipArchive(inputPath);
+            StreamExtractor.Format format = (unzip && !isZip)? StreamExtractor.detect(inputPath) : null;
+            if (isZip || format != null) {
+                String archiveDigest = inputStore.digest(inputPath);
+                Map<String, Long> linked = inputStore.linkExtracted(archiveDigest, inputDir);
+                for (int i = 0; linked == null; ++i) {
+                    // Not known (or an object was collected meanwhile): extract and retry
+                    if (i == MAX_EXTRACT_ATTEMPTS)
+                        throw new IOException("Cannot link the extracted files of " + inputPath);
+                    Path stagingDir = inputStore.createStagingDirectory();
+                    try {
+                        Map<String, Long> extracted = isZip?
+                            zipExtractor.extract(inputPath, stagingDir) :
+                            streamExtractor.extract(Collections.singletonMap(inputPath, format), stagingDir);
+                        inputStore.putExtracted(
+                            archiveDigest, stagingDir, new ArrayList<>(extracted.keySet()));
+                    } finally {
+                        inputStore.discardStagingDirectory(stagingDir);
+                    }
+                    linked = inputStore.linkExtracted(archiveDigest, inputDir);
+                }
+                sizes.putAll(linked);
+            } else {
+                String name = inputPath.getFileName().toString();
+                sizes.put(name, inputStore.putAndLink(inputPath, inputDir.resolve(name)));
+            }
         }
+        
+        return sizes;
     }
     
     /**
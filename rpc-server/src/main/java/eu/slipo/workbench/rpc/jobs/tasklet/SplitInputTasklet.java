@@ -0,0 +1,336 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * A tasklet that splits line-oriented input files into a number of shards.
+ * <p>
+ * Every shard <tt>i</tt> is given a directory <tt>{shardsDir}/{i}/</tt> with an <tt>input</tt>
+ * and an (empty) <tt>output</tt> subdirectory. An input file (matching the expected extension)
+ * is split on record boundaries into shards of (roughly) equal size, and each part is named
+ * as the original file. Any other input file (e.g. an auxiliary file) is linked (or copied)
+ * into every shard.
+ * <p>
+ * A record is normally a line. If a quote character is given, a line break inside a quoted
+ * field does not end a record (as in CSV). If a header is expected, the 1st record is repeated
+ * at the top of every part.
+ */
+public class SplitInputTasklet implements Tasklet
+{
+    private static final Logger logger = LoggerFactory.getLogger(SplitInputTasklet.class);
+
+    /**
+     * The collection of keys used inside our execution context
+     */
+    public static class Keys
+    {
+        /** The directory holding the shards */
+        public static final String SHARDS_DIR = "shardsDir";
+
+        /** The number of shards actually created */
+        public static final String SHARDS = "shards";
+    }
+
+    /**
+     * A builder for the enclosing class
+     */
+    public static class Builder
+    {
+        private Path inputDir;
+
+        private List<String> inputFiles = Collections.emptyList();
+
+        private String extension;
+
+        private Path shardsDir;
+
+        private int shards = 2;
+
+        private boolean header = false;
+
+        private Character quote;
+
+        private Charset charset = StandardCharsets.UTF_8;
+
+        private Builder() {}
+
+        /**
+         * Set the input files as names relative to an input directory
+         */
+        public Builder input(Path inputDir, List<String> inputFiles)
+        {
+            Assert.isTrue(inputDir != null && inputDir.isAbsolute(),
+                "Expected an absolute path for the input directory");
+            Assert.notNull(inputFiles, "Expected a list of file names");
+            this.inputDir = inputDir;
+            this.inputFiles = new ArrayList<>(inputFiles);
+            return this;
+        }
+
+        /**
+         * Set the filename extension of the files that should be split
+         */
+        public Builder extension(String extension)
+        {
+            this.extension = extension;
+            return this;
+        }
+
+        public Builder shardsDirectory(Path shardsDir)
+        {
+            Assert.isTrue(shardsDir != null && shardsDir.isAbsolute(),
+                "Expected an absolute path for the shards directory");
+            this.shardsDir = shardsDir;
+            return this;
+        }
+
+        /**
+         * Set the (maximum) number of shards
+         */
+        public Builder shards(int shards)
+        {
+            Assert.isTrue(shards > 0, "Expected a positive number of shards");
+            this.shards = shards;
+            return this;
+        }
+
+        /**
+         * Indicate that the 1st record of a file is a header (to be repeated in every part)
+         */
+        public Builder header(boolean header)
+        {
+            this.header = header;
+            return this;
+        }
+
+        /**
+         * Set the quote character (inside which line breaks are not record separators)
+         */
+        public Builder quote(char quote)
+        {
+            this.quote = quote;
+            return this;
+        }
+
+        public Builder charset(Charset charset)
+        {
+            Assert.notNull(charset, "Expected a non-null charset");
+            this.charset = charset;
+            return this;
+        }
+
+        public SplitInputTasklet build()
+        {
+            Assert.state(inputDir != null, "The input is not specified");
+            Assert.state(shardsDir != null, "The shards directory is not specified");
+            Assert.state(!StringUtils.isEmpty(extension), "The filename extension is not specified");
+
+            SplitInputTasklet tasklet =
+                new SplitInputTasklet(inputDir, inputFiles, extension, shardsDir, shards);
+            tasklet.header = header;
+            tasklet.quote = quote;
+            tasklet.charset = charset;
+            return tasklet;
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private final Path inputDir;
+
+    private final List<String> inputFiles;
+
+    private final String extension;
+
+    private final Path shardsDir;
+
+    private final int shards;
+
+    private boolean header = false;
+
+    private Character quote;
+
+    private Charset charset = StandardCharsets.UTF_8;
+
+    private SplitInputTasklet(
+        Path inputDir, List<String> inputFiles, String extension, Path shardsDir, int shards)
+    {
+        this.inputDir = inputDir;
+        this.inputFiles = inputFiles;
+        this.extension = extension;
+        this.shardsDir = shardsDir;
+        this.shards = shards;
+    }
+
+    /**
+     * Get the input directory for the i-th shard
+     */
+    public static Path shardInputDir(Path shardsDir, int i)
+    {
+        return shardsDir.resolve(Integer.toString(i)).resolve("input");
+    }
+
+    /**
+     * Get the output directory for the i-th shard
+     */
+    public static Path shardOutputDir(Path shardsDir, int i)
+    {
+        return shardsDir.resolve(Integer.toString(i)).resolve("output");
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext context)
+        throws Exception
+    {
+        StepExecution stepExecution = context.getStepContext().getStepExecution();
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+        //
+        // Create directory hierarchy for shards (clearing any leftovers of a failed attempt)
+        //
+
+        if (Files.exists(shardsDir))
+            deleteRecursively(shardsDir);
+
+        for (int i = 0; i < shards; i++) {
+            Files.createDirectories(shardInputDir(shardsDir, i));
+            Files.createDirectories(shardOutputDir(shardsDir, i));
+        }
+
+        //
+        // Split each input file into parts, link any other file into every shard
+        //
+
+        for (String name: inputFiles) {
+            Path path = inputDir.resolve(name);
+            if (extension.equals(StringUtils.getFilenameExtension(name))) {
+                split(path, name);
+            } else {
+                for (int i = 0; i < shards; i++)
+                    linkOrCopy(path, shardInputDir(shardsDir, i).resolve(name));
+            }
+        }
+
+        //
+        // Update execution context
+        //
+
+        executionContext.putString(Keys.SHARDS_DIR, shardsDir.toString());
+        executionContext.putInt(Keys.SHARDS, shards);
+
+        return RepeatStatus.FINISHED;
+    }
+
+    /**
+     * Split a file on record boundaries, filling every part (but the last) up to a
+     * target size
+     */
+    private void split(Path path, String name) throws IOException
+    {
+        final long targetSize = Math.max(1L, Files.size(path) / shards);
+
+        logger.info("Splitting {} into {} parts of ~{} bytes", path, shards, targetSize);
+
+        try (BufferedReader reader = Files.newBufferedReader(path, charset)) {
+            // Note that every part gets the header (even if no records are left for it)
+            String headerRecord = header? readRecord(reader) : null;
+            String record = readRecord(reader);
+
+            for (int i = 0; i < shards; i++) {
+                Path target = shardInputDir(shardsDir, i).resolve(name);
+                try (BufferedWriter writer = Files.newBufferedWriter(target, charset)) {
+                    if (headerRecord != null) {
+                        writer.write(headerRecord);
+                        writer.newLine();
+                    }
+                    long size = 0;
+                    boolean last = (i == shards - 1);
+                    while (record != null && (last || size < targetSize)) {
+                        if (!record.isEmpty()) {
+                            writer.write(record);
+                            writer.newLine();
+                            size += record.length() + 1;
+                        }
+                        record = readRecord(reader);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a record (possibly spanning several lines, if a line break is quoted)
+     *
+     * @return a record, or <tt>null</tt> if the input is exhausted
+     */
+    private String readRecord(BufferedReader reader) throws IOException
+    {
+        String line = reader.readLine();
+        if (line == null || quote == null)
+            return line;
+
+        StringBuilder record = new StringBuilder(line);
+        boolean quoted = countOf(line, quote) % 2 != 0;
+        while (quoted && (line = reader.readLine()) != null) {
+            record.append('\n').append(line);
+            quoted ^= countOf(line, quote) % 2 != 0;
+        }
+        return record.toString();
+    }
+
+    private static int countOf(String s, char c)
+    {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++)
+            if (s.charAt(i) == c)
+                n++;
+        return n;
+    }
+
+    private static void linkOrCopy(Path source, Path target) throws IOException
+    {
+        try {
+            Files.createLink(target, source.toRealPath());
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source, target);
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException
+    {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.forEach(paths::add);
+        }
+        Collections.reverse(paths);
+        for (Path p: paths)
+            Files.delete(p);
+    }
+}
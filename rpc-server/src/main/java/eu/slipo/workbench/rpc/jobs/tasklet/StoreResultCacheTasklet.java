@@ -0,0 +1,44 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.nio.file.Path;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.rpc.jobs.cache.ResultCache;
+
+/**
+ * A tasklet that stores the contents of an output directory into a {@link ResultCache}.
+ *
+ * @see LookupResultCacheTasklet
+ */
+public class StoreResultCacheTasklet implements Tasklet
+{
+    private final ResultCache cache;
+
+    private final String key;
+
+    private final Path outputDir;
+
+    public StoreResultCacheTasklet(ResultCache cache, String key, Path outputDir)
+    {
+        Assert.notNull(cache, "Expected a non-null cache");
+        Assert.notNull(key, "Expected a non-null key");
+        Assert.isTrue(outputDir != null && outputDir.isAbsolute(),
+            "Expected an absolute path for the output directory");
+        this.cache = cache;
+        this.key = key;
+        this.outputDir = outputDir;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext context)
+        throws Exception
+    {
+        cache.store(key, outputDir);
+        return RepeatStatus.FINISHED;
+    }
+}
@@ -0,0 +1,335 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import eu.slipo.workbench.common.model.ApplicationException;
+import eu.slipo.workbench.common.model.BasicErrorCode;
+
+/**
+ * Decompress (stream-compressed) input files into a flat directory.
+ * <p>
+ * The compression format (gzip, bzip2, xz) is detected by the magic bytes of a file. If
+ * the decompressed stream is a TAR archive, its (file) entries are extracted (discarding
+ * their directory prefix); otherwise, the stream is written to a single file named after
+ * the input (stripping the compression suffix).
+ * <p>
+ * Several inputs are decompressed in parallel on a bounded pool of threads (a single stream
+ * cannot be decompressed in parallel). As with {@link ZipExtractor}, the extraction fails
+ * if it exceeds a limit on total size, number of entries, or compression ratio.
+ */
+public class StreamExtractor
+{
+    private static final Logger logger = LoggerFactory.getLogger(StreamExtractor.class);
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final long CHUNK_SIZE = 1024L * 1024L;
+
+    private static final long MIN_SIZE_FOR_RATIO = 1024L * 1024L;
+
+    /**
+     * The offset of the magic string (<tt>ustar</tt>) in the header of a TAR archive
+     */
+    private static final int TAR_MAGIC_OFFSET = 257;
+
+    /**
+     * The (stream) compression formats recognized by their magic bytes
+     */
+    public enum Format
+    {
+        GZIP(new byte[] { 0x1f, (byte) 0x8b }, "gz", "tgz", "gzip"),
+
+        BZIP2(new byte[] { 'B', 'Z', 'h' }, "bz2", "tbz2", "bzip2"),
+
+        XZ(new byte[] { (byte) 0xfd, '7', 'z', 'X', 'Z', 0x00 }, "xz", "txz");
+
+        private final byte[] magic;
+
+        private final List<String> extensions;
+
+        private Format(byte[] magic, String ...extensions)
+        {
+            this.magic = magic;
+            this.extensions = Arrays.asList(extensions);
+        }
+
+        private boolean matches(byte[] header, int length)
+        {
+            if (length < magic.length)
+                return false;
+            for (int i = 0; i < magic.length; i++)
+                if (header[i] != magic[i])
+                    return false;
+            return true;
+        }
+
+        private InputStream decompress(InputStream in) throws IOException
+        {
+            switch (this) {
+            case GZIP:
+                return new GzipCompressorInputStream(in, true);
+            case BZIP2:
+                return new BZip2CompressorInputStream(in, true);
+            case XZ:
+            default:
+                return new XZCompressorInputStream(in, true);
+            }
+        }
+    }
+
+    /**
+     * Detect the compression format of a file.
+     *
+     * @param path
+     * @return a format, or <tt>null</tt> if the file is not recognized as compressed
+     * @throws IOException
+     */
+    public static Format detect(Path path) throws IOException
+    {
+        byte[] header = new byte[8];
+        int n = 0;
+        try (InputStream in = Files.newInputStream(path)) {
+            int k;
+            while (n < header.length && (k = in.read(header, n, header.length - n)) > 0)
+                n += k;
+        }
+
+        for (Format format: Format.values())
+            if (format.matches(header, n))
+                return format;
+        return null;
+    }
+
+    private int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private long maxSize = ZipExtractor.DEFAULT_MAX_SIZE;
+
+    private int maxEntries = ZipExtractor.DEFAULT_MAX_ENTRIES;
+
+    private int maxRatio = ZipExtractor.DEFAULT_MAX_RATIO;
+
+    public void setThreads(int threads)
+    {
+        Assert.isTrue(threads > 0, "Expected a positive number of threads");
+        this.threads = threads;
+    }
+
+    public void setMaxSize(long maxSize)
+    {
+        Assert.isTrue(maxSize > 0, "Expected a positive size");
+        this.maxSize = maxSize;
+    }
+
+    public void setMaxEntries(int maxEntries)
+    {
+        Assert.isTrue(maxEntries > 0, "Expected a positive number of entries");
+        this.maxEntries = maxEntries;
+    }
+
+    public void setMaxRatio(int maxRatio)
+    {
+        Assert.isTrue(maxRatio > 1, "Expected a ratio greater than 1");
+        this.maxRatio = maxRatio;
+    }
+
+    /**
+     * Decompress a number of (compressed) files into a directory.
+     *
+     * @param inputs The compressed files (keyed by path) along with their detected format
+     * @param targetDir The target directory
+     * @return a map of extracted sizes keyed by the name of extracted files
+     * @throws IOException
+     */
+    public Map<String, Long> extract(Map<Path, Format> inputs, Path targetDir)
+        throws IOException
+    {
+        final AtomicLong totalSize = new AtomicLong(0);
+        final AtomicInteger totalEntries = new AtomicInteger(0);
+
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(threads, Math.max(1, inputs.size())), r -> {
+                Thread t = new Thread(r, "decompress-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+
+        Map<Path, Future<Map<String, Long>>> results = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<Path, Format> input: inputs.entrySet()) {
+                Path path = input.getKey();
+                Format format = input.getValue();
+                results.put(path, executor.submit(
+                    () -> extract(path, format, targetDir, totalSize, totalEntries)));
+            }
+            Map<String, Long> sizes = new LinkedHashMap<>();
+            for (Future<Map<String, Long>> r: results.values())
+                sizes.putAll(r.get());
+            return sizes;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decompressing input", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<String, Long> extract(
+            Path path, Format format, Path targetDir, AtomicLong totalSize, AtomicInteger totalEntries)
+        throws IOException
+    {
+        final long compressedSize = Files.size(path);
+
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        try (InputStream in = new BufferedInputStream(
+            format.decompress(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)),
+            BUFFER_SIZE))
+        {
+            if (isTarArchive(in)) {
+                long n = 0;
+                TarArchiveInputStream tarStream = new TarArchiveInputStream(in);
+                TarArchiveEntry e;
+                while ((e = tarStream.getNextTarEntry()) != null) {
+                    if (!e.isFile())
+                        continue;
+                    if (totalEntries.incrementAndGet() > maxEntries) {
+                        throw ApplicationException.fromMessage(BasicErrorCode.INPUT_INVALID,
+                            String.format("The input has too many entries (> %d)", maxEntries));
+                    }
+                    String name = Paths.get(e.getName()).getFileName().toString();
+                    long size = write(tarStream, targetDir.resolve(name), totalSize, n, compressedSize);
+                    sizes.put(name, size);
+                    n += size;
+                }
+            } else {
+                totalEntries.incrementAndGet();
+                String name = stripExtension(path.getFileName().toString(), format);
+                sizes.put(name, write(in, targetDir.resolve(name), totalSize, 0, compressedSize));
+            }
+        }
+
+        logger.info("Decompressed {} ({}) into {} file(s)", path, format, sizes.size());
+        return sizes;
+    }
+
+    /**
+     * Write a (decompressed) stream into a file, checking our limits on every chunk.
+     *
+     * @param in The input stream
+     * @param target The target file
+     * @param totalSize The total size extracted so far (updated)
+     * @param offset The size extracted so far from the same compressed input
+     * @param compressedSize The size of the compressed input
+     */
+    private long write(
+            InputStream in, Path target, AtomicLong totalSize, long offset, long compressedSize)
+        throws IOException
+    {
+        long n = 0;
+        try (FileChannel out = FileChannel.open(
+                target, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+            ReadableByteChannel inChannel = Channels.newChannel(new UnclosableInputStream(in)))
+        {
+            try {
+                long k;
+                while ((k = out.transferFrom(inChannel, n, CHUNK_SIZE)) > 0) {
+                    n += k;
+                    if (totalSize.addAndGet(k) > maxSize) {
+                        throw ApplicationException.fromMessage(BasicErrorCode.INPUT_INVALID,
+                            String.format("The input expands beyond the maximum size (%d bytes)", maxSize));
+                    }
+                    long size = offset + n;
+                    if (size > MIN_SIZE_FOR_RATIO && compressedSize > 0 && size / compressedSize > maxRatio) {
+                        throw ApplicationException.fromMessage(BasicErrorCode.INPUT_INVALID,
+                            String.format("The input exceeds the maximum compression ratio (%d)", maxRatio));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(target); // do not leave a partial file behind
+                throw e;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Check (without consuming it) if a stream is a TAR archive
+     */
+    private static boolean isTarArchive(InputStream in) throws IOException
+    {
+        final int n = TAR_MAGIC_OFFSET + 5;
+        byte[] header = new byte[n];
+        in.mark(n);
+        int k, m = 0;
+        while (m < n && (k = in.read(header, m, n - m)) > 0)
+            m += k;
+        in.reset();
+
+        return m == n && new String(header, TAR_MAGIC_OFFSET, 5, "US-ASCII").equals("ustar");
+    }
+
+    /**
+     * Strip the compression suffix from a filename (e.g. <tt>a.csv.gz</tt> becomes <tt>a.csv</tt>).
+     */
+    private static String stripExtension(String name, Format format)
+    {
+        String extension = StringUtils.getFilenameExtension(name);
+        if (extension != null && format.extensions.contains(extension.toLowerCase()))
+            return StringUtils.stripFilenameExtension(name);
+        return name + ".out";
+    }
+
+    /**
+     * Protect a stream from being closed (a TAR stream is shared among entries)
+     */
+    private static class UnclosableInputStream extends FilterInputStream
+    {
+        private UnclosableInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        @Override
+        public void close()
+        {
+            // no-op
+        }
+    }
+}
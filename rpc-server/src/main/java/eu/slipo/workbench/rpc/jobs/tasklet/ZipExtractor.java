@@ -0,0 +1,257 @@
+package eu.slipo.workbench.rpc.jobs.tasklet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.common.model.ApplicationException;
+import eu.slipo.workbench.common.model.BasicErrorCode;
+
+/**
+ * Extract the (file) entries of a ZIP archive into a flat directory.
+ * <p>
+ * Entries are extracted in parallel on a bounded pool of threads, and are written through
+ * a {@link FileChannel}. A STORED (i.e. uncompressed) entry is not decompressed at all: its
+ * bytes are transferred directly from the archive file.
+ * <p>
+ * The extraction is guarded against ZIP bombs: it fails if the total extracted size, or
+ * the number of entries, or the compression ratio of an entry exceeds a limit. An archive
+ * with several file entries of the same name (in any directory) is also rejected. If the
+ * extraction fails, no extracted file is left behind in the target directory.
+ */
+public class ZipExtractor
+{
+    private static final Logger logger = LoggerFactory.getLogger(ZipExtractor.class);
+
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024L * 1024L * 1024L;
+
+    public static final int DEFAULT_MAX_ENTRIES = 10 * 1000;
+
+    public static final int DEFAULT_MAX_RATIO = 200;
+
+    /**
+     * The size (bytes) under which an entry is not checked for its compression ratio (small
+     * files are commonly highly compressible)
+     */
+    private static final long MIN_SIZE_FOR_RATIO = 1024L * 1024L;
+
+    private static final long CHUNK_SIZE = 1024L * 1024L;
+
+    /**
+     * The time (milliseconds) to wait for the tasks of a failed extraction to stop
+     */
+    private static final long DISCARD_TIMEOUT = 10 * 1000L;
+
+    private int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private long maxSize = DEFAULT_MAX_SIZE;
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private int maxRatio = DEFAULT_MAX_RATIO;
+
+    public void setThreads(int threads)
+    {
+        Assert.isTrue(threads > 0, "Expected a positive number of threads");
+        this.threads = threads;
+    }
+
+    public void setMaxSize(long maxSize)
+    {
+        Assert.isTrue(maxSize > 0, "Expected a positive size");
+        this.maxSize = maxSize;
+    }
+
+    public void setMaxEntries(int maxEntries)
+    {
+        Assert.isTrue(maxEntries > 0, "Expected a positive number of entries");
+        this.maxEntries = maxEntries;
+    }
+
+    public void setMaxRatio(int maxRatio)
+    {
+        Assert.isTrue(maxRatio > 1, "Expected a ratio greater than 1");
+        this.maxRatio = maxRatio;
+    }
+
+    /**
+     * Extract all file entries of an archive into a directory, discarding their directory
+     * prefix (if any).
+     *
+     * @param archive The path of the ZIP archive
+     * @param targetDir The target directory
+     * @return a map of extracted sizes keyed by the name of extracted files (in the order
+     *   of entries in the archive)
+     * @throws IOException
+     */
+    public Map<String, Long> extract(Path archive, Path targetDir)
+        throws IOException
+    {
+        final AtomicLong totalSize = new AtomicLong(0);
+
+        try (ZipFile zipfile = new ZipFile(archive.toFile())) {
+            List<ZipArchiveEntry> entries = new ArrayList<>();
+            for (ZipArchiveEntry e: Collections.list(zipfile.getEntriesInPhysicalOrder())) {
+                if (!e.isDirectory())
+                    entries.add(e);
+            }
+            if (entries.size() > maxEntries) {
+                throw ApplicationException.fromMessage(BasicErrorCode.INPUT_INVALID, String.format(
+                    "The archive has too many entries (%d > %d)", entries.size(), maxEntries));
+            }
+
+            final AtomicInteger threadCount = new AtomicInteger(0);
+            ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(threads, Math.max(1, entries.size())), r -> {
+                    Thread t = new Thread(r, "unzip-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+
+            // Flatten the names of entries (checking for duplicates before extracting anything)
+
+            Map<String, ZipArchiveEntry> entryByName = new LinkedHashMap<>();
+            for (ZipArchiveEntry e: entries) {
+                Path fileName = Paths.get(e.getName()).getFileName();
+                String name = fileName == null? "" : fileName.toString();
+                if (name.isEmpty() || name.equals(".") || name.equals("..")) {
+                    // A flattened name must resolve to a file directly inside target directory
+                    throw ApplicationException.fromMessage(BasicErrorCode.INPUT_INVALID, String.format(
+                        "The archive has an entry with an invalid name (%s)", e.getName()));
+                }
+                if (entryByName.putIfAbsent(name, e) != null) {
+                    throw ApplicationException.fromMessage(BasicErrorCode.INPUT_INVALID, String.format(
+                        "The archive has more than one entry named %s", name));
+                }
+            }
+
+            Map<String, Future<Long>> results = new LinkedHashMap<>();
+            boolean succeeded = false;
+            try {
+                for (Map.Entry<String, ZipArchiveEntry> e: entryByName.entrySet()) {
+                    Path target = targetDir.resolve(e.getKey());
+                    results.put(e.getKey(), executor.submit(
+                        () -> extractEntry(archive, zipfile, e.getValue(), target, totalSize)));
+                }
+                Map<String, Long> sizes = new LinkedHashMap<>();
+                for (Map.Entry<String, Future<Long>> r: results.entrySet())
+                    sizes.put(r.getKey(), r.getValue().get());
+                logger.info("Extracted {} entries ({} bytes) from {}",
+                    sizes.size(), totalSize.get(), archive);
+                succeeded = true;
+                return sizes;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                throw new IllegalStateException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while extracting " + archive, e);
+            } finally {
+                executor.shutdownNow();
+                if (!succeeded)
+                    discard(executor, targetDir, results.keySet());
+            }
+        }
+    }
+
+    /**
+     * Remove the files extracted (fully or partially) by a failed extraction, once all
+     * (interrupted) tasks have finished. Otherwise, a retry would fail to create them anew.
+     */
+    private void discard(ExecutorService executor, Path targetDir, Collection<String> names)
+    {
+        try {
+            if (!executor.awaitTermination(DISCARD_TIMEOUT, TimeUnit.MILLISECONDS))
+                logger.warn("Timed out waiting for the extraction into {} to stop", targetDir);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (String name: names) {
+            try {
+                Files.deleteIfExists(targetDir.resolve(name));
+            } catch (IOException e) {
+                logger.warn("Failed to remove {}: {}", targetDir.resolve(name), e.getMessage());
+            }
+        }
+    }
+
+    private long extractEntry(
+            Path archive, ZipFile zipfile, ZipArchiveEntry e, Path target, AtomicLong totalSize)
+        throws IOException
+    {
+        long n = 0;
+        try (FileChannel out = FileChannel.open(
+            target, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW))
+        {
+            if (e.getMethod() == ZipArchiveEntry.STORED && e.getDataOffset() > 0 && e.getSize() >= 0) {
+                // Transfer bytes directly from archive (no decompression needed)
+                checkSize(totalSize.addAndGet(e.getSize()));
+                try (FileChannel in = FileChannel.open(archive, StandardOpenOption.READ)) {
+                    long offset = e.getDataOffset(), size = e.getSize();
+                    while (n < size)
+                        n += in.transferTo(offset + n, size - n, out);
+                }
+            } else {
+                // Decompress, and write in chunks (checking our limits on every chunk)
+                final long compressedSize = e.getCompressedSize();
+                try (InputStream in = zipfile.getInputStream(e);
+                    ReadableByteChannel inChannel = Channels.newChannel(in))
+                {
+                    long k;
+                    while ((k = out.transferFrom(inChannel, n, CHUNK_SIZE)) > 0) {
+                        n += k;
+                        checkSize(totalSize.addAndGet(k));
+                        checkRatio(e.getName(), n, compressedSize);
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    private void checkSize(long size)
+    {
+        if (size > maxSize) {
+            throw ApplicationException.fromMessage(BasicErrorCode.INPUT_INVALID, String.format(
+                "The archive expands beyond the maximum size (%d bytes)", maxSize));
+        }
+    }
+
+    private void checkRatio(String entryName, long size, long compressedSize)
+    {
+        if (size > MIN_SIZE_FOR_RATIO && compressedSize > 0 && size / compressedSize > maxRatio) {
+            throw ApplicationException.fromMessage(BasicErrorCode.INPUT_INVALID, String.format(
+                "The entry %s exceeds the maximum compression ratio (%d)", entryName, maxRatio));
+        }
+    }
+}
@@ -0,0 +1,810 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.RemoveContainerParam;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ContainerCreation;
+
+/**
+ * A batcher that coalesces several (small) requests for the same command into a single
+ * container run.
+ * <p>
+ * Requests are grouped by a key (which should identify the configuration of the command,
+ * e.g. a digest of a configuration file). A group is run when it reaches a maximum size,
+ * or when a time window (since its 1st request) has elapsed.
+ * <p>
+ * The input files of all requests of a group are linked (or copied) into a common input
+ * directory, each one prefixed by the request identifier. The command is expected to
+ * name its outputs after its inputs, so that the outputs can be split back (by prefix)
+ * to the output directories of the originating requests. An output file that cannot be
+ * attributed to a single request is copied to all of them.
+ * <p>
+ * Each batch gets its own directory (named after a random identifier, so that batchers of 
+ * different processes may share a working directory), which is removed when the outputs are 
+ * split. The logs of batches are kept (under <tt>logs</tt> of the working directory).
+ * <p>
+ * Timers (closing windows) and container runs are served by separate threads, so that a 
+ * running container never delays the closing of other batches.
+ */
+public class ContainerBatcher implements Closeable
+{
+    private static Logger logger = LoggerFactory.getLogger(ContainerBatcher.class);
+
+    public static final long DEFAULT_WINDOW = 2 * 1000L;
+
+    public static final int DEFAULT_MAX_SIZE = 16;
+
+    public static final long DEFAULT_TIMEOUT = -1L;
+
+    /**
+     * The separator between a request identifier and the name of a file
+     */
+    public static final String PREFIX_SEPARATOR = "--";
+
+    /**
+     * A request to run the command on a set of input files
+     */
+    public static class Request
+    {
+        private final String id;
+
+        private final String key;
+
+        private final List<Path> inputFiles;
+
+        private final Path outputDir;
+
+        private final Path configFile;
+
+        /**
+         * @param id An identifier for this request (also used as a filename prefix)
+         * @param key The key under which requests are grouped
+         * @param inputFiles The input files (absolute paths)
+         * @param outputDir The directory to receive the outputs for this request
+         * @param configFile The configuration file (may be <tt>null</tt>). It is expected to
+         *   be equivalent for all requests grouped under the same key.
+         */
+        public Request(String id, String key, List<Path> inputFiles, Path outputDir, Path configFile)
+        {
+            Assert.isTrue(id != null && id.matches("[-.\\w]+"),
+                "The request identifier should be usable as a filename prefix");
+            Assert.isTrue(!id.contains(PREFIX_SEPARATOR),
+                "The request identifier should not contain the prefix separator");
+            Assert.notNull(key, "A key is required");
+            Assert.notEmpty(inputFiles, "Expected a non-empty list of input files");
+            Assert.isTrue(outputDir != null && outputDir.isAbsolute(),
+                "Expected an absolute path for the output directory");
+            this.id = id;
+            this.key = key;
+            this.inputFiles = Collections.unmodifiableList(new ArrayList<>(inputFiles));
+            this.outputDir = outputDir;
+            this.configFile = configFile;
+        }
+
+        public String getId()
+        {
+            return id;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        public List<Path> getInputFiles()
+        {
+            return inputFiles;
+        }
+
+        public Path getOutputDir()
+        {
+            return outputDir;
+        }
+
+        public Path getConfigFile()
+        {
+            return configFile;
+        }
+    }
+
+    /**
+     * A batch of requests (to be) run in a single container
+     */
+    public static class Batch
+    {
+        private final String name;
+
+        private final String key;
+
+        private final List<Request> requests = new ArrayList<>();
+
+        private final Path inputDir;
+
+        private final List<String> inputFiles = new ArrayList<>();
+
+        private final Path outputDir;
+
+        private final Path logFile;
+
+        private final Path dir;
+
+        private Batch(String name, String key, Path dir, Path logFile)
+        {
+            this.name = name;
+            this.key = key;
+            this.dir = dir;
+            this.inputDir = dir.resolve("input");
+            this.outputDir = dir.resolve("output");
+            this.logFile = logFile;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public String getKey()
+        {
+            return key;
+        }
+
+        public int getSize()
+        {
+            return requests.size();
+        }
+
+        /**
+         * The common input directory (on the host)
+         */
+        public Path getInputDir()
+        {
+            return inputDir;
+        }
+
+        /**
+         * The names of input files (all of them located under the input directory)
+         */
+        public List<String> getInputFiles()
+        {
+            return Collections.unmodifiableList(inputFiles);
+        }
+
+        /**
+         * The common output directory (on the host)
+         */
+        public Path getOutputDir()
+        {
+            return outputDir;
+        }
+
+        /**
+         * The configuration file (shared by all requests)
+         */
+        public Path getConfigFile()
+        {
+            return requests.get(0).configFile;
+        }
+
+        public Path getLogFile()
+        {
+            return logFile;
+        }
+    }
+
+    /**
+     * The outcome of a batch (as reported to each one of its requests)
+     */
+    public static class Result
+    {
+        private final String batchName;
+
+        private final int batchSize;
+
+        private final Integer exitCode;
+
+        private final Path logFile;
+
+        private final String output;
+
+        private final long started;
+
+        private final long finished;
+
+        private Result(
+            Batch batch, Integer exitCode, String output, long started, long finished)
+        {
+            this.batchName = batch.name;
+            this.batchSize = batch.requests.size();
+            this.exitCode = exitCode;
+            this.logFile = batch.logFile;
+            this.output = output;
+            this.started = started;
+            this.finished = finished;
+        }
+
+        public String getBatchName()
+        {
+            return batchName;
+        }
+
+        public int getBatchSize()
+        {
+            return batchSize;
+        }
+
+        /**
+         * The exit code of the command, or <tt>null</tt> if the container has timed out
+         */
+        public Integer getExitCode()
+        {
+            return exitCode;
+        }
+
+        public boolean isTimedOut()
+        {
+            return exitCode == null;
+        }
+
+        public Path getLogFile()
+        {
+            return logFile;
+        }
+
+        /**
+         * The tail of the command's output
+         */
+        public String getOutput()
+        {
+            return output;
+        }
+
+        public long getStarted()
+        {
+            return started;
+        }
+
+        public long getFinished()
+        {
+            return finished;
+        }
+    }
+
+    /**
+     * Configure the container for a batch (e.g. mount the batch directories)
+     */
+    @FunctionalInterface
+    public interface BatchConfigurer
+    {
+        void configure(ContainerConfigurer configurer, Batch batch);
+    }
+
+    /**
+     * A builder for batchers of enclosing class ({@link ContainerBatcher}).
+     */
+    public static class Builder
+    {
+        private DockerClient client;
+
+        private ContainerEventMonitor monitor;
+
+        private ContainerLogCollector logCollector;
+
+        private String name;
+
+        private Path workDir;
+
+        private long window = DEFAULT_WINDOW;
+
+        private int maxSize = DEFAULT_MAX_SIZE;
+
+        private long timeout = DEFAULT_TIMEOUT;
+
+        private BatchConfigurer configurer;
+
+        private Builder() {}
+
+        /**
+         * Provide a client to communicate with docker daemon.
+         */
+        public Builder client(DockerClient client)
+        {
+            Assert.notNull(client, "A non-null docker client is expected");
+            this.client = client;
+            return this;
+        }
+
+        /**
+         * Provide a monitor to be notified when a container exits.
+         */
+        public Builder monitor(ContainerEventMonitor monitor)
+        {
+            Assert.notNull(monitor, "A non-null monitor is expected");
+            this.monitor = monitor;
+            return this;
+        }
+
+        /**
+         * Provide a collector to stream the output of a container into a log file.
+         */
+        public Builder logCollector(ContainerLogCollector logCollector)
+        {
+            Assert.notNull(logCollector, "A non-null log collector is expected");
+            this.logCollector = logCollector;
+            return this;
+        }
+
+        /**
+         * Set a name for this batcher (used as a prefix for batch names)
+         */
+        public Builder name(String name)
+        {
+            Assert.isTrue(name != null && name.matches("[-\\w]+"), "The name is illegal");
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * Set the directory under which batch directories are created. This directory is
+         * expected to reside in the same filesystem as the input files (so that they can
+         * be linked).
+         */
+        public Builder workDir(Path workDir)
+        {
+            Assert.isTrue(workDir != null && workDir.isAbsolute(),
+                "Expected an absolute path for the working directory");
+            this.workDir = workDir;
+            return this;
+        }
+
+        /**
+         * Set the time window (milliseconds) to collect requests for a batch. If 0, this
+         * batcher is disabled.
+         */
+        public Builder window(long window)
+        {
+            Assert.isTrue(window >= 0, "Expected a non-negative window");
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of requests in a batch
+         */
+        public Builder maxSize(int maxSize)
+        {
+            Assert.isTrue(maxSize > 0, "Expected a positive size");
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Set the timeout (milliseconds) for a container run. If not positive, no timeout
+         * applies.
+         */
+        public Builder timeout(long timeout)
+        {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Builder container(BatchConfigurer configurer)
+        {
+            Assert.notNull(configurer, "A non-null configurer is expected");
+            this.configurer = configurer;
+            return this;
+        }
+
+        public ContainerBatcher build()
+        {
+            Assert.state(client != null,
+                "A docker client is required to communicate to docker daemon!");
+            Assert.state(monitor != null, "A container monitor is required");
+            Assert.state(logCollector != null, "A log collector is required");
+            Assert.state(name != null, "A name is required for the batcher");
+            Assert.state(workDir != null, "A working directory is required");
+            Assert.state(configurer != null, "A container configurer is required");
+
+            ContainerBatcher batcher =
+                new ContainerBatcher(client, monitor, logCollector, name, workDir, configurer);
+            batcher.window = window;
+            batcher.maxSize = maxSize;
+            batcher.timeout = timeout;
+            return batcher;
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private final DockerClient docker;
+
+    private final ContainerEventMonitor monitor;
+
+    private final ContainerLogCollector logCollector;
+
+    private final String name;
+
+    private final Path workDir;
+
+    private final BatchConfigurer configurer;
+
+    private long window = DEFAULT_WINDOW;
+
+    private int maxSize = DEFAULT_MAX_SIZE;
+
+    private long timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * The executor for timers (i.e. for closing windows)
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The executor for container runs (a thread is occupied for the whole run)
+     */
+    private final ExecutorService runner;
+
+    /**
+     * The batches that are still open (i.e. collecting requests), keyed by group key
+     */
+    private final Map<String, Batch> openBatches = new HashMap<>();
+
+    /**
+     * The results for submitted requests, keyed by request identifier
+     */
+    private final ConcurrentMap<String, CompletableFuture<Result>> results =
+        new ConcurrentHashMap<>();
+
+    private final AtomicLong batchCount = new AtomicLong(0);
+
+    private final AtomicLong requestCount = new AtomicLong(0);
+
+    private ContainerBatcher(
+        DockerClient docker, ContainerEventMonitor monitor, ContainerLogCollector logCollector,
+        String name, Path workDir, BatchConfigurer configurer)
+    {
+        this.docker = docker;
+        this.monitor = monitor;
+        this.logCollector = logCollector;
+        this.name = name;
+        this.workDir = workDir;
+        this.configurer = configurer;
+
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, name + "-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.scheduler = scheduler;
+
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        this.runner = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, name + "-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public boolean isEnabled()
+    {
+        return window > 0;
+    }
+
+    /**
+     * The number of batches created so far
+     */
+    public long getBatchCount()
+    {
+        return batchCount.get();
+    }
+
+    /**
+     * The number of requests run so far (as members of batches)
+     */
+    public long getRequestCount()
+    {
+        return requestCount.get();
+    }
+
+    @Override
+    public void close()
+    {
+        scheduler.shutdownNow();
+        runner.shutdownNow();
+        synchronized (this) {
+            openBatches.clear();
+        }
+    }
+
+    /**
+     * Submit a request to be run as part of a batch. If a request with the same identifier
+     * is already submitted (and not yet forgotten), nothing new is submitted.
+     *
+     * @param request
+     * @return a future to be completed with the result of the batch
+     */
+    public CompletableFuture<Result> submit(Request request)
+    {
+        Assert.notNull(request, "A request is required");
+        Assert.state(window > 0, "This batcher is disabled");
+
+        CompletableFuture<Result> f = new CompletableFuture<>();
+        CompletableFuture<Result> f1 = results.putIfAbsent(request.id, f);
+        if (f1 != null)
+            return f1; // already submitted
+
+        Batch batchToRun = null;
+        synchronized (this) {
+            Batch batch = openBatches.get(request.key);
+            if (batch == null) {
+                batchCount.incrementAndGet();
+                final String id = UUID.randomUUID().toString().replace("-", "");
+                final Batch b = new Batch(
+                    name + "-" + id, 
+                    request.key, 
+                    workDir.resolve(id),
+                    workDir.resolve("logs").resolve(name + "-" + id + ".log"));
+                openBatches.put(request.key, b);
+                scheduler.schedule(() -> closeAndRun(b), window, TimeUnit.MILLISECONDS);
+                batch = b;
+            }
+            batch.requests.add(request);
+            logger.debug("Added request {} to batch {} (size={})", request.id, batch.name, batch.getSize());
+            if (batch.requests.size() >= maxSize) {
+                openBatches.remove(request.key);
+                batchToRun = batch;
+            }
+        }
+
+        if (batchToRun != null) {
+            final Batch b = batchToRun;
+            runner.execute(() -> run(b));
+        }
+
+        return f;
+    }
+
+    /**
+     * Forget the result for a request (e.g. because it is consumed).
+     *
+     * @param requestId The identifier of the request
+     */
+    public void forget(String requestId)
+    {
+        results.remove(requestId);
+    }
+
+    /**
+     * Cancel a request (e.g. because its step is stopped). The request is removed from its
+     * batch, if that batch is still open, and its result is forgotten. A request of a batch 
+     * that is already running cannot be removed (the batch runs as is), but its result is
+     * discarded.
+     *
+     * @param requestId The identifier of the request
+     * @return <tt>true</tt> if the request was removed from an open batch
+     */
+    public boolean cancel(String requestId)
+    {
+        boolean removed = false;
+        synchronized (this) {
+            for (Iterator<Batch> it = openBatches.values().iterator(); it.hasNext() && !removed; ) {
+                Batch batch = it.next();
+                removed = batch.requests.removeIf(r -> r.id.equals(requestId));
+                if (removed && batch.requests.isEmpty())
+                    it.remove(); // its timer will find it closed
+            }
+        }
+        
+        CompletableFuture<Result> f = results.remove(requestId);
+        if (f != null)
+            f.cancel(false);
+        
+        if (removed)
+            logger.info("Cancelled request {} (removed from its batch)", requestId);
+        return removed;
+    }
+
+    private void closeAndRun(Batch batch)
+    {
+        synchronized (this) {
+            if (!openBatches.remove(batch.key, batch))
+                return; // already closed (because it reached its maximum size, or is empty)
+        }
+        runner.execute(() -> run(batch));
+    }
+
+    private void run(Batch batch)
+    {
+        logger.info("Running batch {} of {} requests", batch.name, batch.requests.size());
+
+        Result result = null;
+        try {
+            result = runContainer(batch);
+            splitOutput(batch);
+        } catch (Exception e) {
+            logger.error("Failed to run batch {}: {}", batch.name, e.getMessage());
+            for (Request request: batch.requests)
+                complete(request.id, null, e);
+            return;
+        } finally {
+            deleteBatchDir(batch);
+        }
+
+        requestCount.addAndGet(batch.requests.size());
+        for (Request request: batch.requests)
+            complete(request.id, result, null);
+    }
+
+    private void complete(String requestId, Result result, Exception exception)
+    {
+        CompletableFuture<Result> f = results.get(requestId);
+        if (f == null)
+            return; // forgotten
+        if (exception == null)
+            f.complete(result);
+        else
+            f.completeExceptionally(exception);
+    }
+
+    /**
+     * Prepare the input directory for a batch, and run the container
+     */
+    private Result runContainer(Batch batch)
+        throws IOException, DockerException, InterruptedException
+    {
+        Files.createDirectories(batch.inputDir);
+        Files.createDirectories(batch.outputDir);
+        Files.createDirectories(batch.logFile.getParent());
+
+        for (Request request: batch.requests) {
+            for (Path inputFile: request.inputFiles) {
+                String fileName = request.id + PREFIX_SEPARATOR + inputFile.getFileName();
+                linkOrCopy(inputFile, batch.inputDir.resolve(fileName));
+                batch.inputFiles.add(fileName);
+            }
+        }
+
+        ContainerConfigurer containerConfigurer = new ContainerConfigurer();
+        configurer.configure(containerConfigurer, batch);
+
+        ContainerCreation creation =
+            docker.createContainer(containerConfigurer.buildConfiguration(), batch.name);
+        String containerId = creation.id();
+
+        long started = (new Date()).getTime();
+        Integer exitCode = null;
+        ContainerLogCollector.Summary summary = null;
+        try {
+            monitor.watch(containerId);
+            docker.startContainer(containerId);
+            CompletableFuture<ContainerLogCollector.Summary> logs =
+                logCollector.collect(containerId, batch.logFile);
+
+            exitCode = monitor.awaitExit(containerId, timeout > 0? timeout : Long.MAX_VALUE);
+            if (exitCode == null) {
+                logger.info("The container for batch {} has timed out", batch.name);
+                docker.killContainer(containerId);
+            }
+
+            try {
+                summary = logs.get(DEFAULT_WINDOW, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                logger.warn("Cannot collect output for batch {}: {}", batch.name, e.getMessage());
+            }
+        } finally {
+            monitor.forget(containerId);
+            logCollector.forget(containerId);
+            try {
+                docker.removeContainer(containerId, RemoveContainerParam.forceKill());
+            } catch (DockerException e) {
+                logger.warn("Cannot remove container {}: {}", containerId, e.getMessage());
+            }
+        }
+
+        long finished = (new Date()).getTime();
+        logger.info("The container for batch {} has exited with {}", batch.name, exitCode);
+
+        return new Result(
+            batch, exitCode, summary == null? null : summary.tail(), started, finished);
+    }
+
+    /**
+     * Move the outputs of a batch to the output directories of its requests
+     */
+    private void splitOutput(Batch batch) throws IOException
+    {
+        Map<String, Request> requestById = new LinkedHashMap<>();
+        for (Request request: batch.requests) {
+            requestById.put(request.id, request);
+            Files.createDirectories(request.outputDir);
+        }
+
+        try (DirectoryStream<Path> outputs = Files.newDirectoryStream(batch.outputDir)) {
+            for (Path path: outputs) {
+                if (!Files.isRegularFile(path))
+                    continue;
+                String fileName = path.getFileName().toString();
+                int i = fileName.indexOf(PREFIX_SEPARATOR);
+                Request request = i > 0? requestById.get(fileName.substring(0, i)) : null;
+                if (request != null) {
+                    String targetName = fileName.substring(i + PREFIX_SEPARATOR.length());
+                    Files.move(path, request.outputDir.resolve(targetName),
+                        StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    // Not attributed to a single request: copy to all of them
+                    for (Request r: batch.requests)
+                        Files.copy(path, r.outputDir.resolve(fileName),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the directory of a batch (its outputs are already moved to their requests)
+     */
+    private void deleteBatchDir(Batch batch)
+    {
+        if (!Files.exists(batch.dir))
+            return;
+        try (Stream<Path> s = Files.walk(batch.dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            logger.warn("Cannot remove directory {} of batch {}: {}", batch.dir, batch.name, e.getMessage());
+        }
+    }
+
+    private static void linkOrCopy(Path source, Path target) throws IOException
+    {
+        try {
+            Files.createLink(target, source);
+        } catch (FileAlreadyExistsException e) {
+            throw e;
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(source, target);
+        }
+    }
+}
@@ -9,6 +9,8 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import org.springframework.util.Assert;
@@ -17,6 +19,7 @@ import com.spotify.docker.client.messages.ContainerConfig;
 import com.spotify.docker.client.messages.ContainerConfig.Healthcheck;
 import com.spotify.docker.client.messages.HostConfig;
 import com.spotify.docker.client.messages.PortBinding;
+import com.spotify.docker.client.messages.HostConfig.Ulimit;
 
 /**
  * A fluent configurer for a docker container.
@@ -25,6 +28,103 @@ public class ContainerConfigurer
 {
     public static final String DEFAULT_IMAGE = "busybox";
     
+    /**
+     * The label that marks a container as run for a job (its value is the job name)
+     */
+    public static final String JOB_LABEL = "eu.slipo.workbench.rpc.job";
+    
+    /**
+     * The label that carries the (decimal) id of the job instance a container is run for
+     */
+    public static final String JOB_INSTANCE_LABEL = "eu.slipo.workbench.rpc.job-instance";
+    
+    /**
+     * The CPU CFS period (microseconds) used when limiting the number of CPUs
+     */
+    public static final long CPU_PERIOD = 100 * 1000L;
+    
+    private static final Pattern SIZE_PATTERN = Pattern.compile("(\\d+)\\s*([bkmg]?)b?", Pattern.CASE_INSENSITIVE);
+    
+    private static final Pattern CPUSET_PATTERN = Pattern.compile("\\d+(-\\d+)?(,\\d+(-\\d+)?)*");
+    
+    /**
+     * Parse a size (in bytes) given as docker CLI does, i.e. as a number followed by an 
+     * optional unit (b, k, m, g). For example <tt>512m</tt> or <tt>2g</tt>.
+     * 
+     * @param size
+     * @return the number of bytes
+     */
+    public static long parseSize(String size)
+    {
+        Assert.notNull(size, "Expected a non-null size");
+        Matcher m = SIZE_PATTERN.matcher(size.trim());
+        Assert.isTrue(m.matches(), "The size is malformed (specify as 1234, 512m, 2g etc.)");
+        
+        long n = Long.parseLong(m.group(1));
+        switch (m.group(2).toLowerCase()) {
+        case "k":
+            return n * 1024L;
+        case "m":
+            return n * 1024L * 1024L;
+        case "g":
+            return n * 1024L * 1024L * 1024L;
+        default:
+            return n;
+        }
+    }
+    
+    /**
+     * Parse a memory limit (see {@link #parseSize(String)}), of at least 4MiB.
+     * 
+     * @throws IllegalArgumentException if malformed or out of range
+     */
+    public static long parseMemory(String size)
+    {
+        long bytes = parseSize(size);
+        Assert.isTrue(bytes >= 4L * 1024L * 1024L, "The memory limit must be at least 4MiB");
+        return bytes;
+    }
+    
+    /**
+     * Parse a (possibly fractional) number of CPUs, of at least 0.01.
+     * 
+     * @throws IllegalArgumentException if malformed or out of range
+     */
+    public static double parseCpus(String cpus)
+    {
+        Assert.notNull(cpus, "Expected a non-null number of CPUs");
+        double n = Double.parseDouble(cpus.trim());
+        Assert.isTrue(!Double.isNaN(n) && !Double.isInfinite(n) && n >= 0.01, 
+            "The number of CPUs must be at least 0.01");
+        return n;
+    }
+    
+    /**
+     * Parse a relative CPU weight, of at least 2.
+     * 
+     * @throws IllegalArgumentException if malformed or out of range
+     */
+    public static long parseCpuShares(String shares)
+    {
+        Assert.notNull(shares, "Expected non-null CPU shares");
+        long n = Long.parseLong(shares.trim());
+        Assert.isTrue(n >= 2, "The CPU shares must be at least 2");
+        return n;
+    }
+    
+    /**
+     * Parse a (positive) limit on the number of processes.
+     * 
+     * @throws IllegalArgumentException if malformed or out of range
+     */
+    public static int parsePidsLimit(String limit)
+    {
+        Assert.notNull(limit, "Expected a non-null limit");
+        int n = Integer.parseInt(limit.trim());
+        Assert.isTrue(n > 0, "Expected a positive limit on processes");
+        return n;
+    }
+    
     /**
      * The builder for the entire container configuration
      */
@@ -42,6 +142,10 @@ public class ContainerConfigurer
     
     private final Map<String,List<PortBinding>> ports = new LinkedHashMap<>();
     
+    private final Map<String,Ulimit> ulimits = new LinkedHashMap<>();
+    
+    private final Map<String,String> labels = new LinkedHashMap<>();
+    
     public ContainerConfigurer() 
     {
         containerConfigBuilder.image(DEFAULT_IMAGE);
@@ -55,6 +159,7 @@ public class ContainerConfigurer
         final HostConfig hostConfig = hostConfigBuilder
             .links(links)
             .portBindings(ports)
+            .ulimits(new ArrayList<>(ulimits.values()))
             .build();
         
         final List<String> envDump = env.entrySet().stream()
@@ -64,6 +169,7 @@ public class ContainerConfigurer
         containerConfigBuilder
             .hostConfig(hostConfig)
             .env(envDump)
+            .labels(labels)
             .exposedPorts(ports.keySet());
         
         return containerConfigBuilder.build();
@@ -157,6 +263,47 @@ public class ContainerConfigurer
         return this;
     }
     
+    /**
+     * Override the entrypoint of the image.
+     * 
+     * @param entrypoint The entrypoint as an executable followed by a list of arguments.
+     */
+    public ContainerConfigurer entrypoint(String ...entrypoint)
+    {
+        Assert.notEmpty(entrypoint, "Expected a non-empty entrypoint");
+        containerConfigBuilder.entrypoint(entrypoint);
+        return this;
+    }
+    
+    /**
+     * Attach a label (metadata) to the container.
+     * 
+     * @param name
+     * @param value
+     */
+    public ContainerConfigurer label(String name, String value)
+    {
+        Assert.notNull(name, "A label should have a non-null name");
+        labels.put(name, value == null? "" : value);
+        return this;
+    }
+    
+    /**
+     * Mark the container as run for a job instance (see {@link #JOB_LABEL} and 
+     * {@link #JOB_INSTANCE_LABEL}). Only containers marked this way are considered as 
+     * belonging to jobs (e.g. when reclaiming exited containers).
+     * 
+     * @param jobName
+     * @param instanceId
+     */
+    public ContainerConfigurer job(String jobName, long instanceId)
+    {
+        Assert.notNull(jobName, "A job name is required");
+        labels.put(JOB_LABEL, jobName);
+        labels.put(JOB_INSTANCE_LABEL, String.valueOf(instanceId));
+        return this;
+    }
+    
     /**
      * Set command that periodically checks health of the container (HEALTHCHECK).
      * 
@@ -285,4 +432,148 @@ public class ContainerConfigurer
         return volume(Paths.get(containerPath));
     }
     
+    /**
+     * Limit the memory available to the container.
+     * 
+     * @param bytes The maximum amount of memory (in bytes)
+     */
+    public ContainerConfigurer memory(long bytes)
+    {
+        Assert.isTrue(bytes >= 4L * 1024L * 1024L, "The memory limit must be at least 4MiB");
+        hostConfigBuilder.memory(bytes);
+        return this;
+    }
+    
+    public ContainerConfigurer memory(String size)
+    {
+        return memory(parseSize(size));
+    }
+    
+    /**
+     * Limit the total amount of memory plus swap available to the container.
+     * 
+     * @param bytes The maximum amount of memory plus swap (in bytes), or -1 to allow 
+     *   unlimited swap
+     */
+    public ContainerConfigurer memorySwap(long bytes)
+    {
+        Assert.isTrue(bytes == -1 || bytes > 0, "Expected a positive size (or -1 for unlimited)");
+        hostConfigBuilder.memorySwap(bytes);
+        return this;
+    }
+    
+    public ContainerConfigurer memorySwap(String size)
+    {
+        return memorySwap(size.trim().equals("-1")? -1L : parseSize(size));
+    }
+    
+    /**
+     * Limit the number of CPUs (possibly fractional) that the container may use. 
+     * <p>
+     * This is equivalent to the <tt>--cpus</tt> option of docker CLI, and it is expressed 
+     * as a CFS quota over a fixed period of {@link ContainerConfigurer#CPU_PERIOD}.
+     * 
+     * @param cpus The number of CPUs, e.g. <tt>1.5</tt>
+     */
+    public ContainerConfigurer cpus(double cpus)
+    {
+        Assert.isTrue(cpus >= 0.01, "The number of CPUs must be at least 0.01");
+        hostConfigBuilder
+            .cpuPeriod(CPU_PERIOD)
+            .cpuQuota(Math.round(cpus * CPU_PERIOD));
+        return this;
+    }
+    
+    /**
+     * Set the relative weight of the container when competing for CPUs.
+     * 
+     * @param shares The CPU shares (the default weight of a container is 1024)
+     */
+    public ContainerConfigurer cpuShares(long shares)
+    {
+        Assert.isTrue(shares >= 2, "The CPU shares must be at least 2");
+        hostConfigBuilder.cpuShares(shares);
+        return this;
+    }
+    
+    /**
+     * Pin the container to a set of CPUs.
+     * 
+     * @param cpuset The CPUs in which execution is allowed, e.g. <tt>0-3</tt> or <tt>0,2</tt>
+     */
+    public ContainerConfigurer cpusetCpus(String cpuset)
+    {
+        Assert.notNull(cpuset, "Expected a non-null set of CPUs");
+        Assert.isTrue(CPUSET_PATTERN.matcher(cpuset).matches(), 
+            "The set of CPUs is malformed (specify as 0-3 or 0,1 etc.)");
+        hostConfigBuilder.cpusetCpus(cpuset);
+        return this;
+    }
+    
+    /**
+     * Limit the number of processes (threads) inside the container.
+     * 
+     * @param limit The maximum number of processes, or -1 for unlimited
+     */
+    public ContainerConfigurer pidsLimit(int limit)
+    {
+        Assert.isTrue(limit == -1 || limit > 0, "Expected a positive limit (or -1 for unlimited)");
+        hostConfigBuilder.pidsLimit(limit);
+        return this;
+    }
+    
+    /**
+     * Set the size of <tt>/dev/shm</tt> inside the container.
+     * 
+     * @param bytes
+     */
+    public ContainerConfigurer shmSize(long bytes)
+    {
+        Assert.isTrue(bytes > 0, "Expected a positive size");
+        hostConfigBuilder.shmSize(bytes);
+        return this;
+    }
+    
+    public ContainerConfigurer shmSize(String size)
+    {
+        return shmSize(parseSize(size));
+    }
+    
+    /**
+     * Set a resource limit (ulimit) for processes inside the container.
+     * 
+     * @param name The name of the limit, e.g. <tt>nofile</tt> or <tt>nproc</tt>
+     * @param soft The soft limit
+     * @param hard The hard limit
+     */
+    public ContainerConfigurer ulimit(String name, long soft, long hard)
+    {
+        Assert.notNull(name, "The name of a ulimit must be non-null");
+        Assert.isTrue(name.matches("[a-z]+"), "The name of a ulimit is illegal");
+        Assert.isTrue(soft <= hard, "The soft limit cannot exceed the hard limit");
+        ulimits.put(name, Ulimit.builder().name(name).soft(soft).hard(hard).build());
+        return this;
+    }
+    
+    /**
+     * Set resource limits (ulimits) from a specification like the one accepted by docker
+     * CLI, e.g. <tt>nofile=1024:2048,nproc=512</tt>.
+     * 
+     * @param spec A comma-separated list of <tt>name=soft[:hard]</tt> specifications
+     */
+    public ContainerConfigurer ulimits(String spec)
+    {
+        Assert.notNull(spec, "Expected a non-null specification");
+        for (String u: spec.split(",")) {
+            if (u.trim().isEmpty())
+                continue;
+            String[] p = u.trim().split("=", 2);
+            Assert.isTrue(p.length == 2, "The ulimit is malformed (specify as name=soft[:hard])");
+            String[] limits = p[1].split(":", 2);
+            long soft = Long.parseLong(limits[0].trim());
+            long hard = limits.length > 1? Long.parseLong(limits[1].trim()) : soft;
+            ulimit(p[0].trim(), soft, hard);
+        }
+        return this;
+    }
 }
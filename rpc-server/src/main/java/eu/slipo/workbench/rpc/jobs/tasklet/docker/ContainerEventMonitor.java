@@ -0,0 +1,289 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.EventsParam;
+import com.spotify.docker.client.EventStream;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ContainerState;
+import com.spotify.docker.client.messages.Event;
+
+/**
+ * A monitor that subscribes (once) to the event stream of docker daemon, and notifies
+ * interested parties when a container exits.
+ * <p>
+ * A single subscriber thread reads <tt>die</tt> (and <tt>oom</tt>) events for containers
+ * and fans them out to waiting steps. This way, a step waiting for a container does not
+ * have to poll the daemon (via <tt>inspect</tt>) and is notified as soon as the container
+ * exits.
+ */
+public class ContainerEventMonitor implements Closeable
+{
+    private static Logger logger = LoggerFactory.getLogger(ContainerEventMonitor.class);
+
+    /**
+     * The default amount of time (in milliseconds) to wait before re-subscribing to the
+     * event stream (when the subscription is broken for some reason).
+     */
+    public static final long DEFAULT_RETRY_INTERVAL = 2000L;
+
+    private final DockerClient docker;
+
+    /**
+     * The map of pending notifications keyed by a container ID (or name)
+     */
+    private final ConcurrentMap<String, CompletableFuture<Integer>> waiters =
+        new ConcurrentHashMap<>();
+
+    private long retryInterval = DEFAULT_RETRY_INTERVAL;
+
+    private volatile boolean closed = false;
+
+    private volatile EventStream stream;
+
+    private Thread subscriber;
+
+    public ContainerEventMonitor(DockerClient docker)
+    {
+        Assert.notNull(docker, "The docker client must be provided");
+        this.docker = docker;
+    }
+
+    public void setRetryInterval(long millis)
+    {
+        Assert.isTrue(millis > 0, "Expected a positive interval");
+        this.retryInterval = millis;
+    }
+
+    /**
+     * Start the subscriber thread.
+     */
+    public synchronized void start()
+    {
+        Assert.state(!closed, "This monitor is already closed");
+        Assert.state(subscriber == null, "This monitor is already started");
+
+        subscriber = new Thread(this::subscribe, "docker-events");
+        subscriber.setDaemon(true);
+        subscriber.start();
+    }
+
+    /**
+     * Stop the subscriber thread. Any pending notification is cancelled.
+     */
+    @Override
+    public synchronized void close()
+    {
+        if (closed)
+            return;
+        closed = true;
+
+        closeStream();
+        if (subscriber != null)
+            subscriber.interrupt();
+
+        for (CompletableFuture<Integer> f: waiters.values())
+            f.cancel(false);
+        waiters.clear();
+    }
+
+    /**
+     * Register interest for the exit of a container.
+     * <p>
+     * Note that no check is performed on the current state of the container, so this
+     * registration should happen before the container is started.
+     *
+     * @param containerId The container ID (or name)
+     * @return a future to be completed with the exit-code of the container's command
+     */
+    public CompletableFuture<Integer> watch(String containerId)
+    {
+        Assert.notNull(containerId, "A container ID is required");
+        return waiters.computeIfAbsent(containerId, id -> new CompletableFuture<>());
+    }
+
+    /**
+     * Wait (for a bounded amount of time) for a container to exit.
+     * <p>
+     * If no one has already registered for this container (e.g. this is a restarted
+     * step, or a notification was consumed), the state of the container is checked once
+     * (because a container may have exited while no one was watching).
+     *
+     * @param containerId The container ID (or name)
+     * @param timeout The maximum time (milliseconds) to wait for
+     * @return the exit-code of the container's command, or <tt>null</tt> if the container
+     *   is still running after the timeout has elapsed.
+     *
+     * @throws InterruptedException
+     * @throws DockerException if the exit-code cannot be determined (e.g. the container is
+     *   missing).
+     */
+    public Integer awaitExit(String containerId, long timeout)
+        throws InterruptedException, DockerException
+    {
+        CompletableFuture<Integer> f = waiters.get(containerId);
+        if (f == null) {
+            f = watch(containerId);
+            checkExited(containerId, f);
+        }
+
+        Integer exitCode = null;
+        try {
+            exitCode = f.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            exitCode = null; // still running
+        } catch (ExecutionException e) {
+            waiters.remove(containerId, f);
+            Throwable cause = e.getCause();
+            if (cause instanceof DockerException)
+                throw (DockerException) cause;
+            throw new IllegalStateException(
+                "Cannot determine exit status of container " + containerId, cause);
+        }
+
+        if (exitCode != null)
+            waiters.remove(containerId, f); // this notification is consumed
+
+        return exitCode;
+    }
+
+    /**
+     * Cancel any interest for the exit of a container.
+     *
+     * @param containerId The container ID (or name)
+     */
+    public void forget(String containerId)
+    {
+        CompletableFuture<Integer> f = waiters.remove(containerId);
+        if (f != null)
+            f.cancel(false);
+    }
+
+    /**
+     * Inspect a container and complete the given future if the container has exited.
+     */
+    private void checkExited(String containerId, CompletableFuture<Integer> f)
+    {
+        ContainerState state = null;
+        try {
+            state = docker.inspectContainer(containerId).state();
+        } catch (DockerException e) {
+            f.completeExceptionally(e);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        String status = state.status();
+        if (status != null && (status.equals("exited") || status.equals("dead"))) {
+            logger.debug("The container {} is found as {}", containerId, status);
+            f.complete(state.exitCode() == null? -1 : state.exitCode().intValue());
+        }
+    }
+
+    private void closeStream()
+    {
+        EventStream s = stream;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (RuntimeException e) {
+                logger.debug("Failed to close event stream: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The main loop of the subscriber thread. The subscription is renewed when broken.
+     */
+    private void subscribe()
+    {
+        while (!closed) {
+            try (EventStream s = docker.events(
+                    EventsParam.type(Event.Type.CONTAINER),
+                    EventsParam.event("die"),
+                    EventsParam.event("oom")))
+            {
+                stream = s;
+                logger.info("Subscribed to docker events");
+                // Some events may be missed while not subscribed: check all pending
+                for (Map.Entry<String, CompletableFuture<Integer>> p: waiters.entrySet())
+                    if (!p.getValue().isDone())
+                        checkExited(p.getKey(), p.getValue());
+                // Dispatch events as they arrive
+                while (!closed && s.hasNext())
+                    dispatch(s.next());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (DockerException | RuntimeException e) {
+                if (!closed)
+                    logger.warn("The subscription to docker events is broken: {}", e.getMessage());
+            } finally {
+                stream = null;
+            }
+
+            if (!closed) {
+                try {
+                    Thread.sleep(retryInterval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        logger.info("Unsubscribed from docker events");
+    }
+
+    private void dispatch(Event event)
+    {
+        Event.Actor actor = event.actor();
+        if (actor == null)
+            return;
+
+        String containerId = actor.id();
+        Map<String,String> attributes = actor.attributes();
+        String containerName = attributes == null? null : attributes.get("name");
+        String action = event.action();
+
+        logger.debug("Received event {} for container {} ({})", action, containerId, containerName);
+
+        if ("oom".equals(action)) {
+            logger.warn("The container {} ({}) has run out of memory", containerId, containerName);
+            return;
+        }
+
+        Integer exitCode = null;
+        String exitCodeText = attributes == null? null : attributes.get("exitCode");
+        if (exitCodeText != null) {
+            try {
+                exitCode = Integer.valueOf(exitCodeText);
+            } catch (NumberFormatException e) {
+                exitCode = null;
+            }
+        }
+
+        for (String key: new String[] { containerId, containerName }) {
+            CompletableFuture<Integer> f = key == null? null : waiters.get(key);
+            if (f != null && !f.isDone()) {
+                if (exitCode != null)
+                    f.complete(exitCode);
+                else
+                    checkExited(key, f); // the event carries no exit-code: inspect
+            }
+        }
+    }
+}
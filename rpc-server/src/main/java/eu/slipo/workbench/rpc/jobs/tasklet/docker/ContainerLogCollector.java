@@ -0,0 +1,371 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.LogsParam;
+import com.spotify.docker.client.LogStream;
+
+/**
+ * A collector that streams the output (stdout/stderr) of containers into files.
+ * <p>
+ * The output is followed (while the container is running) and written incrementally
+ * into a log file. When the log file grows beyond a certain size, it is rotated and
+ * compressed (with gzip). Only a bounded tail of the output is kept in memory.
+ */
+public class ContainerLogCollector implements Closeable
+{
+    private static Logger logger = LoggerFactory.getLogger(ContainerLogCollector.class);
+
+    /**
+     * The default maximum size (in bytes) of a log file before it is rotated
+     */
+    public static final long DEFAULT_MAX_FILE_SIZE = 16L * 1024L * 1024L;
+
+    /**
+     * The default number of rotated (compressed) log files to keep
+     */
+    public static final int DEFAULT_MAX_FILES = 4;
+
+    /**
+     * The default size (in bytes) of the tail of output kept in memory
+     */
+    public static final int DEFAULT_TAIL_SIZE = 4 * 1024;
+
+    /**
+     * The default maximum number of collections that are active at the same time
+     */
+    public static final int DEFAULT_MAX_THREADS = 64;
+
+    /**
+     * Summarize the output collected from a container
+     */
+    public static class Summary
+    {
+        private final Path path;
+
+        private final long size;
+
+        private final String tail;
+
+        private Summary(Path path, long size, String tail)
+        {
+            this.path = path;
+            this.size = size;
+            this.tail = tail;
+        }
+
+        /**
+         * The path of the (current) log file
+         */
+        public Path path()
+        {
+            return path;
+        }
+
+        /**
+         * The total number of bytes written (including rotated files)
+         */
+        public long size()
+        {
+            return size;
+        }
+
+        /**
+         * The tail of the output (decoded as UTF-8)
+         */
+        public String tail()
+        {
+            return tail;
+        }
+    }
+
+    /**
+     * An output stream that writes to a log file and rotates it when it grows beyond
+     * a maximum size. A bounded tail of everything written is also kept.
+     */
+    private class RotatingOutputStream extends OutputStream
+    {
+        private final Path path;
+
+        private final byte[] tail = new byte[tailSize];
+
+        private int tailStart = 0, tailLength = 0;
+
+        private OutputStream out;
+
+        private long currentSize = 0;
+
+        private long size = 0;
+
+        private RotatingOutputStream(Path path) throws IOException
+        {
+            this.path = path;
+            
+            // The file is rewritten from the beginning: discard rotations of a previous
+            // collection (including any beyond the current number of files to keep)
+            int i = 1;
+            while (Files.deleteIfExists(rotatedPath(path, i)) || i < maxFiles)
+                i++;
+            
+            this.out = Files.newOutputStream(path);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            if (currentSize + len > maxFileSize && currentSize > 0)
+                rotate();
+
+            out.write(b, off, len);
+            currentSize += len;
+            size += len;
+
+            for (int i = Math.max(off, off + len - tail.length); i < off + len; i++) {
+                tail[(tailStart + tailLength) % tail.length] = b[i];
+                if (tailLength < tail.length)
+                    tailLength++;
+                else
+                    tailStart = (tailStart + 1) % tail.length;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            out.close();
+        }
+
+        /**
+         * Compress current file as the 1st rotated file (shifting older ones), and
+         * truncate current file.
+         */
+        private void rotate() throws IOException
+        {
+            out.close();
+
+            Path oldest = rotatedPath(path, maxFiles);
+            Files.deleteIfExists(oldest);
+            for (int i = maxFiles - 1; i > 0; i--) {
+                Path p = rotatedPath(path, i);
+                if (Files.exists(p))
+                    Files.move(p, rotatedPath(path, i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            if (maxFiles > 0) {
+                try (InputStream in = Files.newInputStream(path);
+                    OutputStream zout = new GZIPOutputStream(Files.newOutputStream(rotatedPath(path, 1))))
+                {
+                    byte[] buf = new byte[8192];
+                    int n;
+                    while ((n = in.read(buf)) > 0)
+                        zout.write(buf, 0, n);
+                }
+            }
+
+            out = Files.newOutputStream(path); // truncate
+            currentSize = 0;
+        }
+
+        private String tail()
+        {
+            // If the tail is truncated, skip the continuation bytes (10xxxxxx) of a partial 
+            // UTF-8 character at its start (a character has at most 3 of them)
+            int skip = 0;
+            if (size > tailLength) {
+                while (skip < Math.min(3, tailLength) && (tail[(tailStart + skip) % tail.length] & 0xC0) == 0x80)
+                    skip++;
+            }
+            
+            byte[] b = new byte[tailLength - skip];
+            for (int i = skip; i < tailLength; i++)
+                b[i - skip] = tail[(tailStart + i) % tail.length];
+            return new String(b, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Get the path of the i-th rotated file for a given log file
+     */
+    public static Path rotatedPath(Path path, int i)
+    {
+        return path.resolveSibling(path.getFileName().toString() + "." + i + ".gz");
+    }
+
+    private final DockerClient docker;
+
+    private final ExecutorService executor;
+
+    private long maxFileSize = DEFAULT_MAX_FILE_SIZE;
+
+    private int maxFiles = DEFAULT_MAX_FILES;
+
+    private int tailSize = DEFAULT_TAIL_SIZE;
+
+    /**
+     * The map of active (or completed, but not yet consumed) collections, keyed by
+     * container ID (or name)
+     */
+    private final ConcurrentMap<String, CompletableFuture<Summary>> collections =
+        new ConcurrentHashMap<>();
+
+    public ContainerLogCollector(DockerClient docker)
+    {
+        this(docker, DEFAULT_MAX_THREADS);
+    }
+
+    /**
+     * Create a collector that follows the output of (at most) a given number of containers 
+     * at the same time.
+     * <p>
+     * Each active collection keeps a thread (and a connection to docker daemon) for as long
+     * as its container is running, so this should be kept below the size of the connection 
+     * pool of the docker client. Collections beyond this number are queued: a collection 
+     * started late is not lossy, because it reads a container's output from the beginning.
+     *
+     * @param docker
+     * @param maxThreads The maximum number of active collections
+     */
+    public ContainerLogCollector(DockerClient docker, int maxThreads)
+    {
+        Assert.notNull(docker, "The docker client must be provided");
+        Assert.isTrue(maxThreads > 0, "Expected a positive number of threads");
+        this.docker = docker;
+
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        final ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, "container-logs-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            maxThreads, maxThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+    }
+
+    public void setMaxFileSize(long maxFileSize)
+    {
+        Assert.isTrue(maxFileSize > 0, "Expected a positive size");
+        this.maxFileSize = maxFileSize;
+    }
+
+    public void setMaxFiles(int maxFiles)
+    {
+        Assert.isTrue(maxFiles >= 0, "Expected a non-negative number of files");
+        this.maxFiles = maxFiles;
+    }
+
+    public void setTailSize(int tailSize)
+    {
+        Assert.isTrue(tailSize > 0, "Expected a positive size");
+        this.tailSize = tailSize;
+    }
+
+    @Override
+    public void close()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Start collecting output from a container into a file. If a collection for this
+     * container is already active, nothing new is started.
+     * <p>
+     * Note that, if a collection is started anew, the target file is rewritten (from
+     * the beginning of the container's output).
+     *
+     * @param containerId The container ID (or name)
+     * @param path The path of the target log file
+     * @return a future that completes (with a summary) when the container's output is
+     *   exhausted (i.e. the container has exited)
+     */
+    public CompletableFuture<Summary> collect(String containerId, Path path)
+    {
+        Assert.notNull(containerId, "A container ID is required");
+        Assert.notNull(path, "A path for the log file is required");
+        Assert.isTrue(path.isAbsolute(), "Expected an absolute path for the log file");
+
+        return collections.computeIfAbsent(containerId, id -> {
+            CompletableFuture<Summary> f = new CompletableFuture<>();
+            executor.execute(() -> {
+                try {
+                    f.complete(follow(id, path));
+                } catch (Exception e) {
+                    logger.error("Failed to collect logs for container {}: {}", id, e.getMessage());
+                    f.completeExceptionally(e);
+                }
+            });
+            return f;
+        });
+    }
+
+    /**
+     * Forget a collection for a container (e.g. because its summary is consumed).
+     *
+     * @param containerId The container ID (or name)
+     */
+    public void forget(String containerId)
+    {
+        collections.remove(containerId);
+    }
+
+    private Summary follow(String containerId, Path path) throws Exception
+    {
+        Files.createDirectories(path.getParent());
+
+        logger.debug("Collecting logs for container {} into {}", containerId, path);
+
+        RotatingOutputStream out = new RotatingOutputStream(path);
+        try (LogStream logs = docker.logs(
+                containerId, LogsParam.follow(), LogsParam.stdout(), LogsParam.stderr()))
+        {
+            while (logs.hasNext()) {
+                ByteBuffer data = logs.next().content();
+                byte[] b = new byte[data.remaining()];
+                data.get(b);
+                out.write(b, 0, b.length);
+            }
+        } finally {
+            out.close();
+        }
+
+        logger.debug("Collected {} bytes of logs for container {}", out.size, containerId);
+
+        return new Summary(path, out.size, out.tail());
+    }
+}
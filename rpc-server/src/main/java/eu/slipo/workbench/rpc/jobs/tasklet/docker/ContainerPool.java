@@ -0,0 +1,733 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.ListContainersParam;
+import com.spotify.docker.client.DockerClient.RemoveContainerParam;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerState;
+import com.spotify.docker.client.messages.ContainerState.Health;
+import com.spotify.docker.client.messages.HostConfig;
+
+/**
+ * A pool of pre-started (idle) containers created from the same image.
+ * <p>
+ * A pool container is kept alive by a dummy command (its entrypoint is overridden), and
+ * the actual command of the image is executed (via <tt>docker exec</tt>) inside a leased
+ * container. This way, the cost of creating and starting a container is not paid for
+ * every run of the command.
+ * <p>
+ * A container is health-checked (if its image defines a health check) before it joins
+ * the pool and before it is leased, and it is recycled (i.e. replaced by a fresh one)
+ * after a number of leases.
+ * <p>
+ * Since pool containers are shared among executions, they should only mount shared data
+ * as read-only. A pool may provide every container with a private writable (scratch)
+ * directory (see {@link Builder#scratch(Path, Path)}), which is where a command should
+ * write its output to.
+ */
+public class ContainerPool implements Closeable
+{
+    private static Logger logger = LoggerFactory.getLogger(ContainerPool.class);
+
+    /**
+     * The label attached to all containers of a pool (its value is the pool name)
+     */
+    public static final String POOL_LABEL = "eu.slipo.workbench.rpc.pool";
+
+    public static final int DEFAULT_MAX_USES = 100;
+
+    /**
+     * The default amount of time (milliseconds) for a container to start (and report
+     * itself as healthy)
+     */
+    public static final long DEFAULT_START_TIMEOUT = 60 * 1000L;
+
+    /**
+     * The default interval (milliseconds) to retry spawning a container (after a failure)
+     */
+    public static final long DEFAULT_RETRY_INTERVAL = 5 * 1000L;
+
+    /**
+     * The default command to keep an (idle) container alive
+     */
+    public static final List<String> DEFAULT_KEEP_ALIVE_COMMAND =
+        Collections.unmodifiableList(Arrays.asList("tail", "-f", "/dev/null"));
+
+    /**
+     * A builder for pools of enclosing class ({@link ContainerPool}).
+     */
+    public static class Builder
+    {
+        private DockerClient client;
+
+        private String name;
+
+        private int size = 1;
+
+        private int maxUses = DEFAULT_MAX_USES;
+
+        private long startTimeout = DEFAULT_START_TIMEOUT;
+
+        private List<String> keepAliveCommand = DEFAULT_KEEP_ALIVE_COMMAND;
+
+        private List<String> command;
+
+        private ContainerConfigurer containerConfigurer = new ContainerConfigurer();
+
+        private Path scratchRoot;
+
+        private Path containerScratchDir;
+
+        private Builder() {}
+
+        /**
+         * Provide a client to communicate with docker daemon.
+         */
+        public Builder client(DockerClient client)
+        {
+            Assert.notNull(client, "A non-null docker client is expected");
+            this.client = client;
+            return this;
+        }
+
+        /**
+         * Set the name of the pool. The names of pool containers are prefixed by this name.
+         */
+        public Builder name(String name)
+        {
+            Assert.isTrue(name != null && name.matches("[a-zA-Z0-9][-_.a-zA-Z0-9]*"),
+                "Expected a name usable as a prefix for container names");
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * Set the number of containers to keep in this pool. A size of 0 disables the pool.
+         */
+        public Builder size(int size)
+        {
+            Assert.isTrue(size >= 0, "Expected a non-negative size");
+            this.size = size;
+            return this;
+        }
+
+        /**
+         * Set the number of leases after which a container is recycled.
+         */
+        public Builder maxUses(int maxUses)
+        {
+            Assert.isTrue(maxUses > 0, "Expected a positive number of uses");
+            this.maxUses = maxUses;
+            return this;
+        }
+
+        /**
+         * Set the amount of time (milliseconds) for a container to become healthy.
+         */
+        public Builder startTimeout(long timeout)
+        {
+            Assert.isTrue(timeout > 0, "Expected a positive timeout");
+            this.startTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Set the command that keeps an idle container alive.
+         */
+        public Builder keepAlive(String ...command)
+        {
+            Assert.notEmpty(command, "Expected a non-empty command");
+            this.keepAliveCommand = Arrays.asList(command);
+            return this;
+        }
+
+        /**
+         * Set the command to be executed inside a leased container. If not given, the
+         * command (i.e. entrypoint followed by cmd) of the image is used.
+         */
+        public Builder command(String ...command)
+        {
+            Assert.notEmpty(command, "Expected a non-empty command");
+            this.command = Arrays.asList(command);
+            return this;
+        }
+
+        /**
+         * Configure the pool containers
+         */
+        public Builder container(Consumer<ContainerConfigurer> configurer)
+        {
+            Assert.notNull(configurer, "A non-null configurer is expected");
+            configurer.accept(containerConfigurer);
+            return this;
+        }
+
+        /**
+         * Provide every container with a private writable directory. The directory of a
+         * container is created (empty) under a host-local root directory, and it is
+         * bind-mounted (read-write) into the container.
+         *
+         * @param root The (absolute) host-local root directory
+         * @param containerPath The (absolute) container-local path to mount at
+         */
+        public Builder scratch(Path root, Path containerPath)
+        {
+            Assert.isTrue(root != null && root.isAbsolute(),
+                "Expected an absolute host-local path for the scratch root");
+            Assert.isTrue(containerPath != null && containerPath.isAbsolute(),
+                "Expected an absolute container-local path for the scratch directory");
+            this.scratchRoot = root;
+            this.containerScratchDir = containerPath;
+            return this;
+        }
+
+        /**
+         * Build a pool from configuration.
+         */
+        public ContainerPool build()
+        {
+            Assert.state(client != null,
+                "A docker client is required to communicate to docker daemon!");
+            Assert.state(name != null, "A name is required for the pool");
+
+            containerConfigurer
+                .label(POOL_LABEL, name)
+                .entrypoint(keepAliveCommand.toArray(new String[0]));
+
+            ContainerPool pool = new ContainerPool(
+                client, name, containerConfigurer.buildConfiguration(), size, command);
+            pool.maxUses = maxUses;
+            pool.startTimeout = startTimeout;
+            pool.scratchRoot = scratchRoot;
+            pool.containerScratchDir = containerScratchDir;
+            return pool;
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    /**
+     * Represent a container of this pool
+     */
+    public static final class Member
+    {
+        private final String containerId;
+
+        private final String name;
+
+        private final Path scratchDir;
+
+        private int uses = 0;
+
+        private Member(String containerId, String name, Path scratchDir)
+        {
+            this.containerId = containerId;
+            this.name = name;
+            this.scratchDir = scratchDir;
+        }
+
+        public String getContainerId()
+        {
+            return containerId;
+        }
+
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * The host-local path of the private writable directory of this container, or
+         * <tt>null</tt> if the pool provides no such directory
+         */
+        public Path getScratchDir()
+        {
+            return scratchDir;
+        }
+
+        /**
+         * The number of times this container has been leased
+         */
+        public int getUses()
+        {
+            return uses;
+        }
+    }
+
+    /**
+     * A snapshot of the pool's metrics
+     */
+    public static class Stats
+    {
+        private final int size;
+
+        private final int members;
+
+        private final int idle;
+
+        private final long leases;
+
+        private final long created;
+
+        private final long recycled;
+
+        private Stats(int size, int members, int idle, long leases, long created, long recycled)
+        {
+            this.size = size;
+            this.members = members;
+            this.idle = idle;
+            this.leases = leases;
+            this.created = created;
+            this.recycled = recycled;
+        }
+
+        /**
+         * The target size of the pool
+         */
+        public int getSize()
+        {
+            return size;
+        }
+
+        /**
+         * The number of containers currently in the pool (idle or leased)
+         */
+        public int getMembers()
+        {
+            return members;
+        }
+
+        public int getIdle()
+        {
+            return idle;
+        }
+
+        public int getBusy()
+        {
+            return members - idle;
+        }
+
+        /**
+         * The total number of leases so far
+         */
+        public long getLeases()
+        {
+            return leases;
+        }
+
+        /**
+         * The total number of containers created so far
+         */
+        public long getCreated()
+        {
+            return created;
+        }
+
+        /**
+         * The total number of containers recycled (or discarded as unhealthy) so far
+         */
+        public long getRecycled()
+        {
+            return recycled;
+        }
+    }
+
+    private final DockerClient docker;
+
+    private final String name;
+
+    private final ContainerConfig containerConfig;
+
+    private final int size;
+
+    private int maxUses = DEFAULT_MAX_USES;
+
+    private long startTimeout = DEFAULT_START_TIMEOUT;
+
+    private List<String> command;
+
+    private Path scratchRoot;
+
+    private Path containerScratchDir;
+
+    private final BlockingQueue<Member> idle = new LinkedBlockingQueue<>();
+
+    private final Set<Member> members = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger sequence = new AtomicInteger(0);
+
+    private final AtomicLong leaseCount = new AtomicLong(0);
+
+    private final AtomicLong createdCount = new AtomicLong(0);
+
+    private final AtomicLong recycledCount = new AtomicLong(0);
+
+    private final ScheduledExecutorService executor;
+
+    private volatile boolean closed = false;
+
+    private ContainerPool(
+        DockerClient docker, String name, ContainerConfig containerConfig, int size, List<String> command)
+    {
+        this.docker = docker;
+        this.name = name;
+        this.containerConfig = containerConfig;
+        this.size = size;
+        this.command = command;
+
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        this.executor = new ScheduledThreadPoolExecutor(2, r -> {
+            Thread t = new Thread(r, "container-pool-" + name + "-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public boolean isEnabled()
+    {
+        return size > 0;
+    }
+
+    /**
+     * Get the container-local path of the private writable directory of a container, or
+     * <tt>null</tt> if the pool provides no such directory
+     */
+    public Path getContainerScratchDir()
+    {
+        return containerScratchDir;
+    }
+
+    /**
+     * Get the command to be executed inside a leased container
+     */
+    public List<String> getCommand()
+    {
+        Assert.state(command != null, "The command is not yet resolved (is the pool started?)");
+        return command;
+    }
+
+    /**
+     * Start the pool: remove stale containers (left by a previous pool of the same name),
+     * and spawn containers up to the target size.
+     *
+     * @throws DockerException
+     * @throws InterruptedException
+     */
+    public synchronized void start() throws DockerException, InterruptedException
+    {
+        Assert.state(!closed, "This pool is already closed");
+
+        if (size == 0)
+            return;
+
+        if (command == null) {
+            // Resolve the command from the image
+            ContainerConfig imageConfig = docker.inspectImage(containerConfig.image()).config();
+            List<String> c = new ArrayList<>();
+            if (imageConfig.entrypoint() != null)
+                c.addAll(imageConfig.entrypoint());
+            if (imageConfig.cmd() != null)
+                c.addAll(imageConfig.cmd());
+            Assert.state(!c.isEmpty(),
+                "The image " + containerConfig.image() + " does not define a command");
+            command = Collections.unmodifiableList(c);
+        }
+
+        for (Container c: docker.listContainers(
+                ListContainersParam.allContainers(), ListContainersParam.withLabel(POOL_LABEL, name)))
+        {
+            logger.info("Removing stale container {} of pool {}", c.id(), name);
+            removeQuietly(c.id());
+        }
+
+        for (int i = 0; i < size; i++)
+            executor.execute(this::spawn);
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+        executor.shutdownNow();
+        for (Member m: members) {
+            removeQuietly(m.containerId);
+            deleteScratchDir(m);
+        }
+        members.clear();
+        idle.clear();
+    }
+
+    public Stats getStats()
+    {
+        return new Stats(
+            size, members.size(), idle.size(),
+            leaseCount.get(), createdCount.get(), recycledCount.get());
+    }
+
+    /**
+     * Lease an idle container from this pool. A container that is found to be unusable
+     * (i.e. is not running, or is unhealthy) is recycled, and the next one is tried.
+     *
+     * @param timeout The maximum amount of time (milliseconds) to wait for
+     * @return a leased container, or <tt>null</tt> if none was available before the timeout
+     * @throws InterruptedException
+     */
+    public Member acquire(long timeout) throws InterruptedException
+    {
+        Assert.state(!closed, "This pool is closed");
+        Assert.state(size > 0, "This pool is disabled");
+
+        final long deadline = System.currentTimeMillis() + timeout;
+        Member m = null;
+        while (m == null) {
+            long remaining = deadline - System.currentTimeMillis();
+            m = idle.poll(Math.max(remaining, 0L), TimeUnit.MILLISECONDS);
+            if (m == null)
+                return null;
+            if (!isUsable(m)) {
+                recycle(m);
+                m = null;
+            }
+        }
+
+        m.uses++;
+        leaseCount.incrementAndGet();
+        logger.debug("Leased container {} of pool {} (use #{})", m.name, name, m.uses);
+        return m;
+    }
+
+    /**
+     * Return a leased container to this pool.
+     *
+     * @param m The leased container
+     * @param broken Indicate that this container should not be reused
+     */
+    public void release(Member m, boolean broken)
+    {
+        Assert.notNull(m, "Expected a member of this pool");
+        Assert.state(members.contains(m), "The container is not a member of this pool");
+
+        if (closed) {
+            removeQuietly(m.containerId);
+        } else if (broken || m.uses >= maxUses) {
+            recycle(m);
+        } else {
+            idle.offer(m);
+        }
+    }
+
+    /**
+     * Discard a leased container after a given amount of time. Discarding a container
+     * terminates any command executing inside it.
+     *
+     * @param m The leased container
+     * @param timeout The timeout (milliseconds)
+     * @return a future that can be cancelled (if the container is released in time)
+     */
+    public ScheduledFuture<?> discardAfter(Member m, long timeout)
+    {
+        return executor.schedule(() -> {
+            logger.info("Discarding container {} of pool {} (timed out at {}ms)", m.name, name, timeout);
+            removeQuietly(m.containerId);
+        }, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean isUsable(Member m)
+    {
+        ContainerState state = null;
+        try {
+            state = docker.inspectContainer(m.containerId).state();
+        } catch (DockerException e) {
+            logger.warn("Cannot inspect container {} of pool {}: {}", m.name, name, e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        Health health = state.health();
+        return Boolean.TRUE.equals(state.running()) &&
+            (health == null || !health.status().equalsIgnoreCase("unhealthy"));
+    }
+
+    private void recycle(Member m)
+    {
+        members.remove(m);
+        recycledCount.incrementAndGet();
+        logger.info("Recycling container {} of pool {} (after {} uses)", m.name, name, m.uses);
+
+        if (closed) {
+            removeQuietly(m.containerId);
+            deleteScratchDir(m);
+        } else {
+            executor.execute(() -> {
+                removeQuietly(m.containerId);
+                deleteScratchDir(m);
+                spawn();
+            });
+        }
+    }
+
+    /**
+     * Create and start a new container, and add it to the pool (once healthy). On failure,
+     * spawning is retried later.
+     */
+    private void spawn()
+    {
+        if (closed)
+            return;
+
+        String containerName = name + "-" + sequence.incrementAndGet();
+        String containerId = null;
+        Path scratchDir = null;
+        try {
+            ContainerConfig config = containerConfig;
+            if (scratchRoot != null) {
+                // Mount a fresh (empty) private directory as the only writable location
+                scratchDir = scratchRoot.resolve(containerName);
+                deleteRecursively(scratchDir);
+                Files.createDirectories(scratchDir);
+                HostConfig.Bind bind = HostConfig.Bind
+                    .from(scratchDir.toString())
+                    .to(containerScratchDir.toString())
+                    .readOnly(false)
+                    .build();
+                HostConfig hostConfig = containerConfig.hostConfig();
+                config = containerConfig.toBuilder()
+                    .hostConfig((hostConfig == null? HostConfig.builder() : hostConfig.toBuilder())
+                        .appendBinds(bind)
+                        .build())
+                    .build();
+            }
+            containerId = docker.createContainer(config, containerName).id();
+            docker.startContainer(containerId);
+            awaitHealthy(containerId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (containerId != null)
+                removeQuietly(containerId);
+            if (scratchDir != null)
+                deleteQuietly(scratchDir);
+            return;
+        } catch (DockerException | IOException | IllegalStateException e) {
+            logger.error("Failed to spawn container {} for pool {}: {}", containerName, name, e.getMessage());
+            if (containerId != null)
+                removeQuietly(containerId);
+            if (scratchDir != null)
+                deleteQuietly(scratchDir);
+            if (!closed)
+                executor.schedule(this::spawn, DEFAULT_RETRY_INTERVAL, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        Member m = new Member(containerId, containerName, scratchDir);
+        members.add(m);
+        idle.offer(m);
+        createdCount.incrementAndGet();
+        logger.info("Added container {} to pool {}", containerName, name);
+    }
+
+    /**
+     * Wait for a started container to become healthy. This follows the same conventions
+     * as {@link StartContainerTasklet} on health checking.
+     *
+     * @throws IllegalStateException if the container is not running, is unhealthy, or did
+     *   not report its health in time
+     */
+    private void awaitHealthy(String containerId)
+        throws DockerException, InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + startTimeout;
+        while (true) {
+            ContainerInfo containerInfo = docker.inspectContainer(containerId);
+            ContainerState state = containerInfo.state();
+            Assert.state(Boolean.TRUE.equals(state.running()), "The container is not running");
+            Health health = state.health();
+            if (health == null)
+                return; // no health checking
+            if (!health.status().equalsIgnoreCase("starting")) {
+                Assert.state(health.status().equalsIgnoreCase("healthy"),
+                    "The container has reported an unhealthy status");
+                return;
+            }
+            Assert.state(System.currentTimeMillis() < deadline,
+                "The container did not become healthy in time");
+            Thread.sleep(StartContainerTasklet.determineCheckInterval(containerInfo.config()));
+        }
+    }
+
+    private void removeQuietly(String containerId)
+    {
+        try {
+            docker.removeContainer(containerId, RemoveContainerParam.forceKill());
+        } catch (DockerException e) {
+            logger.warn("Failed to remove container {}: {}", containerId, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void deleteScratchDir(Member m)
+    {
+        if (m.scratchDir != null)
+            deleteQuietly(m.scratchDir);
+    }
+
+    private void deleteQuietly(Path dir)
+    {
+        try {
+            deleteRecursively(dir);
+        } catch (IOException e) {
+            logger.warn("Failed to remove directory {}: {}", dir, e.getMessage());
+        }
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException
+    {
+        if (!Files.exists(dir))
+            return;
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).forEach(paths::add);
+        }
+        for (Path p: paths)
+            Files.deleteIfExists(p);
+    }
+}
@@ -0,0 +1,38 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import org.springframework.batch.core.JobExecution;
+
+/**
+ * A supervisor for containers that keep running after the step that started them
+ * has released its thread.
+ * <p>
+ * A step may choose to stop its job execution (i.e. to park) while a container is
+ * running, and delegate to a supervisor the duty of resuming (i.e. restarting) the job
+ * when the container exits.
+ */
+public interface ContainerSupervisor
+{
+    /**
+     * Resume a job execution when a given container exits.
+     * <p>
+     * The job execution is expected to be stopped (or, at least, to be stopping) at
+     * the time this method is called.
+     *
+     * @param containerId The container ID (or name)
+     * @param execution The job execution to be resumed
+     * @param deadline A point in time (milliseconds since Epoch) after which the job
+     *   is resumed even if the container is still running (e.g. in order to enforce a
+     *   timeout). A non-positive value means no deadline.
+     */
+    void resumeOnExit(String containerId, JobExecution execution, long deadline);
+    
+    /**
+     * Cancel a parked job execution: the execution will not be resumed, and its container
+     * is stopped.
+     * 
+     * @param execution The (parked) job execution
+     * @return <tt>true</tt> if the execution was parked and is now cancelled, or <tt>false</tt>
+     *   if no such execution is parked here (or it is already being resumed)
+     */
+    boolean cancel(JobExecution execution);
+}
@@ -0,0 +1,74 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.StoppableTasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+
+/**
+ * A tasklet that creates a container (see {@link CreateContainerTasklet}) and then runs it
+ * (see {@link RunContainerTasklet}) inside a single step.
+ * <p>
+ * This is useful when a step cannot be split into a create/run pair of steps (e.g. it is
+ * the worker step of a partitioned step). Note that the container should be removed when
+ * finished, because a restart (of a failed step) will create it anew.
+ */
+public class CreateAndRunContainerTasklet implements StoppableTasklet, StepExecutionListener
+{
+    private final CreateContainerTasklet createTasklet;
+
+    private final RunContainerTasklet runTasklet;
+
+    public CreateAndRunContainerTasklet(
+        CreateContainerTasklet createTasklet, RunContainerTasklet runTasklet)
+    {
+        Assert.notNull(createTasklet, "A tasklet to create the container is required");
+        Assert.notNull(runTasklet, "A tasklet to run the container is required");
+        this.createTasklet = createTasklet;
+        this.runTasklet = runTasklet;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+        throws Exception
+    {
+        ExecutionContext executionContext =
+            chunkContext.getStepContext().getStepExecution().getExecutionContext();
+
+        if (!executionContext.containsKey(CreateContainerTasklet.Keys.CONTAINER_ID))
+            createTasklet.execute(contribution, chunkContext);
+
+        return runTasklet.execute(contribution, chunkContext);
+    }
+
+    @Override
+    public void stop()
+    {
+        runTasklet.stop();
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution)
+    {
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+        // If restarting a failed execution, the (removed) container must be created anew
+        if (executionContext.getLong(RunContainerTasklet.Keys.FINISHED, -1L) > 0) {
+            executionContext.remove(CreateContainerTasklet.Keys.CONTAINER_ID);
+            executionContext.remove(CreateContainerTasklet.Keys.CONTAINER_NAME);
+        }
+
+        runTasklet.beforeStep(stepExecution);
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution)
+    {
+        return runTasklet.afterStep(stepExecution);
+    }
+}
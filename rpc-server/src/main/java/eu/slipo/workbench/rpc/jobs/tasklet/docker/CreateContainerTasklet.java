@@ -17,6 +17,9 @@ import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.util.Assert;
 
 import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.RemoveContainerParam;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.exceptions.DockerException;
 import com.spotify.docker.client.messages.ContainerConfig;
 import com.spotify.docker.client.messages.ContainerCreation;
 
@@ -46,6 +49,8 @@ public class CreateContainerTasklet implements Tasklet
         
         private String containerName;
         
+        private boolean replaceExisting = false;
+        
         private ContainerConfigurer containerConfigurer = new ContainerConfigurer();
         
         private Builder() {}
@@ -70,6 +75,17 @@ public class CreateContainerTasklet implements Tasklet
             return this;
         }
         
+        /**
+         * Remove a (stale) container with the same name, if any, before creating ours. This
+         * is useful if a container is created by a step that may be restarted without knowing
+         * of it (e.g. after a crash between creating the container and committing the step). 
+         */
+        public Builder replaceExisting(boolean flag)
+        {
+            this.replaceExisting = flag;
+            return this;
+        }
+        
         /**
          * Configure the container itself
          */
@@ -90,7 +106,11 @@ public class CreateContainerTasklet implements Tasklet
                 "A docker client is required to communicate to docker daemon!");
             
             ContainerConfig config = containerConfigurer.buildConfiguration();
-            CreateContainerTasklet tasklet = new CreateContainerTasklet(client, config, containerName);;
+            Assert.state(!replaceExisting || containerName != null, 
+                "A container name is required in order to replace an existing container");
+            
+            CreateContainerTasklet tasklet = new CreateContainerTasklet(client, config, containerName);
+            tasklet.replaceExisting = replaceExisting;
             return tasklet;
         }
         
@@ -107,6 +127,8 @@ public class CreateContainerTasklet implements Tasklet
     
     private final String containerName;
     
+    private boolean replaceExisting = false;
+    
     private CreateContainerTasklet(DockerClient docker, ContainerConfig config, String name) 
     {
         Assert.notNull(docker, "The docker client must be provided");
@@ -129,6 +151,9 @@ public class CreateContainerTasklet implements Tasklet
         Assert.state(containerId == null, 
             "Did not expect to find a containerId in execution context!");
         
+        if (replaceExisting)
+            removeExisting();
+        
         ContainerCreation creation = docker.createContainer(containerConfig, containerName); 
         containerId = creation.id();
         logger.info("Created container from image {}: {}", containerConfig.image(), containerId);
@@ -139,5 +164,15 @@ public class CreateContainerTasklet implements Tasklet
         
         return RepeatStatus.FINISHED;
     }
+    
+    private void removeExisting() throws DockerException, InterruptedException
+    {
+        try {
+            docker.removeContainer(containerName, RemoveContainerParam.forceKill());
+            logger.info("Removed a stale container named {}", containerName);
+        } catch (ContainerNotFoundException ex) {
+            // no-op: no such container
+        }
+    }
 
 }
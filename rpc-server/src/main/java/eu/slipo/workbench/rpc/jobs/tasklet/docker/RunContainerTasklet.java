@@ -2,7 +2,11 @@ package eu.slipo.workbench.rpc.jobs.tasklet.docker;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
@@ -14,7 +18,7 @@ import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.scope.context.StepContext;
-import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.core.step.tasklet.StoppableTasklet;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.util.Assert;
@@ -30,8 +34,12 @@ import eu.slipo.workbench.rpc.jobs.tasklet.TimedOutExitStatus;
 
 /**
  * A tasklet that starts a docker container waiting for it to complete.
+ * <p>
+ * The waiting happens inside a single chunk: the step is committed (i.e. updated in the job
+ * repository) only on a state transition (started, finished, timed-out, parked) or when a 
+ * heartbeat is due. A stop request ({@link #stop()}) stops the container right away.
  */
-public class RunContainerTasklet implements Tasklet, StepExecutionListener
+public class RunContainerTasklet implements StoppableTasklet, StepExecutionListener
 {
     private static Logger logger = LoggerFactory.getLogger(RunContainerTasklet.class); 
     
@@ -51,6 +59,13 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
      */
     public static final long DEFAULT_CHECK_INTERVAL = 1000L;
     
+    /**
+     * The default interval (in milliseconds) between commits of a step while its container
+     * is running (i.e. a heartbeat). On a commit, a step notices if its job execution is 
+     * stopping, so this also bounds the latency of a stop request from another node.
+     */
+    public static final long DEFAULT_HEARTBEAT_INTERVAL = 5 * 1000L;
+    
     /**
      * The default timeout (in milliseconds) waiting for a container to complete.
      */
@@ -71,6 +86,12 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
      */
     public static final boolean REMOVE_ON_FINISHED = false;
     
+    /**
+     * The default amount of time (in milliseconds) to wait for the output of a finished 
+     * container to be collected.
+     */
+    public static final long DEFAULT_OUTPUT_TIMEOUT = 10 * 1000L;
+    
     /**
      * An invalid exit-code (assuming an exit-code is a unsigned 8-bit integer)
      */
@@ -81,6 +102,9 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
      */
     public static class Keys
     {
+        /** The container ID (or name) this step has started */
+        public static final String CONTAINER = "container";
+        
         public static final String STARTED = "started";
         
         public static final String FINISHED = "finished";
@@ -89,7 +113,19 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         
         public static final String COMMAND_EXIT_CODE = "command.exitCode";
         
+        /** The tail of the output (stdout/stderr) of the container's command */
         public static final String COMMAND_OUTPUT = "command.output";
+        
+        /** The file where the output of the container's command is collected */
+        public static final String COMMAND_OUTPUT_FILE = "command.outputFile";
+        
+        /** The total size (in bytes) of the output of the container's command */
+        public static final String COMMAND_OUTPUT_SIZE = "command.outputSize";
+        
+        public static final String PARKED = "parked";
+        
+        /** The container was stopped on a stop request (i.e. it did not exit by itself) */
+        public static final String STOPPED = "stopped";
     }
     
     /**
@@ -107,12 +143,22 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         
         private Long checkInterval;
         
+        private Long heartbeatInterval;
+        
         private Boolean failOnTimeout;
         
         private Boolean failOnNonZeroExitCode;
         
         private Boolean removeOnFinished;
         
+        private ContainerEventMonitor monitor;
+        
+        private ContainerSupervisor supervisor;
+        
+        private ContainerLogCollector logCollector;
+        
+        private Path logFile;
+        
         private Builder() {}
         
         /**
@@ -166,6 +212,17 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
             return this;
         }
         
+        /**
+         * Set the interval (milliseconds) between commits of the step while its container
+         * is running. A state transition (e.g. the container has exited) is always committed
+         * immediately. A value less than the polling interval means a commit per check.
+         */
+        public Builder heartbeatInterval(long t)
+        {
+            this.heartbeatInterval = t;
+            return this;
+        }
+        
         /**
          * Set whether a timeout on the container's command should bring a step to
          * a <tt>FAILED</tt> batch status (default is <tt>true</tt>).
@@ -200,6 +257,49 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
             return this;
         }
         
+        /**
+         * Provide a monitor for container events. If given, the tasklet will wait to be
+         * notified for the exit of the container (instead of polling its status).
+         */
+        public Builder monitor(ContainerEventMonitor monitor)
+        {
+            Assert.notNull(monitor, "A non-null monitor is expected");
+            this.monitor = monitor;
+            return this;
+        }
+        
+        /**
+         * Provide a supervisor for running containers. If given, the tasklet will not keep
+         * its thread while the container is running: the job execution is stopped (parked) 
+         * and is resumed by the supervisor when the container exits.
+         * <p>
+         * Note that a parked job execution will appear as <tt>STOPPED</tt> until resumed.
+         */
+        public Builder supervisor(ContainerSupervisor supervisor)
+        {
+            Assert.notNull(supervisor, "A non-null supervisor is expected");
+            this.supervisor = supervisor;
+            return this;
+        }
+        
+        /**
+         * Stream the output of the container into a (rotating) log file, while the 
+         * container is running. If not given, only a tail of the output is fetched when
+         * the container is finished.
+         * 
+         * @param collector The collector to be used
+         * @param logFile The (absolute) path of the log file
+         */
+        public Builder logCollector(ContainerLogCollector collector, Path logFile)
+        {
+            Assert.notNull(collector, "A non-null collector is expected");
+            Assert.notNull(logFile, "A non-null path is expected");
+            Assert.isTrue(logFile.isAbsolute(), "Expected an absolute path for the log file");
+            this.logCollector = collector;
+            this.logFile = logFile;
+            return this;
+        }
+        
         /**
          * Build a tasklet from configuration.
          */
@@ -212,6 +312,8 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
             
             if (checkInterval != null)
                 tasklet.setCheckInterval(checkInterval);
+            if (heartbeatInterval != null)
+                tasklet.setHeartbeatInterval(heartbeatInterval);
             if (timeout != null)
                 tasklet.setTimeout(timeout);
             if (stopTimeout != null)
@@ -225,6 +327,15 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
             if (removeOnFinished != null)
                 tasklet.setRemoveOnFinished(removeOnFinished);
             
+            if (monitor != null)
+                tasklet.setMonitor(monitor);
+            
+            if (supervisor != null)
+                tasklet.setSupervisor(supervisor);
+            
+            if (logCollector != null)
+                tasklet.setLogCollector(logCollector, logFile);
+            
             return tasklet;
         }
     }
@@ -234,12 +345,26 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         return new Builder();
     }
     
+    /**
+     * Test if a step execution (of a tasklet of this class) is parked, i.e. it has stopped
+     * while its container is still running.
+     */
+    public static boolean isParked(StepExecution stepExecution)
+    {
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        return stepExecution.getStatus() == BatchStatus.STOPPED &&
+            executionContext.containsKey(Keys.PARKED) && 
+            !executionContext.containsKey(Keys.FINISHED);
+    }
+    
     private final DockerClient docker;
     
     private final String containerId;
 
     private long checkInterval = DEFAULT_CHECK_INTERVAL;
 
+    private long heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+    
     private long timeout = DEFAULT_TIMEOUT;
     
     private long stopTimeout = DEFAULT_STOP_TIMEOUT;
@@ -250,6 +375,32 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
     
     private boolean removeOnFinished = REMOVE_ON_FINISHED;
     
+    private ContainerEventMonitor monitor;
+    
+    private ContainerSupervisor supervisor;
+    
+    private ContainerLogCollector logCollector;
+    
+    private Path logFile;
+    
+    /**
+     * A flag raised when this tasklet is asked to stop (along with a lock to wake up a 
+     * sleeping poller).
+     */
+    private volatile boolean stopped = false;
+    
+    private final Object stopLock = new Object();
+    
+    /**
+     * A flag raised when the container is started (by this execution) and not yet finished
+     */
+    private volatile boolean running = false;
+    
+    /**
+     * A flag raised when a stop signal is sent to the container
+     */
+    private boolean stopSent = false;
+    
     private RunContainerTasklet(DockerClient docker, String containerId) 
     {
         Assert.notNull(docker, "The docker client must be provided");
@@ -269,6 +420,16 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         return checkInterval;
     }
     
+    private void setHeartbeatInterval(long millis)
+    {
+        this.heartbeatInterval = millis;
+    }
+    
+    public long getHeartbeatInterval()
+    {
+        return heartbeatInterval;
+    }
+    
     private void setTimeout(long millis)
     {
         this.timeout = millis;
@@ -304,8 +465,24 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         this.removeOnFinished = flag;
     }
     
+    private void setMonitor(ContainerEventMonitor monitor)
+    {
+        this.monitor = monitor;
+    }
+    
+    private void setSupervisor(ContainerSupervisor supervisor)
+    {
+        this.supervisor = supervisor;
+    }
+    
+    private void setLogCollector(ContainerLogCollector collector, Path logFile)
+    {
+        this.logCollector = collector;
+        this.logFile = logFile;
+    }
+    
     /**
-     * Fetch all logs (stdout/stderr) generated from a container. 
+     * Fetch the tail of logs (stdout/stderr) generated from a container. 
      * <p>
      * It is assumed that logs are text-based (encoded as UTF-8). If this is not true,
      * consider redirecting binary output to some other (bind-mounted) file, instead of 
@@ -320,11 +497,17 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
     {
         LogStream outs = docker.logs(containerId, LogsParam.stdout(), LogsParam.stderr());
         
+        final int maxLength = ContainerLogCollector.DEFAULT_TAIL_SIZE;
+        
         StringBuilder b = new StringBuilder();
         while (outs.hasNext()) {
             ByteBuffer data = outs.next().content();
             b.append(StandardCharsets.UTF_8.decode(data).toString());
+            if (b.length() > 2 * maxLength)
+                b.delete(0, b.length() - maxLength);
         }
+        if (b.length() > maxLength)
+            b.delete(0, b.length() - maxLength);
         return b.toString();
     }
     
@@ -356,8 +539,14 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
      * This task is clearly separated into 2 phases:
      * <ol>
      *   <li>P1: Start the container</li>
-     *   <li>P2: Poll the container status (at a fixed rate), waiting for it to complete</li>  
+     *   <li>P2: Wait for the container to complete: either be notified by a monitor of
+     *     container events (if one is configured), or poll the container status (at a
+     *     fixed rate)</li>  
      * </ol>
+     * <p>
+     * If a supervisor is configured, a container that is still running after the first 
+     * wait of P2 will cause this step (and its job) to stop, so that no thread is kept
+     * while waiting. The supervisor will later restart the job to complete P2.
      */
     @Override
     public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
@@ -370,57 +559,187 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         long started = executionContext.getLong(Keys.STARTED, -1L);
         long finished = executionContext.getLong(Keys.FINISHED, -1L);
         Assert.state(finished < 0, "Expected a non-started or running container!");
-                   
+        
+        boolean justStarted = false;
         if (started < 0) {
-            // P1: The container is created but not started: start it now
+            // P1: The container is created but not started: start it now (unless stopped)
+            if (stopped) {
+                logger.info("Stopped before starting container {}", containerId);
+                stepExecution.setTerminateOnly();
+                return RepeatStatus.CONTINUABLE;
+            }
+            if (monitor != null)
+                monitor.watch(containerId); // register before it can ever exit
             docker.startContainer(containerId);
             logger.info("Started container {}", containerId);
             started = (new Date()).getTime();
             executionContext.putLong(Keys.STARTED, started);
-        } else {
-            // P2: The container is started: poll status, check if timed out
-            ContainerInfo containerInfo = docker.inspectContainer(containerId);
-            ContainerState containerState = containerInfo.state();
-            logger.debug("Polled status for container {}: {}", containerId, containerState);
-            long elapsedTime = (new Date()).getTime() - started;
-            if (containerState.running()) {
-                if (timeout > 0 && elapsedTime > timeout) {
+            executionContext.putString(Keys.CONTAINER, containerId);
+            if (logCollector != null) {
+                logCollector.collect(containerId, logFile);
+                executionContext.putString(Keys.COMMAND_OUTPUT_FILE, logFile.toString());
+            }
+            running = true;
+            justStarted = true;
+        }
+        
+        if (!justStarted || stopped) {
+            // P2: The container is started: wait for it (inside this chunk) until it exits,
+            // it times out, we are asked to stop, or a heartbeat is due. Note that, if asked
+            // to stop while starting, we proceed here to stop the container.
+            final long waitStarted = (new Date()).getTime();
+            running = true;
+            boolean stopHandled = false;
+            while (true) {
+                if (!stopped && stepExecution.isTerminateOnly()) {
+                    // The step is asked to terminate (e.g. its execution is fenced): handle
+                    // as a stop request, without waiting for a heartbeat
+                    logger.info("The step is asked to terminate: stopping container {}", containerId);
+                    stopped = true;
+                }
+                Integer exitCode = null;
+                String error = null;
+                if (monitor != null) {
+                    long remaining = timeout > 0? (started + timeout - (new Date()).getTime()) : -1L;
+                    long wait = (remaining < 0)? checkInterval : Math.min(checkInterval, remaining);
+                    exitCode = monitor.awaitExit(containerId, Math.max(wait, 0L));
+                } else {
+                    ContainerInfo containerInfo = docker.inspectContainer(containerId);
+                    ContainerState containerState = containerInfo.state();
+                    logger.debug("Polled status for container {}: {}", containerId, containerState);
+                    if (!containerState.running()) {
+                        exitCode = containerState.exitCode();
+                        error = containerState.error();
+                    }
+                }
+                long now = (new Date()).getTime();
+                if (exitCode != null) {
+                    // The container is finished: determine exit-status
+                    logger.info("The container {} has finished: exit-code={} error={}", 
+                        containerId, exitCode, error);
+                    running = false;
+                    finished = now;
+                    executionContext.putLong(Keys.FINISHED, finished);
+                    executionContext.putLong(Keys.COMMAND_EXIT_CODE, exitCode);
+                    if (stopped && exitCode != 0) {
+                        // The container was stopped by us: stop the step (not fail it)
+                        executionContext.putLong(Keys.STOPPED, finished);
+                        contribution.setExitStatus(ExitStatus.STOPPED.addExitDescription(
+                            String.format("The container was stopped (exit-code=%d)", exitCode)));
+                        stepExecution.setTerminateOnly();
+                    } else {
+                        contribution.setExitStatus(resolveExitStatus(exitCode));
+                        stepExecution.setStatus((failOnNonZeroExitCode && exitCode != 0)? 
+                            BatchStatus.FAILED : BatchStatus.COMPLETED);
+                    }
+                    break;
+                } else if (timeout > 0 && (now - started) > timeout) {
                     // Timed out: Mark the step as failed and stop container now
                     logger.error("Timed out at {}ms: Stopping {}", timeout, containerId);
+                    running = false;
                     docker.stopContainer(containerId, (int) (stopTimeout / 1000));
+                    if (monitor != null)
+                        monitor.forget(containerId);
                     finished = (new Date()).getTime();
                     executionContext.putLong(Keys.FINISHED, finished);
                     executionContext.putLong(Keys.TIMED_OUT, timeout);
                     contribution.setExitStatus(new TimedOutExitStatus(timeout));
                     stepExecution.setStatus(failOnTimeout? BatchStatus.FAILED : BatchStatus.COMPLETED);
-                } else {
+                    break;
+                } else if (stopped) {
+                    // Asked to stop: make sure the container is stopped, and check once more
+                    // to collect its exit code. If still running, leave it (so that a restart
+                    // can wait for it) and stop the step at the end of this chunk.
+                    if (!stopHandled) {
+                        stopHandled = true;
+                        stopContainer();
+                        continue;
+                    }
+                    logger.warn("Stopped while waiting for container {} (still running)", containerId);
+                    stepExecution.setTerminateOnly();
+                    break;
+                } else if (supervisor != null) {
+                    // The container is still running: park and release this thread
+                    long deadline = timeout > 0? (started + timeout) : -1L;
+                    logger.info("The container {} is running: parking until it exits", containerId);
+                    executionContext.putLong(Keys.PARKED, now);
+                    supervisor.resumeOnExit(containerId, stepExecution.getJobExecution(), deadline);
+                    stepExecution.setTerminateOnly();
+                    break;
+                } else if (now - waitStarted >= heartbeatInterval) {
+                    // Commit this chunk (a heartbeat) and keep waiting in the next one
+                    logger.debug("The container {} is running: committing a heartbeat", containerId);
+                    break;
+                } else if (monitor == null) {
                     // The container is still running; sleep for one more period
                     logger.debug("The container {} is running: sleeping for {}ms", 
                         containerId, checkInterval);
-                    Thread.sleep(checkInterval);
+                    sleepUnlessStopped(checkInterval);
                 }
-            } else {
-                // The container is finished: determine exit-status
-                int exitCode = containerState.exitCode();
-                logger.info("The container {} has finished: exit-code={} error={}", 
-                    containerId, exitCode, containerState.error());
-                finished = (new Date()).getTime();
-                executionContext.putLong(Keys.FINISHED, finished);
-                executionContext.putLong(Keys.COMMAND_EXIT_CODE, exitCode);
-                contribution.setExitStatus(resolveExitStatus(exitCode));
-                stepExecution.setStatus((failOnNonZeroExitCode && exitCode != 0)? 
-                    BatchStatus.FAILED : BatchStatus.COMPLETED);
             }
         }
         
         return RepeatStatus.continueIf(finished < 0);
     }
     
+    /**
+     * Stop the container (if running), and wake up a waiting step. The step is stopped 
+     * (not failed) as soon as the exit of the container is noticed, and a restart of the 
+     * step will run the container anew.
+     */
+    @Override
+    public void stop()
+    {
+        stopped = true;
+        if (running)
+            stopContainer();
+        synchronized (stopLock) {
+            stopLock.notifyAll();
+        }
+    }
+    
+    /**
+     * Send a stop signal to the container (only once). Return when the container has 
+     * stopped (i.e. when docker daemon has either stopped or killed it).  
+     */
+    private synchronized void stopContainer()
+    {
+        if (stopSent)
+            return;
+        stopSent = true;
+        
+        logger.info("Stopping container {} (timeout={}ms)", containerId, stopTimeout);
+        try {
+            docker.stopContainer(containerId, (int) (stopTimeout / 1000));
+        } catch (DockerException e) {
+            logger.error("Failed to stop container {}: {}", containerId, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Sleep for a given amount of time, unless (or until) this tasklet is asked to stop.
+     */
+    private void sleepUnlessStopped(long millis) throws InterruptedException
+    {
+        synchronized (stopLock) {
+            if (!stopped)
+                stopLock.wait(millis);
+        }
+    }
+    
     @Override
     public void beforeStep(StepExecution stepExecution)
     {
         ExecutionContext executionContext = stepExecution.getExecutionContext();
         
+        stopped = false;
+        running = false;
+        synchronized (this) {
+            stopSent = false;
+        }
+        
         // If this step execution is a restart of a previous failed execution, then we
         // should clear part of our (inherited) context before the actual execution begins
         // (in order to allow the container to be re-started).
@@ -431,9 +750,11 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         
         if (finished > 0) {
             // The previous execution has failed (a timeout or a failed command inside container)
+            // or was stopped (along with its container)
             long timedOut = executionContext.getLong(Keys.TIMED_OUT, -1L);
             long exitCode = executionContext.getLong(Keys.COMMAND_EXIT_CODE, NOT_AN_EXIT_CODE);
-            Assert.state(timedOut > 0 || (exitCode != NOT_AN_EXIT_CODE && exitCode != 0), 
+            boolean wasStopped = executionContext.containsKey(Keys.STOPPED);
+            Assert.state(timedOut > 0 || wasStopped || (exitCode != NOT_AN_EXIT_CODE && exitCode != 0), 
                 "This step was not expected to restart");
             resetExecutionContext(stepExecution);
         }
@@ -451,18 +772,40 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
         // a container should not be destroyed in those cases (as it may be restarted).
         
         if (finished > 0) {
-            // The step is marked as finished, successfully or not. Save all output
-            // generated from the container (stdout/stderr) into step context.
-            String output;
-            try {
-                output = fetchLogsFromContainer(containerId);
-            } catch (DockerException | InterruptedException e) {
-                output = null;
-                logger.error("Failed to fetch logs for container {}: {}", 
-                    containerId, e.getMessage());
+            // The step is marked as finished, successfully or not. Save a summary of
+            // the output generated from the container (stdout/stderr) into step context.
+            if (logCollector != null) {
+                // Wait for the output to be flushed to our log file. Note that a collection
+                // is started anew if the step is restarted (e.g. it was parked)
+                ContainerLogCollector.Summary summary = null;
+                try {
+                    summary = logCollector.collect(containerId, logFile)
+                        .get(DEFAULT_OUTPUT_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (ExecutionException | TimeoutException e) {
+                    logger.error("Failed to collect logs for container {}: {}", 
+                        containerId, e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    logCollector.forget(containerId);
+                }
+                if (summary != null) {
+                    executionContext.putString(Keys.COMMAND_OUTPUT_FILE, summary.path().toString());
+                    executionContext.putLong(Keys.COMMAND_OUTPUT_SIZE, summary.size());
+                    executionContext.putString(Keys.COMMAND_OUTPUT, summary.tail());
+                }
+            } else {
+                String output;
+                try {
+                    output = fetchLogsFromContainer(containerId);
+                } catch (DockerException | InterruptedException e) {
+                    output = null;
+                    logger.error("Failed to fetch logs for container {}: {}", 
+                        containerId, e.getMessage());
+                }
+                if (output != null)
+                    executionContext.putString(Keys.COMMAND_OUTPUT, output);
             }
-            if (output != null)
-                executionContext.putString(Keys.COMMAND_OUTPUT, output);
 
             // Destroy container, if tasklet is configured so.
             // Note: if a container is configured with the auto-remove flag, this
@@ -489,10 +832,15 @@ public class RunContainerTasklet implements Tasklet, StepExecutionListener
     {
         ExecutionContext executionContext = stepExecution.getExecutionContext();
         
+        executionContext.remove(Keys.CONTAINER);
         executionContext.remove(Keys.STARTED);
         executionContext.remove(Keys.FINISHED);
         executionContext.remove(Keys.TIMED_OUT);
         executionContext.remove(Keys.COMMAND_EXIT_CODE);
         executionContext.remove(Keys.COMMAND_OUTPUT);
+        executionContext.remove(Keys.COMMAND_OUTPUT_FILE);
+        executionContext.remove(Keys.COMMAND_OUTPUT_SIZE);
+        executionContext.remove(Keys.PARKED);
+        executionContext.remove(Keys.STOPPED);
     }
 }
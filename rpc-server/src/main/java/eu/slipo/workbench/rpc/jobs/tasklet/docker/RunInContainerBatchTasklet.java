@@ -0,0 +1,292 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.step.tasklet.StoppableTasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.TimedOutExitStatus;
+
+/**
+ * A tasklet that submits its input to a {@link ContainerBatcher}, and waits for the batch
+ * (that it becomes a member of) to run.
+ * <p>
+ * While waiting, this tasklet yields periodically (so that its step may be stopped). If
+ * this step is restarted (and the batcher does not know of this request anymore), the
+ * request is submitted anew.
+ * <p>
+ * A stop request ({@link #stop()}) cancels the request, so that it is removed from its 
+ * batch (if not yet running). A request is also cancelled if its step ends otherwise than 
+ * completed (e.g. it failed).
+ */
+public class RunInContainerBatchTasklet implements StoppableTasklet, StepExecutionListener
+{
+    private static Logger logger = LoggerFactory.getLogger(RunInContainerBatchTasklet.class);
+
+    /**
+     * The default amount of time (milliseconds) to wait for a batch in each iteration
+     */
+    public static final long DEFAULT_CHECK_INTERVAL = 2 * 1000L;
+
+    public static final boolean FAIL_ON_NON_ZERO_EXIT_CODE = true;
+
+    /**
+     * The collection of keys used inside our execution context
+     */
+    public static class Keys
+    {
+        /** The name of the batch that the request was run in */
+        public static final String BATCH = "batch";
+
+        /** The number of requests in the batch */
+        public static final String BATCH_SIZE = "batchSize";
+
+        public static final String STARTED = RunContainerTasklet.Keys.STARTED;
+
+        public static final String FINISHED = RunContainerTasklet.Keys.FINISHED;
+
+        public static final String TIMED_OUT = RunContainerTasklet.Keys.TIMED_OUT;
+
+        public static final String COMMAND_EXIT_CODE = RunContainerTasklet.Keys.COMMAND_EXIT_CODE;
+
+        public static final String COMMAND_OUTPUT = RunContainerTasklet.Keys.COMMAND_OUTPUT;
+
+        public static final String COMMAND_OUTPUT_FILE = RunContainerTasklet.Keys.COMMAND_OUTPUT_FILE;
+    }
+
+    /**
+     * A builder for tasklets of enclosing class ({@link RunInContainerBatchTasklet}).
+     */
+    public static class Builder
+    {
+        private ContainerBatcher batcher;
+
+        private String id;
+
+        private String key;
+
+        private List<Path> inputFiles = new ArrayList<>();
+
+        private Path outputDir;
+
+        private Path configFile;
+
+        private long checkInterval = DEFAULT_CHECK_INTERVAL;
+
+        private boolean failOnNonZeroExitCode = FAIL_ON_NON_ZERO_EXIT_CODE;
+
+        private Builder() {}
+
+        public Builder batcher(ContainerBatcher batcher)
+        {
+            Assert.notNull(batcher, "A non-null batcher is expected");
+            this.batcher = batcher;
+            return this;
+        }
+
+        /**
+         * Set the identifier of our request (should be unique among pending requests)
+         */
+        public Builder id(String id)
+        {
+            this.id = id;
+            return this;
+        }
+
+        /**
+         * Set the key that requests are grouped under
+         */
+        public Builder key(String key)
+        {
+            this.key = key;
+            return this;
+        }
+
+        public Builder input(Path inputFile)
+        {
+            Assert.isTrue(inputFile != null && inputFile.isAbsolute(),
+                "Expected an absolute path for an input file");
+            this.inputFiles.add(inputFile);
+            return this;
+        }
+
+        public Builder input(List<Path> inputFiles)
+        {
+            inputFiles.forEach(this::input);
+            return this;
+        }
+
+        public Builder outputDir(Path outputDir)
+        {
+            this.outputDir = outputDir;
+            return this;
+        }
+
+        public Builder config(Path configFile)
+        {
+            this.configFile = configFile;
+            return this;
+        }
+
+        public Builder checkInterval(long interval)
+        {
+            Assert.isTrue(interval > 0, "Expected a positive interval");
+            this.checkInterval = interval;
+            return this;
+        }
+
+        public Builder failOnNonZeroExitCode(boolean flag)
+        {
+            this.failOnNonZeroExitCode = flag;
+            return this;
+        }
+
+        public RunInContainerBatchTasklet build()
+        {
+            Assert.state(batcher != null, "A batcher is required");
+
+            ContainerBatcher.Request request =
+                new ContainerBatcher.Request(id, key, inputFiles, outputDir, configFile);
+
+            RunInContainerBatchTasklet tasklet = new RunInContainerBatchTasklet(batcher, request);
+            tasklet.checkInterval = checkInterval;
+            tasklet.failOnNonZeroExitCode = failOnNonZeroExitCode;
+            return tasklet;
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private final ContainerBatcher batcher;
+
+    private final ContainerBatcher.Request request;
+
+    private long checkInterval = DEFAULT_CHECK_INTERVAL;
+
+    private boolean failOnNonZeroExitCode = FAIL_ON_NON_ZERO_EXIT_CODE;
+
+    private volatile boolean stopped = false;
+
+    private RunInContainerBatchTasklet(ContainerBatcher batcher, ContainerBatcher.Request request)
+    {
+        this.batcher = batcher;
+        this.request = request;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+        throws Exception
+    {
+        StepContext stepContext = chunkContext.getStepContext();
+        StepExecution stepExecution = stepContext.getStepExecution();
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+        if (stopped || stepExecution.isTerminateOnly()) {
+            logger.info("Stopped while waiting for a batch (request {})", request.getId());
+            batcher.cancel(request.getId());
+            stepExecution.setTerminateOnly();
+            return RepeatStatus.CONTINUABLE;
+        }
+
+        // Submit (if not already submitted), and wait for a bounded amount of time
+
+        CompletableFuture<ContainerBatcher.Result> f = batcher.submit(request);
+
+        ContainerBatcher.Result result = null;
+        try {
+            result = f.get(checkInterval, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.debug("The batch for request {} has not yet run", request.getId());
+            return RepeatStatus.CONTINUABLE;
+        } catch (CancellationException e) {
+            // Cancelled by a stop request
+            logger.info("Stopped while waiting for a batch (request {})", request.getId());
+            stepExecution.setTerminateOnly();
+            return RepeatStatus.CONTINUABLE;
+        } catch (ExecutionException e) {
+            batcher.forget(request.getId());
+            Throwable cause = e.getCause();
+            throw (cause instanceof Exception)? ((Exception) cause) : e;
+        }
+
+        batcher.forget(request.getId()); // the result is consumed
+
+        // Update execution context
+
+        executionContext.putString(Keys.BATCH, result.getBatchName());
+        executionContext.putInt(Keys.BATCH_SIZE, result.getBatchSize());
+        executionContext.putLong(Keys.STARTED, result.getStarted());
+        executionContext.putLong(Keys.FINISHED, result.getFinished());
+        executionContext.putString(Keys.COMMAND_OUTPUT_FILE, result.getLogFile().toString());
+        if (result.getOutput() != null)
+            executionContext.putString(Keys.COMMAND_OUTPUT, result.getOutput());
+
+        Integer exitCode = result.getExitCode();
+        if (exitCode == null) {
+            logger.info("The batch {} (for request {}) has timed out",
+                result.getBatchName(), request.getId());
+            executionContext.putLong(Keys.TIMED_OUT, result.getFinished());
+            contribution.setExitStatus(new TimedOutExitStatus(result.getFinished() - result.getStarted()));
+            stepExecution.setStatus(BatchStatus.FAILED);
+        } else {
+            logger.info("The batch {} (for request {}) has exited with {}",
+                result.getBatchName(), request.getId(), exitCode);
+            executionContext.putLong(Keys.COMMAND_EXIT_CODE, exitCode);
+            if (exitCode != 0) {
+                contribution.setExitStatus(new ExitStatus("FAILED-WITH-NONZERO-EXIT-CODE",
+                    String.format("The command exited with a non-zero (%d) code", exitCode)));
+                stepExecution.setStatus(failOnNonZeroExitCode?
+                    BatchStatus.FAILED : BatchStatus.COMPLETED);
+            }
+        }
+
+        return RepeatStatus.FINISHED;
+    }
+
+    /**
+     * Cancel our request, and wake up a waiting step. The step is stopped as soon as the
+     * current wait returns.
+     */
+    @Override
+    public void stop()
+    {
+        stopped = true;
+        batcher.cancel(request.getId());
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution)
+    {
+        stopped = false;
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution)
+    {
+        // Do not leave a request of a step that has not completed in a batch
+        if (stepExecution.getStatus() != BatchStatus.COMPLETED)
+            batcher.cancel(request.getId());
+        return null;
+    }
+}
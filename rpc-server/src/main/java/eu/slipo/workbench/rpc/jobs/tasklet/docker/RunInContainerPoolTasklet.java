@@ -0,0 +1,628 @@
+package eu.slipo.workbench.rpc.jobs.tasklet.docker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.step.tasklet.StoppableTasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.util.Assert;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.ExecCreateParam;
+import com.spotify.docker.client.LogStream;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.TimedOutExitStatus;
+
+/**
+ * A tasklet that executes a command inside a container leased from a {@link ContainerPool}.
+ * <p>
+ * This is an alternative to creating (see {@link CreateContainerTasklet}) and running (see
+ * {@link RunContainerTasklet}) a new container for each execution. The command is executed
+ * via <tt>docker exec</tt>, and its environment is passed as a prefix of <tt>env</tt>
+ * assignments (so, the image is expected to provide an <tt>env</tt> utility).
+ * <p>
+ * As with {@link RunContainerTasklet}, the waiting happens inside a single chunk which is
+ * committed on a state transition (started, finished, timed-out, stopped) or when a heartbeat
+ * is due. A stop request ({@link #stop()}) discards the leased container right away. Note that
+ * an execution cannot be parked (an exec does not survive its tasklet).
+ * <p>
+ * If the pool provides a private writable directory to its containers, the command should
+ * write its output there: the output is moved into the (host-local) output directory (see
+ * {@link Builder#outputDir(Path)}) after the command has exited.
+ */
+public class RunInContainerPoolTasklet implements StoppableTasklet, StepExecutionListener
+{
+    private static Logger logger = LoggerFactory.getLogger(RunInContainerPoolTasklet.class);
+
+    /**
+     * The default amount of time (milliseconds) to wait for a container of the pool, before
+     * yielding (and retrying)
+     */
+    public static final long DEFAULT_ACQUIRE_TIMEOUT = 5 * 1000L;
+
+    public static final long DEFAULT_TIMEOUT = -1L;
+
+    public static final long DEFAULT_HEARTBEAT_INTERVAL = RunContainerTasklet.DEFAULT_HEARTBEAT_INTERVAL;
+
+    public static final long CHECK_INTERVAL = RunContainerTasklet.DEFAULT_CHECK_INTERVAL;
+
+    public static final boolean FAIL_ON_NON_ZERO_EXIT_CODE = true;
+
+    public static final boolean FAIL_ON_TIMEOUT = true;
+
+    /**
+     * The threads that stream the output of executing commands
+     */
+    private static final ExecutorService streamExecutor;
+
+    static {
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        streamExecutor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "container-pool-exec-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * The collection of keys used inside our execution context
+     */
+    public static class Keys
+    {
+        /** The pool container that the command was executed in */
+        public static final String POOL_CONTAINER = "poolContainer";
+
+        public static final String STARTED = RunContainerTasklet.Keys.STARTED;
+
+        public static final String FINISHED = RunContainerTasklet.Keys.FINISHED;
+
+        public static final String TIMED_OUT = RunContainerTasklet.Keys.TIMED_OUT;
+
+        public static final String STOPPED = RunContainerTasklet.Keys.STOPPED;
+
+        public static final String COMMAND_EXIT_CODE = RunContainerTasklet.Keys.COMMAND_EXIT_CODE;
+
+        public static final String COMMAND_OUTPUT = RunContainerTasklet.Keys.COMMAND_OUTPUT;
+
+        public static final String COMMAND_OUTPUT_FILE = RunContainerTasklet.Keys.COMMAND_OUTPUT_FILE;
+
+        public static final String COMMAND_OUTPUT_SIZE = RunContainerTasklet.Keys.COMMAND_OUTPUT_SIZE;
+    }
+
+    /**
+     * A builder for tasklets of enclosing class ({@link RunInContainerPoolTasklet}).
+     */
+    public static class Builder
+    {
+        private DockerClient client;
+
+        private ContainerPool pool;
+
+        private Map<String,String> env = new LinkedHashMap<>();
+
+        private Path logFile;
+
+        private Path outputDir;
+
+        private long timeout = DEFAULT_TIMEOUT;
+
+        private long acquireTimeout = DEFAULT_ACQUIRE_TIMEOUT;
+
+        private long heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+
+        private boolean failOnNonZeroExitCode = FAIL_ON_NON_ZERO_EXIT_CODE;
+
+        private boolean failOnTimeout = FAIL_ON_TIMEOUT;
+
+        private Builder() {}
+
+        /**
+         * Provide a client to communicate with docker daemon.
+         */
+        public Builder client(DockerClient client)
+        {
+            Assert.notNull(client, "A non-null docker client is expected");
+            this.client = client;
+            return this;
+        }
+
+        /**
+         * Set the pool to lease containers from
+         */
+        public Builder pool(ContainerPool pool)
+        {
+            Assert.notNull(pool, "A non-null pool is expected");
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * Set an environment variable for the command.
+         */
+        public Builder env(String name, String value)
+        {
+            Assert.isTrue(name != null && name.matches("[a-zA-Z_][_0-9a-zA-Z]*"),
+                "The variable name is illegal");
+            env.put(name, value == null? "" : value);
+            return this;
+        }
+
+        /**
+         * Set the (host-local) file to write the command's output into.
+         */
+        public Builder logFile(Path logFile)
+        {
+            Assert.isTrue(logFile != null && logFile.isAbsolute(),
+                "Expected an absolute path for the log file");
+            this.logFile = logFile;
+            return this;
+        }
+
+        /**
+         * Set the (host-local) directory to move the contents of the private writable
+         * directory of a container into. This requires a pool that provides such
+         * directories (see {@link ContainerPool.Builder#scratch(Path, Path)}).
+         */
+        public Builder outputDir(Path outputDir)
+        {
+            Assert.isTrue(outputDir != null && outputDir.isAbsolute(),
+                "Expected an absolute path for the output directory");
+            this.outputDir = outputDir;
+            return this;
+        }
+
+        /**
+         * Set the timeout (milliseconds) for the command. If not positive, no timeout applies.
+         */
+        public Builder timeout(long timeout)
+        {
+            this.timeout = timeout;
+            return this;
+        }
+
+        /**
+         * Set the amount of time (milliseconds) to wait for a container of the pool in each
+         * iteration of this tasklet.
+         */
+        public Builder acquireTimeout(long timeout)
+        {
+            Assert.isTrue(timeout > 0, "Expected a positive timeout");
+            this.acquireTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Set the interval (milliseconds) between commits of the step while the command is
+         * executing.
+         */
+        public Builder heartbeatInterval(long interval)
+        {
+            Assert.isTrue(interval > 0, "Expected a positive interval");
+            this.heartbeatInterval = interval;
+            return this;
+        }
+
+        public Builder failOnNonZeroExitCode(boolean flag)
+        {
+            this.failOnNonZeroExitCode = flag;
+            return this;
+        }
+
+        /**
+         * Indicate whether a timed-out command should fail the step.
+         */
+        public Builder failOnTimeout(boolean flag)
+        {
+            this.failOnTimeout = flag;
+            return this;
+        }
+
+        public RunInContainerPoolTasklet build()
+        {
+            Assert.state(client != null,
+                "A docker client is required to communicate to docker daemon!");
+            Assert.state(pool != null, "A container pool is required");
+            Assert.state(logFile != null, "A log file is required");
+
+            RunInContainerPoolTasklet tasklet = new RunInContainerPoolTasklet(client, pool, env, logFile);
+            tasklet.outputDir = outputDir;
+            tasklet.timeout = timeout;
+            tasklet.acquireTimeout = acquireTimeout;
+            tasklet.heartbeatInterval = heartbeatInterval;
+            tasklet.failOnNonZeroExitCode = failOnNonZeroExitCode;
+            tasklet.failOnTimeout = failOnTimeout;
+            return tasklet;
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    private final DockerClient docker;
+
+    private final ContainerPool pool;
+
+    private final Map<String,String> env;
+
+    private final Path logFile;
+
+    private Path outputDir;
+
+    private long timeout = DEFAULT_TIMEOUT;
+
+    private long acquireTimeout = DEFAULT_ACQUIRE_TIMEOUT;
+
+    private long heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+
+    private boolean failOnNonZeroExitCode = FAIL_ON_NON_ZERO_EXIT_CODE;
+
+    private boolean failOnTimeout = FAIL_ON_TIMEOUT;
+
+    /**
+     * A flag raised when this tasklet is asked to stop
+     */
+    private volatile boolean stopped = false;
+
+    /**
+     * The leased container (while the command is executing)
+     */
+    private volatile ContainerPool.Member member;
+
+    private String execId;
+
+    /**
+     * The streaming of the output of the command: completes when the command exits (or
+     * when its container is discarded)
+     */
+    private Future<?> execution;
+
+    private final AtomicLong outputSize = new AtomicLong(0);
+
+    /**
+     * The scheduled discarding of the container when the command times out
+     */
+    private ScheduledFuture<?> discarder;
+
+    /**
+     * A flag raised when the container is discarded on a stop request
+     */
+    private boolean discarded = false;
+
+    private RunInContainerPoolTasklet(
+        DockerClient docker, ContainerPool pool, Map<String,String> env, Path logFile)
+    {
+        this.docker = docker;
+        this.pool = pool;
+        this.env = new LinkedHashMap<>(env);
+        this.logFile = logFile;
+    }
+
+    /**
+     * Build the command to be executed (as an <tt>env</tt> invocation)
+     */
+    private String[] buildCommand()
+    {
+        List<String> command = new ArrayList<>();
+        command.add("env");
+        for (Map.Entry<String,String> e: env.entrySet())
+            command.add(e.getKey() + "=" + e.getValue());
+        command.addAll(pool.getCommand());
+        return command.toArray(new String[0]);
+    }
+
+    /**
+     * Lease a container and start executing the command (in 1st chunk), then wait for the
+     * command to exit (in subsequent chunks).
+     */
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+        throws Exception
+    {
+        StepContext stepContext = chunkContext.getStepContext();
+        StepExecution stepExecution = stepContext.getStepExecution();
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+        if (member == null) {
+            if (stopped) {
+                logger.info("Stopped before executing in a container of pool {}", pool.getName());
+                stepExecution.setTerminateOnly();
+                return RepeatStatus.CONTINUABLE;
+            }
+
+            // Lease a container: if none is available, yield (so that this step may be stopped)
+            ContainerPool.Member m = pool.acquire(acquireTimeout);
+            if (m == null) {
+                logger.debug("No container of pool {} is available: retrying", pool.getName());
+                return RepeatStatus.CONTINUABLE;
+            }
+
+            try {
+                startExecution(m);
+            } catch (Exception e) {
+                pool.release(m, true); // do not reuse a container in an unknown state
+                throw e;
+            }
+
+            executionContext.putLong(Keys.STARTED, (new Date()).getTime());
+            executionContext.putString(Keys.POOL_CONTAINER, m.getName());
+            executionContext.putString(Keys.COMMAND_OUTPUT_FILE, logFile.toString());
+            return RepeatStatus.CONTINUABLE; // commit the transition to started
+        }
+
+        // The command is executing: wait for it (inside this chunk) until it exits (or its
+        // container is discarded), or a heartbeat is due
+
+        final long waitStarted = (new Date()).getTime();
+        while (true) {
+            if (!stopped && stepExecution.isTerminateOnly()) {
+                // The step is asked to terminate (e.g. its execution is fenced)
+                logger.info("The step is asked to terminate: discarding container {}", member.getName());
+                stopped = true;
+            }
+            Exception failure = null;
+            try {
+                execution.get(CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // still executing
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                failure = (cause instanceof Exception)? ((Exception) cause) : e;
+            }
+
+            long now = (new Date()).getTime();
+            if (execution.isDone()) {
+                finishExecution(contribution, stepExecution, failure);
+                return RepeatStatus.FINISHED;
+            } else if (stopped) {
+                // Asked to stop: make sure the container is discarded, and wait for the
+                // command to terminate
+                discardContainer();
+            } else if (now - waitStarted >= heartbeatInterval) {
+                // Commit this chunk (a heartbeat) and keep waiting in the next one
+                logger.debug("The command in container {} is executing: committing a heartbeat",
+                    member.getName());
+                return RepeatStatus.CONTINUABLE;
+            }
+        }
+    }
+
+    /**
+     * Start executing the command inside a leased container: its output is streamed into
+     * our log file by a background thread.
+     */
+    private void startExecution(ContainerPool.Member m) throws Exception
+    {
+        Path scratchDir = m.getScratchDir();
+        Assert.state(outputDir == null || scratchDir != null,
+            "An output directory requires a pool with private writable directories");
+        if (scratchDir != null)
+            clearDirectory(scratchDir);
+
+        Files.createDirectories(logFile.getParent());
+
+        final String id = docker.execCreate(
+            m.getContainerId(), buildCommand(),
+            ExecCreateParam.attachStdout(), ExecCreateParam.attachStderr()).id();
+        logger.info("Executing command in container {} of pool {}", m.getName(), pool.getName());
+
+        outputSize.set(0);
+        execId = id;
+        discarder = timeout > 0? pool.discardAfter(m, timeout) : null;
+        execution = streamExecutor.submit(() -> {
+            try (LogStream logs = docker.execStart(id);
+                OutputStream out = Files.newOutputStream(logFile))
+            {
+                WritableByteChannel channel = Channels.newChannel(out);
+                while (logs.hasNext()) {
+                    ByteBuffer data = logs.next().content();
+                    outputSize.addAndGet(channel.write(data));
+                }
+            }
+            return null;
+        });
+        member = m;
+
+        if (stopped)
+            discardContainer(); // asked to stop while starting
+    }
+
+    /**
+     * Determine the outcome of an exited (or discarded) command, and return the leased
+     * container to the pool.
+     */
+    private void finishExecution(
+            StepContribution contribution, StepExecution stepExecution, Exception failure)
+        throws Exception
+    {
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        final ContainerPool.Member m = member;
+
+        boolean timedOut = discarder != null && !discarder.cancel(false);
+        boolean broken = true; // unless the command has cleanly exited
+        Integer exitCode = null;
+        try {
+            if (!timedOut && !isDiscarded()) {
+                if (failure != null)
+                    throw failure;
+                exitCode = docker.execInspect(execId).exitCode();
+                Assert.state(exitCode != null, "The command has no exit code");
+                if (outputDir != null && (!stopped || exitCode == 0))
+                    moveOutput(m.getScratchDir(), outputDir);
+                broken = false;
+            }
+        } finally {
+            member = null;
+            pool.release(m, broken);
+        }
+
+        long finished = (new Date()).getTime();
+        executionContext.putLong(Keys.FINISHED, finished);
+        executionContext.putLong(Keys.COMMAND_OUTPUT_SIZE, outputSize.get());
+        if (Files.exists(logFile))
+            executionContext.putString(Keys.COMMAND_OUTPUT, readTail(logFile));
+
+        if (exitCode == null && timedOut) {
+            // The container was discarded (while executing) due to a timeout
+            logger.error("The command in container {} has timed out at {}ms", m.getName(), timeout);
+            executionContext.putLong(Keys.TIMED_OUT, timeout);
+            contribution.setExitStatus(new TimedOutExitStatus(timeout));
+            stepExecution.setStatus(failOnTimeout? BatchStatus.FAILED : BatchStatus.COMPLETED);
+        } else if (stopped && (exitCode == null || exitCode != 0)) {
+            // The container was discarded by us: stop the step (not fail it)
+            logger.info("The command in container {} was stopped", m.getName());
+            executionContext.putLong(Keys.STOPPED, finished);
+            contribution.setExitStatus(ExitStatus.STOPPED.addExitDescription(
+                "The container was discarded on a stop request"));
+            stepExecution.setTerminateOnly();
+        } else {
+            logger.info("The command in container {} has exited with {}", m.getName(), exitCode);
+            executionContext.putLong(Keys.COMMAND_EXIT_CODE, exitCode);
+            if (exitCode != 0) {
+                contribution.setExitStatus(new ExitStatus("FAILED-WITH-NONZERO-EXIT-CODE",
+                    String.format("The command exited with a non-zero (%d) code", exitCode)));
+                stepExecution.setStatus(failOnNonZeroExitCode?
+                    BatchStatus.FAILED : BatchStatus.COMPLETED);
+            }
+        }
+    }
+
+    /**
+     * Discard the leased container (if any), which terminates the executing command. The
+     * step is stopped (not failed) as soon as the command is noticed to have terminated, and
+     * a restart of the step will execute the command anew.
+     */
+    @Override
+    public void stop()
+    {
+        stopped = true;
+        if (member != null)
+            discardContainer();
+    }
+
+    /**
+     * Discard the leased container (only once)
+     */
+    private synchronized void discardContainer()
+    {
+        ContainerPool.Member m = member;
+        if (discarded || m == null)
+            return;
+        discarded = true;
+
+        logger.info("Discarding container {} of pool {} on a stop request", m.getName(), pool.getName());
+        pool.discardAfter(m, 0L);
+    }
+
+    private synchronized boolean isDiscarded()
+    {
+        return discarded;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution)
+    {
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+        stopped = false;
+        synchronized (this) {
+            discarded = false;
+        }
+
+        // If this step execution is a restart of a previous (failed or stopped) execution,
+        // clear the outcome of the previous execution: the command is executed anew
+
+        for (String key: new String[] {
+                Keys.STARTED, Keys.FINISHED, Keys.TIMED_OUT, Keys.STOPPED, Keys.POOL_CONTAINER,
+                Keys.COMMAND_EXIT_CODE, Keys.COMMAND_OUTPUT, Keys.COMMAND_OUTPUT_SIZE })
+        {
+            executionContext.remove(key);
+        }
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution)
+    {
+        return null;
+    }
+
+    /**
+     * Move the contents of a directory into another (target) directory
+     */
+    private static void moveOutput(Path dir, Path targetDir) throws IOException
+    {
+        Files.createDirectories(targetDir);
+        List<Path> paths;
+        try (Stream<Path> s = Files.list(dir)) {
+            paths = s.collect(Collectors.toList());
+        }
+        for (Path p: paths)
+            Files.move(p, targetDir.resolve(p.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Delete the contents of a directory (leftovers of a previous execution)
+     */
+    private static void clearDirectory(Path dir) throws IOException
+    {
+        List<Path> paths;
+        try (Stream<Path> s = Files.walk(dir)) {
+            paths = s.filter(p -> !p.equals(dir))
+                .sorted(Comparator.reverseOrder())
+                .collect(Collectors.toList());
+        }
+        for (Path p: paths)
+            Files.deleteIfExists(p);
+    }
+
+    /**
+     * Read the tail of a (log) file
+     */
+    private static String readTail(Path path) throws IOException
+    {
+        try (RandomAccessFile f = new RandomAccessFile(path.toFile(), "r")) {
+            long length = f.length();
+            int n = (int) Math.min(length, ContainerLogCollector.DEFAULT_TAIL_SIZE);
+            byte[] b = new byte[n];
+            f.seek(length - n);
+            f.readFully(b);
+            return new String(b, StandardCharsets.UTF_8);
+        }
+    }
+}
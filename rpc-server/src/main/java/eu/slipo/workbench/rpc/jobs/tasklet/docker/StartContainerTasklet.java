@@ -12,12 +12,13 @@ import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.scope.context.StepContext;
-import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.core.step.tasklet.StoppableTasklet;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.util.Assert;
 
 import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
 import com.spotify.docker.client.messages.ContainerConfig;
 import com.spotify.docker.client.messages.ContainerConfig.Healthcheck;
 import com.spotify.docker.client.messages.ContainerCreation;
@@ -29,8 +30,12 @@ import com.spotify.docker.client.messages.ContainerState.Health;
  * A tasklet that starts a docker container (but does not wait for it).
  * The execution of this tasklet ends as soon as docker daemon reports the container
  * as started.
+ * <p>
+ * When health checking, the polling happens inside a single chunk: the step is committed
+ * only when a health status is known or when a heartbeat is due. A stop request 
+ * ({@link #stop()}) stops a starting container right away.
  */
-public class StartContainerTasklet implements Tasklet, StepExecutionListener
+public class StartContainerTasklet implements StoppableTasklet, StepExecutionListener
 {
     private static Logger logger = LoggerFactory.getLogger(StartContainerTasklet.class); 
     
@@ -39,6 +44,18 @@ public class StartContainerTasklet implements Tasklet, StepExecutionListener
      */
     public static boolean CHECK_HEALTH = true;
     
+    /**
+     * The default interval (in milliseconds) between commits of a step while polling a
+     * starting container (i.e. a heartbeat).
+     */
+    public static final long DEFAULT_HEARTBEAT_INTERVAL = RunContainerTasklet.DEFAULT_HEARTBEAT_INTERVAL;
+    
+    /** 
+     * The default amount of time (in milliseconds) to wait for a stopping container before
+     * finally sending a <tt>SIGKILL</tt> signal. 
+     */
+    public static final long DEFAULT_STOP_TIMEOUT = RunContainerTasklet.DEFAULT_STOP_TIMEOUT;
+    
     /**
      * A builder for tasklets of enclosing class ({@link StartContainerTasklet}).
      */
@@ -52,6 +69,10 @@ public class StartContainerTasklet implements Tasklet, StepExecutionListener
                 
         private Boolean checkHealth;
         
+        private Long heartbeatInterval;
+        
+        private Long stopTimeout;
+        
         private Builder() {}
         
         /**
@@ -89,6 +110,26 @@ public class StartContainerTasklet implements Tasklet, StepExecutionListener
             return this;
         }
         
+        /**
+         * Set the interval (milliseconds) between commits of the step while polling a
+         * starting container. A known health status is always committed immediately.
+         */
+        public Builder heartbeatInterval(long t)
+        {
+            this.heartbeatInterval = t;
+            return this;
+        }
+        
+        /**
+         * Set a timeout (in milliseconds) for waiting for a container to stop, after a stop 
+         * signal is sent (on a stop request).
+         */
+        public Builder stopTimeout(long t)
+        {
+            this.stopTimeout = t;
+            return this;
+        }
+        
         /**
          * Build a tasklet from configuration.
          */
@@ -103,6 +144,10 @@ public class StartContainerTasklet implements Tasklet, StepExecutionListener
             
             if (checkHealth != null)
                 tasklet.setCheckHealth(checkHealth);
+            if (heartbeatInterval != null)
+                tasklet.setHeartbeatInterval(heartbeatInterval);
+            if (stopTimeout != null)
+                tasklet.setStopTimeout(stopTimeout);
             
             return tasklet;
         }
@@ -121,6 +166,9 @@ public class StartContainerTasklet implements Tasklet, StepExecutionListener
         public static final String STARTED = "started";
         
         public static final String HEALTH_STATUS = "healthStatus";
+        
+        /** The container was stopped (while starting) on a stop request */
+        public static final String STOPPED = "stopped";
     }
         
     private final DockerClient docker;
@@ -129,6 +177,23 @@ public class StartContainerTasklet implements Tasklet, StepExecutionListener
     
     private boolean checkHealth = CHECK_HEALTH;
     
+    private long heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+    
+    private volatile boolean stopped = false;
+    
+    private final Object stopLock = new Object();
+    
+    private long stopTimeout = DEFAULT_STOP_TIMEOUT;
+    
+    /**
+     * A flag raised while polling a starting container
+     */
+    private volatile boolean polling = false;
+    
+    /**
+     * A flag raised when a stop signal is sent to the container
+     */
+    private boolean stopSent = false;
    
     private StartContainerTasklet(DockerClient docker, String containerId) 
     {
@@ -143,10 +208,20 @@ public class StartContainerTasklet implements Tasklet, StepExecutionListener
         this.checkHealth = flag;
     }
     
+    public void setHeartbeatInterval(long millis)
+    {
+        this.heartbeatInterval = millis;
+    }
+    
+    public void setStopTimeout(long millis)
+    {
+        this.stopTimeout = millis;
+    }
+    
     /**
      * Determine the check interval (in milliseconds), based on container's configuration.
      */
-    private long determineCheckInterval(ContainerConfig containerConfig)
+    static long determineCheckInterval(ContainerConfig containerConfig)
     {
         Healthcheck h = containerConfig.healthcheck();
         Assert.state(h != null, 
@@ -203,31 +278,45 @@ public class StartContainerTasklet implements Tasklet, StepExecutionListener
         
         if (started < 0) {
             // P1. Start the container
+            if (stopped) {
+                logger.info("Stopped before starting container {}", containerId);
+                stepExecution.setTerminateOnly();
+                return RepeatStatus.CONTINUABLE;
+            }
             docker.startContainer(containerId);
             logger.info("Started container {}", containerId);
             started = (new Date()).getTime();
             executionContext.putLong(Keys.STARTED, started);
+            if (stopped) {
+                // Asked to stop while starting: stop the container, so that a restart starts
+                // it anew
+                logger.info("Stopped while starting container {}", containerId);
+                stopContainer();
+                executionContext.putLong(Keys.STOPPED, (new Date()).getTime());
+                stepExecution.setTerminateOnly();
+                return RepeatStatus.CONTINUABLE;
+            }
             // If not health checking, consider this task as done
             done = !checkHealth;
         } else {
-            // P2. Poll container status until a definite health status is known.
+            // P2. Poll container status (inside this chunk) until a definite health status 
+            // is known, we are asked to stop, or a heartbeat is due.
             Assert.state(checkHealth, "Expected to be health checking!");
             // Note: We rely on the limited number of retries a healthcheck will perform, 
             // and we do not apply additional timeouts (or maximum number of checks) here.
-            ContainerInfo containerInfo = docker.inspectContainer(containerId);
-            ContainerState containerState = containerInfo.state();
-            logger.debug("Polled status for container {}: {}", containerId, containerState);
-            Health health = containerState.health();
-            if (health != null) {
-                // The container performs health checking and has reported its status
-                if (health.status().equalsIgnoreCase("starting")) {
-                    // The health status is not decided yet: schedule our next check
-                    long checkInterval = determineCheckInterval(containerInfo.config());
-                    logger.debug("The container {} is still starting: sleeping for {}ms",
-                        containerId, checkInterval);
-                    executionContext.putString(Keys.HEALTH_STATUS, "starting");
-                    Thread.sleep(checkInterval);
-                } else {
+            final long pollStarted = (new Date()).getTime();
+            polling = true;
+            while (!done) {
+                if (stepExecution.isTerminateOnly())
+                    stopped = true; // e.g. its execution is fenced
+                ContainerInfo containerInfo = docker.inspectContainer(containerId);
+                ContainerState containerState = containerInfo.state();
+                logger.debug("Polled status for container {}: {}", containerId, containerState);
+                Health health = containerState.health();
+                if (health == null) {
+                    // The container doesn't perform any health checking
+                    done = true;
+                } else if (!health.status().equalsIgnoreCase("starting")) {
                     // A health status is known: determine exit-status for tasklet
                     logger.info("The container {} is started ({})", containerId, health.status());
                     executionContext.putString(Keys.HEALTH_STATUS, health.status());
@@ -236,21 +325,88 @@ public class StartContainerTasklet implements Tasklet, StepExecutionListener
                     stepExecution.setStatus(exitStatus.getExitCode().startsWith("FAILED")?
                         BatchStatus.FAILED : BatchStatus.COMPLETED);
                     done = true;
+                } else {
+                    // The health status is not decided yet
+                    executionContext.putString(Keys.HEALTH_STATUS, "starting");
+                    if (stopped) {
+                        // Asked to stop: stop the container, so that a restart starts it anew
+                        logger.info("Stopped while polling container {}", containerId);
+                        stopContainer();
+                        executionContext.putLong(Keys.STOPPED, (new Date()).getTime());
+                        stepExecution.setTerminateOnly();
+                        break;
+                    } else if ((new Date()).getTime() - pollStarted >= heartbeatInterval) {
+                        // Commit this chunk (a heartbeat) and keep polling in the next one
+                        break;
+                    }
+                    long checkInterval = determineCheckInterval(containerInfo.config());
+                    logger.debug("The container {} is still starting: sleeping for {}ms",
+                        containerId, checkInterval);
+                    sleepUnlessStopped(checkInterval);
                 }
-            } else {
-                // The container doesn't perform any health checking
-                done = true;
             }
+            polling = false;
         }
        
         return RepeatStatus.continueIf(!done);
     }
 
+    /**
+     * Stop a starting container, and wake up a polling step. The step is stopped as soon
+     * as the current check returns, and a restart of the step will start the container anew.
+     */
+    @Override
+    public void stop()
+    {
+        stopped = true;
+        if (polling)
+            stopContainer();
+        synchronized (stopLock) {
+            stopLock.notifyAll();
+        }
+    }
+    
+    /**
+     * Send a stop signal to the container (only once). 
+     */
+    private synchronized void stopContainer()
+    {
+        if (stopSent)
+            return;
+        stopSent = true;
+        
+        logger.info("Stopping container {} (timeout={}ms)", containerId, stopTimeout);
+        try {
+            docker.stopContainer(containerId, (int) (stopTimeout / 1000));
+        } catch (DockerException e) {
+            logger.error("Failed to stop container {}: {}", containerId, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Sleep for a given amount of time, unless (or until) this tasklet is asked to stop.
+     */
+    private void sleepUnlessStopped(long millis) throws InterruptedException
+    {
+        synchronized (stopLock) {
+            if (!stopped)
+                stopLock.wait(millis);
+        }
+    }
+    
     @Override
     public void beforeStep(StepExecution stepExecution)
     {
         ExecutionContext executionContext = stepExecution.getExecutionContext();
         
+        stopped = false;
+        polling = false;
+        synchronized (this) {
+            stopSent = false;
+        }
+        
         // If this step execution is a restart of a previous failed execution, then we
         // should clear part of our (inherited) context before the actual execution begins
         
@@ -261,6 +417,9 @@ public class StartContainerTasklet implements Tasklet, StepExecutionListener
             // Note that any garbage left behind (e.g. a stuck container), must be
             // cleaned manually.
             resetExecutionContext(stepExecution);
+        } else if (executionContext.containsKey(Keys.STOPPED)) {
+            // The previous step execution was stopped (along with its container) 
+            resetExecutionContext(stepExecution);
         }
     }
 
@@ -276,5 +435,6 @@ public class StartContainerTasklet implements Tasklet, StepExecutionListener
         
         executionContext.remove(Keys.STARTED);
         executionContext.remove(Keys.HEALTH_STATUS);
+        executionContext.remove(Keys.STOPPED);
     }
 }
@@ -0,0 +1,83 @@
+package eu.slipo.workbench.rpc.model;
+
+import org.springframework.batch.core.JobParameter.ParameterType;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+
+import eu.slipo.workbench.rpc.domain.JobParameterEntity;
+
+/**
+ * An immutable descriptor of a job parameter (as described by a {@link JobParameterEntity}),
+ * holding a parsed (and, if possible, compiled) expression for its default value.
+ * <p>
+ * Note that a descriptor holds the expression, not its value: the expression is evaluated
+ * every time a default is needed (e.g. an expression for the current time).
+ */
+public class JobParameterDescriptor
+{
+    private final String name;
+
+    private final boolean required;
+
+    private final boolean identifying;
+
+    private final ParameterType type;
+
+    private final String defaultValue;
+
+    private final Expression defaultExpression;
+
+    private JobParameterDescriptor(
+        String name, boolean required, boolean identifying, ParameterType type,
+        String defaultValue, Expression defaultExpression)
+    {
+        this.name = name;
+        this.required = required;
+        this.identifying = identifying;
+        this.type = type;
+        this.defaultValue = defaultValue;
+        this.defaultExpression = defaultExpression;
+    }
+
+    public static JobParameterDescriptor of(JobParameterEntity entity, ExpressionParser parser)
+    {
+        String expression = entity.getDefaultExpression();
+        return new JobParameterDescriptor(
+            entity.getName(),
+            entity.isRequired(),
+            entity.isIdentifying(),
+            entity.getType(),
+            entity.getDefaultValue(),
+            expression == null? null : parser.parseExpression(expression));
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public boolean isRequired()
+    {
+        return required;
+    }
+
+    public boolean isIdentifying()
+    {
+        return identifying;
+    }
+
+    public ParameterType getType()
+    {
+        return type;
+    }
+
+    public String getDefaultValue()
+    {
+        return defaultValue;
+    }
+
+    public Expression getDefaultExpression()
+    {
+        return defaultExpression;
+    }
+}
@@ -0,0 +1,57 @@
+package eu.slipo.workbench.rpc.model;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionException;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.rpc.service.JobService;
+
+/**
+ * The result of a single submission out of many (see {@link JobService#startAll}): either
+ * the created execution, or the reason the submission has failed.
+ */
+public class JobSubmissionResult
+{
+    private final JobExecution execution;
+
+    private final JobExecutionException exception;
+
+    private JobSubmissionResult(JobExecution execution, JobExecutionException exception)
+    {
+        this.execution = execution;
+        this.exception = exception;
+    }
+
+    public static JobSubmissionResult of(JobExecution execution)
+    {
+        Assert.notNull(execution, "An execution is required");
+        return new JobSubmissionResult(execution, null);
+    }
+
+    public static JobSubmissionResult failed(JobExecutionException exception)
+    {
+        Assert.notNull(exception, "An exception is required");
+        return new JobSubmissionResult(null, exception);
+    }
+
+    public boolean isSucceeded()
+    {
+        return exception == null;
+    }
+
+    /**
+     * The created execution, or <tt>null</tt> if the submission has failed
+     */
+    public JobExecution getExecution()
+    {
+        return execution;
+    }
+
+    /**
+     * The reason the submission has failed, or <tt>null</tt> if it succeeded
+     */
+    public JobExecutionException getException()
+    {
+        return exception;
+    }
+}
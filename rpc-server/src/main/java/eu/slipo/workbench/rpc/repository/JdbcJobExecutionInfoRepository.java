@@ -0,0 +1,164 @@
+package eu.slipo.workbench.rpc.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.common.model.jobs.JobExecutionInfo;
+import eu.slipo.workbench.common.model.jobs.JobInstanceInfo;
+
+/**
+ * A {@link JobExecutionInfoRepository} that queries the tables of the batch repository
+ * (as named by <tt>spring.batch.table-prefix</tt>) with plain JDBC.
+ * <p>
+ * Queries are served by the indexes on <tt>(job_name, job_instance_id)</tt> of the instance
+ * table, and on <tt>(job_instance_id, job_execution_id)</tt> of the execution table (along
+ * with a partial index on unfinished executions).
+ */
+@Repository
+public class JdbcJobExecutionInfoRepository implements JobExecutionInfoRepository
+{
+    private static final String EXECUTION_COLUMNS =
+        "e.job_execution_id, e.job_instance_id, e.start_time, e.end_time, " +
+        "e.status, e.exit_code, e.exit_message, e.last_updated";
+
+    private static final String FIND_BY_INSTANCE =
+        "SELECT " + EXECUTION_COLUMNS + " FROM %PREFIX%job_execution e " +
+        "JOIN %PREFIX%job_instance i ON (e.job_instance_id = i.job_instance_id) " +
+        "WHERE i.job_name = :jobName AND e.job_instance_id = :instanceId " +
+        "ORDER BY e.job_execution_id DESC";
+
+    // Note: Keyset predicates (and filters) are not written as "(:x IS NULL OR ...)", as 
+    // this would prevent the planner from using an index.
+    
+    private static final String FIND_BY_JOB_NAME =
+        "SELECT " + EXECUTION_COLUMNS + " FROM %PREFIX%job_execution e " +
+        "JOIN %PREFIX%job_instance i ON (e.job_instance_id = i.job_instance_id) " +
+        "WHERE i.job_name = :jobName %BEFORE% " +
+        "ORDER BY e.job_execution_id DESC LIMIT :count";
+
+    private static final String FIND_RUNNING =
+        "SELECT " + EXECUTION_COLUMNS + " FROM %PREFIX%job_execution e " +
+        "JOIN %PREFIX%job_instance i ON (e.job_instance_id = i.job_instance_id) " +
+        "WHERE e.end_time IS NULL %JOB_NAME% " +
+        "ORDER BY e.job_execution_id DESC";
+
+    private static final String FIND_LAST_BY_STATUS =
+        "SELECT " + EXECUTION_COLUMNS + " FROM %PREFIX%job_execution e " +
+        "WHERE e.status = :status AND NOT EXISTS (" +
+        "  SELECT 1 FROM %PREFIX%job_execution e1 " +
+        "  WHERE e1.job_instance_id = e.job_instance_id AND e1.job_execution_id > e.job_execution_id) " +
+        "ORDER BY e.job_execution_id DESC";
+
+    private static final String FIND_INSTANCES =
+        "SELECT i.job_instance_id, i.job_name FROM %PREFIX%job_instance i " +
+        "WHERE i.job_name = :jobName %BEFORE% " +
+        "ORDER BY i.job_instance_id DESC LIMIT :count";
+
+    private static final RowMapper<JobExecutionInfo> executionInfoMapper = new RowMapper<JobExecutionInfo>()
+    {
+        @Override
+        public JobExecutionInfo mapRow(ResultSet rs, int rowNum) throws SQLException
+        {
+            JobExecutionInfo r = new JobExecutionInfo(
+                rs.getLong("job_instance_id"), rs.getLong("job_execution_id"));
+
+            r.setStatus(rs.getString("status"));
+            r.setExitStatus(rs.getString("exit_code"));
+            r.setExitDescription(rs.getString("exit_message"));
+            r.setStarted(rs.getTimestamp("start_time"));
+            r.setFinished(rs.getTimestamp("end_time"));
+            r.setUpdated(rs.getTimestamp("last_updated"));
+
+            return r;
+        }
+    };
+
+    private static final RowMapper<JobInstanceInfo> instanceInfoMapper =
+        (rs, rowNum) -> new JobInstanceInfo(rs.getString("job_name"), rs.getLong("job_instance_id"));
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Value("${spring.batch.table-prefix:BATCH_}")
+    private String tablePrefix;
+
+    private String query(String q)
+    {
+        return q.replace("%PREFIX%", tablePrefix);
+    }
+    
+    private String query(String q, String placeholder, String predicate)
+    {
+        return query(q).replace(placeholder, predicate);
+    }
+
+    @Override
+    public List<JobExecutionInfo> findByInstance(String jobName, long instanceId)
+    {
+        Assert.notNull(jobName, "A job name is required");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+            .addValue("jobName", jobName)
+            .addValue("instanceId", instanceId);
+        return jdbcTemplate.query(query(FIND_BY_INSTANCE), parameters, executionInfoMapper);
+    }
+
+    @Override
+    public List<JobExecutionInfo> findByJobName(String jobName, Long before, int count)
+    {
+        Assert.notNull(jobName, "A job name is required");
+        Assert.isTrue(count > 0, "The page size must be positive");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+            .addValue("jobName", jobName)
+            .addValue("before", before)
+            .addValue("count", count);
+        String q = query(FIND_BY_JOB_NAME, 
+            "%BEFORE%", before == null? "" : "AND e.job_execution_id < :before");
+        return jdbcTemplate.query(q, parameters, executionInfoMapper);
+    }
+
+    @Override
+    public List<JobExecutionInfo> findRunning(String jobName)
+    {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+            .addValue("jobName", jobName);
+        String q = query(FIND_RUNNING, 
+            "%JOB_NAME%", jobName == null? "" : "AND i.job_name = :jobName");
+        return jdbcTemplate.query(q, parameters, executionInfoMapper);
+    }
+
+    @Override
+    public List<JobExecutionInfo> findLastByStatus(String status)
+    {
+        Assert.notNull(status, "A status is required");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+            .addValue("status", status);
+        return jdbcTemplate.query(query(FIND_LAST_BY_STATUS), parameters, executionInfoMapper);
+    }
+
+    @Override
+    public List<JobInstanceInfo> findInstances(String jobName, Long before, int count)
+    {
+        Assert.notNull(jobName, "A job name is required");
+        Assert.isTrue(count > 0, "The page size must be positive");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+            .addValue("jobName", jobName)
+            .addValue("before", before)
+            .addValue("count", count);
+        String q = query(FIND_INSTANCES, 
+            "%BEFORE%", before == null? "" : "AND i.job_instance_id < :before");
+        return jdbcTemplate.query(q, parameters, instanceInfoMapper);
+    }
+}
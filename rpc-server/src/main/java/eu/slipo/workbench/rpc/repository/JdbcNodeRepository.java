@@ -0,0 +1,146 @@
+package eu.slipo.workbench.rpc.repository;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link NodeRepository} for PostgreSQL (9.5 or later) with plain JDBC.
+ * <p>
+ * Heartbeats are compared against the clock of the database server (not the clocks of
+ * the nodes), so that nodes do not have to be synchronized.
+ */
+@Repository
+public class JdbcNodeRepository implements NodeRepository
+{
+    private static final String REGISTER =
+        "INSERT INTO rpc.node (name, host, started_at, heartbeat_at) " +
+        "VALUES (:name, :host, now(), now()) " +
+        "ON CONFLICT (name) DO UPDATE SET " +
+        "  host = EXCLUDED.host, started_at = EXCLUDED.started_at, heartbeat_at = EXCLUDED.heartbeat_at";
+
+    private static final String HEARTBEAT =
+        "UPDATE rpc.node SET heartbeat_at = now() WHERE name = :name";
+
+    private static final String FIND_ALIVE =
+        "SELECT n.name FROM rpc.node n " +
+        "WHERE n.heartbeat_at > now() - (:timeout * INTERVAL '1 millisecond')";
+
+    private static final String FIND_OWNER =
+        "SELECT o.node_name FROM rpc.job_execution_owner o WHERE o.job_execution_id = :executionId";
+
+    // Skip (instead of waiting for) an entry locked by a concurrent claim: the claim of the
+    // other node will either succeed (and remove the entry), or fail and leave it queued.
+
+    private static final String LOCK_QUEUED =
+        "SELECT q.id FROM rpc.job_queue q WHERE q.job_execution_id = :executionId " +
+        "FOR UPDATE SKIP LOCKED";
+
+    private static final String DELETE_QUEUED =
+        "DELETE FROM rpc.job_queue WHERE id = :id";
+
+    private static final String OWN =
+        "INSERT INTO rpc.job_execution_owner (job_execution_id, node_name, claimed_at) " +
+        "VALUES (:executionId, :name, now()) " +
+        "ON CONFLICT (job_execution_id) DO UPDATE SET " +
+        "  node_name = EXCLUDED.node_name, claimed_at = EXCLUDED.claimed_at";
+
+    private static final String TAKE_OVER =
+        "UPDATE rpc.job_execution_owner SET node_name = :name, claimed_at = now() " +
+        "WHERE job_execution_id = :executionId AND node_name = :owner AND NOT EXISTS (" +
+        "  SELECT 1 FROM rpc.node n WHERE n.name = :owner " +
+        "    AND n.heartbeat_at > now() - (:timeout * INTERVAL '1 millisecond'))";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Override
+    public void register(String name, String host)
+    {
+        Assert.notNull(name, "A node name is required");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+            .addValue("name", name)
+            .addValue("host", host);
+        jdbcTemplate.update(REGISTER, parameters);
+    }
+
+    @Override
+    public boolean heartbeat(String name)
+    {
+        Assert.notNull(name, "A node name is required");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+            .addValue("name", name);
+        return jdbcTemplate.update(HEARTBEAT, parameters) > 0;
+    }
+
+    @Override
+    public List<String> findAlive(long timeout)
+    {
+        Assert.isTrue(timeout > 0, "The timeout must be positive");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+            .addValue("timeout", timeout);
+        return jdbcTemplate.queryForList(FIND_ALIVE, parameters, String.class);
+    }
+
+    @Override
+    public String findOwner(long executionId)
+    {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+            .addValue("executionId", executionId);
+        List<String> names = jdbcTemplate.queryForList(FIND_OWNER, parameters, String.class);
+        return names.isEmpty()? null : names.get(0);
+    }
+
+    @Override
+    @Transactional
+    public boolean claim(long executionId, String name)
+    {
+        Assert.notNull(name, "A node name is required");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+            .addValue("executionId", executionId)
+            .addValue("name", name);
+
+        List<Long> ids = jdbcTemplate.queryForList(LOCK_QUEUED, parameters, Long.class);
+        if (ids.isEmpty())
+            return false;
+
+        jdbcTemplate.update(DELETE_QUEUED, new MapSqlParameterSource("id", ids.get(0)));
+        jdbcTemplate.update(OWN, parameters);
+        return true;
+    }
+
+    @Override
+    public void own(long executionId, String name)
+    {
+        Assert.notNull(name, "A node name is required");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+            .addValue("executionId", executionId)
+            .addValue("name", name);
+        jdbcTemplate.update(OWN, parameters);
+    }
+
+    @Override
+    public boolean takeOver(long executionId, String owner, String name, long timeout)
+    {
+        Assert.notNull(owner, "The name of the current owner is required");
+        Assert.notNull(name, "A node name is required");
+        Assert.isTrue(timeout > 0, "The timeout must be positive");
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+            .addValue("executionId", executionId)
+            .addValue("owner", owner)
+            .addValue("name", name)
+            .addValue("timeout", timeout);
+        return jdbcTemplate.update(TAKE_OVER, parameters) > 0;
+    }
+}
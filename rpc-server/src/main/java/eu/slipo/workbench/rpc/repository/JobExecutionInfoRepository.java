@@ -0,0 +1,61 @@
+package eu.slipo.workbench.rpc.repository;
+
+import java.util.List;
+
+import org.springframework.batch.core.explore.JobExplorer;
+
+import eu.slipo.workbench.common.model.jobs.JobExecutionInfo;
+import eu.slipo.workbench.common.model.jobs.JobInstanceInfo;
+
+/**
+ * A read-only repository that projects job executions (and instances) from the tables of
+ * the batch repository directly into DTO objects.
+ * <p>
+ * This is meant for listings: unlike {@link JobExplorer}, it does not hydrate step
+ * executions, nor does it deserialize execution contexts. Listings are paginated by a key
+ * (an id), not by an offset, and are always ordered by descending id (i.e. newest first).
+ */
+public interface JobExecutionInfoRepository
+{
+    /**
+     * Find executions of a job instance.
+     *
+     * @param jobName
+     * @param instanceId
+     */
+    List<JobExecutionInfo> findByInstance(String jobName, long instanceId);
+
+    /**
+     * Find executions of a job.
+     *
+     * @param jobName
+     * @param before Only return executions with an id less than this one; if <tt>null</tt>,
+     *   return a first page
+     * @param count The maximum number of results (i.e. the page size)
+     */
+    List<JobExecutionInfo> findByJobName(String jobName, Long before, int count);
+
+    /**
+     * Find running executions (i.e. not yet finished) of a job.
+     *
+     * @param jobName A job name, or <tt>null</tt> for all jobs
+     */
+    List<JobExecutionInfo> findRunning(String jobName);
+
+    /**
+     * Find executions in a given status that are the last ones of their job instances.
+     *
+     * @param status The name of a batch status (e.g. <tt>STOPPED</tt>)
+     */
+    List<JobExecutionInfo> findLastByStatus(String status);
+
+    /**
+     * Find instances of a job.
+     *
+     * @param jobName
+     * @param before Only return instances with an id less than this one; if <tt>null</tt>,
+     *   return a first page
+     * @param count The maximum number of results (i.e. the page size)
+     */
+    List<JobInstanceInfo> findInstances(String jobName, Long before, int count);
+}
@@ -1,9 +1,11 @@
 package eu.slipo.workbench.rpc.repository;
 
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import eu.slipo.workbench.rpc.domain.JobParameterEntity;
+import eu.slipo.workbench.rpc.service.JobParameterDescriptorService;
 
 import java.util.List;
 
@@ -18,4 +20,33 @@ public interface JobParameterRepository extends JpaRepository<JobParameterEntity
 {
     @Query("FROM JobParameter p WHERE p.jobName = :jobName")
     List<JobParameterEntity> findByJobName(@Param("jobName") String jobName);
+    
+    //
+    // Modifying methods invalidate cached descriptors (see JobParameterDescriptorService)
+    //
+    
+    @Override
+    @Transactional
+    @CacheEvict(cacheNames = JobParameterDescriptorService.CACHE_NAME, allEntries = true)
+    <S extends JobParameterEntity> S save(S entity);
+    
+    @Override
+    @Transactional
+    @CacheEvict(cacheNames = JobParameterDescriptorService.CACHE_NAME, allEntries = true)
+    <S extends JobParameterEntity> List<S> save(Iterable<S> entities);
+    
+    @Override
+    @Transactional
+    @CacheEvict(cacheNames = JobParameterDescriptorService.CACHE_NAME, allEntries = true)
+    void delete(Integer id);
+    
+    @Override
+    @Transactional
+    @CacheEvict(cacheNames = JobParameterDescriptorService.CACHE_NAME, allEntries = true)
+    void delete(JobParameterEntity entity);
+    
+    @Override
+    @Transactional
+    @CacheEvict(cacheNames = JobParameterDescriptorService.CACHE_NAME, allEntries = true)
+    void deleteAll();
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package eu.slipo.workbench.rpc.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import eu.slipo.workbench.rpc.domain.JobQueueEntryEntity;
+
+@Repository
+public interface JobQueueRepository extends JpaRepository<JobQueueEntryEntity, Long> 
+{
+    @Query("FROM JobQueueEntry e ORDER BY e.id")
+    List<JobQueueEntryEntity> findAllInOrder();
+    
+    @Query("SELECT COUNT(e) > 0 FROM JobQueueEntry e WHERE e.executionId = :executionId")
+    boolean existsByExecutionId(@Param("executionId") long executionId);
+    
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM JobQueueEntry e WHERE e.executionId = :executionId")
+    int deleteByExecutionId(@Param("executionId") long executionId);
+}
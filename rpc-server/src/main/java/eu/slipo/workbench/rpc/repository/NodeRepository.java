@@ -0,0 +1,82 @@
+package eu.slipo.workbench.rpc.repository;
+
+import java.util.List;
+
+/**
+ * A repository for the nodes (i.e. rpc-server instances) that share the same job repository,
+ * and for the ownership of job executions among them.
+ * <p>
+ * A node claims a queued execution by removing its entry from the (persistent) job queue
+ * and recording itself as the owner, in a single transaction. Entries locked by a concurrent
+ * claim are skipped (not waited for).
+ */
+public interface NodeRepository
+{
+    /**
+     * Register a node (or re-register it, if already known), and record a heartbeat for it.
+     *
+     * @param name The (unique) name of the node
+     * @param host The host name (or address) of the node
+     */
+    void register(String name, String host);
+
+    /**
+     * Record a heartbeat for a node.
+     *
+     * @param name
+     * @return <tt>true</tt> if recorded, or <tt>false</tt> if no such node is registered
+     */
+    boolean heartbeat(String name);
+
+    /**
+     * Find nodes that have recorded a heartbeat recently.
+     *
+     * @param timeout The time (milliseconds) after its last heartbeat that a node is
+     *   considered as dead
+     */
+    List<String> findAlive(long timeout);
+
+    /**
+     * Find the owner of a job execution.
+     *
+     * @param executionId
+     * @return the name of a node, or <tt>null</tt> if the execution is not owned (e.g. still
+     *   queued)
+     */
+    String findOwner(long executionId);
+
+    /**
+     * Claim a queued execution for a node, i.e. remove it from the job queue and record the
+     * node as its owner.
+     *
+     * @param executionId
+     * @param name The name of the claiming node
+     * @return <tt>true</tt> if claimed, or <tt>false</tt> if not queued (anymore) or if it is
+     *   being claimed by another node
+     */
+    boolean claim(long executionId, String name);
+
+    /**
+     * Record a node as the owner of a (non-queued) execution.
+     *
+     * @param executionId
+     * @param name The name of the node
+     */
+    void own(long executionId, String name);
+
+    /**
+     * Transfer the ownership of an execution, if it is still owned by a given node and if
+     * that node is (still) dead. Both conditions are checked in a single statement, so an 
+     * execution is never taken over from an owner that has recorded a heartbeat meanwhile.
+     *
+     * @param executionId
+     * @param owner The name of the current owner (a dead node)
+     * @param name The name of the new owner
+     * @param timeout The time (milliseconds) after its last heartbeat that a node is
+     *   considered as dead
+     * @return <tt>true</tt> if transferred, or <tt>false</tt> if the execution is no longer
+     *   owned by <tt>owner</tt> (e.g. it was taken over by another node), or if the owner
+     *   is alive
+     */
+    boolean takeOver(long executionId, String owner, String name, long timeout);
+}
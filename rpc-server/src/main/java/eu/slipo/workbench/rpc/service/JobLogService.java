@@ -0,0 +1,70 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * A service to access the output (stdout/stderr) of containers started by jobs.
+ */
+public interface JobLogService
+{
+    /**
+     * Describe where the output of a job can be read from
+     */
+    public static class LogSource
+    {
+        private final String container;
+        
+        private final Path file;
+        
+        public LogSource(String container, Path file)
+        {
+            this.container = container;
+            this.file = file;
+        }
+        
+        /**
+         * The container ID (or name), or <tt>null</tt> if not known
+         */
+        public String getContainer()
+        {
+            return container;
+        }
+        
+        /**
+         * The log file that the output is collected into, or <tt>null</tt> if not known
+         */
+        public Path getFile()
+        {
+            return file;
+        }
+    }
+    
+    /**
+     * Find the source of output for the most recent container of a job instance.
+     * 
+     * @param jobName
+     * @param instanceId
+     * @return a {@link LogSource}, or <tt>null</tt> if this job instance has not started 
+     *   any container
+     */
+    LogSource findLogSource(String jobName, long instanceId);
+    
+    /**
+     * Copy the output from a source into a stream. 
+     * <p>
+     * The output is read from the docker daemon if the container still exists, and from 
+     * the collected log file otherwise. 
+     * 
+     * @param source
+     * @param out The target stream
+     * @param since If not <tt>null</tt>, only copy output after this point in time (seconds 
+     *   since Epoch). This is ignored when reading from a log file.
+     * @param tail If not <tt>null</tt>, only copy this number of lines from the end
+     * @param follow Keep copying output as it is produced (until the container exits)
+     * @throws IOException
+     */
+    void copyLogs(LogSource source, OutputStream out, Integer since, Integer tail, boolean follow)
+        throws IOException;
+}
@@ -0,0 +1,29 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.List;
+
+import eu.slipo.workbench.rpc.model.JobParameterDescriptor;
+
+/**
+ * A service providing (cached) descriptors of the parameters expected by a job.
+ */
+public interface JobParameterDescriptorService
+{
+    /**
+     * The name of the cache of descriptors (keyed by job name)
+     */
+    public static final String CACHE_NAME = "jobParameterDescriptors";
+
+    /**
+     * Get the descriptors of parameters for a job.
+     *
+     * @param jobName
+     * @return a (possibly empty) list of descriptors
+     */
+    List<JobParameterDescriptor> getDescriptors(String jobName);
+
+    /**
+     * Invalidate all cached descriptors
+     */
+    void invalidate();
+}
@@ -14,6 +14,7 @@ import org.springframework.batch.core.JobInstance;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.launch.NoSuchJobException;
 
+import eu.slipo.workbench.rpc.model.JobSubmissionResult;
 import eu.slipo.workbench.rpc.model.MissingJobParameterException;
 
 /**
@@ -38,9 +39,48 @@ public interface JobService
      * @return the started job execution
      * @throws JobExecutionException if the job could not be started (or restarted).
      */
-    JobExecution start(String jobName, JobParameters params) 
+    default JobExecution start(String jobName, JobParameters params) 
+        throws JobExecutionException
+    {
+        return start(jobName, params, null, 0);
+    }
+    
+    /**
+     * Start (or restart) a new job by name on behalf of a submitter.
+     * <p>
+     * The job execution may not start immediately, but wait in a queue (ordered by
+     * priority and by a fair share among submitters) until resources are available.
+     * 
+     * @param jobName
+     * @param params
+     * @param submitter The name of the submitter (may be <tt>null</tt>)
+     * @param priority The priority of this submission (higher is served first)
+     * @return the started (or queued) job execution
+     * @throws JobExecutionException if the job could not be started (or restarted).
+     * 
+     * @see JobService#start(String, JobParameters)
+     */
+    JobExecution start(String jobName, JobParameters params, String submitter, int priority) 
         throws JobExecutionException;
     
+    /**
+     * Start (or restart) many jobs of the same name on behalf of a submitter, one for each 
+     * given set of parameters. 
+     * <p>
+     * Each submission is handled as in {@link JobService#start(String, JobParameters, String, int)},
+     * and its failure does not affect the other submissions.
+     * 
+     * @param jobName
+     * @param paramsList
+     * @param submitter The name of the submitter (may be <tt>null</tt>)
+     * @param priority The priority of these submissions
+     * @return a list of results (in the order of given parameters)
+     * @throws NoSuchJobException if no job is registered under this name
+     */
+    List<JobSubmissionResult> startAll(
+            String jobName, List<JobParameters> paramsList, String submitter, int priority) 
+        throws NoSuchJobException;
+    
     /**
      * Stop a running job execution ({@link JobExecution}). If given execution does
      * not represent a running execution, it will do nothing.
@@ -0,0 +1,48 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.function.Consumer;
+
+import eu.slipo.workbench.common.model.jobs.JobStatusEvent;
+
+/**
+ * A bus that publishes status transitions of job executions (and of their steps) to
+ * interested subscribers, so that clients need not poll the batch repository.
+ */
+public interface JobStatusEventBus
+{
+    /**
+     * A handle on a subscription
+     */
+    interface Subscription
+    {
+        /**
+         * Stop receiving events. This method is idempotent.
+         */
+        void cancel();
+    }
+
+    /**
+     * Publish an event. Events are delivered asynchronously (i.e. a slow subscriber never
+     * holds back the publisher, which is usually the thread running the job).
+     *
+     * @param event
+     */
+    void publish(JobStatusEvent event);
+
+    /**
+     * Subscribe to events, optionally filtered by job name and instance.
+     * <p>
+     * Events are delivered to a subscriber in the order they were published.
+     *
+     * @param jobName A job name, or <tt>null</tt> for any job
+     * @param jobId A job instance id, or <tt>null</tt> for any instance
+     * @param consumer A consumer for the events; it should return quickly, and it should
+     *   not throw (an exception cancels the subscription)
+     */
+    Subscription subscribe(String jobName, Long jobId, Consumer<JobStatusEvent> consumer);
+
+    /**
+     * Get the number of active subscriptions
+     */
+    int getNumberOfSubscriptions();
+}
@@ -0,0 +1,70 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.Set;
+
+/**
+ * A service that represents this rpc-server as a node among others sharing the same job
+ * repository (and the same job queue).
+ * <p>
+ * A node registers itself and keeps a heartbeat. An execution is owned by the node that has
+ * claimed it (from the queue), and its containers run on the docker host of that node. A node
+ * that misses its heartbeat for a while is considered as dead, and its executions may be
+ * taken over (i.e. recovered) by another node.
+ * <p>
+ * A node holds a lease (on its executions) as long as it records its heartbeats. A node that
+ * has lost its lease (e.g. it has stalled, or cannot reach the database) should stop its local
+ * work, since its executions may be taken over by another node.
+ */
+public interface NodeService
+{
+    /**
+     * Indicate whether this node runs alongside others. If not, this node is assumed to be
+     * the only one (and nothing is registered).
+     */
+    boolean isEnabled();
+
+    /**
+     * The (unique) name of this node
+     */
+    String getName();
+
+    /**
+     * The time (milliseconds) after its last heartbeat that a node is considered as dead
+     */
+    long getTimeout();
+
+    /**
+     * The interval (milliseconds) between heartbeats
+     */
+    long getHeartbeatInterval();
+
+    /**
+     * Indicate whether this node holds its lease, i.e. it has recently recorded a heartbeat
+     * (always true if this is the only node). A lease is considered as lost a heartbeat interval
+     * before other nodes consider this node as dead.
+     */
+    boolean hasLease();
+
+    /**
+     * Get the names of the nodes that are alive (including this one)
+     */
+    Set<String> getAliveNodes();
+
+    /**
+     * Get the owner of an execution.
+     *
+     * @param executionId
+     * @return the name of a node, or <tt>null</tt> if the execution is not owned
+     */
+    String getOwner(long executionId);
+
+    /**
+     * Take over an execution from its (dead) owner.
+     *
+     * @param executionId
+     * @param owner The name of the current owner
+     * @return <tt>true</tt> if this node is now the owner, or <tt>false</tt> if the execution
+     *   has been taken over by another node, or if its owner is alive (again)
+     */
+    boolean takeOver(long executionId, String owner);
+}
@@ -0,0 +1,254 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.Date;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionException;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.configuration.JobRegistry;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+
+import eu.slipo.workbench.rpc.jobs.launch.ResourceLedger;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerEventMonitor;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerSupervisor;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+
+/**
+ * A container supervisor that relies on container events (as reported by a
+ * {@link ContainerEventMonitor}) to resume parked job executions.
+ * <p>
+ * Registrations are kept in memory only: they are lost if the server restarts. A parked 
+ * execution is then left as stopped, and is resumed only by the recovery of the job 
+ * service (if it recovers executions with containers, see 
+ * <tt>slipo.rpc-server.job-service.recover-containers</tt>).
+ */
+@Service
+public class SimpleContainerSupervisor implements ContainerSupervisor
+{
+    private static final Logger logger = LoggerFactory.getLogger(SimpleContainerSupervisor.class);
+
+    @Autowired
+    private ContainerEventMonitor monitor;
+
+    @Autowired
+    private JobRegistry registry;
+
+    @Autowired
+    private JobLauncher launcher;
+
+    @Autowired
+    private TaskScheduler scheduler;
+    
+    @Autowired
+    private ResourceLedger ledger;
+    
+    @Autowired
+    private DockerClient docker;
+    
+    @Autowired
+    private JobRepository repository;
+
+    /**
+     * The interval (milliseconds) to retry a resume while the parked execution is still
+     * stopping.
+     */
+    @Value("${slipo.rpc-server.container-supervisor.retry-interval:500}")
+    private long retryInterval = 500L;
+    
+    /**
+     * The maximum number of attempts to resume a parked execution (on unexpected failures).
+     * If all fail, the parked execution is marked as failed.
+     */
+    @Value("${slipo.rpc-server.container-supervisor.max-restart-attempts:3}")
+    private int maxRestartAttempts = 3;
+    
+    /**
+     * The time (milliseconds) to wait for a container of a cancelled execution to stop, 
+     * before it is killed.
+     */
+    @Value("${slipo.rpc-server.container-supervisor.stop-timeout:5000}")
+    private long stopTimeout = RunContainerTasklet.DEFAULT_STOP_TIMEOUT;
+
+    /**
+     * Represent a job execution parked on a running container
+     */
+    private static class Registration
+    {
+        private final String containerId;
+
+        private final String jobName;
+
+        private final long instanceId;
+
+        private final JobParameters parameters;
+
+        private final AtomicBoolean resumed = new AtomicBoolean(false);
+
+        /** The number of failed attempts to restart (accessed by one thread at a time) */
+        private int failedAttempts = 0;
+
+        private ScheduledFuture<?> deadlineFuture;
+
+        private Registration(String containerId, JobExecution execution)
+        {
+            this.containerId = containerId;
+            this.jobName = execution.getJobInstance().getJobName();
+            this.instanceId = execution.getJobInstance().getInstanceId();
+            this.parameters = execution.getJobParameters();
+        }
+    }
+
+    /**
+     * The registrations of parked executions, keyed by job instance id
+     */
+    private final ConcurrentMap<Long, Registration> registrations = new ConcurrentHashMap<>();
+
+    @Override
+    public void resumeOnExit(String containerId, JobExecution execution, long deadline)
+    {
+        Assert.notNull(containerId, "A container ID is required");
+        Assert.notNull(execution, "A job execution is required");
+
+        final Registration r = new Registration(containerId, execution);
+        Registration r0 = registrations.putIfAbsent(r.instanceId, r);
+        Assert.state(r0 == null,
+            "The job instance #" + r.instanceId + " is already parked on a container");
+
+        logger.info("Parking job {}#{} while container {} is running",
+            r.jobName, r.instanceId, containerId);
+
+        if (deadline > 0) {
+            r.deadlineFuture = scheduler.schedule(() -> resume(r), new Date(deadline));
+        }
+
+        monitor.watch(containerId).whenComplete((exitCode, ex) -> {
+            if (!(ex instanceof CancellationException)) // i.e. not cancelled on shutdown
+                scheduler.schedule(() -> resume(r), new Date());
+        });
+    }
+
+    @Override
+    public boolean cancel(JobExecution execution)
+    {
+        Assert.notNull(execution, "A job execution is required");
+        
+        final long instanceId = execution.getJobInstance().getInstanceId();
+        final Registration r = registrations.get(instanceId);
+        if (r == null || !r.resumed.compareAndSet(false, true))
+            return false; // not parked here, or already resuming
+        
+        if (r.deadlineFuture != null)
+            r.deadlineFuture.cancel(false);
+        registrations.remove(instanceId, r);
+        
+        // Stop the container: the (pending) exit notification will find this registration
+        // as resumed, so nothing will be restarted
+        
+        logger.info("Cancelling parked job {}#{}: stopping container {}", 
+            r.jobName, r.instanceId, r.containerId);
+        try {
+            docker.stopContainer(r.containerId, (int) (stopTimeout / 1000));
+        } catch (DockerException ex) {
+            logger.error("Failed to stop container {}: {}", r.containerId, ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        
+        ledger.release(instanceId);
+        return true;
+    }
+    
+    /**
+     * Resume a parked execution. The actual restart is performed only once for each
+     * registration, regardless of how many times this method is invoked.
+     */
+    private void resume(Registration r)
+    {
+        if (!r.resumed.compareAndSet(false, true))
+            return;
+
+        if (r.deadlineFuture != null)
+            r.deadlineFuture.cancel(false);
+
+        restart(r);
+    }
+
+    private void restart(Registration r)
+    {
+        Job job = null;
+        JobExecution execution = null;
+        try {
+            job = registry.getJob(r.jobName);
+            execution = launcher.run(job, r.parameters);
+        } catch (JobExecutionAlreadyRunningException ex) {
+            // The parked execution is still stopping: retry later
+            logger.debug("The job {}#{} is still stopping: retrying in {}ms",
+                r.jobName, r.instanceId, retryInterval);
+            scheduler.schedule(() -> restart(r), new Date(System.currentTimeMillis() + retryInterval));
+            return;
+        } catch (RuntimeException ex) {
+            // Possibly a transient failure (e.g. of the job repository): retry a few times
+            if (++r.failedAttempts < maxRestartAttempts) {
+                logger.warn("Failed to resume job {}#{} (attempt {}/{}): retrying in {}ms: {}",
+                    r.jobName, r.instanceId, r.failedAttempts, maxRestartAttempts, retryInterval, 
+                    ex.getMessage());
+                scheduler.schedule(() -> restart(r), new Date(System.currentTimeMillis() + retryInterval));
+                return;
+            }
+            logger.error("Failed to resume job {}#{}: {}", r.jobName, r.instanceId, ex.getMessage());
+            fail(r, ex);
+        } catch (JobExecutionException ex) {
+            logger.error("Failed to resume job {}#{}: {}", r.jobName, r.instanceId, ex.getMessage());
+            fail(r, ex);
+        }
+
+        registrations.remove(r.instanceId, r);
+
+        if (execution != null)
+            logger.info("Resumed job {}#{} as execution #{} (container {})",
+                r.jobName, r.instanceId, execution.getId(), r.containerId);
+    }
+    
+    /**
+     * Mark a parked execution that cannot be resumed as failed (so that it is not left as
+     * stopped), and release its resources (its container has exited or has timed out).
+     */
+    private void fail(Registration r, Exception cause)
+    {
+        ledger.release(r.instanceId);
+        
+        try {
+            JobExecution execution = repository.getLastJobExecution(r.jobName, r.parameters);
+            if (execution != null && execution.getStatus() == BatchStatus.STOPPED) {
+                execution.upgradeStatus(BatchStatus.FAILED);
+                execution.setExitStatus(ExitStatus.FAILED.addExitDescription(
+                    "Failed to resume from container " + r.containerId + ": " + cause.getMessage()));
+                execution.setEndTime(new Date());
+                repository.update(execution);
+            }
+        } catch (RuntimeException ex) {
+            logger.error("Failed to mark job {}#{} as failed: {}", r.jobName, r.instanceId, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.LogsParam;
+import com.spotify.docker.client.LogStream;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.exceptions.DockerException;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerLogCollector;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+
+@Service
+public class SimpleJobLogService implements JobLogService
+{
+    private static final Logger logger = LoggerFactory.getLogger(SimpleJobLogService.class);
+    
+    @Autowired
+    private JobService jobService;
+    
+    @Autowired
+    private DockerClient docker;
+    
+    @Override
+    public LogSource findLogSource(String jobName, long instanceId)
+    {
+        List<JobExecution> executions = new ArrayList<>(jobService.findExecutions(jobName, instanceId));
+        executions.sort(Comparator.comparing(JobExecution::getId).reversed());
+        
+        for (JobExecution execution: executions) {
+            List<StepExecution> stepExecutions = new ArrayList<>(execution.getStepExecutions());
+            stepExecutions.sort(Comparator.comparing(StepExecution::getId).reversed());
+            for (StepExecution stepExecution: stepExecutions) {
+                ExecutionContext ctx = stepExecution.getExecutionContext();
+                String container = ctx.containsKey(RunContainerTasklet.Keys.CONTAINER)?
+                    ctx.getString(RunContainerTasklet.Keys.CONTAINER) : null;
+                String file = ctx.containsKey(RunContainerTasklet.Keys.COMMAND_OUTPUT_FILE)?
+                    ctx.getString(RunContainerTasklet.Keys.COMMAND_OUTPUT_FILE) : null;
+                if (container != null || file != null)
+                    return new LogSource(container, file == null? null : Paths.get(file));
+            }
+        }
+        
+        return null;
+    }
+
+    @Override
+    public void copyLogs(LogSource source, OutputStream out, Integer since, Integer tail, boolean follow) 
+        throws IOException
+    {
+        Assert.notNull(source, "A log source is required");
+        Assert.notNull(out, "An output stream is required");
+        Assert.isTrue(tail == null || tail >= 0, "Expected a non-negative number of lines");
+        
+        String container = source.getContainer();
+        if (container != null) {
+            try {
+                copyFromContainer(container, out, since, tail, follow);
+                return;
+            } catch (ContainerNotFoundException ex) {
+                logger.debug("The container {} is removed: reading from log file", container);
+            } catch (DockerException ex) {
+                throw new IOException("Cannot read logs of container " + container, ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        
+        Path file = source.getFile();
+        if (file != null && Files.isRegularFile(file))
+            copyFromFile(file, out, tail);
+    }
+    
+    private void copyFromContainer(
+            String container, OutputStream out, Integer since, Integer tail, boolean follow) 
+        throws IOException, DockerException, InterruptedException
+    {
+        List<LogsParam> params = new ArrayList<>();
+        params.add(LogsParam.stdout());
+        params.add(LogsParam.stderr());
+        if (follow)
+            params.add(LogsParam.follow());
+        if (since != null)
+            params.add(LogsParam.since(since));
+        if (tail != null)
+            params.add(LogsParam.tail(tail));
+        
+        try (LogStream logs = docker.logs(container, params.toArray(new LogsParam[0]))) {
+            while (logs.hasNext()) {
+                ByteBuffer data = logs.next().content();
+                Channels.newChannel(out).write(data);
+                out.flush(); // push a chunk to the client
+            }
+        }
+    }
+    
+    private void copyFromFile(Path file, OutputStream out, Integer tail) 
+        throws IOException
+    {
+        // The output is the concatenation of rotated files (oldest first) and current file
+        List<Path> files = new ArrayList<>();
+        for (int i = 1; Files.isRegularFile(ContainerLogCollector.rotatedPath(file, i)); i++)
+            files.add(0, ContainerLogCollector.rotatedPath(file, i));
+        files.add(file);
+        
+        if (tail != null) {
+            // Copy the last lines: if current file holds all of them, only its tail is read
+            try (RandomAccessFile f = new RandomAccessFile(file.toFile(), "r")) {
+                long offset = findTailOffset(f, tail);
+                if (offset > 0 || files.size() == 1) {
+                    f.seek(offset);
+                    try (InputStream in = Channels.newInputStream(f.getChannel())) {
+                        StreamUtils.copy(in, out);
+                    }
+                    out.flush();
+                    return;
+                }
+            }
+            // The tail spans rotated files
+            copyTail(files, out, tail);
+        } else {
+            for (Path p: files) {
+                try (InputStream in = openLogFile(p)) {
+                    StreamUtils.copy(in, out);
+                }
+            }
+        }
+        out.flush();
+    }
+    
+    private static InputStream openLogFile(Path path) throws IOException
+    {
+        InputStream in = new BufferedInputStream(Files.newInputStream(path));
+        return path.getFileName().toString().endsWith(".gz")? new GZIPInputStream(in) : in;
+    }
+    
+    /**
+     * Copy the last n lines of the concatenation of several files (possibly compressed).
+     * The files are read twice: first to count the lines of each one, then to copy. 
+     */
+    private static void copyTail(List<Path> files, OutputStream out, int n) 
+        throws IOException
+    {
+        if (n == 0)
+            return;
+        
+        final byte[] buf = new byte[8192];
+        
+        // Count the newlines of each file 
+        
+        long[] counts = new long[files.size()];
+        long total = 0;
+        int last = -1;
+        for (int k = 0; k < files.size(); k++) {
+            try (InputStream in = openLogFile(files.get(k))) {
+                int len;
+                while ((len = in.read(buf)) > 0) {
+                    for (int i = 0; i < len; i++)
+                        if (buf[i] == '\n')
+                            counts[k]++;
+                    last = buf[len - 1];
+                }
+            }
+            total += counts[k];
+        }
+        if (last < 0)
+            return; // no output at all
+        
+        // The number of lines (the last one may not be terminated by a newline), and the
+        // number of newlines to skip before the last n lines start
+        long lines = (last == '\n')? total : (total + 1);
+        long skip = lines - n;
+        
+        long seen = 0;
+        boolean copying = (skip <= 0);
+        for (int k = 0; k < files.size(); k++) {
+            if (!copying && seen + counts[k] < skip) {
+                seen += counts[k];
+                continue;
+            }
+            try (InputStream in = openLogFile(files.get(k))) {
+                int b;
+                while (!copying && (b = in.read()) >= 0) {
+                    if (b == '\n' && ++seen == skip)
+                        copying = true;
+                }
+                StreamUtils.copy(in, out);
+            }
+        }
+    }
+    
+    /**
+     * Find the offset where the last n lines of a file start. The file is scanned
+     * backwards (so only the tail of it is actually read).
+     */
+    private static long findTailOffset(RandomAccessFile f, int n) 
+        throws IOException
+    {
+        final int bufferSize = 8192;
+        final byte[] buf = new byte[bufferSize];
+        
+        long length = f.length();
+        if (n == 0)
+            return length;
+        
+        long end = length;
+        int count = 0;
+        while (end > 0) {
+            long start = Math.max(0, end - bufferSize);
+            int len = (int) (end - start);
+            f.seek(start);
+            f.readFully(buf, 0, len);
+            for (int i = len - 1; i >= 0; i--) {
+                if (buf[i] != '\n')
+                    continue;
+                if (start + i == length - 1)
+                    continue; // the newline terminating the last line
+                if (++count == n)
+                    return start + i + 1;
+            }
+            end = start;
+        }
+        
+        return 0;
+    }
+}
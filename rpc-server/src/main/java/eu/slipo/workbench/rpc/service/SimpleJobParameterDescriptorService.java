@@ -0,0 +1,57 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Service;
+
+import eu.slipo.workbench.rpc.model.JobParameterDescriptor;
+import eu.slipo.workbench.rpc.repository.JobParameterRepository;
+
+/**
+ * A descriptor service that caches descriptors per job name. Default expressions are parsed
+ * in the <tt>MIXED</tt> compiler mode of SpEL (i.e. compiled after a few interpreted
+ * evaluations, falling back to interpretation if compilation fails).
+ * <p>
+ * The cache is invalidated when parameters are saved (or deleted) through the repository,
+ * and also periodically (see <tt>CacheConfig</tt>), to pick up changes made directly on the
+ * database.
+ */
+@Service
+public class SimpleJobParameterDescriptorService implements JobParameterDescriptorService
+{
+    private static final Logger logger = LoggerFactory.getLogger(SimpleJobParameterDescriptorService.class);
+
+    @Autowired
+    private JobParameterRepository parametersRepository;
+
+    private final SpelExpressionParser expressionParser = new SpelExpressionParser(
+        new SpelParserConfiguration(SpelCompilerMode.MIXED, getClass().getClassLoader()));
+
+    @Override
+    @Cacheable(cacheNames = CACHE_NAME, key = "#jobName")
+    public List<JobParameterDescriptor> getDescriptors(String jobName)
+    {
+        logger.debug("Loading parameter descriptors for job {}", jobName);
+
+        return Collections.unmodifiableList(parametersRepository.findByJobName(jobName).stream()
+            .map(p -> JobParameterDescriptor.of(p, expressionParser))
+            .collect(Collectors.toList()));
+    }
+
+    @Override
+    @CacheEvict(cacheNames = CACHE_NAME, allEntries = true)
+    public void invalidate()
+    {
+        logger.debug("Invalidated cached parameter descriptors");
+    }
+}
@@ -1,11 +1,13 @@
 package eu.slipo.workbench.rpc.service;
 
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import javax.annotation.PostConstruct;
@@ -24,11 +26,11 @@ import org.springframework.batch.core.JobParameter.ParameterType;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.JobParametersBuilder;
 import org.springframework.batch.core.JobParametersInvalidException;
+import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.configuration.JobFactory;
 import org.springframework.batch.core.configuration.JobRegistry;
 import org.springframework.batch.core.explore.JobExplorer;
 import org.springframework.batch.core.launch.JobInstanceAlreadyExistsException;
-import org.springframework.batch.core.launch.JobLauncher;
 import org.springframework.batch.core.launch.JobOperator;
 import org.springframework.batch.core.launch.NoSuchJobException;
 import org.springframework.batch.core.repository.JobExecutionAlreadyRunningException;
@@ -36,19 +38,35 @@ import org.springframework.batch.core.repository.JobInstanceAlreadyCompleteExcep
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.repository.JobRestartException;
 import org.springframework.batch.core.step.tasklet.StoppableTasklet;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.expression.Expression;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
-import eu.slipo.workbench.rpc.domain.JobParameterEntity;
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ContainerState;
+
+import eu.slipo.workbench.common.model.jobs.JobExecutionInfo;
+import eu.slipo.workbench.rpc.jobs.launch.AdmissionJobLauncher;
+import eu.slipo.workbench.rpc.jobs.listener.StoppableTaskletRegistry;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerSupervisor;
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.RunContainerTasklet;
+import eu.slipo.workbench.rpc.model.JobParameterDescriptor;
+import eu.slipo.workbench.rpc.model.JobSubmissionResult;
 import eu.slipo.workbench.rpc.model.MissingJobParameterException;
-import eu.slipo.workbench.rpc.repository.JobParameterRepository;
+import eu.slipo.workbench.rpc.repository.JobExecutionInfoRepository;
+import eu.slipo.workbench.rpc.repository.JobQueueRepository;
 
 @Service
-public class SimpleJobService implements JobService
+public class SimpleJobService implements JobService, ApplicationListener<ContextRefreshedEvent>
 {
     private static final Logger logger = LoggerFactory.getLogger(SimpleJobService.class);
     
@@ -62,10 +80,22 @@ public class SimpleJobService implements JobService
     private JobRegistry registry;
     
     @Autowired
-    private JobLauncher launcher;
+    private AdmissionJobLauncher launcher;
+    
+    @Autowired
+    private JobQueueRepository queueRepository;
+    
+    @Autowired
+    private JobExecutionInfoRepository executionInfoRepository;
     
     @Autowired
-    private JobParameterRepository parametersRepository;
+    private JobParameterDescriptorService parameterDescriptorService;
+    
+    @Autowired
+    private ContainerSupervisor containerSupervisor;
+    
+    @Autowired
+    private StoppableTaskletRegistry stoppableTasklets;
     
     @Value("${slipo.rpc-server.job-service.stop-on-shutdown}")
     private boolean stopOnShutdown = false;
@@ -76,6 +106,39 @@ public class SimpleJobService implements JobService
     @Value("${slipo.rpc-server.job-service.ignore-unknown-parameters:false}")
     private boolean ignoreUnknownParameters = false;
     
+    /**
+     * Indicate whether, on recovery, interrupted executions whose containers still exist 
+     * (running or exited) should be resumed (instead of being abandoned).
+     */
+    @Value("${slipo.rpc-server.job-service.recover-containers:false}")
+    private boolean recoverContainers = false;
+    
+    @Autowired
+    private DockerClient docker;
+    
+    @Autowired
+    private NodeService nodeService;
+    
+    @Autowired
+    private TaskScheduler scheduler;
+    
+    /**
+     * Interrupted executions (already marked as stopped) to be resumed as soon as all jobs
+     * are registered
+     */
+    private final List<JobExecution> executionsToResume = new ArrayList<>();
+    
+    /**
+     * Executions (launched by this node) whose local steps must stop, because this node has 
+     * lost its lease or the ownership of them, but whose tasklets are not yet stopped
+     */
+    private final Set<Long> fencingExecutions = ConcurrentHashMap.newKeySet();
+    
+    /**
+     * Executions (launched by this node) whose local steps are stopped (i.e. fenced)
+     */
+    private final Set<Long> fencedExecutions = ConcurrentHashMap.newKeySet();
+    
     /**
      * Initialize before this service bean is available.
      */
@@ -87,17 +150,275 @@ public class SimpleJobService implements JobService
             // Reset status for abnormally terminated (interrupted) jobs.
             // This kind of recovery is justified because (assuming a single job service is running!),
             // no job execution should have a running status at this point of time (initialization).
-            for (String jobName: explorer.getJobNames()) {
-                for (JobExecution execution: findRunningExecutions(jobName)) {
-                    // Clear executions that (falsely) appear as running
-                    countRunning++;
-                    clearRunningExecution(execution, BatchStatus.ABANDONED);
-                    logger.debug("Clearing execution {}#{} left as {}", 
-                        jobName, execution.getId(), execution.getStatus());
+            // If several nodes share the repository, only executions owned by this node (i.e. by
+            // a previous instance of it) or by dead nodes are recovered.
+            // Note: Only load (hydrate) those executions that must be updated.
+            final Set<String> aliveNodes = nodeService.getAliveNodes();
+            for (JobExecutionInfo info: executionInfoRepository.findRunning(null)) {
+                // Skip executions waiting in the (persistent) queue: these will be recovered
+                if (queueRepository.existsByExecutionId(info.getExecutionId()))
+                    continue;
+                String owner = nodeService.getOwner(info.getExecutionId());
+                if (owner != null && !owner.equals(nodeService.getName()) && aliveNodes.contains(owner))
+                    continue;
+                JobExecution execution = explorer.getJobExecution(info.getExecutionId());
+                if (execution == null || !execution.isRunning())
+                    continue;
+                if (!acquireForRecovery(execution, owner))
+                    continue;
+                // Resume executions whose containers have outlived us
+                if (recoverContainers && stopForResume(execution)) {
+                    executionsToResume.add(execution);
+                    continue;
                 }
+                // Clear executions that (falsely) appear as running
+                countRunning++;
+                logger.debug("Clearing execution {}#{} left as {}", 
+                    execution.getJobInstance().getJobName(), execution.getId(), execution.getStatus());
+                clearRunningExecution(execution, BatchStatus.ABANDONED);
             }
             if (countRunning > 0)
                 logger.info("Cleared {} running executions", countRunning);
+            // Resume parked executions: these were waiting (on a supervisor) for their 
+            // containers to exit, but the supervisor has lost track of them.
+            if (recoverContainers) {
+                for (JobExecutionInfo info: executionInfoRepository.findLastByStatus(BatchStatus.STOPPED.name())) {
+                    if (executionsToResume.stream().anyMatch(x -> x.getId().equals(info.getExecutionId())))
+                        continue; // just stopped (above) to be resumed
+                    if (nodeService.isEnabled() && 
+                            !nodeService.getName().equals(nodeService.getOwner(info.getExecutionId())))
+                        continue; // parked on another node
+                    JobExecution execution = explorer.getJobExecution(info.getExecutionId());
+                    if (execution != null && isParked(execution))
+                        executionsToResume.add(execution);
+                }
+            }
+            if (!executionsToResume.isEmpty())
+                logger.info("Found {} interrupted (or parked) executions with containers to resume", 
+                    executionsToResume.size());
+        }
+        
+        if (nodeService.isEnabled()) {
+            final long interval = nodeService.getTimeout();
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    recoverExecutionsOfDeadNodes();
+                } catch (Exception e) {
+                    logger.warn("Failed to recover executions of dead nodes: {}", e.getMessage());
+                }
+            }, new Date(System.currentTimeMillis() + interval), interval);
+            
+            final long checkInterval = nodeService.getHeartbeatInterval();
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    fenceLaunchedExecutions();
+                } catch (Exception e) {
+                    logger.warn("Failed to check the ownership of executions: {}", e.getMessage());
+                }
+            }, new Date(System.currentTimeMillis() + checkInterval), checkInterval);
+        }
+    }
+    
+    /**
+     * Stop the local work (i.e. the running steps) of executions launched by this node, if
+     * this node has lost its lease, or if an execution is no longer owned by this node (i.e.
+     * it was taken over while this node was considered as dead). 
+     * <p>
+     * The repository is not updated on behalf of these executions: an execution is only 
+     * marked (in memory) as stopping, so that no further steps are started, and the tasklets
+     * of its running steps are asked to stop. A step stops on its next chunk boundary, and its 
+     * updates are rejected if the execution was meanwhile updated (e.g. abandoned) by its new 
+     * owner. An execution is considered as fenced only when its tasklets are stopped (until 
+     * then, stopping is retried on every check).
+     */
+    private void fenceLaunchedExecutions()
+    {
+        final String self = nodeService.getName();
+        final boolean lease = nodeService.hasLease();
+        
+        Collection<JobExecution> executions = launcher.getLaunchedExecutions();
+        Set<Long> executionIds = executions.stream()
+            .map(JobExecution::getId).collect(Collectors.toSet());
+        fencingExecutions.retainAll(executionIds);
+        fencedExecutions.retainAll(executionIds);
+        
+        for (JobExecution execution: executions) {
+            final long executionId = execution.getId();
+            if (!execution.isRunning() || fencedExecutions.contains(executionId))
+                continue;
+            if (!fencingExecutions.contains(executionId)) {
+                if (lease) {
+                    String owner = null;
+                    try {
+                        owner = nodeService.getOwner(executionId);
+                    } catch (DataAccessException ex) {
+                        continue; // check again later (the lease is still held)
+                    }
+                    if (self.equals(owner))
+                        continue;
+                    logger.warn("Execution {}#{} is now owned by node {}: stopping its local steps", 
+                        execution.getJobInstance().getJobName(), executionId, owner);
+                } else {
+                    logger.warn("Node {} has lost its lease: stopping local steps of execution {}#{}", 
+                        self, execution.getJobInstance().getJobName(), executionId);
+                }
+                fencingExecutions.add(executionId);
+            }
+            // Mark as stopping (only in memory), so that running steps terminate and no 
+            // further steps are started
+            execution.stop();
+            if (stopTasklets(execution)) {
+                fencingExecutions.remove(executionId);
+                fencedExecutions.add(executionId);
+                logger.info("Fenced execution {}#{}", 
+                    execution.getJobInstance().getJobName(), executionId);
+            }
+        }
+    }
+    
+    /**
+     * Decide whether this node may recover a running (and not queued) execution, taking it
+     * over from its owner if needed. 
+     * <p>
+     * If this is the only node, any such execution is recovered. Otherwise, an execution is 
+     * recovered only if owned by this node (i.e. by a previous instance of it), or by a dead 
+     * node. An execution not owned by any node is recovered only if it is older than the node 
+     * timeout (otherwise it may be still being submitted by another node).
+     * 
+     * @param execution
+     * @param owner The name of the owner node (may be <tt>null</tt>)
+     */
+    private boolean acquireForRecovery(JobExecution execution, String owner)
+    {
+        if (!nodeService.isEnabled())
+            return true;
+        
+        if (owner == null)
+            return System.currentTimeMillis() - execution.getCreateTime().getTime() > nodeService.getTimeout();
+        
+        return nodeService.takeOver(execution.getId(), owner);
+    }
+    
+    /**
+     * Recover (i.e. abandon) executions owned by dead nodes. Unlike recovery on init, the
+     * containers of these executions are not examined: these run on the docker hosts of
+     * the dead nodes.
+     */
+    private void recoverExecutionsOfDeadNodes()
+    {
+        final String self = nodeService.getName();
+        final Set<String> aliveNodes = nodeService.getAliveNodes();
+        
+        int countRecovered = 0;
+        for (JobExecutionInfo info: executionInfoRepository.findRunning(null)) {
+            final long executionId = info.getExecutionId();
+            if (queueRepository.existsByExecutionId(executionId))
+                continue;
+            String owner = nodeService.getOwner(executionId);
+            if (self.equals(owner) || (owner != null && aliveNodes.contains(owner)))
+                continue;
+            JobExecution execution = explorer.getJobExecution(executionId);
+            if (execution == null || !execution.isRunning())
+                continue;
+            if (!acquireForRecovery(execution, owner))
+                continue;
+            try {
+                clearRunningExecution(execution, BatchStatus.ABANDONED);
+            } catch (OptimisticLockingFailureException ex) {
+                continue; // updated meanwhile (e.g. recovered by another node)
+            }
+            countRecovered++;
+        }
+        
+        if (countRecovered > 0)
+            logger.info("Cleared {} running executions of dead nodes", countRecovered);
+    }
+    
+    /**
+     * Examine the containers of an interrupted execution, as recorded (by 
+     * {@link RunContainerTasklet}) in the context of its running steps. If a container
+     * still exists (running or exited), mark the execution (and its running steps) as 
+     * stopped, so that it can be resumed: a resumed step will wait for a running container, 
+     * or collect the exit-code of an exited one. 
+     * 
+     * @param execution An execution that (falsely) appears as running
+     * @return <tt>true</tt> if the execution is stopped (to be resumed), or <tt>false</tt> if
+     *   no container can be reattached (e.g. it was removed, or no container step is running) 
+     */
+    private boolean stopForResume(JobExecution execution)
+    {
+        List<StepExecution> runningSteps = execution.getStepExecutions().stream()
+            .filter(x -> x.getStatus().isRunning() || x.getStatus() == BatchStatus.STOPPING)
+            .collect(Collectors.toList());
+        
+        int countContainers = 0;
+        for (StepExecution stepExecution: runningSteps) {
+            if (!isWaitingForContainer(stepExecution))
+                continue;
+            String containerName = stepExecution.getExecutionContext()
+                .getString(RunContainerTasklet.Keys.CONTAINER);
+            ContainerState state = null;
+            try {
+                state = docker.inspectContainer(containerName).state();
+            } catch (DockerException ex) {
+                logger.info("Cannot reattach to container {} of execution #{}: {}", 
+                    containerName, execution.getId(), ex.getMessage());
+                return false;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            logger.info("Found container {} of execution {}#{} (step {}) as {}", 
+                containerName, execution.getJobInstance().getJobName(), execution.getId(),
+                stepExecution.getStepName(), state.status());
+            countContainers++;
+        }
+        
+        if (countContainers == 0)
+            return false;
+        
+        final Date now = new Date();
+        final ExitStatus exitStatus = ExitStatus.STOPPED
+            .addExitDescription("Interrupted by a restart (to be resumed)");
+        
+        for (StepExecution stepExecution: runningSteps) {
+            stepExecution.setStatus(BatchStatus.STOPPED);
+            stepExecution.setExitStatus(exitStatus);
+            stepExecution.setEndTime(now);
+            repository.update(stepExecution);
+        }
+        
+        execution.setStatus(BatchStatus.STOPPED);
+        execution.setExitStatus(exitStatus);
+        execution.setEndTime(now);
+        repository.update(execution);
+        
+        return true;
+    }
+    
+    /**
+     * Resume interrupted executions (see {@link #stopForResume(JobExecution)}), once all 
+     * jobs are registered. 
+     */
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event)
+    {
+        List<JobExecution> executions = null;
+        synchronized (executionsToResume) {
+            executions = new ArrayList<>(executionsToResume);
+            executionsToResume.clear();
+        }
+        
+        for (JobExecution execution: executions) {
+            final String jobName = execution.getJobInstance().getJobName();
+            final long instanceId = execution.getJobInstance().getInstanceId();
+            try {
+                Job job = registry.getJob(jobName);
+                JobExecution x = launcher.resume(job, execution.getJobParameters());
+                logger.info("Resumed job {}#{} as execution #{}", jobName, instanceId, x.getId());
+            } catch (JobExecutionException ex) {
+                logger.error("Failed to resume job {}#{}: {}", jobName, instanceId, ex.getMessage());
+            }
         }
     }
     
@@ -122,17 +443,24 @@ public class SimpleJobService implements JobService
             // Attempt to stop running executions
             int countRunning = 0, countStopped = 0;
             // Do not count on registry to return job names (may be unregistered on the
-            // time we query them): just query repository for names seen so far.
-            for (String jobName: explorer.getJobNames()) {
-                for (JobExecution execution: findRunningExecutions(jobName)) {
-                    BatchStatus currentStatus = execution.getStatus();
-                    if (currentStatus != BatchStatus.STOPPING) {
-                        stop(execution);
-                        logger.debug("Requested from running ({}) execution {}#{} to stop", 
-                            currentStatus, jobName, execution.getId());
-                        countStopped++;
+            // time we query them): just query repository for all running executions.
+            for (JobExecutionInfo info: executionInfoRepository.findRunning(null)) {
+                countRunning++;
+                if (BatchStatus.STOPPING.name().equals(info.getStatus()))
+                    continue;
+                JobExecution execution = explorer.getJobExecution(info.getExecutionId());
+                if (execution != null) {
+                    if (recoverContainers && isWaitingForContainer(execution)) {
+                        // Leave it as running (not even stopping): its container is kept
+                        // running, and the execution is resumed on recovery
+                        logger.debug("Leaving execution {}#{} to its running container", 
+                            execution.getJobInstance().getJobName(), execution.getId());
+                        continue;
                     }
-                    countRunning++;
+                    stop(execution);
+                    logger.debug("Requested from running ({}) execution {}#{} to stop", 
+                        info.getStatus(), execution.getJobInstance().getJobName(), execution.getId());
+                    countStopped++;
                 }
             }
             if (countRunning > 0)
@@ -148,7 +476,8 @@ public class SimpleJobService implements JobService
     }
     
     @Override
-    public JobExecution start(String jobName, JobParameters parameters) throws JobExecutionException
+    public JobExecution start(String jobName, JobParameters parameters, String submitter, int priority) 
+        throws JobExecutionException
     {   
         Job job = null; 
         try {
@@ -160,7 +489,7 @@ public class SimpleJobService implements JobService
         
         JobExecution x = null;
         try {
-            x = launcher.run(job, parameters);
+            x = launcher.run(job, parameters, submitter, priority);
         } catch (JobExecutionException ex) {
             logger.error("Failed to start job: {}", ex.getMessage());
             throw ex;
@@ -169,6 +498,25 @@ public class SimpleJobService implements JobService
         return x;
     }
     
+    @Override
+    public List<JobSubmissionResult> startAll(
+            String jobName, List<JobParameters> parametersList, String submitter, int priority)
+        throws NoSuchJobException
+    {
+        Job job = null; 
+        try {
+            job = registry.getJob(jobName);
+        } catch (NoSuchJobException ex) {
+            logger.error("No such job: {}", jobName);
+            throw ex;
+        }
+        
+        return launcher.runAll(job, parametersList, submitter, priority).stream()
+            .map(r -> r.getException() == null? 
+                JobSubmissionResult.of(r.getExecution()) : JobSubmissionResult.failed(r.getException()))
+            .collect(Collectors.toList());
+    }
+    
     @Override
     public void stop(long executionId)
     {
@@ -178,9 +526,15 @@ public class SimpleJobService implements JobService
     }
 
     /**
-     * This method is implemented in a similar (but more simplified) way to 
-     * {@link SimpleJobOperator#stop(long)}. A step defined as tasklet extending 
-     * {@link StoppableTasklet} will be ignored (no callback is invoked). 
+     * This method is implemented in a similar way to {@link SimpleJobOperator#stop(long)}. 
+     * A running step defined as a tasklet extending {@link StoppableTasklet} is notified
+     * (if registered to {@link StoppableTaskletRegistry}, e.g. a step nested into a flow or
+     * a worker step of a partitioned step), so that a tasklet waiting inside a chunk (e.g. 
+     * for a container) does not have to reach a chunk boundary. Steps running on another 
+     * node are not notified (these will notice on their next commit).
+     * <p>
+     * A parked execution (i.e. stopped while its container is running) is cancelled, so 
+     * that it is not resumed, and its container is stopped.
      */
     private void stop(JobExecution execution) 
     {
@@ -190,6 +544,11 @@ public class SimpleJobService implements JobService
         // assumed that the step implementation will check this status at chunk boundaries.
         
         BatchStatus status = execution.getStatus();
+        if (status == BatchStatus.STOPPED && isParked(execution)) {
+            stopParked(execution);
+            return;
+        }
+        
         if (!(status == BatchStatus.STARTED || status == BatchStatus.STARTING)) {
             logger.info(
                 "The job execution #{} cannot be stopped because is not running ({})",
@@ -199,6 +558,88 @@ public class SimpleJobService implements JobService
         
         execution.setStatus(BatchStatus.STOPPING);
         repository.update(execution);
+        
+        if (isLocal(execution))
+            stopTasklets(execution);
+    }
+    
+    /**
+     * Test if an execution runs on this node (always true if this is the only node)
+     */
+    private boolean isLocal(JobExecution execution)
+    {
+        return !nodeService.isEnabled() || 
+            nodeService.getName().equals(nodeService.getOwner(execution.getId()));
+    }
+    
+    /**
+     * Test if a running execution has a step waiting for its container (as recorded by
+     * {@link RunContainerTasklet}), i.e. a step that has started a container not yet finished
+     */
+    private static boolean isWaitingForContainer(JobExecution execution)
+    {
+        for (StepExecution stepExecution: execution.getStepExecutions())
+            if ((stepExecution.getStatus().isRunning() || stepExecution.getStatus() == BatchStatus.STOPPING) 
+                    && isWaitingForContainer(stepExecution))
+                return true;
+        return false;
+    }
+    
+    private static boolean isWaitingForContainer(StepExecution stepExecution)
+    {
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+        return executionContext.containsKey(RunContainerTasklet.Keys.CONTAINER) &&
+            executionContext.containsKey(RunContainerTasklet.Keys.STARTED) &&
+            !executionContext.containsKey(RunContainerTasklet.Keys.FINISHED);
+    }
+    
+    /**
+     * Test if a (stopped) execution is parked, i.e. it keeps a container running
+     */
+    private static boolean isParked(JobExecution execution)
+    {
+        for (StepExecution stepExecution: execution.getStepExecutions())
+            if (RunContainerTasklet.isParked(stepExecution))
+                return true;
+        return false;
+    }
+    
+    /**
+     * Cancel a parked execution (see {@link ContainerSupervisor#cancel(JobExecution)}). Its
+     * parked steps are marked as finished (stopped), so that a restart will run their 
+     * containers anew.
+     */
+    private void stopParked(JobExecution execution)
+    {
+        if (!containerSupervisor.cancel(execution)) {
+            logger.info(
+                "The job execution #{} cannot be stopped because it is not parked here (or is resuming)",
+                execution.getId());
+            return;
+        }
+        
+        final long now = (new Date()).getTime();
+        for (StepExecution stepExecution: execution.getStepExecutions()) {
+            if (RunContainerTasklet.isParked(stepExecution)) {
+                ExecutionContext executionContext = stepExecution.getExecutionContext();
+                executionContext.putLong(RunContainerTasklet.Keys.FINISHED, now);
+                executionContext.putLong(RunContainerTasklet.Keys.STOPPED, now);
+                repository.updateExecutionContext(stepExecution);
+            }
+        }
+        
+        logger.info("Stopped parked job execution #{}", execution.getId());
+    }
+    
+    /**
+     * Invoke the {@link StoppableTasklet#stop()} callback on tasklets of running steps of
+     * a job execution (as registered by {@link StoppableTaskletRegistry}).
+     * 
+     * @return <tt>true</tt> if every running tasklet is stopped
+     */
+    private boolean stopTasklets(JobExecution execution)
+    {
+        return stoppableTasklets.stop(execution.getId());
     }
     
     @Override
@@ -315,8 +756,6 @@ public class SimpleJobService implements JobService
         return execution;
     }
 
-    private SpelExpressionParser expressionParser = new SpelExpressionParser();
-    
     @Override
     public JobParameters prepareParameters(String jobName, Map<String, Object> providedParameters) 
         throws MissingJobParameterException
@@ -325,7 +764,7 @@ public class SimpleJobService implements JobService
         
         // Fetch base parameters (descriptor for expected parameter along with defaults)
         
-        List<JobParameterEntity> baseParameters = parametersRepository.findByJobName(jobName);
+        List<JobParameterDescriptor> baseParameters = parameterDescriptorService.getDescriptors(jobName);
         Set<String> baseKeys = baseParameters.stream().map(p -> p.getName())
             .collect(Collectors.toSet());
         
@@ -349,22 +788,21 @@ public class SimpleJobService implements JobService
         
         // Prepare known parameters: evaluate (if needed), cast to their expected type
         
-        for (JobParameterEntity baseParameterEntity: baseParameters) {
-            String key = baseParameterEntity.getName();
-            boolean identifying = baseParameterEntity.isIdentifying();
+        for (JobParameterDescriptor baseParameter: baseParameters) {
+            String key = baseParameter.getName();
+            boolean identifying = baseParameter.isIdentifying();
             // Determine the actual value of this parameter
             Object value = providedParameters.get(key);
             if (value == null) {
                 // No value is supplied: populate with default value
-                Object defaultValue = baseParameterEntity.getDefaultValue();
+                Object defaultValue = baseParameter.getDefaultValue();
                 if (defaultValue == null) {
-                    String defaultExpression = baseParameterEntity.getDefaultExpression();
+                    Expression defaultExpression = baseParameter.getDefaultExpression();
                     if (defaultExpression != null) // evaluate as an expression
-                        defaultValue = expressionParser.parseExpression(defaultExpression)
-                            .getValue();
+                        defaultValue = defaultExpression.getValue();
                 }
                 if (defaultValue == null) {
-                    boolean required = baseParameterEntity.isRequired();
+                    boolean required = baseParameter.isRequired();
                     if (required)
                         throw new MissingJobParameterException(key);
                     else 
@@ -373,7 +811,7 @@ public class SimpleJobService implements JobService
                 value = defaultValue;
             }
             // Convert value (if needed) and cast to expected type 
-            ParameterType parameterType = baseParameterEntity.getType();
+            ParameterType parameterType = baseParameter.getType();
             switch (parameterType) {
             case LONG:
             {
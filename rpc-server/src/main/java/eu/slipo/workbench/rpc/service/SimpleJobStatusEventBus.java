@@ -0,0 +1,120 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.common.model.jobs.JobStatusEvent;
+
+/**
+ * An in-memory event bus. Events are dispatched by a single (daemon) thread, so that they
+ * are delivered in the order they were published.
+ */
+@Service
+public class SimpleJobStatusEventBus implements JobStatusEventBus
+{
+    private static final Logger logger = LoggerFactory.getLogger(SimpleJobStatusEventBus.class);
+
+    private class SimpleSubscription implements Subscription
+    {
+        private final String jobName;
+
+        private final Long jobId;
+
+        private final Consumer<JobStatusEvent> consumer;
+
+        private SimpleSubscription(String jobName, Long jobId, Consumer<JobStatusEvent> consumer)
+        {
+            this.jobName = jobName;
+            this.jobId = jobId;
+            this.consumer = consumer;
+        }
+
+        private boolean accepts(JobStatusEvent event)
+        {
+            return (jobName == null || jobName.equals(event.getJobName())) &&
+                (jobId == null || jobId.equals(event.getId()));
+        }
+
+        @Override
+        public void cancel()
+        {
+            subscriptions.remove(this);
+        }
+    }
+
+    private final List<SimpleSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "job-status-events");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Override
+    public void publish(JobStatusEvent event)
+    {
+        Assert.notNull(event, "Expected a non-null event");
+
+        if (subscriptions.isEmpty())
+            return;
+
+        try {
+            dispatcher.execute(() -> dispatch(event));
+        } catch (RejectedExecutionException ex) {
+            logger.debug("Dropped event (the bus is shut down): {}", event);
+        }
+    }
+
+    private void dispatch(JobStatusEvent event)
+    {
+        for (SimpleSubscription subscription: subscriptions) {
+            if (!subscription.accepts(event))
+                continue;
+            try {
+                subscription.consumer.accept(event);
+            } catch (RuntimeException ex) {
+                logger.info("Cancelling a subscription that failed to consume an event: {}",
+                    ex.getMessage());
+                subscription.cancel();
+            }
+        }
+    }
+
+    @Override
+    public Subscription subscribe(String jobName, Long jobId, Consumer<JobStatusEvent> consumer)
+    {
+        Objects.requireNonNull(consumer);
+
+        SimpleSubscription subscription = new SimpleSubscription(jobName, jobId, consumer);
+        subscriptions.add(subscription);
+
+        logger.debug("Subscribed to events for job {}#{}: {} subscriptions are active",
+            jobName == null? "*" : jobName, jobId == null? "*" : jobId, subscriptions.size());
+        return subscription;
+    }
+
+    @Override
+    public int getNumberOfSubscriptions()
+    {
+        return subscriptions.size();
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        dispatcher.shutdown();
+        subscriptions.clear();
+    }
+}
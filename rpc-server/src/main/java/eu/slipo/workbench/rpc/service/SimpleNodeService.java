@@ -0,0 +1,169 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import eu.slipo.workbench.rpc.repository.NodeRepository;
+
+@Service
+public class SimpleNodeService implements NodeService
+{
+    private static final Logger logger = LoggerFactory.getLogger(SimpleNodeService.class);
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private TaskScheduler scheduler;
+
+    @Value("${slipo.rpc-server.cluster.enabled:false}")
+    private boolean enabled = false;
+
+    /**
+     * The name of this node. If empty, the host name is used.
+     * <p>
+     * Note that the name should not change across restarts: executions are owned by name,
+     * so a node recovers (on restart) the executions owned by a previous instance of itself.
+     * The name also names the directories of node-local state (e.g. caches).
+     */
+    @Value("${slipo.rpc-server.cluster.node-name:}")
+    private String name;
+
+    /**
+     * The interval (milliseconds) between heartbeats
+     */
+    @Value("${slipo.rpc-server.cluster.heartbeat-interval:10000}")
+    private long heartbeatInterval = 10000L;
+
+    /**
+     * The time (milliseconds) after its last heartbeat that a node is considered as dead. This
+     * should be several times the heartbeat interval (and longer than a restart, if containers
+     * are to be recovered by the restarted node).
+     */
+    @Value("${slipo.rpc-server.cluster.node-timeout:60000}")
+    private long timeout = 60000L;
+
+    private String host;
+
+    /**
+     * The (local) time of the last heartbeat recorded, taken before it was recorded
+     */
+    private volatile long lastHeartbeat = 0L;
+
+    @PostConstruct
+    private void initialize()
+    {
+        if (!enabled)
+            return;
+
+        Assert.state(heartbeatInterval > 0, "The heartbeat interval must be positive");
+        Assert.state(timeout > heartbeatInterval,
+            "The node timeout must be longer than the heartbeat interval");
+
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            host = null;
+        }
+        if (name == null || name.isEmpty()) {
+            Assert.state(host != null, "Cannot determine a node name (from the host name)");
+            name = host;
+        }
+        Assert.state(name.matches("[a-zA-Z0-9][-_.a-zA-Z0-9]*"),
+            "The node name must be usable as a directory name");
+
+        long now = System.currentTimeMillis();
+        nodeRepository.register(name, host);
+        lastHeartbeat = now;
+        logger.info("Registered as node {} (host {})", name, host);
+
+        scheduler.scheduleWithFixedDelay(() -> {
+            long t = System.currentTimeMillis();
+            try {
+                if (!nodeRepository.heartbeat(name))
+                    nodeRepository.register(name, host);
+                lastHeartbeat = t;
+            } catch (Exception e) {
+                logger.warn("Failed to record a heartbeat for node {}: {}", name, e.getMessage());
+            }
+        }, new Date(now + heartbeatInterval), heartbeatInterval);
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public long getTimeout()
+    {
+        return timeout;
+    }
+
+    @Override
+    public long getHeartbeatInterval()
+    {
+        return heartbeatInterval;
+    }
+
+    @Override
+    public boolean hasLease()
+    {
+        return !enabled ||
+            (System.currentTimeMillis() - lastHeartbeat) < (timeout - heartbeatInterval);
+    }
+
+    @Override
+    public Set<String> getAliveNodes()
+    {
+        if (!enabled)
+            return Collections.emptySet();
+
+        Set<String> names = new HashSet<>(nodeRepository.findAlive(timeout));
+        names.add(name);
+        return names;
+    }
+
+    @Override
+    public String getOwner(long executionId)
+    {
+        return enabled? nodeRepository.findOwner(executionId) : null;
+    }
+
+    @Override
+    public boolean takeOver(long executionId, String owner)
+    {
+        Assert.state(enabled, "Not running alongside other nodes");
+        Assert.notNull(owner, "The name of the current owner is required");
+
+        if (owner.equals(name))
+            return true;
+
+        boolean tookOver = nodeRepository.takeOver(executionId, owner, name, timeout);
+        if (tookOver)
+            logger.info("Took over execution #{} from node {}", executionId, owner);
+        return tookOver;
+    }
+}
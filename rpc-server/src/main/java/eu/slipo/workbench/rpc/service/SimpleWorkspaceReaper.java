@@ -0,0 +1,407 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Service;
+
+import com.spotify.docker.client.DockerClient;
+import com.spotify.docker.client.DockerClient.ListContainersParam;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Container;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.docker.ContainerConfigurer;
+
+/**
+ * A workspace reaper that periodically scans the data directory for working directories
+ * of jobs (i.e. directories named <tt>&lt;tool&gt;/&lt;hex-id&gt;</tt>, where <tt>hex-id</tt>
+ * is the id of a job instance), and the docker host for containers of jobs (i.e. labeled
+ * with a job instance, see {@link ContainerConfigurer#job(String, long)}). Other containers
+ * (e.g. pooled ones, or ones not created by us) are never touched.
+ * <p>
+ * A job that is running (or is stopped, and so may be resumed) is never reaped before
+ * its retention period. The retention period depends on the status of the last execution:
+ * completed jobs are kept for <tt>retention.completed</tt>, failed (or stopped) ones for
+ * <tt>retention.failed</tt>, and workspaces of unknown jobs for <tt>retention.orphaned</tt>.
+ * <p>
+ * If the usage of the data volume exceeds the high-water mark, workspaces of finished jobs
+ * are removed (the oldest first) until usage drops under the low-water mark.
+ */
+@Service
+public class SimpleWorkspaceReaper implements WorkspaceReaper
+{
+    private static final Logger logger = LoggerFactory.getLogger(SimpleWorkspaceReaper.class);
+
+    private static final Pattern WORKSPACE_NAME_PATTERN = Pattern.compile("[0-9a-f]{4,15}");
+
+    private static final String OUTPUT_DIR_NAME = "output";
+
+    private static final String OUTPUT_ARCHIVE_NAME = "output.tar.gz";
+
+    private static final long DAY = 24L * 3600L * 1000L;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    @Autowired
+    private DockerClient docker;
+
+    @Autowired
+    private TaskScheduler scheduler;
+
+    @Value("${slipo.rpc-server.docker.volumes.data-dir}")
+    private String dataDir;
+
+    @Value("${slipo.rpc-server.reaper.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * The interval (milliseconds) between passes
+     */
+    @Value("${slipo.rpc-server.reaper.interval:600000}")
+    private long interval;
+
+    @Value("${slipo.rpc-server.reaper.retention.completed:" + (7 * DAY) + "}")
+    private long completedRetention;
+
+    @Value("${slipo.rpc-server.reaper.retention.failed:" + (2 * DAY) + "}")
+    private long failedRetention;
+
+    @Value("${slipo.rpc-server.reaper.retention.orphaned:" + (1 * DAY) + "}")
+    private long orphanedRetention;
+
+    /**
+     * The retention (milliseconds) of an exited container of a finished job
+     */
+    @Value("${slipo.rpc-server.reaper.retention.container:3600000}")
+    private long containerRetention;
+
+    /**
+     * The age (milliseconds) after which the output of a completed job is archived (as a
+     * compressed TAR archive). A non-positive value means never.
+     */
+    @Value("${slipo.rpc-server.reaper.archive-after:0}")
+    private long archiveAfter;
+
+    @Value("${slipo.rpc-server.reaper.high-water:0.85}")
+    private double highWater;
+
+    @Value("${slipo.rpc-server.reaper.low-water:0.75}")
+    private double lowWater;
+
+    private volatile Report lastReport;
+
+    /**
+     * Represent the working directory of a job
+     */
+    private static class Workspace
+    {
+        private final Path path;
+
+        private final JobExecution execution;
+
+        /** The time (milliseconds since Epoch) after which this workspace is not needed */
+        private final long finished;
+
+        private Workspace(Path path, JobExecution execution, long finished)
+        {
+            this.path = path;
+            this.execution = execution;
+            this.finished = finished;
+        }
+    }
+
+    @PostConstruct
+    private void initialize()
+    {
+        if (!enabled)
+            return;
+
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                reap();
+            } catch (Exception e) {
+                logger.warn("Failed to reap workspaces: {}", e.getMessage());
+            }
+        }, new Date(System.currentTimeMillis() + interval), interval);
+    }
+
+    @Override
+    public Report getLastReport()
+    {
+        return lastReport;
+    }
+
+    @Override
+    public synchronized Report reap() throws IOException
+    {
+        final long now = System.currentTimeMillis();
+        final Path root = Paths.get(dataDir);
+        final FileStore fileStore = Files.getFileStore(root);
+        final Report report = new Report(new Date(now));
+
+        report.setUsageBefore(usage(fileStore));
+
+        // Find containers that are still running: their jobs are never reaped
+
+        Set<Long> activeIds = new HashSet<>();
+        List<Container> containers = listContainers();
+        for (Container c: containers) {
+            Long id = jobIdOf(c);
+            if (id != null && "running".equals(c.state()))
+                activeIds.add(id);
+        }
+
+        // Remove exited containers of finished jobs
+
+        for (Container c: containers) {
+            Long id = jobIdOf(c);
+            if (id == null || activeIds.contains(id) || "running".equals(c.state()))
+                continue;
+            JobExecution execution = lastExecution(id);
+            if (execution == null)
+                continue; // not a job known to this repository
+            if (isResumable(execution) && (execution.getEndTime() == null ||
+                    now - execution.getEndTime().getTime() < failedRetention))
+                continue;
+            long created = c.created() == null? 0L : c.created() * 1000L;
+            if (now - created < containerRetention)
+                continue;
+            try {
+                docker.removeContainer(c.id());
+                report.containerRemoved();
+            } catch (DockerException e) {
+                logger.warn("Failed to remove container {}: {}", c.id(), e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while removing containers", e);
+            }
+        }
+
+        // Examine workspaces: remove expired ones, archive outputs of completed ones
+
+        List<Workspace> candidates = new ArrayList<>();
+        for (Workspace w: listWorkspaces(root)) {
+            long id = Long.parseLong(w.path.getFileName().toString(), 16);
+            if (activeIds.contains(id) || (w.execution != null && w.execution.isRunning()))
+                continue;
+            long age = now - w.finished;
+            if (age >= retentionOf(w.execution)) {
+                report.workspaceRemoved(deleteRecursively(w.path));
+                logger.info("Removed workspace {} (job {})", w.path, id);
+                continue;
+            }
+            if (w.execution != null && isResumable(w.execution))
+                continue;
+            candidates.add(w);
+            if (archiveAfter > 0 && age >= archiveAfter &&
+                    w.execution != null && w.execution.getStatus() == BatchStatus.COMPLETED)
+            {
+                long n = archiveOutput(w.path);
+                if (n >= 0)
+                    report.outputArchived(n);
+            }
+        }
+
+        // Enforce the high-water mark on usage
+
+        if (usage(fileStore) > highWater) {
+            candidates.sort(Comparator.comparingLong(w -> w.finished));
+            for (Workspace w: candidates) {
+                if (usage(fileStore) <= lowWater)
+                    break;
+                report.workspaceRemoved(deleteRecursively(w.path));
+                logger.info("Removed workspace {} (above high-water mark)", w.path);
+            }
+        }
+
+        report.setUsageAfter(usage(fileStore));
+        lastReport = report;
+
+        logger.info("Reaped workspaces: {}", report);
+        return report;
+    }
+
+    private List<Container> listContainers() throws IOException
+    {
+        try {
+            return docker.listContainers(
+                ListContainersParam.allContainers(),
+                ListContainersParam.withLabel(ContainerConfigurer.JOB_INSTANCE_LABEL));
+        } catch (DockerException e) {
+            logger.warn("Failed to list containers: {}", e.getMessage());
+            return Collections.emptyList();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while listing containers", e);
+        }
+    }
+
+    private List<Workspace> listWorkspaces(Path root) throws IOException
+    {
+        List<Workspace> workspaces = new ArrayList<>();
+        try (DirectoryStream<Path> toolDirs = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path toolDir: toolDirs) {
+                try (DirectoryStream<Path> ds = Files.newDirectoryStream(toolDir, p -> Files.isDirectory(p)
+                        && WORKSPACE_NAME_PATTERN.matcher(p.getFileName().toString()).matches()))
+                {
+                    for (Path path: ds) {
+                        long id = Long.parseLong(path.getFileName().toString(), 16);
+                        JobExecution execution = lastExecution(id);
+                        long finished = (execution != null && execution.getEndTime() != null)?
+                            execution.getEndTime().getTime() :
+                            Files.getLastModifiedTime(path).toMillis();
+                        workspaces.add(new Workspace(path, execution, finished));
+                    }
+                }
+            }
+        }
+        return workspaces;
+    }
+
+    /**
+     * Get the id of the job instance a container is run for (as labeled by us)
+     */
+    private static Long jobIdOf(Container c)
+    {
+        String value = c.labels() == null? null : c.labels().get(ContainerConfigurer.JOB_INSTANCE_LABEL);
+        if (value == null || !c.labels().containsKey(ContainerConfigurer.JOB_LABEL))
+            return null;
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private JobExecution lastExecution(long instanceId)
+    {
+        JobInstance instance = jobExplorer.getJobInstance(instanceId);
+        if (instance == null)
+            return null;
+        return jobExplorer.getJobExecutions(instance).stream()
+            .max(Comparator.comparing(JobExecution::getId))
+            .orElse(null);
+    }
+
+    /**
+     * Check if a (not running) execution may be resumed (e.g. a parked job, or a failed
+     * job that is going to be restarted).
+     */
+    private static boolean isResumable(JobExecution execution)
+    {
+        BatchStatus status = execution.getStatus();
+        return status == BatchStatus.STOPPED || status == BatchStatus.FAILED;
+    }
+
+    private long retentionOf(JobExecution execution)
+    {
+        if (execution == null)
+            return orphanedRetention;
+        switch (execution.getStatus()) {
+        case COMPLETED:
+            return completedRetention;
+        case ABANDONED:
+            return orphanedRetention;
+        default:
+            return failedRetention;
+        }
+    }
+
+    private static double usage(FileStore fileStore) throws IOException
+    {
+        long total = fileStore.getTotalSpace();
+        return total > 0? (1.0 - ((double) fileStore.getUsableSpace()) / total) : 0.0;
+    }
+
+    /**
+     * Replace the output directory of a workspace with a compressed TAR archive.
+     *
+     * @return the number of bytes reclaimed, or <tt>-1</tt> if there is nothing to archive
+     */
+    private long archiveOutput(Path workspace) throws IOException
+    {
+        final Path outputDir = workspace.resolve(OUTPUT_DIR_NAME);
+        final Path archivePath = workspace.resolve(OUTPUT_ARCHIVE_NAME);
+        if (!Files.isDirectory(outputDir) || Files.exists(archivePath))
+            return -1;
+
+        Path tempPath = Files.createTempFile(workspace, OUTPUT_ARCHIVE_NAME, null);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempPath));
+            TarArchiveOutputStream tarStream =
+                new TarArchiveOutputStream(new GzipCompressorOutputStream(out)))
+        {
+            tarStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            tarStream.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(outputDir, Files::isRegularFile)) {
+                for (Path path: ds) {
+                    TarArchiveEntry entry =
+                        new TarArchiveEntry(path.toFile(), path.getFileName().toString());
+                    tarStream.putArchiveEntry(entry);
+                    Files.copy(path, tarStream);
+                    tarStream.closeArchiveEntry();
+                }
+            }
+        }
+        Files.move(tempPath, archivePath, StandardCopyOption.ATOMIC_MOVE);
+
+        long n = deleteRecursively(outputDir) - Files.size(archivePath);
+        logger.info("Archived output of workspace {} into {}", workspace, archivePath);
+        return Math.max(0L, n);
+    }
+
+    /**
+     * Delete a directory recursively.
+     *
+     * @return the number of bytes freed (i.e. the size of deleted files that were not
+     *   linked elsewhere)
+     */
+    private static long deleteRecursively(Path dir) throws IOException
+    {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.forEach(paths::add);
+        }
+        Collections.reverse(paths);
+
+        long n = 0;
+        for (Path p: paths) {
+            if (Files.isRegularFile(p, LinkOption.NOFOLLOW_LINKS) &&
+                    ((Integer) Files.getAttribute(p, "unix:nlink", LinkOption.NOFOLLOW_LINKS)) == 1)
+                n += Files.size(p);
+            Files.deleteIfExists(p);
+        }
+        return n;
+    }
+}
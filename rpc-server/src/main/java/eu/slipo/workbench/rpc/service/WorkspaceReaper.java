@@ -0,0 +1,135 @@
+package eu.slipo.workbench.rpc.service;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * A service that reclaims disk space (and containers) used by finished jobs.
+ * <p>
+ * A reaper removes the working directories (and the stopped containers) of jobs that
+ * are past their retention period (depending on the status of the job), optionally
+ * archives the outputs of completed jobs, and enforces a high-water mark on the usage
+ * of the data volume.
+ */
+public interface WorkspaceReaper
+{
+    /**
+     * A report on a single pass of a reaper
+     */
+    public static class Report
+    {
+        private final Date started;
+
+        private int workspacesRemoved;
+
+        private int containersRemoved;
+
+        private int outputsArchived;
+
+        private long reclaimedBytes;
+
+        private double usageBefore;
+
+        private double usageAfter;
+
+        public Report(Date started)
+        {
+            this.started = started;
+        }
+
+        public Date getStarted()
+        {
+            return started;
+        }
+
+        public int getWorkspacesRemoved()
+        {
+            return workspacesRemoved;
+        }
+
+        public int getContainersRemoved()
+        {
+            return containersRemoved;
+        }
+
+        public int getOutputsArchived()
+        {
+            return outputsArchived;
+        }
+
+        /**
+         * The number of bytes freed on the data volume (files that are still linked
+         * elsewhere, e.g. from an input store, are not counted)
+         */
+        public long getReclaimedBytes()
+        {
+            return reclaimedBytes;
+        }
+
+        /**
+         * The used fraction of the data volume before this pass
+         */
+        public double getUsageBefore()
+        {
+            return usageBefore;
+        }
+
+        /**
+         * The used fraction of the data volume after this pass
+         */
+        public double getUsageAfter()
+        {
+            return usageAfter;
+        }
+
+        public void workspaceRemoved(long bytes)
+        {
+            workspacesRemoved++;
+            reclaimedBytes += bytes;
+        }
+
+        public void containerRemoved()
+        {
+            containersRemoved++;
+        }
+
+        public void outputArchived(long bytes)
+        {
+            outputsArchived++;
+            reclaimedBytes += bytes;
+        }
+
+        public void setUsageBefore(double usage)
+        {
+            this.usageBefore = usage;
+        }
+
+        public void setUsageAfter(double usage)
+        {
+            this.usageAfter = usage;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(
+                "Report [workspacesRemoved=%d, containersRemoved=%d, outputsArchived=%d, " +
+                    "reclaimedBytes=%d, usageBefore=%.3f, usageAfter=%.3f]",
+                workspacesRemoved, containersRemoved, outputsArchived,
+                reclaimedBytes, usageBefore, usageAfter);
+        }
+    }
+
+    /**
+     * Perform a single pass (i.e. examine all workspaces and containers of jobs).
+     *
+     * @return a report on this pass
+     * @throws IOException
+     */
+    Report reap() throws IOException;
+
+    /**
+     * Get the report of the last completed pass (or <tt>null</tt> if none is completed)
+     */
+    Report getLastReport();
+}
@@ -104,3 +104,12 @@ CREATE SEQUENCE rpc.batch_job_execution_seq MAXVALUE 9223372036854775807 NO CYCL
 
 CREATE SEQUENCE rpc.batch_job_seq MAXVALUE 9223372036854775807 NO CYCLE;
 
+
+CREATE INDEX batch_job_instance_name_idx 
+  ON rpc.batch_job_instance (job_name, job_instance_id);
+
+CREATE INDEX batch_job_execution_instance_idx 
+  ON rpc.batch_job_execution (job_instance_id, job_execution_id);
+
+CREATE INDEX batch_job_execution_running_idx 
+  ON rpc.batch_job_execution (job_execution_id) WHERE end_time IS NULL;
@@ -0,0 +1,127 @@
+package eu.slipo.workbench.rpc.unit.jobs;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.MergeOutputTasklet;
+import eu.slipo.workbench.rpc.jobs.tasklet.SplitInputTasklet;
+
+public class MergeOutputTaskletTests
+{
+    private static final int SHARDS = 3;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Path shardsDir;
+
+    private Path outputDir;
+
+    private StepExecution stepExecution;
+
+    @Before
+    public void setup() throws Exception
+    {
+        shardsDir = tempFolder.getRoot().toPath().resolve("shards");
+        outputDir = tempFolder.getRoot().toPath().resolve("output");
+        stepExecution = new StepExecution("mergeOutput", new JobExecution(1L));
+
+        // Create the outputs of every shard (as if created by a container)
+
+        for (int i = 0; i < SHARDS; i++) {
+            Path shardOutputDir = SplitInputTasklet.shardOutputDir(shardsDir, i);
+            Files.createDirectories(shardOutputDir);
+            write(shardOutputDir.resolve("points.nt"), triples(i));
+            write(shardOutputDir.resolve("points_metadata.json"), "{\"shard\": " + i + "}\n");
+        }
+    }
+
+    private static String triples(int i)
+    {
+        return String.format(
+            "<urn:poi:%d> <urn:name> \"poi %d\" .\n<urn:poi:%d> <urn:shard> \"%d\" .\n", i, i, i, i);
+    }
+
+    private static void write(Path path, String content) throws Exception
+    {
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(Path path) throws Exception
+    {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+
+    private void execute() throws Exception
+    {
+        MergeOutputTasklet tasklet = MergeOutputTasklet.builder()
+            .shards(shardsDir, SHARDS)
+            .outputDirectory(outputDir)
+            .concatenate("nt")
+            .build();
+
+        ChunkContext context = new ChunkContext(new StepContext(stepExecution));
+        RepeatStatus status = tasklet.execute(stepExecution.createStepContribution(), context);
+        assertEquals(RepeatStatus.FINISHED, status);
+    }
+
+    @Test
+    public void testMergeInShardOrder() throws Exception
+    {
+        execute();
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < SHARDS; i++)
+            expected.append(triples(i));
+        assertEquals(expected.toString(), read(outputDir.resolve("points.nt")));
+
+        @SuppressWarnings("unchecked")
+        List<String> mergedFiles =
+            (List<String>) stepExecution.getExecutionContext().get(MergeOutputTasklet.Keys.MERGED_FILES);
+        assertEquals(Arrays.asList("points.nt"), mergedFiles);
+    }
+
+    @Test
+    public void testCopyNonConcatenable() throws Exception
+    {
+        execute();
+
+        assertFalse(Files.exists(outputDir.resolve("points_metadata.json")));
+        for (int i = 0; i < SHARDS; i++) {
+            Path path = outputDir.resolve("points_metadata-" + i + ".json");
+            assertTrue("Expected a suffixed copy for shard " + i, Files.isRegularFile(path));
+            assertEquals("{\"shard\": " + i + "}\n", read(path));
+        }
+    }
+
+    @Test
+    public void testRerunTruncatesMerged() throws Exception
+    {
+        // A merged file left by a failed attempt
+        Files.createDirectories(outputDir);
+        write(outputDir.resolve("points.nt"), triples(0));
+
+        execute();
+        execute();
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < SHARDS; i++)
+            expected.append(triples(i));
+        assertEquals(expected.toString(), read(outputDir.resolve("points.nt")));
+    }
+}
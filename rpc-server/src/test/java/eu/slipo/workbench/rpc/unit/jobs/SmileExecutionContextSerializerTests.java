@@ -0,0 +1,213 @@
+package eu.slipo.workbench.rpc.unit.jobs;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.repository.ExecutionContextSerializer;
+import org.springframework.batch.core.repository.dao.XStreamExecutionContextStringSerializer;
+
+import eu.slipo.workbench.common.model.poi.EnumDataFormat;
+import eu.slipo.workbench.common.model.tool.TriplegeoConfiguration;
+import eu.slipo.workbench.rpc.jobs.support.SmileExecutionContextSerializer;
+
+public class SmileExecutionContextSerializerTests
+{
+    private static final Logger logger = LoggerFactory.getLogger(SmileExecutionContextSerializerTests.class);
+
+    private static final int ITERATIONS = 5000;
+
+    private XStreamExecutionContextStringSerializer xstreamSerializer;
+
+    private SmileExecutionContextSerializer smileSerializer;
+
+    @Before
+    public void setup() throws Exception
+    {
+        xstreamSerializer = new XStreamExecutionContextStringSerializer();
+        xstreamSerializer.afterPropertiesSet();
+
+        smileSerializer = SmileExecutionContextSerializer.builder()
+            .registerType("triplegeo.config", TriplegeoConfiguration.class)
+            .fallback(xstreamSerializer)
+            .build();
+    }
+
+    private static TriplegeoConfiguration createConfiguration()
+    {
+        TriplegeoConfiguration config = new TriplegeoConfiguration();
+        config.setInputFormat(EnumDataFormat.CSV);
+        config.useDefaultsForInputFormat();
+        config.setInputFiles("/var/local/slipo-workbench/jobs/triplegeo/181/1/input/points.csv");
+        config.setOutputDir("/var/local/slipo-workbench/jobs/triplegeo/181/1/output");
+        config.setMode(TriplegeoConfiguration.Mode.GRAPH);
+        config.setFeatureName("pois");
+        config.setSourceCRS("EPSG:2100");
+        config.setTargetCRS("EPSG:4326");
+        return config;
+    }
+
+    private static Map<String, Object> createContext()
+    {
+        Map<String, Object> bbox = new LinkedHashMap<>();
+        bbox.put("minx", 23.5);
+        bbox.put("miny", 37.9);
+        bbox.put("maxx", 24.1);
+        bbox.put("maxy", 38.2);
+
+        Map<String, Object> context = new HashMap<>();
+        context.put("shards.dir", "/var/local/slipo-workbench/jobs/triplegeo/181/1/shards");
+        context.put("shards", 4);
+        context.put("triples", 1250317L);
+        context.put("subjects", 98213L);
+        context.put("bytes", 273412993L);
+        context.put("ratio", 0.1835);
+        context.put("cache.hit", false);
+        context.put("started", new Date(1508313600000L));
+        context.put("bbox", bbox);
+        context.put("merged.files", Arrays.asList(
+            "/var/local/slipo-workbench/jobs/triplegeo/181/1/output/points.nt",
+            "/var/local/slipo-workbench/jobs/triplegeo/181/1/output/points_metadata.json"));
+        context.put("keys", new LinkedHashSet<>(Arrays.asList("a", "b", "c")));
+        return context;
+    }
+
+    private static byte[] serialize(ExecutionContextSerializer serializer, Map<String, Object> context)
+        throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(context, out);
+        return out.toByteArray();
+    }
+
+    private static Map<String, Object> deserialize(ExecutionContextSerializer serializer, byte[] data)
+        throws Exception
+    {
+        return serializer.deserialize(new ByteArrayInputStream(data));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        Map<String, Object> context = createContext();
+        Map<String, Object> result = deserialize(smileSerializer, serialize(smileSerializer, context));
+        assertEquals(context, result);
+    }
+
+    @Test
+    public void testRoundTripWithRegisteredType() throws Exception
+    {
+        TriplegeoConfiguration config = createConfiguration();
+        Map<String, Object> context = createContext();
+        context.put("triplegeo.config", config);
+
+        byte[] data = serialize(smileSerializer, context);
+        assertTrue(new String(data, StandardCharsets.US_ASCII).startsWith("smile:"));
+
+        Map<String, Object> result = deserialize(smileSerializer, data);
+        assertEquals(context.keySet(), result.keySet());
+
+        Object value = result.get("triplegeo.config");
+        assertTrue(value instanceof TriplegeoConfiguration);
+        TriplegeoConfiguration config1 = (TriplegeoConfiguration) value;
+        assertEquals(config.getInputFormat(), config1.getInputFormat());
+        assertEquals(config.getInputFiles(), config1.getInputFiles());
+        assertEquals(config.getOutputDir(), config1.getOutputDir());
+        assertEquals(config.getOutputFormat(), config1.getOutputFormat());
+        assertEquals(config.getMode(), config1.getMode());
+        assertEquals(config.getFeatureName(), config1.getFeatureName());
+        assertEquals(config.getAttrKey(), config1.getAttrKey());
+        assertEquals(config.getSourceCRS(), config1.getSourceCRS());
+        assertEquals(config.getTargetCRS(), config1.getTargetCRS());
+    }
+
+    @Test
+    public void testReadCompactWhenNotCompact() throws Exception
+    {
+        SmileExecutionContextSerializer serializer = SmileExecutionContextSerializer.builder()
+            .registerType("triplegeo.config", TriplegeoConfiguration.class)
+            .fallback(xstreamSerializer)
+            .compact(false)
+            .build();
+
+        Map<String, Object> context = createContext();
+
+        // Written by the fallback serializer
+        byte[] data = serialize(serializer, context);
+        assertEquals('{', data[0]);
+        assertEquals(context, deserialize(serializer, data));
+
+        // Written (before) as a Smile document
+        context.put("triplegeo.config", createConfiguration());
+        Map<String, Object> result = deserialize(serializer, serialize(smileSerializer, context));
+        assertEquals(context.keySet(), result.keySet());
+        assertTrue(result.get("triplegeo.config") instanceof TriplegeoConfiguration);
+    }
+
+    @Test
+    public void testReadLegacy() throws Exception
+    {
+        Map<String, Object> context = createContext();
+        Map<String, Object> result = deserialize(smileSerializer, serialize(xstreamSerializer, context));
+        assertEquals(context, result);
+    }
+
+    @Test
+    public void testFallbackForUnknownType() throws Exception
+    {
+        Map<String, Object> context = createContext();
+        context.put("since", new Timestamp(1508313600000L));
+
+        byte[] data = serialize(smileSerializer, context);
+        assertEquals('{', data[0]);
+        assertEquals(context, deserialize(smileSerializer, data));
+    }
+
+    @Test
+    public void benchmark() throws Exception
+    {
+        Map<String, Object> context = createContext();
+
+        byte[] xstreamData = serialize(xstreamSerializer, context);
+        byte[] smileData = serialize(smileSerializer, context);
+
+        // Warm up both serializers
+
+        for (int i = 0; i < ITERATIONS / 10; ++i) {
+            deserialize(xstreamSerializer, serialize(xstreamSerializer, context));
+            deserialize(smileSerializer, serialize(smileSerializer, context));
+        }
+
+        long xstreamNanos = time(xstreamSerializer, context);
+        long smileNanos = time(smileSerializer, context);
+
+        logger.info("XStream: {} bytes, {} us per round-trip",
+            xstreamData.length, xstreamNanos / ITERATIONS / 1000.0);
+        logger.info("Smile: {} bytes, {} us per round-trip",
+            smileData.length, smileNanos / ITERATIONS / 1000.0);
+
+        assertTrue("Expected a smaller serialized form", smileData.length < xstreamData.length);
+    }
+
+    private static long time(ExecutionContextSerializer serializer, Map<String, Object> context)
+        throws Exception
+    {
+        long t0 = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i)
+            deserialize(serializer, serialize(serializer, context));
+        return System.nanoTime() - t0;
+    }
+}
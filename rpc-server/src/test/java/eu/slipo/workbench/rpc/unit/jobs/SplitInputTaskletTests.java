@@ -0,0 +1,205 @@
+package eu.slipo.workbench.rpc.unit.jobs;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import eu.slipo.workbench.rpc.jobs.tasklet.SplitInputTasklet;
+
+public class SplitInputTaskletTests
+{
+    private static final String HEADER = "id,name,description";
+
+    private static final List<String> RECORDS = Arrays.asList(
+        "1,Acropolis,\"An ancient citadel\nabove Athens\"",
+        "2,Agora,Marketplace",
+        "3,\"Temple of \"\"Hephaestus\"\"\",\"Doric,\nperipteral\n(well preserved)\"",
+        "4,Pnyx,Hill",
+        "5,Kerameikos,Cemetery",
+        "6,Plaka,\"Old\ntown\"");
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Path inputDir;
+
+    private Path shardsDir;
+
+    private StepExecution stepExecution;
+
+    @Before
+    public void setup() throws Exception
+    {
+        inputDir = tempFolder.newFolder("input").toPath();
+        shardsDir = tempFolder.getRoot().toPath().resolve("shards");
+        stepExecution = new StepExecution("splitInput", new JobExecution(1L));
+    }
+
+    private static String join(List<String> records)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (String record: records)
+            sb.append(record).append('\n');
+        return sb.toString();
+    }
+
+    private static String read(Path path) throws Exception
+    {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8)
+            .replace(System.lineSeparator(), "\n");
+    }
+
+    private void execute(SplitInputTasklet tasklet) throws Exception
+    {
+        ChunkContext context = new ChunkContext(new StepContext(stepExecution));
+        RepeatStatus status = tasklet.execute(stepExecution.createStepContribution(), context);
+        assertEquals(RepeatStatus.FINISHED, status);
+    }
+
+    private List<String> readParts(String name, int shards) throws Exception
+    {
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            Path part = SplitInputTasklet.shardInputDir(shardsDir, i).resolve(name);
+            assertTrue("Expected a part for shard " + i, Files.isRegularFile(part));
+            assertTrue(Files.isDirectory(SplitInputTasklet.shardOutputDir(shardsDir, i)));
+            parts.add(read(part));
+        }
+        return parts;
+    }
+
+    @Test
+    public void testSplitWithQuotedLineBreaks() throws Exception
+    {
+        final int shards = 3;
+        Files.write(inputDir.resolve("points.csv"),
+            (HEADER + "\n" + join(RECORDS)).getBytes(StandardCharsets.UTF_8));
+
+        execute(SplitInputTasklet.builder()
+            .input(inputDir, Arrays.asList("points.csv"))
+            .extension("csv")
+            .shardsDirectory(shardsDir)
+            .shards(shards)
+            .header(true)
+            .quote('"')
+            .build());
+
+        assertEquals(shards, stepExecution.getExecutionContext().getInt(SplitInputTasklet.Keys.SHARDS));
+        assertEquals(shardsDir.toString(),
+            stepExecution.getExecutionContext().getString(SplitInputTasklet.Keys.SHARDS_DIR));
+
+        // Every part starts with the header, and a quoted line break never ends a record:
+        // the parts (in shard order) must hold exactly the original records
+
+        StringBuilder merged = new StringBuilder();
+        int nonEmpty = 0;
+        for (String part: readParts("points.csv", shards)) {
+            assertTrue("Expected the header on every part", part.startsWith(HEADER + "\n"));
+            String body = part.substring(HEADER.length() + 1);
+            if (!body.isEmpty())
+                nonEmpty++;
+            merged.append(body);
+        }
+        assertEquals(join(RECORDS), merged.toString());
+        assertTrue("Expected records to be spread among shards", nonEmpty > 1);
+    }
+
+    @Test
+    public void testSplitWithoutQuote() throws Exception
+    {
+        final int shards = 2;
+        List<String> lines = Arrays.asList("a 1", "b 2", "c 3", "d 4");
+        Files.write(inputDir.resolve("points.txt"), join(lines).getBytes(StandardCharsets.UTF_8));
+
+        execute(SplitInputTasklet.builder()
+            .input(inputDir, Arrays.asList("points.txt"))
+            .extension("txt")
+            .shardsDirectory(shardsDir)
+            .shards(shards)
+            .build());
+
+        // Split on lines (into parts of roughly equal size), no header
+        List<String> parts = readParts("points.txt", shards);
+        assertEquals(join(lines.subList(0, 2)), parts.get(0));
+        assertEquals(join(lines.subList(2, 4)), parts.get(1));
+    }
+
+    @Test
+    public void testHeaderIsReplicatedToEmptyParts() throws Exception
+    {
+        final int shards = 4;
+        Files.write(inputDir.resolve("points.csv"),
+            (HEADER + "\n" + join(RECORDS.subList(0, 1))).getBytes(StandardCharsets.UTF_8));
+
+        execute(SplitInputTasklet.builder()
+            .input(inputDir, Arrays.asList("points.csv"))
+            .extension("csv")
+            .shardsDirectory(shardsDir)
+            .shards(shards)
+            .header(true)
+            .quote('"')
+            .build());
+
+        List<String> parts = readParts("points.csv", shards);
+        assertEquals(HEADER + "\n" + join(RECORDS.subList(0, 1)), parts.get(0));
+        for (String part: parts.subList(1, shards))
+            assertEquals(HEADER + "\n", part);
+    }
+
+    @Test
+    public void testAuxiliaryFilesAreShared() throws Exception
+    {
+        final int shards = 2;
+        Files.write(inputDir.resolve("points.csv"),
+            (HEADER + "\n" + join(RECORDS)).getBytes(StandardCharsets.UTF_8));
+        Files.write(inputDir.resolve("mappings.yml"), "id: id\n".getBytes(StandardCharsets.UTF_8));
+
+        execute(SplitInputTasklet.builder()
+            .input(inputDir, Arrays.asList("points.csv", "mappings.yml"))
+            .extension("csv")
+            .shardsDirectory(shardsDir)
+            .shards(shards)
+            .header(true)
+            .quote('"')
+            .build());
+
+        for (String part: readParts("mappings.yml", shards))
+            assertEquals("id: id\n", part);
+    }
+
+    @Test
+    public void testRerunClearsLeftovers() throws Exception
+    {
+        final int shards = 2;
+        Files.write(inputDir.resolve("points.txt"), "a\nb\n".getBytes(StandardCharsets.UTF_8));
+
+        Path leftover = SplitInputTasklet.shardOutputDir(shardsDir, 0).resolve("points.nt");
+        Files.createDirectories(leftover.getParent());
+        Files.write(leftover, "stale\n".getBytes(StandardCharsets.UTF_8));
+
+        execute(SplitInputTasklet.builder()
+            .input(inputDir, Arrays.asList("points.txt"))
+            .extension("txt")
+            .shardsDirectory(shardsDir)
+            .shards(shards)
+            .build());
+
+        assertFalse(Files.exists(leftover));
+        assertEquals(Arrays.asList("a\n", "b\n"), readParts("points.txt", shards));
+    }
+}
@@ -0,0 +1,170 @@
+package eu.slipo.workbench.rpc.unit.jobs;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.job.builder.FlowBuilder;
+import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.MapJobRepositoryFactoryBean;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.StoppableTasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import eu.slipo.workbench.rpc.jobs.listener.StoppableTaskletRegistry;
+
+public class StoppableTaskletRegistryTests
+{
+    private static final long TIMEOUT = 10L;
+
+    /**
+     * A tasklet that blocks (inside a single chunk) until asked to stop
+     */
+    private static class BlockingTasklet implements StoppableTasklet
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+
+        final CountDownLatch stopped = new CountDownLatch(1);
+
+        @Override
+        public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext)
+            throws Exception
+        {
+            started.countDown();
+            if (stopped.await(TIMEOUT, TimeUnit.SECONDS))
+                chunkContext.getStepContext().getStepExecution().setTerminateOnly();
+            return RepeatStatus.FINISHED;
+        }
+
+        @Override
+        public void stop()
+        {
+            stopped.countDown();
+        }
+    }
+
+    private JobRepository jobRepository;
+
+    private JobBuilderFactory jobBuilderFactory;
+
+    private StepBuilderFactory stepBuilderFactory;
+
+    private SimpleJobLauncher jobLauncher;
+
+    private StoppableTaskletRegistry registry;
+
+    @Before
+    public void setup() throws Exception
+    {
+        PlatformTransactionManager transactionManager = new ResourcelessTransactionManager();
+
+        MapJobRepositoryFactoryBean repositoryFactory =
+            new MapJobRepositoryFactoryBean(transactionManager);
+        repositoryFactory.afterPropertiesSet();
+        jobRepository = repositoryFactory.getObject();
+
+        jobBuilderFactory = new JobBuilderFactory(jobRepository);
+        stepBuilderFactory = new StepBuilderFactory(jobRepository, transactionManager);
+
+        jobLauncher = new SimpleJobLauncher();
+        jobLauncher.setJobRepository(jobRepository);
+        jobLauncher.setTaskExecutor(new SimpleAsyncTaskExecutor());
+        jobLauncher.afterPropertiesSet();
+
+        registry = new StoppableTaskletRegistry();
+    }
+
+    /**
+     * Build a job shaped as the triplegeo job: a simple step followed by a flow step, with
+     * the stoppable step nested into the flow.
+     */
+    private Job buildJob(BlockingTasklet tasklet)
+    {
+        Step setupStep = stepBuilderFactory.get("setup")
+            .tasklet((contribution, chunkContext) -> RepeatStatus.FINISHED)
+            .build();
+
+        Step runStep = stepBuilderFactory.get("run")
+            .tasklet(tasklet)
+            .listener(registry.listener(tasklet))
+            .build();
+
+        Flow flow = new FlowBuilder<Flow>("flow")
+            .start(runStep)
+            .end();
+
+        Step flowStep = stepBuilderFactory.get("stepIntoFlow")
+            .flow(flow)
+            .build();
+
+        return jobBuilderFactory.get("test")
+            .start(setupStep)
+            .next(flowStep)
+            .build();
+    }
+
+    private static void awaitFinished(JobExecution execution) throws InterruptedException
+    {
+        final long deadline = System.currentTimeMillis() + TIMEOUT * 1000L;
+        while (execution.isRunning() && System.currentTimeMillis() < deadline)
+            Thread.sleep(50L);
+        assertFalse("Expected the execution to have finished", execution.isRunning());
+    }
+
+    @Test
+    public void testStopNestedIntoFlow() throws Exception
+    {
+        BlockingTasklet tasklet = new BlockingTasklet();
+        Job job = buildJob(tasklet);
+
+        JobExecution execution = jobLauncher.run(job,
+            new JobParametersBuilder().addLong("run", 1L).toJobParameters());
+        assertTrue("Expected the tasklet to start",
+            tasklet.started.await(TIMEOUT, TimeUnit.SECONDS));
+
+        final long executionId = execution.getId();
+        assertTrue(registry.isRegistered(executionId));
+        assertTrue(registry.stop(executionId));
+        assertEquals(0L, tasklet.stopped.getCount());
+
+        awaitFinished(execution);
+        assertEquals(BatchStatus.STOPPED, execution.getStatus());
+        assertFalse(registry.isRegistered(executionId));
+    }
+
+    @Test
+    public void testStopOtherExecution() throws Exception
+    {
+        BlockingTasklet tasklet = new BlockingTasklet();
+        Job job = buildJob(tasklet);
+
+        JobExecution execution = jobLauncher.run(job,
+            new JobParametersBuilder().addLong("run", 2L).toJobParameters());
+        assertTrue("Expected the tasklet to start",
+            tasklet.started.await(TIMEOUT, TimeUnit.SECONDS));
+
+        // Nothing is registered for another execution
+        assertTrue(registry.stop(execution.getId() + 1L));
+        assertEquals(1L, tasklet.stopped.getCount());
+
+        tasklet.stop();
+        awaitFinished(execution);
+        assertFalse(registry.isRegistered(execution.getId()));
+    }
+}
@@ -0,0 +1,211 @@
+package eu.slipo.workbench.rpc.unit.jobs;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import eu.slipo.workbench.common.model.ApplicationException;
+import eu.slipo.workbench.common.model.BasicErrorCode;
+import eu.slipo.workbench.rpc.jobs.tasklet.ZipExtractor;
+
+public class ZipExtractorTests
+{
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Path targetDir;
+
+    private ZipExtractor extractor;
+
+    @Before
+    public void setup() throws Exception
+    {
+        targetDir = tempFolder.newFolder("target").toPath();
+
+        extractor = new ZipExtractor();
+        extractor.setThreads(2);
+    }
+
+    /**
+     * Create an archive of the given entries (keyed by entry name, in this order)
+     */
+    private Path createArchive(String name, Map<String, byte[]> entries, int method)
+        throws Exception
+    {
+        File file = tempFolder.getRoot().toPath().resolve(name).toFile();
+        try (ZipArchiveOutputStream out = new ZipArchiveOutputStream(file)) {
+            out.setMethod(method);
+            for (Map.Entry<String, byte[]> e: entries.entrySet()) {
+                ZipArchiveEntry entry = new ZipArchiveEntry(e.getKey());
+                out.putArchiveEntry(entry);
+                out.write(e.getValue());
+                out.closeArchiveEntry();
+            }
+        }
+        return file.toPath();
+    }
+
+    private Path createArchive(String name, Map<String, byte[]> entries) throws Exception
+    {
+        return createArchive(name, entries, ZipEntry.DEFLATED);
+    }
+
+    private static byte[] randomBytes(int size)
+    {
+        byte[] b = new byte[size];
+        new Random(size).nextBytes(b);
+        return b;
+    }
+
+    private static byte[] text(String s)
+    {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void assertTargetIsEmpty() throws Exception
+    {
+        try (Stream<Path> s = Files.list(targetDir)) {
+            assertEquals("Expected no file left behind", 0L, s.count());
+        }
+    }
+
+    private void assertRejected(Path archive) throws Exception
+    {
+        try {
+            extractor.extract(archive, targetDir);
+            fail("Expected the archive to be rejected");
+        } catch (ApplicationException ex) {
+            assertEquals(BasicErrorCode.INPUT_INVALID, ex.getErrorCode());
+        }
+        assertTargetIsEmpty();
+    }
+
+    @Test
+    public void testExtractFlattened() throws Exception
+    {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("data/", new byte[0]);
+        entries.put("data/points.csv", text("id,name\n1,Acropolis\n"));
+        entries.put("data/nested/mappings.yml", text("id: id\n"));
+        entries.put("README", randomBytes(4096));
+
+        for (int method: Arrays.asList(ZipEntry.DEFLATED, ZipEntry.STORED)) {
+            Path archive = createArchive("input-" + method + ".zip", entries, method);
+            Path dir = tempFolder.newFolder("target-" + method).toPath();
+
+            Map<String, Long> sizes = extractor.extract(archive, dir);
+
+            assertEquals(Arrays.asList("points.csv", "mappings.yml", "README"),
+                Arrays.asList(sizes.keySet().toArray()));
+            assertArrayEquals(entries.get("data/points.csv"), Files.readAllBytes(dir.resolve("points.csv")));
+            assertArrayEquals(entries.get("data/nested/mappings.yml"), Files.readAllBytes(dir.resolve("mappings.yml")));
+            assertArrayEquals(entries.get("README"), Files.readAllBytes(dir.resolve("README")));
+            assertEquals(Long.valueOf(4096L), sizes.get("README"));
+        }
+    }
+
+    @Test
+    public void testTraversalIsFlattened() throws Exception
+    {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("../../evil.csv", text("1,evil\n"));
+        entries.put("/etc/passwd.csv", text("2,evil\n"));
+
+        Map<String, Long> sizes = extractor.extract(createArchive("traversal.zip", entries), targetDir);
+
+        assertEquals(2, sizes.size());
+        assertTrue(Files.isRegularFile(targetDir.resolve("evil.csv")));
+        assertTrue(Files.isRegularFile(targetDir.resolve("passwd.csv")));
+        assertFalse(Files.exists(targetDir.getParent().resolve("evil.csv")));
+        assertFalse(Files.exists(targetDir.getParent().getParent().resolve("evil.csv")));
+    }
+
+    @Test
+    public void testRejectParentName() throws Exception
+    {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("points.csv", text("1,a\n"));
+        entries.put("data/..", text("evil\n"));
+
+        assertRejected(createArchive("parent.zip", entries));
+        assertTrue(Files.isDirectory(targetDir));
+    }
+
+    @Test
+    public void testRejectDuplicate() throws Exception
+    {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a/points.csv", text("1,a\n"));
+        entries.put("b/points.csv", text("2,b\n"));
+
+        assertRejected(createArchive("duplicate.zip", entries));
+    }
+
+    @Test
+    public void testRejectBomb() throws Exception
+    {
+        // A highly compressible entry (well beyond the size checked for its ratio)
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("points.csv", text("1,a\n"));
+        entries.put("zeros.csv", new byte[8 * 1024 * 1024]);
+
+        assertRejected(createArchive("bomb.zip", entries));
+    }
+
+    @Test
+    public void testRejectTooManyEntries() throws Exception
+    {
+        extractor.setMaxEntries(2);
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 3; i++)
+            entries.put("points-" + i + ".csv", text(i + ",a\n"));
+
+        assertRejected(createArchive("entries.zip", entries));
+    }
+
+    @Test
+    public void testRejectTooLarge() throws Exception
+    {
+        extractor.setMaxSize(16 * 1024L);
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a.bin", randomBytes(12 * 1024));
+        entries.put("b.bin", randomBytes(12 * 1024));
+
+        for (int method: Arrays.asList(ZipEntry.DEFLATED, ZipEntry.STORED))
+            assertRejected(createArchive("large-" + method + ".zip", entries, method));
+    }
+
+    @Test
+    public void testRetryAfterFailure() throws Exception
+    {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a.bin", randomBytes(12 * 1024));
+        entries.put("b.bin", randomBytes(12 * 1024));
+        Path archive = createArchive("retry.zip", entries);
+
+        extractor.setMaxSize(16 * 1024L);
+        assertRejected(archive);
+
+        // A failed extraction leaves nothing behind, so a retry (with a larger limit) succeeds
+        extractor.setMaxSize(32 * 1024L);
+        assertEquals(2, extractor.extract(archive, targetDir).size());
+    }
+}